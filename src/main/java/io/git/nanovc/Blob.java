@@ -3,6 +3,8 @@ package io.git.nanovc;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 
 /**
  * The content being stored in version control.
@@ -57,6 +59,70 @@ public class Blob extends RepoObject
         this.content = content;
     }
 
+    /**
+     * Gets the exact number of bytes that this repo object serializes to.
+     *
+     * @return The number of bytes in the serialized content of this repo object.
+     */
+    @Override
+    public int getByteSize()
+    {
+        // The length of the content followed by the content itself:
+        return 4 + (this.content == null ? 0 : this.content.length);
+    }
+
+    /**
+     * Writes the content of this repo object into the buffer.
+     *
+     * @param buffer The buffer to write to.
+     */
+    @Override
+    public void writeContentToBuffer(ByteBuffer buffer)
+    {
+        // Check whether we have content:
+        if (this.content == null || this.content.length == 0)
+        {
+            // We don't have content.
+            // Write the length of the content:
+            buffer.putInt(0);
+        }
+        else
+        {
+            // We have content.
+            // Write the length of the content:
+            buffer.putInt(this.content.length);
+
+            // Write the content:
+            buffer.put(this.content);
+        }
+    }
+
+    /**
+     * Writes the content of this repo object into the message digest.
+     * The content array is given straight to the digest so that it is never copied.
+     *
+     * @param digest The message digest to write to.
+     */
+    @Override
+    public void writeContentToDigest(MessageDigest digest)
+    {
+        // Get the length of the content:
+        int length = this.content == null ? 0 : this.content.length;
+
+        // Write the length of the content as a big endian int:
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+
+        // Check whether we have content:
+        if (length > 0)
+        {
+            // Write the content:
+            digest.update(this.content);
+        }
+    }
+
     /**
      * Writes the content of this repo object into the stream.
      *
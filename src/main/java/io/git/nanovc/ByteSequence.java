@@ -0,0 +1,52 @@
+package io.git.nanovc;
+
+/**
+ * A view of content as a sequence of bytes, for diffing binary content.
+ * The bytes are not copied.
+ */
+public class ByteSequence implements DiffSequence
+{
+    /**
+     * The bytes of the content.
+     */
+    public final byte[] content;
+
+    /**
+     * Creates a view of the given bytes.
+     *
+     * @param content The bytes of the content. Null for no content.
+     */
+    public ByteSequence(byte[] content)
+    {
+        this.content = content == null ? new byte[0] : content;
+    }
+
+    /**
+     * Creates a view of the bytes of the given content.
+     *
+     * @param content The content to view.
+     */
+    public ByteSequence(ContentBase content)
+    {
+        this(content.getContent());
+    }
+
+    @Override
+    public int size()
+    {
+        return this.content.length;
+    }
+
+    @Override
+    public int hash(int index)
+    {
+        return this.content[index];
+    }
+
+    @Override
+    public boolean equals(int index, DiffSequence other, int otherIndex)
+    {
+        return this.content[index] == ((ByteSequence) other).content[otherIndex];
+    }
+
+}
@@ -1,9 +1,16 @@
 package io.git.nanovc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A commit object stores information about who saved the snapshots,
@@ -30,11 +37,16 @@ public class Commit extends RepoObject
      * member as the committer.
      * http://git-scm.com/book/ch2-3.html
      * http://stackoverflow.com/questions/18750808/difference-between-author-and-committer-in-git
+     * <p>
+     * Commits that were read in the lazy format ({@link Config#FORMAT_VERSION_LAZY_COMMITS}) only decode this
+     * when it is asked for, so it is null until then. Use {@link #getAuthor()} to read it for any commit.
      */
     public String author;
 
     /**
      * The date, time and time-zone when the author made the change.
+     * Commits that were read in the lazy format ({@link Config#FORMAT_VERSION_LAZY_COMMITS}) only create this
+     * when it is asked for, so it is null until then. Use {@link #getAuthorTimeStamp()} to read it for any commit.
      */
     public ZonedDateTime authorTimeStamp;
 
@@ -49,11 +61,16 @@ public class Commit extends RepoObject
      * member as the committer.
      * http://git-scm.com/book/ch2-3.html
      * http://stackoverflow.com/questions/18750808/difference-between-author-and-committer-in-git
+     * <p>
+     * Commits that were read in the lazy format ({@link Config#FORMAT_VERSION_LAZY_COMMITS}) only decode this
+     * when it is asked for, so it is null until then. Use {@link #getCommitter()} to read it for any commit.
      */
     public String committer;
 
     /**
      * The date, time and time-zone when the committer made the commit.
+     * Commits that were read in the lazy format ({@link Config#FORMAT_VERSION_LAZY_COMMITS}) only create this
+     * when it is asked for, so it is null until then. Use {@link #getCommitterTimeStamp()} to read it for any commit.
      */
     public ZonedDateTime committerTimeStamp;
 
@@ -64,6 +81,8 @@ public class Commit extends RepoObject
 
     /**
      * The commit message which describes the change.
+     * Commits that were read in the lazy format ({@link Config#FORMAT_VERSION_LAZY_COMMITS}) only decode this
+     * when it is asked for, so it is null until then. Use {@link #getMessage()} to read it for any commit.
      */
     public String message;
 
@@ -78,6 +97,93 @@ public class Commit extends RepoObject
      */
     public String[] parentCommitHashValues;
 
+    /**
+     * The marker that is written in place of the parent count to show that the commit uses the compact encoding.
+     * The original encoding starts with the parent count, which can never be negative.
+     */
+    public static final int COMPACT_FORMAT_MARKER = -1;
+
+    /**
+     * The marker that is written in place of the parent count to show that the commit uses the compact encoding
+     * with the length of the details written before them (see {@link Config#FORMAT_VERSION_LAZY_COMMITS}).
+     */
+    public static final int LAZY_FORMAT_MARKER = -2;
+
+    /**
+     * The flag that shows that the committer is the same as the author in the compact encoding,
+     * so the committer is not written again.
+     */
+    private static final byte FLAG_COMMITTER_IS_AUTHOR = 1;
+
+    /**
+     * A cache of the time-zones that we have read so that we don't parse the same zone id for every commit.
+     */
+    private static final ConcurrentHashMap<String, ZoneId> zoneCache = new ConcurrentHashMap<>();
+
+    /**
+     * The seconds since the epoch when the author made the change.
+     * This is only used when {@link #authorTimeStamp} is null, which is the case for compact commits that have been read
+     * but whose author timestamp has not been asked for yet.
+     */
+    private long authorEpochSecond;
+
+    /**
+     * The nanoseconds within the second when the author made the change.
+     * See {@link #authorEpochSecond}.
+     */
+    private int authorNano;
+
+    /**
+     * The time-zone of the author timestamp.
+     * See {@link #authorEpochSecond}.
+     * If this is null then we don't have an epoch timestamp for the author.
+     */
+    private ZoneId authorZone;
+
+    /**
+     * The seconds since the epoch when the committer made the commit.
+     * This is only used when {@link #committerTimeStamp} is null, which is the case for compact commits that have been read
+     * but whose committer timestamp has not been asked for yet.
+     */
+    private long committerEpochSecond;
+
+    /**
+     * The nanoseconds within the second when the committer made the commit.
+     * See {@link #committerEpochSecond}.
+     */
+    private int committerNano;
+
+    /**
+     * The time-zone of the committer timestamp.
+     * See {@link #committerEpochSecond}.
+     * If this is null then we don't have an epoch timestamp for the committer.
+     */
+    private ZoneId committerZone;
+
+    /**
+     * The encoded details (timestamps, identities and message) of a lazy commit that was read but not fully decoded yet.
+     * Lazy commits only decode their parents and tree when they are read so that walking the history is cheap.
+     * The timestamps are decoded the first time that they are needed and the identities and message are decoded
+     * the first time that they are asked for. Once everything has been decoded this is released.
+     * <p>
+     * Commits are shared between threads through the object store, so decoding is synchronized on the commit.
+     * This is volatile and is only released after the decoded values have been set,
+     * so a thread that sees it released also sees the decoded values.
+     */
+    private volatile byte[] encodedDetails;
+
+    /**
+     * True if the timestamps in the {@link #encodedDetails} have been decoded.
+     * This is volatile and is only set after the decoded values have been set. See {@link #encodedDetails}.
+     */
+    private volatile boolean timestampsDecoded;
+
+    /**
+     * The offset in the {@link #encodedDetails} where the flags and identities start.
+     * This is only known once the timestamps have been decoded.
+     */
+    private int encodedIdentitiesOffset;
+
     /**
      * Creates a new commit.
      * You still need to set the hash and commit details.
@@ -177,52 +283,385 @@ public class Commit extends RepoObject
     }
 
     /**
-     * Writes the content of this repo object into the stream.
+     * Checks whether this commit is serialized with the compact encoding.
+     * The compact encoding writes raw 20 byte object ids, epoch timestamps with their time-zone
+     * and only writes the committer if it is different to the author.
+     *
+     * @return True if this commit uses the compact encoding. False if it uses the original encoding.
+     */
+    public boolean isCompactFormat()
+    {
+        return this.formatVersion >= Config.FORMAT_VERSION_COMPACT_COMMITS;
+    }
+
+    /**
+     * Checks whether this commit is serialized with the length of its details, so that readers can skip over them.
+     *
+     * @return True if this commit writes the length of its details. False if the details follow the tree straight away.
+     */
+    private boolean isLazyFormat()
+    {
+        return this.formatVersion >= Config.FORMAT_VERSION_LAZY_COMMITS;
+    }
+
+    /**
+     * Gets the date, time and time-zone when the author made the change.
+     * For compact commits that were read from a serialized form, the timestamp is only created the first time that it is asked for.
+     *
+     * @return The date, time and time-zone when the author made the change.
+     */
+    public ZonedDateTime getAuthorTimeStamp()
+    {
+        // Make sure the timestamps have been decoded:
+        decodeTimestamps();
+
+        // Check whether we need to create the timestamp from the epoch values:
+        if (this.authorTimeStamp == null && this.authorZone != null)
+        {
+            this.authorTimeStamp = ZonedDateTime.ofInstant(Instant.ofEpochSecond(this.authorEpochSecond, this.authorNano), this.authorZone);
+        }
+        return this.authorTimeStamp;
+    }
+
+    /**
+     * Gets the date, time and time-zone when the committer made the commit.
+     * For compact commits that were read from a serialized form, the timestamp is only created the first time that it is asked for.
+     *
+     * @return The date, time and time-zone when the committer made the commit.
+     */
+    public ZonedDateTime getCommitterTimeStamp()
+    {
+        // Make sure the timestamps have been decoded:
+        decodeTimestamps();
+
+        // Check whether we need to create the timestamp from the epoch values:
+        if (this.committerTimeStamp == null && this.committerZone != null)
+        {
+            this.committerTimeStamp = ZonedDateTime.ofInstant(Instant.ofEpochSecond(this.committerEpochSecond, this.committerNano), this.committerZone);
+        }
+        return this.committerTimeStamp;
+    }
+
+    /**
+     * Sets the date, time and time-zone when the author made the change.
+     *
+     * @param authorTimeStamp The date, time and time-zone when the author made the change.
+     */
+    public void setAuthorTimeStamp(ZonedDateTime authorTimeStamp)
+    {
+        // Decode everything else first so that it is kept:
+        decodeDetails();
+
+        this.authorTimeStamp = authorTimeStamp;
+        this.authorZone = null;
+    }
+
+    /**
+     * Sets the date, time and time-zone when the committer made the commit.
+     *
+     * @param committerTimeStamp The date, time and time-zone when the committer made the commit.
+     */
+    public void setCommitterTimeStamp(ZonedDateTime committerTimeStamp)
+    {
+        // Decode everything else first so that it is kept:
+        decodeDetails();
+
+        this.committerTimeStamp = committerTimeStamp;
+        this.committerZone = null;
+    }
+
+    /**
+     * Gets the seconds since the epoch when the committer made the commit.
+     * This doesn't need to create the committer timestamp, so it is cheap for ordering commits.
+     *
+     * @return The seconds since the epoch when the committer made the commit.
+     */
+    public long getCommitterEpochSecond()
+    {
+        decodeTimestamps();
+        return this.committerTimeStamp != null ? this.committerTimeStamp.toEpochSecond() : this.committerEpochSecond;
+    }
+
+    /**
+     * Gets the nanoseconds within the second when the committer made the commit.
+     * See {@link #getCommitterEpochSecond()}.
+     *
+     * @return The nanoseconds within the second when the committer made the commit.
+     */
+    public int getCommitterNano()
+    {
+        decodeTimestamps();
+        return this.committerTimeStamp != null ? this.committerTimeStamp.getNano() : this.committerNano;
+    }
+
+    /**
+     * Gets the author of this commit.
+     *
+     * @return The author of this commit.
+     */
+    public String getAuthor()
+    {
+        decodeDetails();
+        return this.author;
+    }
+
+    /**
+     * Gets the committer of this commit.
+     *
+     * @return The committer of this commit.
+     */
+    public String getCommitter()
+    {
+        decodeDetails();
+        return this.committer;
+    }
+
+    /**
+     * Gets the commit message which describes the change.
+     *
+     * @return The commit message which describes the change.
+     */
+    public String getMessage()
+    {
+        decodeDetails();
+        return this.message;
+    }
+
+    /**
+     * Sets the author of this commit.
+     *
+     * @param author The author of this commit.
+     */
+    public void setAuthor(String author)
+    {
+        decodeDetails();
+        this.author = author;
+    }
+
+    /**
+     * Sets the committer of this commit.
      *
-     * @param outputStream The output stream to write to.
+     * @param committer The committer of this commit.
+     */
+    public void setCommitter(String committer)
+    {
+        decodeDetails();
+        this.committer = committer;
+    }
+
+    /**
+     * Sets the commit message which describes the change.
+     *
+     * @param message The commit message which describes the change.
+     */
+    public void setMessage(String message)
+    {
+        decodeDetails();
+        this.message = message;
+    }
+
+    /**
+     * Checks whether the details (identities and message) of this commit have been decoded.
+     * Compact commits that were read only decode them the first time that they are asked for.
+     *
+     * @return True if the details have been decoded. False if they are still encoded.
+     */
+    public boolean isDetailsDecoded()
+    {
+        return this.encodedDetails == null;
+    }
+
+    /**
+     * Gets the exact number of bytes that this repo object serializes to.
+     *
+     * @return The number of bytes in the serialized content of this repo object.
      */
     @Override
-    public void writeContentToStream(DataOutputStream outputStream) throws IOException
+    public int getByteSize()
     {
-        // Write out the number of parent commits that we have:
+        // Get the number of parent commits:
+        int parentCommitCount = this.parentCommitHashValues == null ? 0 : this.parentCommitHashValues.length;
+
+        // Check which encoding we are using:
+        if (isCompactFormat())
+        {
+            // Start with the marker, the number of parent commits, the parent commit hashes, the tree hash and the length of the details (if we write it):
+            return 4 + 4 + parentCommitCount * Tree.HASH_BYTE_LENGTH + Tree.HASH_BYTE_LENGTH + (isLazyFormat() ? 4 : 0) + getDetailsByteSize();
+        }
+
+        // Start with the number of parent commits:
+        int byteSize = 4;
+
+        // Add each parent commit hash:
+        for (int i = 0; i < parentCommitCount; i++)
+        {
+            // Get the parent commit hash value:
+            String parentCommitHashValue = this.parentCommitHashValues[i];
+            byteSize += ModifiedUTF8.getWrittenLength(parentCommitHashValue == null ? "" : parentCommitHashValue);
+        }
+
+        // Add the rest of the commit details:
+        byteSize += ModifiedUTF8.getWrittenLength(this.treeHashValue);
+        byteSize += ModifiedUTF8.getWrittenLength(getAuthor());
+        byteSize += ModifiedUTF8.getWrittenLength(getAuthorTimeStamp().toString());
+        byteSize += ModifiedUTF8.getWrittenLength(getCommitter());
+        byteSize += ModifiedUTF8.getWrittenLength(getCommitterTimeStamp().toString());
+        byteSize += ModifiedUTF8.getWrittenLength(getMessage());
+        return byteSize;
+    }
+
+    /**
+     * Writes the content of this repo object into the buffer.
+     *
+     * @param buffer The buffer to write to.
+     */
+    @Override
+    public void writeContentToBuffer(ByteBuffer buffer)
+    {
+        // Get the number of parent commits:
         int parentCommitCount = this.parentCommitHashValues == null ? 0 : this.parentCommitHashValues.length;
-        outputStream.writeInt(parentCommitCount);
 
-        // Check whether we have any parent commit hashes to write out:
-        if (parentCommitCount > 0)
+        // Check which encoding we are using:
+        if (isCompactFormat())
         {
-            // We have parent commit hashes to write out.
-            // Write out each parent commit:
+            // Write the marker for the compact encoding:
+            boolean isLazyFormat = isLazyFormat();
+            buffer.putInt(isLazyFormat ? LAZY_FORMAT_MARKER : COMPACT_FORMAT_MARKER);
+
+            // Write out the parent commits:
+            buffer.putInt(parentCommitCount);
             for (int i = 0; i < parentCommitCount; i++)
             {
-                // Get the parent commit hash value:
-                String parentCommitHashValue = this.parentCommitHashValues[i];
+                writeRawHash(buffer, this.parentCommitHashValues[i]);
+            }
+
+            // Write the tree:
+            writeRawHash(buffer, this.treeHashValue);
 
-                // Write the hash of the parent commit:
-                outputStream.writeUTF(parentCommitHashValue == null ? "" : parentCommitHashValue);
+            // Write the length of the details so that readers can skip over them:
+            if (isLazyFormat) buffer.putInt(getDetailsByteSize());
+
+            // Check whether we still have the encoded details that we read and nothing has been decoded from them:
+            byte[] untouchedDetails = getUntouchedDetails();
+            if (untouchedDetails != null)
+            {
+                // Write the details exactly as we read them:
+                buffer.put(untouchedDetails);
+                return;
+            }
+
+            // Write the timestamps:
+            if (this.authorTimeStamp != null)
+            {
+                writeTimestamp(buffer, this.authorTimeStamp.toEpochSecond(), this.authorTimeStamp.getNano(), this.authorTimeStamp.getZone());
+            }
+            else
+            {
+                writeTimestamp(buffer, this.authorEpochSecond, this.authorNano, this.authorZone);
             }
+            writeTimestamp(buffer, getCommitterEpochSecond(), getCommitterNano(), getCommitterZone());
+
+            // Write the flags:
+            boolean committerIsAuthor = isCommitterTheAuthor();
+            buffer.put(committerIsAuthor ? FLAG_COMMITTER_IS_AUTHOR : 0);
+
+            // Write the identities:
+            writeShortString(buffer, getAuthor());
+            if (!committerIsAuthor) writeShortString(buffer, getCommitter());
+
+            // Write the message:
+            buffer.putInt(UTF8.getEncodedLength(getMessage()));
+            UTF8.write(buffer, getMessage());
+            return;
+        }
+
+        // Write out the number of parent commits that we have:
+        buffer.putInt(parentCommitCount);
+
+        // Write out each parent commit:
+        for (int i = 0; i < parentCommitCount; i++)
+        {
+            // Get the parent commit hash value:
+            String parentCommitHashValue = this.parentCommitHashValues[i];
+
+            // Write the hash of the parent commit:
+            ModifiedUTF8.write(buffer, parentCommitHashValue == null ? "" : parentCommitHashValue);
         }
         // Now we have written the parent commit hashes.
 
-        outputStream.writeUTF(this.treeHashValue);
-        outputStream.writeUTF(this.author);
-        outputStream.writeUTF(this.authorTimeStamp.toString());
-        outputStream.writeUTF(this.committer);
-        outputStream.writeUTF(this.committerTimeStamp.toString());
-        outputStream.writeUTF(this.message);
+        ModifiedUTF8.write(buffer, this.treeHashValue);
+        ModifiedUTF8.write(buffer, getAuthor());
+        ModifiedUTF8.write(buffer, getAuthorTimeStamp().toString());
+        ModifiedUTF8.write(buffer, getCommitter());
+        ModifiedUTF8.write(buffer, getCommitterTimeStamp().toString());
+        ModifiedUTF8.write(buffer, getMessage());
     }
 
     /**
      * Reads the content of this repo object out of the stream.
+     * The original and the compact encodings (with or without the length of the details) can all be read.
+     * The format version of the commit is updated to match the encoding that was read.
+     * For the compact encoding, the timestamps are only created when they are asked for.
      *
      * @param inputStream The input stream to read from.
      */
     @Override
     public void readContentFromStream(DataInputStream inputStream) throws IOException
     {
-        // Read in how many parent commit hash values we have:
+        // Read in how many parent commit hash values we have or the marker for the compact encoding:
         int parentCommitCount = inputStream.readInt();
 
+        // Check which encoding was used:
+        if (parentCommitCount == COMPACT_FORMAT_MARKER || parentCommitCount == LAZY_FORMAT_MARKER)
+        {
+            // This commit uses the compact encoding.
+            boolean isLazyFormat = parentCommitCount == LAZY_FORMAT_MARKER;
+            this.formatVersion = isLazyFormat ? Config.FORMAT_VERSION_LAZY_COMMITS : Config.FORMAT_VERSION_COMPACT_COMMITS;
+
+            // Read the parent commits:
+            byte[] hashBytes = new byte[Tree.HASH_BYTE_LENGTH];
+            parentCommitCount = inputStream.readInt();
+            this.parentCommitHashValues = new String[parentCommitCount];
+            for (int i = 0; i < parentCommitCount; i++)
+            {
+                inputStream.readFully(hashBytes);
+                this.parentCommitHashValues[i] = Hex.bytesToHex(hashBytes);
+            }
+
+            // Read the tree:
+            inputStream.readFully(hashBytes);
+            this.treeHashValue = Hex.bytesToHex(hashBytes);
+
+            // Read the details:
+            this.authorTimeStamp = null;
+            this.committerTimeStamp = null;
+            this.author = null;
+            this.committer = null;
+            this.message = null;
+            this.timestampsDecoded = false;
+            if (isLazyFormat)
+            {
+                // Don't decode the details until they are needed:
+                // NOTE: This lets us walk the history by only looking at the parents.
+                byte[] encodedDetails = new byte[inputStream.readInt()];
+                inputStream.readFully(encodedDetails);
+                this.encodedDetails = encodedDetails;
+            }
+            else
+            {
+                // Decode the details straight away so that the public fields can be read, just like the original encoding:
+                // NOTE: Without the length of the details, we have to step through each part of them to find where they end anyway.
+                this.encodedDetails = readDetailsWithoutLength(inputStream);
+                decodeDetails();
+                this.authorTimeStamp = getAuthorTimeStamp();
+                this.committerTimeStamp = getCommitterTimeStamp();
+            }
+            return;
+        }
+
+        // This commit uses the original encoding.
+        this.formatVersion = Config.FORMAT_VERSION_ORIGINAL;
+
         // Create the array for parent commit hash values:
         this.parentCommitHashValues = new String[parentCommitCount];
 
@@ -245,29 +684,344 @@ public class Commit extends RepoObject
         this.message = inputStream.readUTF();
     }
 
+    /**
+     * Reads the details (timestamps, identities and message) of a compact commit that was written without their length.
+     * Each part of the details is stepped through and copied so that they can be decoded later, just like the details of lazy commits.
+     *
+     * @param inputStream The input stream to read from. It must be positioned at the start of the details.
+     * @return The encoded details.
+     * @throws IOException If the details could not be read.
+     */
+    private static byte[] readDetailsWithoutLength(DataInputStream inputStream) throws IOException
+    {
+        // Create the stream that we copy the details into:
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream details = new DataOutputStream(byteArrayOutputStream);
+
+        // Copy the author and committer timestamps:
+        for (int i = 0; i < 2; i++)
+        {
+            details.writeLong(inputStream.readLong());
+            details.writeInt(inputStream.readInt());
+            details.writeInt(inputStream.readInt());
+            copyBytes(inputStream, details, inputStream.readUnsignedShort(), true);
+        }
+
+        // Copy the flags:
+        byte flags = inputStream.readByte();
+        details.writeByte(flags);
+
+        // Copy the identities:
+        copyBytes(inputStream, details, inputStream.readUnsignedShort(), true);
+        if ((flags & FLAG_COMMITTER_IS_AUTHOR) == 0) copyBytes(inputStream, details, inputStream.readUnsignedShort(), true);
+
+        // Copy the message:
+        copyBytes(inputStream, details, inputStream.readInt(), false);
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Copies a length prefixed run of bytes, including its length.
+     *
+     * @param inputStream   The input stream to copy from. It must be positioned just after the length.
+     * @param outputStream  The output stream to copy to.
+     * @param length        The number of bytes to copy.
+     * @param isShortLength True if the length is written as 2 bytes. False if it is written as 4 bytes.
+     * @throws IOException If the bytes could not be copied.
+     */
+    private static void copyBytes(DataInputStream inputStream, DataOutputStream outputStream, int length, boolean isShortLength) throws IOException
+    {
+        // Write the length:
+        if (isShortLength) outputStream.writeShort(length);
+        else outputStream.writeInt(length);
+
+        // Copy the bytes:
+        byte[] bytes = new byte[length];
+        inputStream.readFully(bytes);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * Gets the encoded details of a lazy commit if we still have them and nothing has been decoded or set since it was read.
+     *
+     * @return The encoded details that can be written exactly as they were read. Null if they need to be encoded again.
+     */
+    private byte[] getUntouchedDetails()
+    {
+        byte[] encodedDetails = this.encodedDetails;
+        boolean isUntouched = encodedDetails != null && !this.timestampsDecoded
+                              && this.author == null && this.committer == null && this.message == null
+                              && this.authorTimeStamp == null && this.committerTimeStamp == null;
+        return isUntouched ? encodedDetails : null;
+    }
+
+    /**
+     * Gets the number of bytes in the details (timestamps, identities and message) of the compact encoding.
+     *
+     * @return The number of bytes in the details of the compact encoding.
+     */
+    private int getDetailsByteSize()
+    {
+        // Check whether we can use the encoded details as they are:
+        byte[] untouchedDetails = getUntouchedDetails();
+        if (untouchedDetails != null) return untouchedDetails.length;
+
+        // Add the timestamps:
+        int byteSize = getTimestampByteSize(getAuthorZone()) + getTimestampByteSize(getCommitterZone());
+
+        // Add the flags:
+        byteSize += 1;
+
+        // Add the identities:
+        byteSize += 2 + UTF8.getEncodedLength(getAuthor());
+        if (!isCommitterTheAuthor()) byteSize += 2 + UTF8.getEncodedLength(getCommitter());
+
+        // Add the message:
+        byteSize += 4 + UTF8.getEncodedLength(getMessage());
+        return byteSize;
+    }
+
+    /**
+     * Decodes the timestamps from the encoded details of a lazy commit if they haven't been decoded yet.
+     * Only the epoch values are decoded. The timestamps themselves are only created when they are asked for.
+     */
+    private void decodeTimestamps()
+    {
+        // Check whether there is anything to decode without locking:
+        if (this.timestampsDecoded || this.encodedDetails == null) return;
+
+        synchronized (this)
+        {
+            // Check again now that we have the lock, because another thread might have decoded them already:
+            byte[] encodedDetails = this.encodedDetails;
+            if (this.timestampsDecoded || encodedDetails == null) return;
+
+            // Decode the timestamps:
+            ByteBuffer buffer = ByteBuffer.wrap(encodedDetails);
+            this.authorEpochSecond = buffer.getLong();
+            this.authorNano = buffer.getInt();
+            this.authorZone = readZone(buffer);
+            this.committerEpochSecond = buffer.getLong();
+            this.committerNano = buffer.getInt();
+            this.committerZone = readZone(buffer);
+
+            // Remember where the identities start:
+            this.encodedIdentitiesOffset = buffer.position();
+
+            // Publish the decoded values:
+            this.timestampsDecoded = true;
+        }
+    }
+
+    /**
+     * Decodes the identities and message from the encoded details of a lazy commit if they haven't been decoded yet.
+     * Once everything has been decoded, the encoded details are released.
+     * Values that have been set explicitly since the commit was read are kept.
+     */
+    private void decodeDetails()
+    {
+        // Check whether there is anything to decode without locking:
+        if (this.encodedDetails == null) return;
+
+        synchronized (this)
+        {
+            // Check again now that we have the lock, because another thread might have decoded them already:
+            byte[] encodedDetails = this.encodedDetails;
+            if (encodedDetails == null) return;
+
+            // We need to know where the identities start:
+            decodeTimestamps();
+
+            // Decode the flags:
+            ByteBuffer buffer = ByteBuffer.wrap(encodedDetails);
+            buffer.position(this.encodedIdentitiesOffset);
+            byte flags = buffer.get();
+
+            // Decode the identities:
+            // NOTE: The identities are shared between commits.
+            String author = IdentityDictionary.SHARED.intern(readShortString(buffer));
+            String committer = (flags & FLAG_COMMITTER_IS_AUTHOR) != 0 ? author : IdentityDictionary.SHARED.intern(readShortString(buffer));
+
+            // Decode the message:
+            int messageLength = buffer.getInt();
+            String message = new String(encodedDetails, buffer.position(), messageLength, StandardCharsets.UTF_8);
+
+            // Keep any values that were set explicitly:
+            if (this.author == null) this.author = author;
+            if (this.committer == null) this.committer = committer;
+            if (this.message == null) this.message = message;
+
+            // Release the encoded details because everything has been decoded:
+            // NOTE: This publishes the decoded values to threads that see the details released.
+            this.encodedDetails = null;
+        }
+    }
+
+    /**
+     * Gets the time-zone of the author timestamp without creating the timestamp.
+     *
+     * @return The time-zone of the author timestamp.
+     */
+    private ZoneId getAuthorZone()
+    {
+        decodeTimestamps();
+        return this.authorTimeStamp != null ? this.authorTimeStamp.getZone() : this.authorZone;
+    }
+
+    /**
+     * Gets the time-zone of the committer timestamp without creating the timestamp.
+     *
+     * @return The time-zone of the committer timestamp.
+     */
+    private ZoneId getCommitterZone()
+    {
+        decodeTimestamps();
+        return this.committerTimeStamp != null ? this.committerTimeStamp.getZone() : this.committerZone;
+    }
+
+    /**
+     * Checks whether the committer is the same as the author, in which case the compact encoding only writes the author.
+     *
+     * @return True if the committer is the same as the author.
+     */
+    private boolean isCommitterTheAuthor()
+    {
+        String author = getAuthor();
+        return author != null && author.equals(getCommitter());
+    }
+
+    /**
+     * Gets the number of bytes that a timestamp takes in the compact encoding.
+     * This is the epoch seconds, the nanoseconds, the offset and the zone id.
+     *
+     * @param zone The time-zone of the timestamp.
+     * @return The number of bytes that the timestamp takes.
+     */
+    private static int getTimestampByteSize(ZoneId zone)
+    {
+        return 8 + 4 + 4 + 2 + (zone instanceof ZoneOffset ? 0 : UTF8.getEncodedLength(zone.getId()));
+    }
+
+    /**
+     * Writes a timestamp in the compact encoding.
+     * We write the offset for fixed offset time-zones and the zone id for region time-zones (like Africa/Johannesburg)
+     * so that the timestamp comes back exactly as it was.
+     *
+     * @param buffer      The buffer to write to.
+     * @param epochSecond The seconds since the epoch.
+     * @param nano        The nanoseconds within the second.
+     * @param zone        The time-zone of the timestamp.
+     */
+    private static void writeTimestamp(ByteBuffer buffer, long epochSecond, int nano, ZoneId zone)
+    {
+        buffer.putLong(epochSecond);
+        buffer.putInt(nano);
+        if (zone instanceof ZoneOffset)
+        {
+            // This is a fixed offset.
+            buffer.putInt(((ZoneOffset) zone).getTotalSeconds());
+            writeShortString(buffer, "");
+        }
+        else
+        {
+            // This is a region with its own rules.
+            buffer.putInt(zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond, nano)).getTotalSeconds());
+            writeShortString(buffer, zone.getId());
+        }
+    }
+
+    /**
+     * Reads the time-zone of a timestamp in the compact encoding.
+     *
+     * @param buffer The buffer to read from.
+     * @return The time-zone of the timestamp.
+     */
+    private static ZoneId readZone(ByteBuffer buffer)
+    {
+        // Read the offset and the zone id:
+        int offsetSeconds = buffer.getInt();
+        String zoneId = readShortString(buffer);
+
+        // Check whether this is a fixed offset:
+        if (zoneId.isEmpty()) return ZoneOffset.ofTotalSeconds(offsetSeconds);
+
+        // Get the cached zone so that we don't parse the same zone id for every commit:
+        return zoneCache.computeIfAbsent(zoneId, ZoneId::of);
+    }
+
+    /**
+     * Writes a string as a 2 byte length followed by its UTF-8 bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param string The string to write.
+     */
+    private static void writeShortString(ByteBuffer buffer, String string)
+    {
+        // Get the length of the string:
+        int length = UTF8.getEncodedLength(string);
+
+        // Make sure the string is not too long:
+        if (length > ModifiedUTF8.MAX_ENCODED_LENGTH) throw new NanoRuntimeException("The string is too long to encode. It needs " + length + " bytes but the limit is " + ModifiedUTF8.MAX_ENCODED_LENGTH + " bytes.");
+
+        buffer.putShort((short) length);
+        UTF8.write(buffer, string);
+    }
+
+    /**
+     * Reads a string that was written as a 2 byte length followed by its UTF-8 bytes.
+     *
+     * @param buffer The buffer to read from. It must be backed by an array.
+     * @return The string that was read.
+     */
+    private static String readShortString(ByteBuffer buffer)
+    {
+        // Read the length:
+        int length = buffer.getShort() & 0xFFFF;
+
+        // Decode the string straight out of the array:
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * Writes a SHA-1 hash value as its raw 20 bytes.
+     *
+     * @param buffer    The buffer to write to.
+     * @param hashValue The SHA-1 hash value to write.
+     */
+    private static void writeRawHash(ByteBuffer buffer, String hashValue)
+    {
+        // Make sure the hash is a full SHA-1 hash:
+        if (hashValue == null || hashValue.length() != Tree.HASH_BYTE_LENGTH * 2) throw new NanoRuntimeException("The commit references the hash '" + hashValue + "' which is not a " + Tree.HASH_BYTE_LENGTH * 2 + " digit SHA-1 hash.");
+
+        Hex.writeHexAsBytes(buffer, hashValue);
+    }
+
     @Override
     public String toString()
     {
         if (this.hash == null || this.hash.value == null || this.hash.value.isEmpty())
         {
-            if (this.message != null)
+            if (getMessage() != null)
             {
-                return String.format("%s -> COMMIT by %s : %s", this.message, this.committer, this.committerTimeStamp);
+                return String.format("%s -> COMMIT by %s : %s", getMessage(), getCommitter(), getCommitterTimeStamp());
             }
             else
             {
-                return String.format("COMMIT by %s : %s", this.committer, this.committerTimeStamp);
+                return String.format("COMMIT by %s : %s", getCommitter(), getCommitterTimeStamp());
             }
         }
         else
         {
-            if (this.message != null)
+            if (getMessage() != null)
             {
-                return String.format("%s -> COMMIT by %s : %s -> Hash: %s, Tree Hash: %s", this.message, this.committer, this.committerTimeStamp, this.hash.value, this.treeHashValue);
+                return String.format("%s -> COMMIT by %s : %s -> Hash: %s, Tree Hash: %s", getMessage(), getCommitter(), getCommitterTimeStamp(), this.hash.value, this.treeHashValue);
             }
             else
             {
-                return String.format("COMMIT by %s : %s -> Hash: %s, Tree Hash: %s", this.committer, this.committerTimeStamp, this.hash.value, this.treeHashValue);
+                return String.format("COMMIT by %s : %s -> Hash: %s, Tree Hash: %s", getCommitter(), getCommitterTimeStamp(), this.hash.value, this.treeHashValue);
             }
         }
     }
@@ -8,11 +8,15 @@ import java.util.Comparator;
  */
 public class CommitTimestampComparator implements Comparator<Commit> {
 
+    /**
+     * Compares the commits so that the latest commit comes first.
+     * The epoch values of the committer timestamps are compared so that we don't need to create the timestamps.
+     */
     @Override
     public int compare(Commit commit1, Commit commit2) {
-        if (commit1.committerTimeStamp.isAfter(commit2.committerTimeStamp)) return -1;
-        else if (commit1.committerTimeStamp.equals(commit2.committerTimeStamp)) return 0;
-        else return 1;
+        int comparison = Long.compare(commit2.getCommitterEpochSecond(), commit1.getCommitterEpochSecond());
+        if (comparison != 0) return comparison;
+        return Integer.compare(commit2.getCommitterNano(), commit1.getCommitterNano());
     }
 
 }
@@ -6,10 +6,42 @@ package io.git.nanovc;
  */
 public class Config
 {
+    /**
+     * The original repository format.
+     * Trees store their hashes as hexadecimal strings.
+     */
+    public static final int FORMAT_VERSION_ORIGINAL = 0;
+
+    /**
+     * The repository format where trees store raw 20 byte object ids and length prefixed UTF-8 names.
+     */
+    public static final int FORMAT_VERSION_COMPACT_TREES = 1;
+
+    /**
+     * The repository format where, in addition to compact trees, commits store raw 20 byte object ids,
+     * epoch timestamps with their time-zone and only store the committer if it is different to the author.
+     */
+    public static final int FORMAT_VERSION_COMPACT_COMMITS = 2;
+
+    /**
+     * The repository format where, in addition to compact commits, commits store the length of their details
+     * (timestamps, identities and message) so that readers can skip over them until they are needed.
+     */
+    public static final int FORMAT_VERSION_LAZY_COMMITS = 3;
+
+    /**
+     * The latest repository format that we know how to write.
+     */
+    public static final int FORMAT_VERSION_LATEST = FORMAT_VERSION_LAZY_COMMITS;
+
     /**
      * The version of this repository.
+     * This decides the format that new objects are written in.
+     * Objects in every known format can always be read, no matter what this is set to.
+     * Changing this on an existing repo only affects new objects.
+     * Use {@link RepoEngine#upgrade_repository_format(Repo, int)} to rewrite the existing objects.
      */
-    public int repositoryFormatVersion = 0;
+    public int repositoryFormatVersion = FORMAT_VERSION_ORIGINAL;
 
     //public boolean filemode = false;
     //public boolean bare = false;
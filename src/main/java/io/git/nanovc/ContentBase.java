@@ -13,6 +13,115 @@ import java.util.List;
  */
 public abstract class ContentBase implements Content
 {
+    /**
+     * The cached hash value of the blob for this content.
+     * Null if it hasn't been worked out yet.
+     * See {@link RepoEngine#hash_content(ContentBase)}.
+     */
+    private volatile String cachedBlobHashValue;
+
+    /**
+     * The version of the content when the {@link #cachedBlobHashValue} was worked out.
+     */
+    private volatile long cachedBlobHashVersion;
+
+    /**
+     * The object store to load the content from when it is first accessed.
+     * Null if the content has been loaded already or if it was never lazy.
+     * See {@link RepoEngine#checkout(Repo, String, int, boolean)}.
+     */
+    private volatile RepoObjectStore lazyObjects;
+
+    /**
+     * The hash value of the blob to load the content from when it is first accessed.
+     */
+    private volatile String lazyBlobHashValue;
+
+    /**
+     * Makes the content lazy so that it is only loaded from the blob in the object store when it is first accessed.
+     * The hash value of the blob is cached for the current version of the content, so it can be compared without loading it.
+     *
+     * @param objects       The object store to load the content from.
+     * @param blobHashValue The hash value of the blob with the content.
+     */
+    void setLazyContent(RepoObjectStore objects, String blobHashValue)
+    {
+        this.lazyBlobHashValue = blobHashValue;
+        this.lazyObjects = objects;
+        cacheBlobHashValue(blobHashValue, getContentVersion());
+    }
+
+    /**
+     * Checks whether the content has been loaded.
+     * Content that was checked out lazily is only loaded from the object store when it is first accessed.
+     *
+     * @return True if the content has been loaded. False if it will be loaded from the object store when it is first accessed.
+     */
+    public boolean isContentLoaded()
+    {
+        return this.lazyObjects == null;
+    }
+
+    /**
+     * Loads the lazy content from the blob in the object store.
+     * Call {@link #markContentLoaded()} once the content has been stored.
+     *
+     * @return The content of the blob.
+     */
+    byte[] loadLazyContent()
+    {
+        // Get the blob from the object store:
+        String blobHashValue = this.lazyBlobHashValue;
+        RepoObject repoObject = this.lazyObjects.get(blobHashValue);
+
+        // Make sure it's a blob:
+        if (!(repoObject instanceof Blob)) throw new NanoRuntimeException("The blob for the content at " + getAbsolutePath() + " is missing from the object store. " + blobHashValue);
+
+        return ((Blob) repoObject).content;
+    }
+
+    /**
+     * Marks the content as loaded so that it is no longer loaded from the object store.
+     * This is also called when the content is replaced before it was loaded.
+     */
+    void markContentLoaded()
+    {
+        this.lazyObjects = null;
+        this.lazyBlobHashValue = null;
+    }
+
+    /**
+     * Gets the version of the content.
+     * The version changes whenever the content changes, so anything that was cached for an older version is stale.
+     * Content that can't change always has the same version.
+     * @return The version of the content.
+     */
+    protected long getContentVersion()
+    {
+        return 0;
+    }
+
+    /**
+     * Gets the cached hash value of the blob for this content if it is still valid.
+     * @return The cached hash value of the blob for this content. Null if it hasn't been worked out for the current version of the content.
+     */
+    String getCachedBlobHashValue()
+    {
+        // Get the cached value before checking the version so that we don't return a value for a newer version:
+        String blobHashValue = this.cachedBlobHashValue;
+        return blobHashValue != null && this.cachedBlobHashVersion == getContentVersion() ? blobHashValue : null;
+    }
+
+    /**
+     * Caches the hash value of the blob for this content.
+     * @param blobHashValue The hash value of the blob for the content.
+     * @param version       The version of the content that the hash value was worked out for. See {@link #getContentVersion()}.
+     */
+    void cacheBlobHashValue(String blobHashValue, long version)
+    {
+        this.cachedBlobHashVersion = version;
+        this.cachedBlobHashValue = blobHashValue;
+    }
 
     /**
      * The absolute path of this content in the repo.
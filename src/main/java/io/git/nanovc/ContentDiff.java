@@ -0,0 +1,267 @@
+package io.git.nanovc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the differences inside content and writes them as a unified patch.
+ * Content is diffed line by line (or byte by byte) straight from its bytes, without decoding it into strings,
+ * and the patch is streamed to an output stream, so large content never needs more than a few int arrays on top of its bytes.
+ * <p>
+ * https://git-scm.com/docs/git-diff#_generating_patch_text_with_p
+ */
+public class ContentDiff
+{
+    /**
+     * The number of bytes at the start of content that are checked for a NUL byte to decide whether it is binary.
+     * This is the same as git.
+     */
+    public static final int BINARY_CHECK_LENGTH = 8000;
+
+    /**
+     * The path that stands for missing content in the header of a patch.
+     */
+    public static final String DEV_NULL = "/dev/null";
+
+    /**
+     * The algorithm to find the differences with.
+     */
+    public DiffAlgorithm algorithm = DiffAlgorithm.HISTOGRAM;
+
+    /**
+     * The number of unchanged lines to show around each change in a patch.
+     */
+    public int contextLines = 3;
+
+    /**
+     * Finds the differences between the lines of two versions of content.
+     *
+     * @param oldContent The bytes of the old content. Null for no content.
+     * @param newContent The bytes of the new content. Null for no content.
+     * @return The edits, in line numbers, that turn the old content into the new content.
+     */
+    public List<DiffEdit> diffLines(byte[] oldContent, byte[] newContent)
+    {
+        return this.algorithm.diff(new LineSequence(oldContent), new LineSequence(newContent));
+    }
+
+    /**
+     * Finds the differences between the lines of two versions of content.
+     *
+     * @param oldContent The old content.
+     * @param newContent The new content.
+     * @return The edits, in line numbers, that turn the old content into the new content.
+     */
+    public List<DiffEdit> diffLines(ContentBase oldContent, ContentBase newContent)
+    {
+        return this.algorithm.diff(new LineSequence(oldContent), new LineSequence(newContent));
+    }
+
+    /**
+     * Finds the differences between the bytes of two versions of content.
+     * This is useful for binary content, which doesn't have lines.
+     *
+     * @param oldContent The bytes of the old content. Null for no content.
+     * @param newContent The bytes of the new content. Null for no content.
+     * @return The edits, in byte offsets, that turn the old content into the new content.
+     */
+    public List<DiffEdit> diffBytes(byte[] oldContent, byte[] newContent)
+    {
+        return this.algorithm.diff(new ByteSequence(oldContent), new ByteSequence(newContent));
+    }
+
+    /**
+     * Checks whether the given content is binary.
+     * Like git, content is binary if there is a NUL byte near the start.
+     *
+     * @param content The bytes of the content. Null for no content.
+     * @return True if the content is binary.
+     */
+    public static boolean isBinary(byte[] content)
+    {
+        if (content == null) return false;
+        int length = Math.min(content.length, BINARY_CHECK_LENGTH);
+        for (int i = 0; i < length; i++)
+        {
+            if (content[i] == 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a unified patch for a difference between two trees, as found by a {@link TreeDiff}.
+     * The patch starts with a "diff --git" line like the patches from git.
+     *
+     * @param diffEntry    The difference to write the patch for.
+     * @param oldContent   The bytes of the old blob. Null if the content was added.
+     * @param newContent   The bytes of the new blob. Null if the content was deleted.
+     * @param outputStream The stream to write the patch to.
+     * @throws IOException If the patch could not be written.
+     */
+    public void writePatch(DiffEntry diffEntry, byte[] oldContent, byte[] newContent, OutputStream outputStream) throws IOException
+    {
+        // Write the line that says which content this patch is for:
+        // NOTE: Git uses the path of the content on both sides when it was added or deleted.
+        String oldPath = diffEntry.oldPath != null ? diffEntry.oldPath : diffEntry.newPath;
+        String newPath = diffEntry.newPath != null ? diffEntry.newPath : diffEntry.oldPath;
+        writeString("diff --git a" + oldPath + " b" + newPath + "\n", outputStream);
+
+        // Say where renamed or copied content came from:
+        if (diffEntry.changeType == ContentState.RENAMED || diffEntry.changeType == ContentState.COPIED)
+        {
+            String verb = diffEntry.changeType == ContentState.RENAMED ? "rename" : "copy";
+            writeString("similarity index " + diffEntry.score + "%\n", outputStream);
+            writeString(verb + " from " + oldPath.substring(1) + "\n", outputStream);
+            writeString(verb + " to " + newPath.substring(1) + "\n", outputStream);
+        }
+
+        // Write the differences:
+        writePatch(diffEntry.oldPath, oldContent, diffEntry.newPath, newContent, outputStream);
+    }
+
+    /**
+     * Writes a unified patch for the differences between two versions of content.
+     * Nothing is written if the content is the same.
+     *
+     * @param oldPath      The absolute path of the old content. Null if the content was added.
+     * @param oldContent   The bytes of the old content. Null if the content was added.
+     * @param newPath      The absolute path of the new content. Null if the content was deleted.
+     * @param newContent   The bytes of the new content. Null if the content was deleted.
+     * @param outputStream The stream to write the patch to.
+     * @throws IOException If the patch could not be written.
+     */
+    public void writePatch(String oldPath, byte[] oldContent, String newPath, byte[] newContent, OutputStream outputStream) throws IOException
+    {
+        // Get the names of the content for the header:
+        String oldName = oldPath == null ? DEV_NULL : "a" + RepoPath.at(oldPath).toAbsolutePath();
+        String newName = newPath == null ? DEV_NULL : "b" + RepoPath.at(newPath).toAbsolutePath();
+
+        // Check whether the content is binary:
+        if (isBinary(oldContent) || isBinary(newContent))
+        {
+            // Only say that binary content differs, like git does:
+            if (!Arrays.equals(oldContent, newContent))
+            {
+                writeString(String.format("Binary files %s and %s differ\n", oldName, newName), outputStream);
+            }
+            return;
+        }
+
+        // Find the differences between the lines:
+        LineSequence a = new LineSequence(oldContent);
+        LineSequence b = new LineSequence(newContent);
+        List<DiffEdit> edits = this.algorithm.diff(a, b);
+        if (edits.isEmpty()) return;
+
+        // Write the header:
+        writeString("--- " + oldName + "\n", outputStream);
+        writeString("+++ " + newName + "\n", outputStream);
+
+        // Write the hunks:
+        writeHunks(a, b, edits, outputStream);
+    }
+
+    /**
+     * Writes the hunks of a unified patch for the given edits.
+     * Edits that are close enough to share their context lines are written in the same hunk.
+     *
+     * @param a            The lines of the old content.
+     * @param b            The lines of the new content.
+     * @param edits        The edits that turn the old content into the new content.
+     * @param outputStream The stream to write the hunks to.
+     * @throws IOException If the hunks could not be written.
+     */
+    public void writeHunks(LineSequence a, LineSequence b, List<DiffEdit> edits, OutputStream outputStream) throws IOException
+    {
+        int editIndex = 0;
+        while (editIndex < edits.size())
+        {
+            // Find the last edit that belongs in this hunk:
+            int lastEditIndex = editIndex;
+            while (lastEditIndex + 1 < edits.size() && edits.get(lastEditIndex + 1).beginA - edits.get(lastEditIndex).endA <= 2 * this.contextLines)
+            {
+                lastEditIndex++;
+            }
+            DiffEdit firstEdit = edits.get(editIndex);
+            DiffEdit lastEdit = edits.get(lastEditIndex);
+
+            // Work out the lines that the hunk covers, including the context:
+            int hunkBeginA = Math.max(0, firstEdit.beginA - this.contextLines);
+            int hunkBeginB = Math.max(0, firstEdit.beginB - this.contextLines);
+            int hunkEndA = Math.min(a.size(), lastEdit.endA + this.contextLines);
+            int hunkEndB = Math.min(b.size(), lastEdit.endB + this.contextLines);
+
+            // Write the hunk header:
+            writeString("@@ -" + formatRange(hunkBeginA, hunkEndA) + " +" + formatRange(hunkBeginB, hunkEndB) + " @@\n", outputStream);
+
+            // Write the lines of the hunk:
+            int indexA = hunkBeginA;
+            for (int i = editIndex; i <= lastEditIndex; i++)
+            {
+                DiffEdit edit = edits.get(i);
+
+                // Write the context before the edit:
+                for (; indexA < edit.beginA; indexA++) writeLine(' ', a, indexA, outputStream);
+
+                // Write the lines that were removed and then the lines that were added:
+                for (; indexA < edit.endA; indexA++) writeLine('-', a, indexA, outputStream);
+                for (int indexB = edit.beginB; indexB < edit.endB; indexB++) writeLine('+', b, indexB, outputStream);
+            }
+
+            // Write the context after the last edit:
+            for (; indexA < hunkEndA; indexA++) writeLine(' ', a, indexA, outputStream);
+
+            // Move on to the next hunk:
+            editIndex = lastEditIndex + 1;
+        }
+    }
+
+    /**
+     * Formats a range of lines for a hunk header.
+     * Lines are numbered from 1. An empty range gives the line before it, and a range of one line leaves out the count, like git.
+     *
+     * @param begin The index of the first line in the range.
+     * @param end   The index after the last line in the range.
+     * @return The range for the hunk header.
+     */
+    private static String formatRange(int begin, int end)
+    {
+        int count = end - begin;
+        if (count == 1) return Integer.toString(begin + 1);
+        return (count == 0 ? begin : begin + 1) + "," + count;
+    }
+
+    /**
+     * Writes a line of a hunk with its prefix.
+     *
+     * @param prefix       The prefix that says whether the line is context, removed or added.
+     * @param lines        The lines to write from.
+     * @param index        The index of the line to write.
+     * @param outputStream The stream to write the line to.
+     * @throws IOException If the line could not be written.
+     */
+    private static void writeLine(char prefix, LineSequence lines, int index, OutputStream outputStream) throws IOException
+    {
+        outputStream.write(prefix);
+        lines.writeLine(index, outputStream);
+        if (!lines.hasNewLine(index))
+        {
+            writeString("\n\\ No newline at end of file\n", outputStream);
+        }
+    }
+
+    /**
+     * Writes a string as UTF-8.
+     *
+     * @param string       The string to write.
+     * @param outputStream The stream to write the string to.
+     * @throws IOException If the string could not be written.
+     */
+    private static void writeString(String string, OutputStream outputStream) throws IOException
+    {
+        outputStream.write(string.getBytes(StandardCharsets.UTF_8));
+    }
+}
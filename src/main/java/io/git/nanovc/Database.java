@@ -52,6 +52,12 @@ public class Database
      */
     public RepoObjectStore objects = new RepoObjectStore();
 
+    /**
+     * The flat manifests of the commits that are read most often.
+     * This is off until its memory budget is set.
+     */
+    public ManifestCache manifests = new ManifestCache();
+
     /**
      * The refs directory stores pointers into commit objects in that data (branches).
      */
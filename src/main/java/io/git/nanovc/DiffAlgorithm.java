@@ -0,0 +1,99 @@
+package io.git.nanovc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The algorithms that can find the differences between two {@link DiffSequence}s.
+ * Both algorithms give the shortest edits that they can find, in order, with adjacent edits joined together.
+ *
+ * https://git-scm.com/docs/git-diff#Documentation/git-diff.txt---diff-algorithmpatienceminimalhistogrammyers
+ */
+public enum DiffAlgorithm
+{
+    /**
+     * The algorithm from "An O(ND) Difference Algorithm and Its Variations" by Eugene Myers.
+     * This uses the linear space refinement, which finds the middle snake of each region and then splits the region there,
+     * so the memory needed is proportional to the size of the sequences, not to their product.
+     */
+    MYERS
+    {
+        @Override
+        void diffRegion(DiffSequence a, DiffSequence b, int beginA, int endA, int beginB, int endB, List<DiffEdit> edits)
+        {
+            MyersDiff.diff(a, b, beginA, endA, beginB, endB, edits);
+        }
+    },
+
+    /**
+     * The histogram algorithm from git, which extends the patience algorithm to support elements that occur more than once.
+     * It anchors on the longest common region that has the rarest elements, which lines up unique lines such as function declarations
+     * and usually gives diffs that are easier to read than Myers. It is also faster on typical source files.
+     * Regions where every element is too common fall back to Myers.
+     */
+    HISTOGRAM
+    {
+        @Override
+        void diffRegion(DiffSequence a, DiffSequence b, int beginA, int endA, int beginB, int endB, List<DiffEdit> edits)
+        {
+            HistogramDiff.diff(a, b, beginA, endA, beginB, endB, edits);
+        }
+    };
+
+    /**
+     * Finds the differences between two sequences.
+     *
+     * @param a The old sequence.
+     * @param b The new sequence. This must be the same type of sequence as the old sequence.
+     * @return The edits that turn the old sequence into the new sequence, in order.
+     */
+    public List<DiffEdit> diff(DiffSequence a, DiffSequence b)
+    {
+        List<DiffEdit> edits = new ArrayList<>();
+        diffRegion(a, b, 0, a.size(), 0, b.size(), edits);
+        return edits;
+    }
+
+    /**
+     * Finds the differences between a region of two sequences.
+     *
+     * @param a      The old sequence.
+     * @param b      The new sequence.
+     * @param beginA The index of the first element of the region in the old sequence.
+     * @param endA   The index after the last element of the region in the old sequence.
+     * @param beginB The index of the first element of the region in the new sequence.
+     * @param endB   The index after the last element of the region in the new sequence.
+     * @param edits  The edits that were found so far. The edits for the region are added to the end.
+     */
+    abstract void diffRegion(DiffSequence a, DiffSequence b, int beginA, int endA, int beginB, int endB, List<DiffEdit> edits);
+
+    /**
+     * Adds an edit to the end of the list, joining it to the last edit if they are next to each other.
+     * Empty edits are ignored.
+     *
+     * @param edits  The edits to add to.
+     * @param beginA The index of the first element of the region in the old sequence.
+     * @param endA   The index after the last element of the region in the old sequence.
+     * @param beginB The index of the first element of the region in the new sequence.
+     * @param endB   The index after the last element of the region in the new sequence.
+     */
+    static void addEdit(List<DiffEdit> edits, int beginA, int endA, int beginB, int endB)
+    {
+        // Ignore empty edits:
+        if (beginA == endA && beginB == endB) return;
+
+        // Check whether this edit follows straight on from the last one:
+        if (!edits.isEmpty())
+        {
+            DiffEdit lastEdit = edits.get(edits.size() - 1);
+            if (lastEdit.endA == beginA && lastEdit.endB == beginB)
+            {
+                // Join the edits:
+                lastEdit.endA = endA;
+                lastEdit.endB = endB;
+                return;
+            }
+        }
+        edits.add(new DiffEdit(beginA, endA, beginB, endB));
+    }
+}
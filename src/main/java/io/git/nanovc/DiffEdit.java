@@ -0,0 +1,84 @@
+package io.git.nanovc;
+
+/**
+ * A region that is different between two sequences, as found by a {@link DiffAlgorithm}.
+ * The elements from {@link #beginA} up to (but not including) {@link #endA} in the old sequence
+ * were replaced by the elements from {@link #beginB} up to (but not including) {@link #endB} in the new sequence.
+ * An empty old region is an insertion and an empty new region is a deletion.
+ */
+public class DiffEdit
+{
+    /**
+     * The index of the first element of the region in the old sequence.
+     */
+    public int beginA;
+
+    /**
+     * The index after the last element of the region in the old sequence.
+     */
+    public int endA;
+
+    /**
+     * The index of the first element of the region in the new sequence.
+     */
+    public int beginB;
+
+    /**
+     * The index after the last element of the region in the new sequence.
+     */
+    public int endB;
+
+    /**
+     * Creates a new edit.
+     *
+     * @param beginA The index of the first element of the region in the old sequence.
+     * @param endA   The index after the last element of the region in the old sequence.
+     * @param beginB The index of the first element of the region in the new sequence.
+     * @param endB   The index after the last element of the region in the new sequence.
+     */
+    public DiffEdit(int beginA, int endA, int beginB, int endB)
+    {
+        this.beginA = beginA;
+        this.endA = endA;
+        this.beginB = beginB;
+        this.endB = endB;
+    }
+
+    /**
+     * Gets the type of change that this edit makes.
+     *
+     * @return {@link ContentState#ADDED} for an insertion, {@link ContentState#DELETED} for a deletion or {@link ContentState#MODIFIED} for a replacement.
+     */
+    public ContentState getType()
+    {
+        if (this.beginA == this.endA) return ContentState.ADDED;
+        if (this.beginB == this.endB) return ContentState.DELETED;
+        return ContentState.MODIFIED;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof DiffEdit)) return false;
+        DiffEdit other = (DiffEdit) o;
+        return this.beginA == other.beginA && this.endA == other.endA && this.beginB == other.beginB && this.endB == other.endB;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return ((this.beginA * 31 + this.endA) * 31 + this.beginB) * 31 + this.endB;
+    }
+
+    /**
+     * The string value of this edit.
+     *
+     * @return The string for debugging this edit.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%s(%d-%d,%d-%d)", getType(), this.beginA, this.endA, this.beginB, this.endB);
+    }
+}
@@ -0,0 +1,95 @@
+package io.git.nanovc;
+
+/**
+ * A difference in the content of two trees, as found by a {@link TreeDiff}.
+ * Each entry is for one blob: it was added, deleted or modified between the old tree and the new tree.
+ *
+ * https://git-scm.com/docs/git-diff-tree#_raw_output_format
+ */
+public class DiffEntry
+{
+    /**
+     * How the content changed.
+     * This is {@link ContentState#ADDED}, {@link ContentState#DELETED} or {@link ContentState#MODIFIED},
+     * or {@link ContentState#RENAMED} or {@link ContentState#COPIED} once a {@link RenameDetector} has paired up the content.
+     */
+    public ContentState changeType;
+
+    /**
+     * The absolute path of the content in the old tree.
+     * Null if the content was added.
+     */
+    public String oldPath;
+
+    /**
+     * The absolute path of the content in the new tree.
+     * Null if the content was deleted.
+     */
+    public String newPath;
+
+    /**
+     * The hash of the blob in the old tree.
+     * Null if the content was added.
+     */
+    public String oldHashValue;
+
+    /**
+     * The hash of the blob in the new tree.
+     * Null if the content was deleted.
+     */
+    public String newHashValue;
+
+    /**
+     * How similar the old and new content are, as a percentage, for content that was renamed or copied.
+     * This is 100 if the content didn't change and zero for the other types of change.
+     */
+    public int score;
+
+    /**
+     * Creates a new diff entry.
+     * You must set the change type, paths and hashes yourself.
+     */
+    public DiffEntry()
+    {
+    }
+
+    /**
+     * Creates a new diff entry.
+     *
+     * @param changeType   How the content changed.
+     * @param oldPath      The absolute path of the content in the old tree. Null if the content was added.
+     * @param oldHashValue The hash of the blob in the old tree. Null if the content was added.
+     * @param newPath      The absolute path of the content in the new tree. Null if the content was deleted.
+     * @param newHashValue The hash of the blob in the new tree. Null if the content was deleted.
+     */
+    public DiffEntry(ContentState changeType, String oldPath, String oldHashValue, String newPath, String newHashValue)
+    {
+        this.changeType = changeType;
+        this.oldPath = oldPath;
+        this.oldHashValue = oldHashValue;
+        this.newPath = newPath;
+        this.newHashValue = newHashValue;
+    }
+
+    /**
+     * Gets the path of the content that this entry is for.
+     * This is the new path unless the content was deleted.
+     *
+     * @return The path of the content that this entry is for.
+     */
+    public String getPath()
+    {
+        return this.newPath != null ? this.newPath : this.oldPath;
+    }
+
+    /**
+     * The string value of this diff entry.
+     *
+     * @return The string for debugging this diff entry.
+     */
+    @Override
+    public String toString()
+    {
+        return this.changeType + " " + (this.oldPath != null && this.newPath != null && !this.oldPath.equals(this.newPath) ? this.oldPath + " -> " + this.newPath : getPath());
+    }
+}
@@ -0,0 +1,37 @@
+package io.git.nanovc;
+
+/**
+ * A sequence of elements that a {@link DiffAlgorithm} can compare.
+ * Elements are compared through the sequence so that they never need to be decoded into objects.
+ *
+ * @see LineSequence
+ * @see ByteSequence
+ */
+public interface DiffSequence
+{
+    /**
+     * Gets the number of elements in the sequence.
+     *
+     * @return The number of elements in the sequence.
+     */
+    int size();
+
+    /**
+     * Gets the hash code of the element at the given index.
+     * Elements that are equal must have the same hash code.
+     *
+     * @param index The index of the element.
+     * @return The hash code of the element.
+     */
+    int hash(int index);
+
+    /**
+     * Checks whether the element at the given index is equal to an element in another sequence of the same type.
+     *
+     * @param index      The index of the element in this sequence.
+     * @param other      The other sequence. This must be the same type of sequence.
+     * @param otherIndex The index of the element in the other sequence.
+     * @return True if the elements are equal.
+     */
+    boolean equals(int index, DiffSequence other, int otherIndex);
+}
@@ -1,5 +1,7 @@
 package io.git.nanovc;
 
+import java.nio.ByteBuffer;
+
 /**
  * Helper class for hexadecimal conversions.
  */
@@ -19,12 +21,67 @@ public class Hex
      * @return A hexadecimal representation of the given bytes.
      */
     public static String bytesToHex(byte[] bytes) {
-        char[] hexChars = new char[bytes.length * 2];
-        for ( int j = 0; j < bytes.length; j++ ) {
-            int v = bytes[j] & 0xFF;
+        return bytesToHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Gets a hexadecimal representation of the given range of bytes.
+     * @param bytes The array with the bytes to convert.
+     * @param offset The offset of the first byte to convert.
+     * @param length The number of bytes to convert.
+     * @return A hexadecimal representation of the given range of bytes.
+     */
+    public static String bytesToHex(byte[] bytes, int offset, int length) {
+        char[] hexChars = new char[length * 2];
+        for ( int j = 0; j < length; j++ ) {
+            int v = bytes[offset + j] & 0xFF;
             hexChars[j * 2] = hexArray[v >>> 4];
             hexChars[j * 2 + 1] = hexArray[v & 0x0F];
         }
         return new String(hexChars);
     }
+
+    /**
+     * Gets the bytes for the given hexadecimal representation.
+     * This is the inverse of {@link #bytesToHex(byte[])}.
+     *
+     * @param hex The hexadecimal representation of the bytes. It must have an even number of hexadecimal digits.
+     * @return The bytes for the hexadecimal representation.
+     */
+    public static byte[] hexToBytes(String hex)
+    {
+        // Make sure we have an even number of digits:
+        if (hex.length() % 2 != 0) throw new NanoRuntimeException("The hexadecimal value '" + hex + "' must have an even number of digits.");
+
+        // Allocate the bytes:
+        byte[] bytes = new byte[hex.length() / 2];
+
+        // Write the bytes:
+        writeHexAsBytes(ByteBuffer.wrap(bytes), hex);
+
+        return bytes;
+    }
+
+    /**
+     * Writes the bytes for the given hexadecimal representation into the buffer.
+     * This lets us convert hash values to their raw bytes without allocating an intermediate array.
+     *
+     * @param buffer The buffer to write to. It must have at least half the number of hex digits remaining.
+     * @param hex    The hexadecimal representation of the bytes. It must have an even number of hexadecimal digits.
+     */
+    public static void writeHexAsBytes(ByteBuffer buffer, String hex)
+    {
+        for (int i = 0; i + 1 < hex.length(); i += 2)
+        {
+            // Get the value of each digit:
+            int high = Character.digit(hex.charAt(i), 16);
+            int low = Character.digit(hex.charAt(i + 1), 16);
+
+            // Make sure the digits are valid:
+            if (high < 0 || low < 0) throw new NanoRuntimeException("The value '" + hex + "' is not a valid hexadecimal value.");
+
+            // Write the byte:
+            buffer.put((byte) ((high << 4) | low));
+        }
+    }
 }
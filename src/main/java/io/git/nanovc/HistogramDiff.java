@@ -0,0 +1,292 @@
+package io.git.nanovc;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The histogram difference algorithm.
+ * Each region is split around the longest common run of elements that has the rarest elements in the old sequence,
+ * and then each side is split again until there is nothing left in common.
+ * Regions whose elements are all too common fall back to {@link MyersDiff}.
+ * <p>
+ * The occurrences of the elements are kept in flat int arrays instead of maps,
+ * and the regions that are left to split are kept on a stack instead of recursing,
+ * so large inputs use little memory and can't overflow the call stack.
+ *
+ * @see DiffAlgorithm#HISTOGRAM
+ */
+final class HistogramDiff
+{
+    /**
+     * The most times that an element can occur in the old region and still be used to line up the sequences.
+     * Regions where every common element occurs more often than this fall back to Myers.
+     */
+    static final int MAX_CHAIN_LENGTH = 64;
+
+    /**
+     * Finds the differences between a region of two sequences.
+     *
+     * @param a      The old sequence.
+     * @param b      The new sequence.
+     * @param beginA The index of the first element of the region in the old sequence.
+     * @param endA   The index after the last element of the region in the old sequence.
+     * @param beginB The index of the first element of the region in the new sequence.
+     * @param endB   The index after the last element of the region in the new sequence.
+     * @param edits  The edits that were found so far. The edits for the region are added to the end.
+     */
+    static void diff(DiffSequence a, DiffSequence b, int beginA, int endA, int beginB, int endB, List<DiffEdit> edits)
+    {
+        // Keep the regions that we still need to diff on a stack:
+        // NOTE: The earlier region is always on top so that the edits come out in order.
+        Deque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {beginA, endA, beginB, endB});
+        while (!regions.isEmpty())
+        {
+            // Get the next region:
+            int[] region = regions.pop();
+            int regionBeginA = region[0];
+            int regionEndA = region[1];
+            int regionBeginB = region[2];
+            int regionEndB = region[3];
+
+            // Skip the elements at the start and end that are the same:
+            while (regionBeginA < regionEndA && regionBeginB < regionEndB && a.equals(regionBeginA, b, regionBeginB))
+            {
+                regionBeginA++;
+                regionBeginB++;
+            }
+            while (regionBeginA < regionEndA && regionBeginB < regionEndB && a.equals(regionEndA - 1, b, regionEndB - 1))
+            {
+                regionEndA--;
+                regionEndB--;
+            }
+
+            // Check whether the region is only an insertion or a deletion:
+            if (regionBeginA == regionEndA || regionBeginB == regionEndB)
+            {
+                DiffAlgorithm.addEdit(edits, regionBeginA, regionEndA, regionBeginB, regionEndB);
+                continue;
+            }
+
+            // Find the common run to split the region around:
+            Histogram histogram = new Histogram(a, regionBeginA, regionEndA);
+            int[] commonRun = histogram.findCommonRun(b, regionBeginB, regionEndB);
+            if (commonRun != null)
+            {
+                // Diff each side of the common run:
+                regions.push(new int[] {commonRun[1], regionEndA, commonRun[3], regionEndB});
+                regions.push(new int[] {regionBeginA, commonRun[0], regionBeginB, commonRun[2]});
+            }
+            else if (histogram.hasCommonElements)
+            {
+                // The common elements are too common to line up on, so fall back to Myers:
+                MyersDiff.diff(a, b, regionBeginA, regionEndA, regionBeginB, regionEndB, edits);
+            }
+            else
+            {
+                // There is nothing in common, so the whole region is replaced:
+                DiffAlgorithm.addEdit(edits, regionBeginA, regionEndA, regionBeginB, regionEndB);
+            }
+        }
+    }
+
+    /**
+     * The number of times that each element occurs in a region of the old sequence, along with where it occurs.
+     */
+    private static final class Histogram
+    {
+        /**
+         * The old sequence.
+         */
+        private final DiffSequence a;
+
+        /**
+         * The index of the first element of the region in the old sequence.
+         */
+        private final int beginA;
+
+        /**
+         * The index after the last element of the region in the old sequence.
+         */
+        private final int endA;
+
+        /**
+         * The mask to get the bucket for a hash.
+         */
+        private final int mask;
+
+        /**
+         * The first record in each bucket. -1 if the bucket is empty.
+         */
+        private final int[] buckets;
+
+        /**
+         * The next record in the same bucket as each record. -1 at the end of the bucket.
+         */
+        private final int[] nextRecords;
+
+        /**
+         * The index in the old sequence of the first occurrence of the element for each record.
+         */
+        private final int[] firstIndexes;
+
+        /**
+         * The number of times that the element for each record occurs in the region.
+         */
+        private final int[] counts;
+
+        /**
+         * The index in the old sequence of the next occurrence of the same element, for each index in the region. -1 at the last occurrence.
+         */
+        private final int[] nextIndexes;
+
+        /**
+         * The record of the element at each index in the region.
+         */
+        private final int[] recordIndexes;
+
+        /**
+         * True if any element of the new region was found in the old region.
+         */
+        public boolean hasCommonElements;
+
+        /**
+         * Counts the occurrences of each element in a region of the old sequence.
+         *
+         * @param a      The old sequence.
+         * @param beginA The index of the first element of the region in the old sequence.
+         * @param endA   The index after the last element of the region in the old sequence.
+         */
+        public Histogram(DiffSequence a, int beginA, int endA)
+        {
+            this.a = a;
+            this.beginA = beginA;
+            this.endA = endA;
+
+            // Create the buckets:
+            int size = endA - beginA;
+            int bucketCount = Integer.highestOneBit(Math.max(size, 1)) << 1;
+            this.mask = bucketCount - 1;
+            this.buckets = new int[bucketCount];
+            Arrays.fill(this.buckets, -1);
+            this.nextRecords = new int[size];
+            this.firstIndexes = new int[size];
+            this.counts = new int[size];
+            this.nextIndexes = new int[size];
+            this.recordIndexes = new int[size];
+
+            // Record each element from the end so that the occurrences of each element are chained in order:
+            int recordCount = 0;
+            for (int i = endA - 1; i >= beginA; i--)
+            {
+                // Find the record for this element:
+                int bucket = getBucket(a.hash(i));
+                int record = this.buckets[bucket];
+                while (record != -1 && !a.equals(this.firstIndexes[record], a, i)) record = this.nextRecords[record];
+
+                if (record == -1)
+                {
+                    // This is a new element:
+                    record = recordCount++;
+                    this.nextRecords[record] = this.buckets[bucket];
+                    this.buckets[bucket] = record;
+                    this.nextIndexes[i - beginA] = -1;
+                }
+                else
+                {
+                    // This element occurs again:
+                    this.nextIndexes[i - beginA] = this.firstIndexes[record];
+                }
+                this.firstIndexes[record] = i;
+                this.counts[record]++;
+                this.recordIndexes[i - beginA] = record;
+            }
+        }
+
+        /**
+         * Finds the longest run of elements that is common to both regions and has the rarest elements in the old region.
+         *
+         * @param b      The new sequence.
+         * @param beginB The index of the first element of the region in the new sequence.
+         * @param endB   The index after the last element of the region in the new sequence.
+         * @return The start and end of the run in the old sequence, then the start and end of the run in the new sequence. Null if no run has elements that are rare enough.
+         */
+        public int[] findCommonRun(DiffSequence b, int beginB, int endB)
+        {
+            int[] bestRun = null;
+            int bestCount = MAX_CHAIN_LENGTH;
+            int indexB = beginB;
+            while (indexB < endB)
+            {
+                // Find the record for this element in the old region:
+                int bucket = getBucket(b.hash(indexB));
+                int record = this.buckets[bucket];
+                while (record != -1 && !this.a.equals(this.firstIndexes[record], b, indexB)) record = this.nextRecords[record];
+
+                // Skip elements that are not in the old region or that are more common than the best run:
+                if (record == -1)
+                {
+                    indexB++;
+                    continue;
+                }
+                this.hasCommonElements = true;
+                if (this.counts[record] > bestCount)
+                {
+                    indexB++;
+                    continue;
+                }
+
+                // Extend a run around each occurrence of the element in the old region:
+                int nextIndexB = indexB + 1;
+                for (int indexA = this.firstIndexes[record]; indexA != -1; indexA = this.nextIndexes[indexA - this.beginA])
+                {
+                    // Extend the run backwards:
+                    int runBeginA = indexA;
+                    int runBeginB = indexB;
+                    int runCount = this.counts[record];
+                    while (runBeginA > this.beginA && runBeginB > beginB && this.a.equals(runBeginA - 1, b, runBeginB - 1))
+                    {
+                        runBeginA--;
+                        runBeginB--;
+                        runCount = Math.min(runCount, this.counts[this.recordIndexes[runBeginA - this.beginA]]);
+                    }
+
+                    // Extend the run forwards:
+                    int runEndA = indexA + 1;
+                    int runEndB = indexB + 1;
+                    while (runEndA < this.endA && runEndB < endB && this.a.equals(runEndA, b, runEndB))
+                    {
+                        runCount = Math.min(runCount, this.counts[this.recordIndexes[runEndA - this.beginA]]);
+                        runEndA++;
+                        runEndB++;
+                    }
+
+                    // Keep the run if its elements are rarer, or if it is longer with elements that are just as rare:
+                    if (bestRun == null || runCount < bestCount || (runCount == bestCount && runEndA - runBeginA > bestRun[1] - bestRun[0]))
+                    {
+                        bestRun = new int[] {runBeginA, runEndA, runBeginB, runEndB};
+                        bestCount = runCount;
+                    }
+
+                    // We don't need to look at the elements of the new region that are in this run again:
+                    nextIndexB = Math.max(nextIndexB, runEndB);
+                }
+                indexB = nextIndexB;
+            }
+            return bestRun;
+        }
+
+        /**
+         * Gets the bucket for the given hash.
+         *
+         * @param hash The hash of an element.
+         * @return The bucket for the hash.
+         */
+        private int getBucket(int hash)
+        {
+            return (hash ^ (hash >>> 16)) & this.mask;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.git.nanovc;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary of the identities (authors and committers) that appear in commits.
+ * The same few people usually make all the commits in a repo,
+ * so when commits are read we share a single string instance for each identity
+ * instead of keeping a separate copy in every commit.
+ * <p>
+ * The dictionary is bounded so that a repo with an unusually large number of identities can't grow it forever.
+ * When it gets full it is simply cleared and starts filling up again.
+ * This class is thread safe.
+ */
+public class IdentityDictionary
+{
+    /**
+     * The default largest number of identities that the dictionary holds before it is cleared.
+     */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * The dictionary that is shared by all commits that are read.
+     */
+    public static final IdentityDictionary SHARED = new IdentityDictionary(DEFAULT_MAX_SIZE);
+
+    /**
+     * The canonical instance of each identity.
+     * The key and the value are the same string instance.
+     */
+    private final ConcurrentHashMap<String, String> identities = new ConcurrentHashMap<>();
+
+    /**
+     * The largest number of identities that the dictionary holds before it is cleared.
+     */
+    private final int maxSize;
+
+    /**
+     * Creates a new identity dictionary.
+     *
+     * @param maxSize The largest number of identities that the dictionary holds before it is cleared.
+     */
+    public IdentityDictionary(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the canonical instance of the given identity.
+     * If this is the first time that we have seen the identity then it becomes the canonical instance.
+     *
+     * @param identity The identity to look up. It may be null.
+     * @return The canonical instance of the identity. Null if the identity is null.
+     */
+    public String intern(String identity)
+    {
+        // Check whether we have an identity:
+        if (identity == null) return null;
+
+        // Check whether we already have a canonical instance:
+        String canonicalIdentity = this.identities.get(identity);
+        if (canonicalIdentity != null) return canonicalIdentity;
+
+        // Make sure we don't grow forever:
+        if (this.identities.size() >= this.maxSize) this.identities.clear();
+
+        // Save the identity as the canonical instance:
+        canonicalIdentity = this.identities.putIfAbsent(identity, identity);
+        return canonicalIdentity == null ? identity : canonicalIdentity;
+    }
+
+    /**
+     * Gets the number of identities in the dictionary.
+     *
+     * @return The number of identities in the dictionary.
+     */
+    public int size()
+    {
+        return this.identities.size();
+    }
+}
@@ -26,7 +26,7 @@ public class ImmutableContent extends ContentBase
      * You should never modify the contents of the byte array unless you are in control of it.
      * This means that you can avoid the need to go through the API if you want to avoid it.
      */
-    private final byte[] content;
+    private volatile byte[] content;
 
     /**
      * Creates content at the given absolute path.
@@ -39,6 +39,18 @@ public class ImmutableContent extends ContentBase
         this.content = content;
     }
 
+    /**
+     * Creates content at the given absolute path that is only loaded from the blob in the object store when it is first accessed.
+     * @param absolutePath  The absolute path in the repo where the content belongs.
+     * @param objects       The object store to load the content from.
+     * @param blobHashValue The hash value of the blob with the content.
+     */
+    public ImmutableContent(String absolutePath, RepoObjectStore objects, String blobHashValue)
+    {
+        this.absolutePath = absolutePath;
+        setLazyContent(objects, blobHashValue);
+    }
+
     /**
      * The absolute path of this content in the repo.
      */
@@ -56,9 +68,24 @@ public class ImmutableContent extends ContentBase
     @Override
     protected byte[] getContent()
     {
+        // Load the content if it was checked out lazily:
+        if (this.content == null && !isContentLoaded()) loadContent();
+
         return this.content;
     }
 
+    /**
+     * Loads the lazy content from the object store.
+     */
+    private synchronized void loadContent()
+    {
+        // Make sure another thread hasn't loaded it already:
+        if (isContentLoaded()) return;
+
+        this.content = loadLazyContent();
+        markContentLoaded();
+    }
+
     /**
      * Gets the content as a byte buffer.
      * @return A new byte buffer for the content. If the content is null then you get a byte buffer with 0 capacity.
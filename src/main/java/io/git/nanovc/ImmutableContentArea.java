@@ -1,5 +1,6 @@
 package io.git.nanovc;
 
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
 /**
@@ -10,6 +11,11 @@ import java.util.stream.Stream;
  *
  * When the content area is initially created, it is editable.
  * Once the content must be frozen from further edits, call {@link #freeze()}.
+ *
+ * The content is kept in a {@link PersistentContentMap} so that putting and removing content never modifies a previous version of the map.
+ * Call {@link #snapshot()} to keep the current content around cheaply.
+ * A snapshot shares all the content that doesn't change afterwards, so several snapshots can be resident at once
+ * and they can be compared quickly with {@link #diff(ImmutableContentArea, BiConsumer)}.
  */
 public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
 {
@@ -22,7 +28,14 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
     /**
      * The map of content for this area, indexed by the absolute path of the content in the repo.
      */
-    private ContentMap<ImmutableContent> contents = new ContentMap<>();
+    private PersistentContentMap<ImmutableContent> contents = PersistentContentMap.empty();
+
+    /**
+     * The hash of the tree that the content in this area was committed as or checked out from.
+     * Null if the content doesn't correspond to a known tree.
+     * It is reset whenever content is put or removed.
+     */
+    private String treeHashValue;
 
     /**
      * Gets whether this content area is frozen.
@@ -44,6 +57,79 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
         frozen = true;
     }
 
+    /**
+     * Gets the hash of the tree that the content in this area was committed as or checked out from.
+     * This lets a checkout only apply the differences between this tree and the tree being checked out.
+     *
+     * @return The hash of the tree for the content in this area. Null if the content doesn't correspond to a known tree.
+     */
+    public String getTreeHashValue()
+    {
+        return treeHashValue;
+    }
+
+    /**
+     * Sets the hash of the tree that the content in this area was committed as or checked out from.
+     * Set this after all the content has been put, because putting or removing content resets it.
+     *
+     * @param treeHashValue The hash of the tree for the content in this area. Null if the content doesn't correspond to a known tree.
+     */
+    public void setTreeHashValue(String treeHashValue)
+    {
+        this.treeHashValue = treeHashValue;
+    }
+
+    /**
+     * Unfreezes this content area while keeping its content.
+     * This allows the next version of the content to be derived from the current one by only putting and removing the content that changed.
+     * Snapshots that were taken with {@link #snapshot()} are not affected.
+     */
+    public void thaw()
+    {
+        frozen = false;
+    }
+
+    /**
+     * Creates a frozen snapshot of the current content of this content area.
+     * This does not copy the content. The snapshot shares it with this content area.
+     * Any changes that are made to this content area afterwards are not seen by the snapshot.
+     *
+     * @return A frozen snapshot of the current content of this content area.
+     */
+    public ImmutableContentArea snapshot()
+    {
+        // Create a new area that shares the current content:
+        ImmutableContentArea snapshot = new ImmutableContentArea();
+        snapshot.contents = this.contents;
+        snapshot.treeHashValue = this.treeHashValue;
+        snapshot.frozen = true;
+        return snapshot;
+    }
+
+    /**
+     * Compares the content in this content area with the content in another content area and reports each path where the content is different.
+     * Content that the two areas share is skipped without being looked at,
+     * so comparing a snapshot with a later version of the same content area only costs as much as the changes between them.
+     * Content is compared by reference.
+     *
+     * @param other       The other content area to compare with.
+     * @param differences Called with the content in this area and the content in the other area for each path that is different. The content is null on the side that doesn't have the path.
+     */
+    public void diff(ImmutableContentArea other, BiConsumer<ImmutableContent, ImmutableContent> differences)
+    {
+        this.contents.diff(other.contents, differences);
+    }
+
+    /**
+     * Gets the number of pieces of content in this content area.
+     *
+     * @return The number of pieces of content in this content area.
+     */
+    public int getContentCount()
+    {
+        return this.contents.size();
+    }
+
     /**
      * Creates and puts the given content into this map.
      * If content at this path already exists, it is replaced with a new {@link ImmutableContent} instance.
@@ -82,7 +168,11 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
 
         // Put the content in the content area at the given path:
         // NOTE: This will replace any existing content at the given path.
-        this.contents.putContent(content);
+        //       Any snapshots keep the previous version of the content.
+        this.contents = this.contents.putContent(content);
+
+        // The content no longer corresponds to a known tree:
+        this.treeHashValue = null;
 
         return this;
     }
@@ -111,7 +201,11 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
         // Make sure that we are not frozen:
         if (this.frozen) throw new ImmutableContentModifiedException("Cannot remove content from an immutable area once it has been frozen. Remove the content before calling freeze() or use a MutableContentArea.");
 
-        this.contents.removeContent(absolutePath);
+        this.contents = this.contents.removeContent(absolutePath);
+
+        // The content no longer corresponds to a known tree:
+        this.treeHashValue = null;
+
         return this;
     }
 
@@ -128,7 +222,7 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
         ContentMap<ImmutableContent> snapshot = new ContentMap<>();
 
         // Copy the content across:
-        snapshot.putAll(this.contents);
+        this.contents.forEach(snapshot::putContent);
 
         return snapshot;
     }
@@ -145,13 +239,13 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
         ContentList<ImmutableContent> snapshot = new ContentList<>();
 
         // Copy the content across:
-        snapshot.addAll(this.contents.values());
+        this.contents.forEach(snapshot::add);
 
         return snapshot;
     }
 
     public Stream<ImmutableContent> contentStream() {
-        return this.contents.values().stream();
+        return this.contents.stream();
     }
 
     @Override
@@ -168,8 +262,10 @@ public class ImmutableContentArea extends ContentAreaBase<ImmutableContent>
         // Unfreeze the content
         this.frozen = false;
 
-        // Remove the content
-        this.contents.clear();
+        // Remove the content:
+        // NOTE: Any snapshots keep their content.
+        this.contents = PersistentContentMap.empty();
+        this.treeHashValue = null;
     }
 
 }
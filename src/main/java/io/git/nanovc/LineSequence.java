@@ -0,0 +1,143 @@
+package io.git.nanovc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A view of content as a sequence of lines, for diffing text.
+ * The lines are found by scanning for '\n' in the bytes, so the content is never decoded into strings.
+ * Only the offset and hash of each line is kept on top of the bytes (which are not copied),
+ * so the memory that is needed stays small even for content that is megabytes long.
+ * <p>
+ * Each line includes its '\n'.
+ * The last line does not have a '\n' if the content doesn't end with one.
+ */
+public class LineSequence implements DiffSequence
+{
+    /**
+     * The bytes of the content.
+     */
+    public final byte[] content;
+
+    /**
+     * The offset of the start of each line in the content.
+     * There is an extra offset at the end for the end of the last line.
+     */
+    private final int[] lineStarts;
+
+    /**
+     * The hash of the bytes of each line.
+     */
+    private final int[] lineHashes;
+
+    /**
+     * Creates a view of the lines in the given bytes.
+     *
+     * @param content The bytes of the content. Null for no content.
+     */
+    public LineSequence(byte[] content)
+    {
+        this.content = content == null ? new byte[0] : content;
+
+        // Count the lines:
+        int lineCount = 0;
+        for (int i = 0; i < this.content.length; i++)
+        {
+            if (this.content[i] == '\n') lineCount++;
+        }
+        if (this.content.length > 0 && this.content[this.content.length - 1] != '\n') lineCount++;
+
+        // Find the start and hash of each line:
+        this.lineStarts = new int[lineCount + 1];
+        this.lineHashes = new int[lineCount];
+        int line = 0;
+        int hash = 1;
+        for (int i = 0; i < this.content.length; i++)
+        {
+            byte b = this.content[i];
+            hash = 31 * hash + b;
+            if (b == '\n')
+            {
+                // Save the line:
+                this.lineHashes[line] = hash;
+                this.lineStarts[++line] = i + 1;
+                hash = 1;
+            }
+        }
+        if (line < lineCount)
+        {
+            // Save the last line that doesn't end with a new line:
+            this.lineHashes[line] = hash;
+        }
+        this.lineStarts[lineCount] = this.content.length;
+    }
+
+    /**
+     * Creates a view of the lines of the given content.
+     *
+     * @param content The content to view.
+     */
+    public LineSequence(ContentBase content)
+    {
+        this(content.getContent());
+    }
+
+    @Override
+    public int size()
+    {
+        return this.lineHashes.length;
+    }
+
+    @Override
+    public int hash(int index)
+    {
+        return this.lineHashes[index];
+    }
+
+    @Override
+    public boolean equals(int index, DiffSequence other, int otherIndex)
+    {
+        // Check the hashes first because they are cheap:
+        LineSequence otherLines = (LineSequence) other;
+        if (this.lineHashes[index] != otherLines.lineHashes[otherIndex]) return false;
+
+        // Check the lengths:
+        int start = this.lineStarts[index];
+        int length = this.lineStarts[index + 1] - start;
+        int otherStart = otherLines.lineStarts[otherIndex];
+        if (length != otherLines.lineStarts[otherIndex + 1] - otherStart) return false;
+
+        // Compare the bytes:
+        for (int i = 0; i < length; i++)
+        {
+            if (this.content[start + i] != otherLines.content[otherStart + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the line at the given index ends with a new line.
+     * Only the last line can be missing its new line.
+     *
+     * @param index The index of the line.
+     * @return True if the line ends with '\n'.
+     */
+    public boolean hasNewLine(int index)
+    {
+        int end = this.lineStarts[index + 1];
+        return end > this.lineStarts[index] && this.content[end - 1] == '\n';
+    }
+
+    /**
+     * Writes the bytes of the line at the given index, including its new line if it has one.
+     *
+     * @param index        The index of the line.
+     * @param outputStream The stream to write the line to.
+     * @throws IOException If the line could not be written.
+     */
+    public void writeLine(int index, OutputStream outputStream) throws IOException
+    {
+        int start = this.lineStarts[index];
+        outputStream.write(this.content, start, this.lineStarts[index + 1] - start);
+    }
+}
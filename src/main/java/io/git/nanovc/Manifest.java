@@ -0,0 +1,208 @@
+package io.git.nanovc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A flat listing of every blob in a tree and its sub trees.
+ * The absolute paths are kept in a sorted array next to the hashes of their blobs,
+ * so finding a path or listing a folder is a binary search instead of a walk down the trees from the root.
+ * <p>
+ * Manifests are built from a tree with {@link #build(RepoObjectStore, String)}
+ * and are cached for hot commits in a {@link ManifestCache}.
+ * Trees never change, so a manifest never goes stale.
+ * Manifests are immutable and can be shared between threads.
+ */
+public final class Manifest
+{
+    /**
+     * The rough number of bytes that each entry takes on top of the characters in its path.
+     * This covers the path string, its character array and the slots in the two arrays.
+     * The hash values are shared with the trees, so they are not counted.
+     */
+    public static final int ENTRY_OVERHEAD_IN_BYTES = 64;
+
+    /**
+     * The hash of the tree that this manifest lists.
+     */
+    public final String treeHashValue;
+
+    /**
+     * The absolute paths of the blobs, in sorted order.
+     */
+    private final String[] paths;
+
+    /**
+     * The hash of the blob at each path.
+     * The hash at an index is for the path at the same index in {@link #paths}.
+     */
+    private final String[] blobHashValues;
+
+    /**
+     * The rough number of bytes that this manifest takes in memory.
+     */
+    private final long estimatedSizeInBytes;
+
+    /**
+     * Creates a manifest.
+     *
+     * @param treeHashValue  The hash of the tree that this manifest lists.
+     * @param paths          The absolute paths of the blobs, in sorted order.
+     * @param blobHashValues The hash of the blob at each path.
+     */
+    private Manifest(String treeHashValue, String[] paths, String[] blobHashValues)
+    {
+        this.treeHashValue = treeHashValue;
+        this.paths = paths;
+        this.blobHashValues = blobHashValues;
+
+        // Work out roughly how much memory we take:
+        long size = 0;
+        for (String path : paths)
+        {
+            size += ENTRY_OVERHEAD_IN_BYTES + 2L * path.length();
+        }
+        this.estimatedSizeInBytes = size;
+    }
+
+    /**
+     * Builds the manifest for the given tree by walking it and all of its sub trees.
+     * The blobs themselves are not loaded.
+     *
+     * @param objects       The object store with the trees.
+     * @param treeHashValue The hash of the tree to list.
+     * @return The manifest for the tree.
+     */
+    public static Manifest build(RepoObjectStore objects, String treeHashValue)
+    {
+        // Find all the blobs in the tree:
+        List<TreePathEntry> entries = new ArrayList<>(new TreeWalker(objects, false).walkBlobs(treeHashValue, RepoPath.atRoot()));
+
+        // Sort them by path so that we can binary search:
+        // NOTE: Trees are in git order, which sorts folders as if their names ended with a slash, so this is not always the walk order.
+        entries.sort((entry1, entry2) -> entry1.absolutePath.compareTo(entry2.absolutePath));
+
+        // Flatten the entries into the arrays:
+        String[] paths = new String[entries.size()];
+        String[] blobHashValues = new String[entries.size()];
+        for (int i = 0; i < paths.length; i++)
+        {
+            TreePathEntry entry = entries.get(i);
+            paths[i] = entry.absolutePath;
+            blobHashValues[i] = entry.entry.hashValue;
+        }
+        return new Manifest(treeHashValue, paths, blobHashValues);
+    }
+
+    /**
+     * Gets the number of blobs in the manifest.
+     *
+     * @return The number of blobs in the manifest.
+     */
+    public int size()
+    {
+        return this.paths.length;
+    }
+
+    /**
+     * Gets the rough number of bytes that this manifest takes in memory.
+     *
+     * @return The rough number of bytes that this manifest takes in memory.
+     */
+    public long getEstimatedSizeInBytes()
+    {
+        return this.estimatedSizeInBytes;
+    }
+
+    /**
+     * Gets the absolute path at the given index.
+     *
+     * @param index The index of the entry. The entries are sorted by path.
+     * @return The absolute path at the given index.
+     */
+    public String getPath(int index)
+    {
+        return this.paths[index];
+    }
+
+    /**
+     * Gets the hash of the blob at the given index.
+     *
+     * @param index The index of the entry. The entries are sorted by path.
+     * @return The hash of the blob at the given index.
+     */
+    public String getBlobHashValue(int index)
+    {
+        return this.blobHashValues[index];
+    }
+
+    /**
+     * Finds the index of the given path.
+     *
+     * @param path The path of the blob to find.
+     * @return The index of the path if it is in the manifest. Otherwise (-(insertion point) - 1) like {@link Arrays#binarySearch(Object[], Object)}.
+     */
+    public int indexOf(RepoPath path)
+    {
+        return Arrays.binarySearch(this.paths, path.toAbsolutePath().toString());
+    }
+
+    /**
+     * Gets the hash of the blob at the given path.
+     *
+     * @param path The path of the blob.
+     * @return The hash of the blob at the path. Null if there is no blob at the path.
+     */
+    public String getBlobHashValue(RepoPath path)
+    {
+        int index = indexOf(path);
+        return index >= 0 ? this.blobHashValues[index] : null;
+    }
+
+    /**
+     * Lists the absolute paths of all the blobs in the given folder and its sub folders.
+     *
+     * @param folderPath The path of the folder to list. The root path lists every blob.
+     * @return The absolute paths of the blobs in the folder, in sorted order.
+     */
+    public List<String> listPaths(RepoPath folderPath)
+    {
+        // Get the prefix that every path in the folder starts with:
+        String prefix = folderPath.toAbsolutePath().ensureEndsWithDelimiter().toString();
+
+        // Find where the folder starts:
+        // NOTE: The prefix itself is never a blob path because it ends with a slash, so this is always the insertion point.
+        int start = -Arrays.binarySearch(this.paths, prefix) - 1;
+
+        // Find where the folder ends:
+        // NOTE: Every path that starts with the prefix sorts together, straight after the prefix.
+        int end = start;
+        while (end < this.paths.length && this.paths[end].startsWith(prefix)) end++;
+
+        return start == end ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(this.paths).subList(start, end));
+    }
+
+    /**
+     * Lists every entry in the manifest.
+     *
+     * @return The entries in the manifest, in sorted order. The blobs are not loaded.
+     */
+    public List<TreePathEntry> listEntries()
+    {
+        List<TreePathEntry> entries = new ArrayList<>(this.paths.length);
+        for (int i = 0; i < this.paths.length; i++)
+        {
+            String path = this.paths[i];
+            entries.add(new TreePathEntry(path, new TreeEntry(ObjectType.BLOB, this.blobHashValues[i], path.substring(path.lastIndexOf(PathBase.DELIMITER) + 1)), null));
+        }
+        return entries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Manifest of %s with %,d blobs", this.treeHashValue, this.paths.length);
+    }
+}
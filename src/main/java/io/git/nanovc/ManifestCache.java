@@ -0,0 +1,132 @@
+package io.git.nanovc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of {@link Manifest}s for the commits that are read most often, such as branch tips and release tags.
+ * Manifests are built lazily the first time a commit is looked at and the least recently used ones are evicted
+ * when the cache goes over its memory budget.
+ * <p>
+ * Manifests are cached by the hash of the root tree of the commit,
+ * so commits with the same tree share a manifest and a cached manifest never goes stale.
+ * <p>
+ * The cache is optional. It is off until {@link #memoryBudgetInBytes} is set.
+ * This class is thread safe.
+ */
+public class ManifestCache
+{
+    /**
+     * The rough number of bytes that the cached manifests may take in memory.
+     * Zero turns the cache off, in which case manifests are built every time they are asked for.
+     * A manifest that is bigger than the whole budget is never cached.
+     */
+    public volatile long memoryBudgetInBytes;
+
+    /**
+     * The cached manifests, keyed by the hash of the tree that they list.
+     * This is in access order so that the eldest entry is the least recently used one.
+     */
+    private final LinkedHashMap<String, Manifest> manifests = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The rough number of bytes that the cached manifests take in memory.
+     */
+    private long sizeInBytes;
+
+    /**
+     * Gets the manifest for the given tree, building it if it is not cached yet.
+     *
+     * @param objects       The object store with the trees.
+     * @param treeHashValue The hash of the tree to get the manifest for.
+     * @return The manifest for the tree.
+     */
+    public Manifest getManifest(RepoObjectStore objects, String treeHashValue)
+    {
+        // Check whether we have it already:
+        Manifest manifest = getCachedManifest(treeHashValue);
+        if (manifest != null) return manifest;
+
+        // Build the manifest outside the lock so that other commits can be served while we walk:
+        manifest = Manifest.build(objects, treeHashValue);
+
+        // Cache the manifest:
+        synchronized (this)
+        {
+            // Check whether the cache is on and whether the manifest fits at all:
+            long budget = this.memoryBudgetInBytes;
+            if (budget <= 0 || manifest.getEstimatedSizeInBytes() > budget) return manifest;
+
+            // Check whether another thread beat us to it:
+            Manifest existingManifest = this.manifests.get(treeHashValue);
+            if (existingManifest != null) return existingManifest;
+
+            // Add the manifest:
+            this.manifests.put(treeHashValue, manifest);
+            this.sizeInBytes += manifest.getEstimatedSizeInBytes();
+
+            // Evict the least recently used manifests until we are within the budget:
+            evict(budget);
+        }
+        return manifest;
+    }
+
+    /**
+     * Gets the manifest for the given tree if it is cached.
+     * This counts as a use of the manifest.
+     *
+     * @param treeHashValue The hash of the tree to get the manifest for.
+     * @return The cached manifest for the tree. Null if it is not cached.
+     */
+    public synchronized Manifest getCachedManifest(String treeHashValue)
+    {
+        return this.manifests.get(treeHashValue);
+    }
+
+    /**
+     * Gets the number of manifests that are cached.
+     *
+     * @return The number of manifests that are cached.
+     */
+    public synchronized int size()
+    {
+        return this.manifests.size();
+    }
+
+    /**
+     * Gets the rough number of bytes that the cached manifests take in memory.
+     *
+     * @return The rough number of bytes that the cached manifests take in memory.
+     */
+    public synchronized long getSizeInBytes()
+    {
+        return this.sizeInBytes;
+    }
+
+    /**
+     * Evicts the least recently used manifests until the cache is within the given budget.
+     * Call this after lowering {@link #memoryBudgetInBytes} to free memory straight away.
+     *
+     * @param budgetInBytes The rough number of bytes that the cached manifests may take in memory.
+     */
+    public synchronized void evict(long budgetInBytes)
+    {
+        Iterator<Map.Entry<String, Manifest>> iterator = this.manifests.entrySet().iterator();
+        while (this.sizeInBytes > budgetInBytes && iterator.hasNext())
+        {
+            Manifest manifest = iterator.next().getValue();
+            iterator.remove();
+            this.sizeInBytes -= manifest.getEstimatedSizeInBytes();
+        }
+    }
+
+    /**
+     * Removes all the cached manifests.
+     */
+    public synchronized void clear()
+    {
+        this.manifests.clear();
+        this.sizeInBytes = 0;
+    }
+}
@@ -0,0 +1,155 @@
+package io.git.nanovc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper class for writing strings in the modified UTF-8 encoding straight into byte buffers.
+ * This is the same encoding that {@link java.io.DataOutputStream#writeUTF(String)} uses,
+ * so the bytes are interchangeable with {@link java.io.DataInputStream#readUTF()}.
+ * It lets us compute the exact size of an encoded string up front so that we never need a growing buffer.
+ * https://docs.oracle.com/javase/8/docs/api/java/io/DataInput.html#modified-utf-8
+ */
+public class ModifiedUTF8
+{
+    /**
+     * The largest number of bytes that an encoded string can have.
+     * This is the limit of the unsigned short that is written as the length prefix.
+     */
+    public static final int MAX_ENCODED_LENGTH = 65535;
+
+    /**
+     * Gets the number of bytes needed to encode the given string, NOT including the 2 byte length prefix.
+     *
+     * @param string The string to measure.
+     * @return The number of bytes needed to encode the characters of the string.
+     */
+    public static int getEncodedLength(String string)
+    {
+        int encodedLength = 0;
+        for (int i = 0, length = string.length(); i < length; i++)
+        {
+            // Get the character:
+            char c = string.charAt(i);
+
+            // Work out how many bytes this character needs:
+            if (c >= 0x0001 && c <= 0x007F)
+            {
+                encodedLength++;
+            }
+            else if (c > 0x07FF)
+            {
+                encodedLength += 3;
+            }
+            else
+            {
+                encodedLength += 2;
+            }
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Gets the number of bytes needed to write the given string, including the 2 byte length prefix.
+     *
+     * @param string The string to measure.
+     * @return The number of bytes that {@link #write(ByteBuffer, String)} will write for this string.
+     */
+    public static int getWrittenLength(String string)
+    {
+        return 2 + getEncodedLength(string);
+    }
+
+    /**
+     * Writes the given string into the buffer as a 2 byte length followed by the modified UTF-8 bytes.
+     * This matches {@link java.io.DataOutputStream#writeUTF(String)}.
+     *
+     * @param buffer The buffer to write to. It must have enough remaining space. See {@link #getWrittenLength(String)}.
+     * @param string The string to write.
+     */
+    public static void write(ByteBuffer buffer, String string)
+    {
+        // Get the encoded length:
+        int encodedLength = getEncodedLength(string);
+
+        // Make sure the string is not too long:
+        if (encodedLength > MAX_ENCODED_LENGTH) throw new NanoRuntimeException("The string is too long to encode. It needs " + encodedLength + " bytes but the limit is " + MAX_ENCODED_LENGTH + " bytes.");
+
+        // Write the length:
+        buffer.putShort((short) encodedLength);
+
+        // Write the characters:
+        for (int i = 0, length = string.length(); i < length; i++)
+        {
+            // Get the character:
+            char c = string.charAt(i);
+
+            // Encode the character:
+            if (c >= 0x0001 && c <= 0x007F)
+            {
+                buffer.put((byte) c);
+            }
+            else if (c > 0x07FF)
+            {
+                buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else
+            {
+                buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Decodes the modified UTF-8 bytes in the given range of the array into a string.
+     * The range must NOT include the 2 byte length prefix.
+     * This matches {@link java.io.DataInputStream#readUTF()} for well formed input.
+     *
+     * @param bytes  The array with the encoded characters.
+     * @param offset The offset of the first encoded byte.
+     * @param length The number of encoded bytes.
+     * @return The decoded string.
+     */
+    public static String decode(byte[] bytes, int offset, int length)
+    {
+        // Allocate enough characters for the worst case of one byte per character:
+        char[] chars = new char[length];
+        int charCount = 0;
+
+        // Decode each character:
+        int end = offset + length;
+        for (int i = offset; i < end; )
+        {
+            // Get the first byte of the character:
+            int b = bytes[i] & 0xFF;
+
+            // Work out how many bytes this character uses:
+            if (b < 0x80)
+            {
+                chars[charCount++] = (char) b;
+                i++;
+            }
+            else if ((b & 0xE0) == 0xC0)
+            {
+                // Make sure the character is complete:
+                if (i + 1 >= end) throw new NanoRuntimeException("The modified UTF-8 bytes end in the middle of a character.");
+                chars[charCount++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+                i += 2;
+            }
+            else if ((b & 0xF0) == 0xE0)
+            {
+                // Make sure the character is complete:
+                if (i + 2 >= end) throw new NanoRuntimeException("The modified UTF-8 bytes end in the middle of a character.");
+                chars[charCount++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+                i += 3;
+            }
+            else
+            {
+                throw new NanoRuntimeException("The modified UTF-8 bytes have an invalid byte at position " + (i - offset) + ".");
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+}
@@ -1,5 +1,7 @@
 package io.git.nanovc;
 
+import java.util.Arrays;
+
 /**
  * Content at a specific path in a content area.
  * This would correspond to an actual file in a traditional git repository.
@@ -22,10 +24,59 @@ public class MutableContent extends ContentBase
      * The payload content to store.
      * The reference to the byte array is mutable and can be changed to point to the new content.
      * You should never modify the contents of the byte array unless you are in control of it.
+     * Arrays that you put into a content area stay yours, because snapshots of them are copies.
+     * Arrays that the engine creates (like staged snapshots and checked out content) may be shared with other content areas,
+     * so use {@link #getWritableContent()} to modify those in place.
+     * This is null until the content is loaded if it was checked out lazily, so use {@link #getContent()} to read it then.
      * This means that you can avoid the need to go through the API if you want to avoid it.
      */
     public byte[] content;
 
+    /**
+     * The number of times that this content has been modified.
+     * See {@link #getModificationCount()}.
+     */
+    private long modificationCount;
+
+    /**
+     * The content reference when the modification count was last brought up to date.
+     * This lets us notice when the {@link #content} field has been changed directly.
+     */
+    private byte[] trackedContent;
+
+    /**
+     * The path when the modification count was last brought up to date.
+     * This lets us notice when the {@link #absolutePath} field has been changed directly.
+     */
+    private String trackedAbsolutePath;
+
+    /**
+     * The content array when it was last shared with a snapshot.
+     * While the {@link #content} still references this array, it must be copied before it is modified.
+     * See {@link #getWritableContent()}.
+     */
+    private byte[] sharedContent;
+
+    /**
+     * The content that was last staged from this content (if this is working content) by {@link RepoEngine#addAll(Repo, boolean)}.
+     */
+    MutableContent stagedContent;
+
+    /**
+     * The modification count of this content when it was last staged.
+     */
+    long stagedModificationCount;
+
+    /**
+     * The modification count of the {@link #stagedContent} when this content was last staged into it.
+     */
+    long stagedContentModificationCount;
+
+    /**
+     * True if this content was last staged as a snapshot (a copy of the bytes).
+     */
+    boolean stagedAsSnapshot;
+
     /**
      * Creates content at the given absolute path.
      * @param absolutePath The absolute path in the repo where the content belongs.
@@ -35,6 +86,21 @@ public class MutableContent extends ContentBase
     {
         this.absolutePath = absolutePath;
         this.content = content;
+        this.trackedAbsolutePath = absolutePath;
+        this.trackedContent = content;
+    }
+
+    /**
+     * Creates content at the given absolute path that is only loaded from the blob in the object store when it is first accessed.
+     * @param absolutePath  The absolute path in the repo where the content belongs.
+     * @param objects       The object store to load the content from.
+     * @param blobHashValue The hash value of the blob with the content.
+     */
+    public MutableContent(String absolutePath, RepoObjectStore objects, String blobHashValue)
+    {
+        this.absolutePath = absolutePath;
+        this.trackedAbsolutePath = absolutePath;
+        setLazyContent(objects, blobHashValue);
     }
 
     /**
@@ -56,12 +122,177 @@ public class MutableContent extends ContentBase
 
     /**
      * Gets the internal byte array content.
+     * If the content was checked out lazily then it is loaded from the object store the first time.
      *
      * @return The actual content being wrapped.
      */
     @Override
-    protected byte[] getContent()
+    public byte[] getContent()
+    {
+        // Load the content if it was checked out lazily:
+        if (this.content == null && !isContentLoaded()) loadContent();
+
+        return this.content;
+    }
+
+    /**
+     * Loads the lazy content from the object store.
+     * Loading the content doesn't count as a modification.
+     */
+    private synchronized void loadContent()
+    {
+        // Make sure another thread hasn't loaded it already:
+        if (isContentLoaded()) return;
+
+        // Load the content:
+        // NOTE: The array belongs to the blob in the object store, so it is shared and must be copied before it is modified (copy on write).
+        byte[] content = loadLazyContent();
+        this.content = content;
+        this.trackedContent = content;
+        this.sharedContent = content;
+        markContentLoaded();
+    }
+
+    /**
+     * Replaces the content with content that is only loaded from the blob in the object store when it is first accessed.
+     * This counts as a modification.
+     *
+     * @param objects       The object store to load the content from.
+     * @param blobHashValue The hash value of the blob with the content.
+     */
+    public void setLazyContent(RepoObjectStore objects, String blobHashValue)
+    {
+        // Bring the count up to date with any direct changes first:
+        getModificationCount();
+
+        this.content = null;
+        markModified();
+        super.setLazyContent(objects, blobHashValue);
+    }
+
+    /**
+     * Replaces the content and counts it as a modification.
+     *
+     * @param content The new content to store.
+     */
+    public void setContent(byte[] content)
+    {
+        // Bring the count up to date with any direct changes first:
+        getModificationCount();
+
+        // Replace any content that hasn't been loaded yet:
+        markContentLoaded();
+
+        this.content = content;
+        markModified();
+    }
+
+    /**
+     * Moves the content to a new path and counts it as a modification.
+     *
+     * @param absolutePath The new absolute path of this content in the repo.
+     */
+    public void setAbsolutePath(String absolutePath)
+    {
+        // Bring the count up to date with any direct changes first:
+        getModificationCount();
+
+        this.absolutePath = absolutePath;
+        markModified();
+    }
+
+    /**
+     * Counts a modification of this content.
+     * Call this if you modify the bytes inside the content array, because that can't be noticed otherwise.
+     */
+    public void markModified()
+    {
+        this.modificationCount++;
+        this.trackedContent = this.content;
+        this.trackedAbsolutePath = this.absolutePath;
+    }
+
+    /**
+     * Gets the number of times that this content has been modified.
+     * If the count is the same as before then the content and path are the same as before,
+     * so work that depends on them (like staging or hashing the content) can be skipped.
+     * <p>
+     * Changes through {@link #setContent(byte[])}, {@link #setAbsolutePath(String)} and the content area API are counted.
+     * Changes to the {@link #content} and {@link #absolutePath} fields are noticed by reference, so they are counted too.
+     * Changes to the bytes inside the content array are only counted if you call {@link #markModified()}.
+     *
+     * @return The number of times that this content has been modified.
+     */
+    public long getModificationCount()
+    {
+        // Check whether the fields have been changed directly:
+        if (this.content != this.trackedContent || this.absolutePath != this.trackedAbsolutePath)
+        {
+            // The fields have changed since we last looked.
+            markModified();
+        }
+        return this.modificationCount;
+    }
+
+    /**
+     * Gets the version of the content.
+     * This is the modification count of the content.
+     *
+     * @return The version of the content.
+     */
+    @Override
+    protected long getContentVersion()
     {
+        return getModificationCount();
+    }
+
+    /**
+     * Shares the content array with a snapshot (in another content area) instead of copying it.
+     * The array is copied later by {@link #getWritableContent()} if this content is modified in place (copy on write).
+     *
+     * @return The content array that is now shared.
+     */
+    public byte[] shareContent()
+    {
+        getContent();
+        this.sharedContent = this.content;
+        return this.content;
+    }
+
+    /**
+     * Checks whether the content array is shared with a snapshot, in which case it must not be modified in place.
+     *
+     * @return True if the content array is shared with a snapshot.
+     */
+    public boolean isContentShared()
+    {
+        return this.content != null && this.content == this.sharedContent;
+    }
+
+    /**
+     * Gets the content array so that it can be modified in place.
+     * If the array is shared with a snapshot then it is copied first so that the snapshot is not affected (copy on write).
+     * Always use this instead of the {@link #content} field when you modify the bytes in place,
+     * and call {@link #markModified()} once you are done if you modify the bytes in place later.
+     *
+     * @return The content array that this content owns and can be modified in place.
+     */
+    public byte[] getWritableContent()
+    {
+        // Make sure the content is loaded:
+        getContent();
+
+        // Check whether we need to copy the content before it is written to:
+        if (isContentShared())
+        {
+            // Take our own copy:
+            setContent(Arrays.copyOf(this.content, this.content.length));
+        }
+        else
+        {
+            // We own the content already, but it is about to be modified in place:
+            markModified();
+        }
         return this.content;
     }
 }
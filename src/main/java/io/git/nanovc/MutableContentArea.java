@@ -1,6 +1,13 @@
 package io.git.nanovc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * An area where mutable content resides.
@@ -19,9 +26,60 @@ public class MutableContentArea extends ContentAreaBase<MutableContent>
      * The list of content for this area.
      * It is not indexed because the paths are mutable.
      * Therefore each access by path needs to search through the list to find the content at the given path.
+     * See {@link #getContentIndex()} for an index that is kept up to date with this list.
      */
     public ContentList<MutableContent> contents = new ContentList<>();
 
+    /**
+     * The content of this area indexed by absolute path, from when it was last indexed.
+     * Only the first content at each path is indexed.
+     * See {@link #getContentIndex()}.
+     */
+    private final Map<String, MutableContent> contentIndex = new HashMap<>();
+
+    /**
+     * The list of content that was indexed in {@link #contentIndex}.
+     * This lets us notice when the {@link #contents} field has been replaced.
+     */
+    private ContentList<MutableContent> indexedContentList;
+
+    /**
+     * The content in the order that it was indexed in {@link #contentIndex}.
+     * This lets us notice when content has been added to or removed from the {@link #contents} list directly.
+     */
+    private final ArrayList<MutableContent> indexedContents = new ArrayList<>();
+
+    /**
+     * The absolute path of each content in {@link #indexedContents} when it was indexed.
+     * This is compared by reference to notice when the path of the content has been changed.
+     */
+    private final ArrayList<String> indexedAbsolutePaths = new ArrayList<>();
+
+    /**
+     * The list of content when this area was last marked as unmodified.
+     * This lets us notice when the {@link #contents} field has been replaced.
+     * See {@link #isModified()}.
+     */
+    private ContentList<MutableContent> unmodifiedContentList;
+
+    /**
+     * The content in the order that it was in when this area was last marked as unmodified.
+     * This lets us notice when content has been added to or removed from the {@link #contents} list directly.
+     */
+    private final ArrayList<MutableContent> unmodifiedContents = new ArrayList<>();
+
+    /**
+     * The modification count of each content in {@link #unmodifiedContents} when this area was last marked as unmodified.
+     */
+    private long[] unmodifiedModificationCounts = new long[0];
+
+    /**
+     * The trees that were last written for this content area.
+     * This lets us only write the trees for the folders that have changed since the last time.
+     * The cache checks the content for changes itself, so it stays valid even if you modify the content without going through the API.
+     */
+    public TreeCache treeCache = new TreeCache();
+
     /**
      * Creates and puts the given content into this map.
      * If content at this path already exists, it is replaced by mutating the existing content.
@@ -50,7 +108,7 @@ public class MutableContentArea extends ContentAreaBase<MutableContent>
             // We already have existing content at the given path.
 
             // Update the existing content:
-            existingContent.content = content;
+            existingContent.setContent(content);
         }
 
         return existingContent;
@@ -80,7 +138,7 @@ public class MutableContentArea extends ContentAreaBase<MutableContent>
             // We already have existing content at the given path.
 
             // Update the existing content:
-            existingContent.content = content.content;
+            existingContent.setContent(content.getContent());
         }
 
         return this;
@@ -154,6 +212,185 @@ public class MutableContentArea extends ContentAreaBase<MutableContent>
         return snapshot;
     }
 
+    /**
+     * Puts and removes content at many paths, finding the existing content through the index from {@link #getContentIndex()}.
+     * This is cheaper than calling {@link #putContent(String, byte...)} and {@link #removeContent(String)} for each path
+     * because each of those needs to search through all the content.
+     * Only one pass over the content is needed to remove content, and none at all if nothing is removed.
+     * Existing content is replaced by mutating it, just like {@link #putContent(String, byte...)}.
+     * The content is shared with the given arrays, so it is only copied if it is modified (copy on write).
+     *
+     * @param changes The content to put at each absolute path. Null to remove the content at that path.
+     */
+    public void putAndRemoveContent(Map<String, byte[]> changes)
+    {
+        putAndRemoveContent(changes, (mutableContent, content) ->
+        {
+            mutableContent.setContent(content);
+            mutableContent.shareContent();
+        });
+    }
+
+    /**
+     * Puts and removes lazy content at many paths, finding the existing content through the index from {@link #getContentIndex()}.
+     * The content is only loaded from the blob in the object store when it is first accessed.
+     * See {@link #putAndRemoveContent(Map)}.
+     *
+     * @param blobHashValues The hash value of the blob with the content to put at each absolute path. Null to remove the content at that path.
+     * @param objects        The object store to load the content from.
+     */
+    public void putAndRemoveLazyContent(Map<String, String> blobHashValues, RepoObjectStore objects)
+    {
+        putAndRemoveContent(blobHashValues, (mutableContent, blobHashValue) -> mutableContent.setLazyContent(objects, blobHashValue));
+    }
+
+    /**
+     * Puts and removes content at many paths, finding the existing content through the index from {@link #getContentIndex()}.
+     *
+     * @param changes    The change to make at each absolute path. Null to remove the content at that path.
+     * @param setContent Sets the content for a change.
+     * @param <TChange>  The type of change.
+     */
+    private <TChange> void putAndRemoveContent(Map<String, TChange> changes, BiConsumer<MutableContent, TChange> setContent)
+    {
+        // Get the existing content by path:
+        Map<String, MutableContent> index = getContentIndex();
+
+        // Keep track of the paths to remove:
+        Set<String> removedPaths = new HashSet<>();
+
+        // Update or add the content:
+        // NOTE: The paths of existing content don't change and new content is added to the index, so the index stays valid while we use it.
+        changes.forEach((absolutePath, change) ->
+        {
+            MutableContent existingContent = index.get(absolutePath);
+            if (change == null)
+            {
+                // The content is removed.
+                if (existingContent != null) removedPaths.add(absolutePath);
+            }
+            else if (existingContent != null)
+            {
+                // Update the existing content:
+                setContent.accept(existingContent, change);
+            }
+            else
+            {
+                // Add the new content:
+                MutableContent mutableContent = new MutableContent();
+                mutableContent.absolutePath = absolutePath;
+                setContent.accept(mutableContent, change);
+                addIndexedContent(mutableContent);
+            }
+        });
+
+        // Remove the content in one pass:
+        // NOTE: The index is rebuilt the next time it is used.
+        if (!removedPaths.isEmpty()) this.contents.removeIf(mutableContent -> removedPaths.contains(mutableContent.getAbsolutePath()));
+    }
+
+    /**
+     * Gets the content of this area indexed by absolute path.
+     * Only the first content at each path is indexed, to match {@link #getContent(String)}.
+     * The index is kept between calls and is only rebuilt when the {@link #contents} list has changed since it was last indexed.
+     * Checking the index only compares references, so it is much cheaper than indexing all the content again.
+     *
+     * @return The content of this area indexed by absolute path. The map must not be modified. Use {@link #addIndexedContent(MutableContent)} to add content.
+     */
+    public Map<String, MutableContent> getContentIndex()
+    {
+        // Check whether the content list has changed since we last indexed it:
+        boolean isIndexValid = this.indexedContentList == this.contents && this.indexedContents.size() == this.contents.size();
+        for (int i = 0; isIndexValid && i < this.indexedContents.size(); i++)
+        {
+            MutableContent content = this.contents.get(i);
+            isIndexValid = content == this.indexedContents.get(i) && content.absolutePath == this.indexedAbsolutePaths.get(i);
+        }
+
+        // Index the content again if it has changed:
+        if (!isIndexValid)
+        {
+            this.contentIndex.clear();
+            this.indexedContents.clear();
+            this.indexedAbsolutePaths.clear();
+            this.indexedContentList = this.contents;
+            for (MutableContent content : this.contents)
+            {
+                indexContent(content);
+            }
+        }
+
+        return Collections.unmodifiableMap(this.contentIndex);
+    }
+
+    /**
+     * Adds the given content to the end of the {@link #contents} list and to the index from {@link #getContentIndex()}.
+     * This avoids indexing all the content again the next time the index is used.
+     * Use this when there is no content at the same path yet.
+     *
+     * @param content The content to add.
+     */
+    public void addIndexedContent(MutableContent content)
+    {
+        // Check whether the index is still valid so that we can extend it:
+        // NOTE: If the index is already out of date then we leave it to be rebuilt the next time it is used.
+        boolean isIndexValid = this.indexedContentList == this.contents && this.indexedContents.size() == this.contents.size();
+
+        // Add the content:
+        this.contents.add(content);
+        if (isIndexValid) indexContent(content);
+    }
+
+    /**
+     * Adds the given content to the index.
+     *
+     * @param content The content to index.
+     */
+    private void indexContent(MutableContent content)
+    {
+        this.contentIndex.putIfAbsent(content.absolutePath, content);
+        this.indexedContents.add(content);
+        this.indexedAbsolutePaths.add(content.absolutePath);
+    }
+
+    /**
+     * Marks the content of this area as unmodified, by remembering the content and its modification counts.
+     * See {@link #isModified()}.
+     */
+    public void markUnmodified()
+    {
+        this.unmodifiedContentList = this.contents;
+        this.unmodifiedContents.clear();
+        this.unmodifiedContents.addAll(this.contents);
+        if (this.unmodifiedModificationCounts.length != this.contents.size()) this.unmodifiedModificationCounts = new long[this.contents.size()];
+        for (int i = 0; i < this.unmodifiedModificationCounts.length; i++)
+        {
+            this.unmodifiedModificationCounts[i] = this.unmodifiedContents.get(i).getModificationCount();
+        }
+    }
+
+    /**
+     * Checks whether the content of this area has been modified since it was last marked with {@link #markUnmodified()}.
+     * Content that was added, removed, moved or replaced is noticed, even if it was done without going through the API,
+     * because this only compares references and the modification counts of the content (see {@link MutableContent#getModificationCount()}).
+     * That makes it much cheaper than comparing the content itself.
+     *
+     * @return True if the content has been modified since it was last marked as unmodified, or if it was never marked.
+     */
+    public boolean isModified()
+    {
+        // Check whether the content list has changed:
+        if (this.unmodifiedContentList != this.contents || this.unmodifiedContents.size() != this.contents.size()) return true;
+
+        // Check whether any of the content has changed:
+        for (int i = 0; i < this.unmodifiedContents.size(); i++)
+        {
+            MutableContent content = this.contents.get(i);
+            if (content != this.unmodifiedContents.get(i) || content.getModificationCount() != this.unmodifiedModificationCounts[i]) return true;
+        }
+        return false;
+    }
+
     @Override
     public boolean hasContent() {
         return !contents.isEmpty();
@@ -165,5 +402,6 @@ public class MutableContentArea extends ContentAreaBase<MutableContent>
     @Override
     public void clear() {
         this.contents.clear();
+        this.treeCache.clear();
     }
 }
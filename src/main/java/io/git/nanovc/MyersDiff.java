@@ -0,0 +1,205 @@
+package io.git.nanovc;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The linear space variant of the Myers difference algorithm.
+ * Each region is split at its middle snake until the regions are only insertions or deletions.
+ * The regions that are left to split are kept on a stack instead of recursing,
+ * so large inputs can't overflow the call stack.
+ *
+ * @see DiffAlgorithm#MYERS
+ */
+final class MyersDiff
+{
+    /**
+     * Finds the differences between a region of two sequences.
+     *
+     * @param a      The old sequence.
+     * @param b      The new sequence.
+     * @param beginA The index of the first element of the region in the old sequence.
+     * @param endA   The index after the last element of the region in the old sequence.
+     * @param beginB The index of the first element of the region in the new sequence.
+     * @param endB   The index after the last element of the region in the new sequence.
+     * @param edits  The edits that were found so far. The edits for the region are added to the end.
+     */
+    static void diff(DiffSequence a, DiffSequence b, int beginA, int endA, int beginB, int endB, List<DiffEdit> edits)
+    {
+        // Keep the regions that we still need to diff on a stack:
+        // NOTE: The earlier region is always on top so that the edits come out in order.
+        Deque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {beginA, endA, beginB, endB});
+        while (!regions.isEmpty())
+        {
+            // Get the next region:
+            int[] region = regions.pop();
+            int regionBeginA = region[0];
+            int regionEndA = region[1];
+            int regionBeginB = region[2];
+            int regionEndB = region[3];
+
+            // Skip the elements at the start and end that are the same:
+            while (regionBeginA < regionEndA && regionBeginB < regionEndB && a.equals(regionBeginA, b, regionBeginB))
+            {
+                regionBeginA++;
+                regionBeginB++;
+            }
+            while (regionBeginA < regionEndA && regionBeginB < regionEndB && a.equals(regionEndA - 1, b, regionEndB - 1))
+            {
+                regionEndA--;
+                regionEndB--;
+            }
+
+            // Check whether the region is only an insertion or a deletion:
+            if (regionBeginA == regionEndA || regionBeginB == regionEndB)
+            {
+                DiffAlgorithm.addEdit(edits, regionBeginA, regionEndA, regionBeginB, regionEndB);
+                continue;
+            }
+
+            // Find where to split the region:
+            int[] split = findMiddleSnake(a, b, regionBeginA, regionEndA, regionBeginB, regionEndB);
+            if (split == null
+                || (split[0] == regionBeginA && split[1] == regionBeginB)
+                || (split[0] == regionEndA && split[1] == regionEndB))
+            {
+                // There is nothing in common, so the whole region is replaced:
+                DiffAlgorithm.addEdit(edits, regionBeginA, regionEndA, regionBeginB, regionEndB);
+                continue;
+            }
+
+            // Diff each side of the split:
+            regions.push(new int[] {split[0], regionEndA, split[1], regionEndB});
+            regions.push(new int[] {regionBeginA, split[0], regionBeginB, split[1]});
+        }
+    }
+
+    /**
+     * Finds the point where the forward and backward searches of the shortest edit script meet.
+     * The first and last elements of the region must be different in the two sequences.
+     *
+     * @param a      The old sequence.
+     * @param b      The new sequence.
+     * @param beginA The index of the first element of the region in the old sequence.
+     * @param endA   The index after the last element of the region in the old sequence.
+     * @param beginB The index of the first element of the region in the new sequence.
+     * @param endB   The index after the last element of the region in the new sequence.
+     * @return The index in the old sequence and the index in the new sequence to split the region at. Null if the region has nothing in common.
+     */
+    private static int[] findMiddleSnake(DiffSequence a, DiffSequence b, int beginA, int endA, int beginB, int endB)
+    {
+        // Get the size of the region:
+        int n = endA - beginA;
+        int m = endB - beginB;
+
+        // Create the furthest reaching paths for each diagonal in each direction:
+        // NOTE: The backward paths measure how far they are from the end of the region.
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        // The paths can only meet when going forward if the difference in the sizes is odd:
+        int delta = n - m;
+        boolean checkWhenGoingForward = (delta & 1) != 0;
+
+        // Keep track of the diagonals that have gone off the edge of the region:
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+
+        for (int d = 0; d < maxD; d++)
+        {
+            // Take a step forward on each diagonal:
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2)
+            {
+                // Extend the best path onto this diagonal:
+                int kOffset = offset + k;
+                int x = (k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])) ? forward[kOffset + 1] : forward[kOffset - 1] + 1;
+                int y = x - k;
+
+                // Follow the snake:
+                while (x < n && y < m && a.equals(beginA + x, b, beginB + y))
+                {
+                    x++;
+                    y++;
+                }
+                forward[kOffset] = x;
+
+                if (x > n)
+                {
+                    // We went off the right of the region.
+                    forwardEnd += 2;
+                }
+                else if (y > m)
+                {
+                    // We went off the bottom of the region.
+                    forwardStart += 2;
+                }
+                else if (checkWhenGoingForward)
+                {
+                    // Check whether we overlap the backward path on this diagonal:
+                    int backwardOffset = offset + delta - k;
+                    if (backwardOffset >= 0 && backwardOffset < length && backward[backwardOffset] != -1 && x >= n - backward[backwardOffset])
+                    {
+                        return new int[] {beginA + x, beginB + y};
+                    }
+                }
+            }
+
+            // Take a step backward on each diagonal:
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2)
+            {
+                // Extend the best path onto this diagonal:
+                int kOffset = offset + k;
+                int x = (k == -d || (k != d && backward[kOffset - 1] < backward[kOffset + 1])) ? backward[kOffset + 1] : backward[kOffset - 1] + 1;
+                int y = x - k;
+
+                // Follow the snake backwards from the end:
+                while (x < n && y < m && a.equals(endA - 1 - x, b, endB - 1 - y))
+                {
+                    x++;
+                    y++;
+                }
+                backward[kOffset] = x;
+
+                if (x > n)
+                {
+                    // We went off the left of the region.
+                    backwardEnd += 2;
+                }
+                else if (y > m)
+                {
+                    // We went off the top of the region.
+                    backwardStart += 2;
+                }
+                else if (!checkWhenGoingForward)
+                {
+                    // Check whether we overlap the forward path on this diagonal:
+                    int forwardOffset = offset + delta - k;
+                    if (forwardOffset >= 0 && forwardOffset < length && forward[forwardOffset] != -1)
+                    {
+                        int forwardX = forward[forwardOffset];
+                        int forwardY = offset + forwardX - forwardOffset;
+                        if (forwardX >= n - x)
+                        {
+                            return new int[] {beginA + forwardX, beginB + forwardY};
+                        }
+                    }
+                }
+            }
+        }
+
+        // The paths never met, so there is nothing in common:
+        return null;
+    }
+}
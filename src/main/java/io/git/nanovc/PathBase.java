@@ -1,6 +1,7 @@
 package io.git.nanovc;
 
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A base class for specific types of paths in a {@link Repo}.
@@ -20,12 +21,45 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
      */
     public static final String DELIMITER = "/";
 
+    /**
+     * The delimiter used for sub folders in a path, as a character.
+     */
+    public static final char DELIMITER_CHAR = '/';
+
     /**
      * The path in the repository.
      * This uses / to denote folder boundaries. See ({@link #DELIMITER}).
      */
     public final String path;
 
+    /**
+     * The largest number of segments that we keep in the shared dictionary of segments before it is cleared.
+     */
+    public static final int MAX_INTERNED_SEGMENTS = 65536;
+
+    /**
+     * The canonical instance of each segment of a path.
+     * Tree walks resolve the same few names over and over again, so paths share a single string instance for each segment.
+     * The key and the value are the same string instance.
+     */
+    private static final ConcurrentHashMap<String, String> internedSegments = new ConcurrentHashMap<>();
+
+    /**
+     * An empty array of parts, for paths like the root.
+     */
+    private static final String[] NO_PARTS = new String[0];
+
+    /**
+     * The interned segments of the path, split by the {@link #DELIMITER}.
+     * This is only worked out when it is first needed, unless the path was resolved from another path that already had its parts.
+     */
+    private String[] parts;
+
+    /**
+     * The cached hash code of the path. Zero if it hasn't been worked out yet.
+     */
+    private int hashCode;
+
     /**
      * Creates the given path.
      * @param relativeOrAbsolutePath The relative or absolute path to resolve. Absolute paths start with a / {@link #DELIMITER}. Relative paths don't.
@@ -35,6 +69,17 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
         this.path = relativeOrAbsolutePath;
     }
 
+    /**
+     * Creates the given path when we already know its parts.
+     * @param relativeOrAbsolutePath The relative or absolute path to resolve. Absolute paths start with a / {@link #DELIMITER}. Relative paths don't.
+     * @param parts                  The interned segments of the path. The array is not copied so it must not be modified.
+     */
+    protected PathBase(String relativeOrAbsolutePath, String[] parts)
+    {
+        this.path = relativeOrAbsolutePath;
+        this.parts = parts;
+    }
+
     /**
      * A factory method to create a new instance of the specific path.
      * @param relativeOrAbsolutePath The relative or absolute path to resolve. Absolute paths start with a / {@link #DELIMITER}. Relative paths don't.
@@ -42,6 +87,29 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
      */
     protected abstract TSelf createInstance(String relativeOrAbsolutePath);
 
+    /**
+     * A factory method to create a new instance of the specific path when we already know its parts.
+     * This lets us skip splitting the path again.
+     * By default this creates the instance with {@link #createInstance(String)} and hands it the parts,
+     * so specific paths only need to override this if they can't be created that way.
+     * @param relativeOrAbsolutePath The relative or absolute path to resolve. Absolute paths start with a / {@link #DELIMITER}. Relative paths don't.
+     * @param parts                  The interned segments of the path. The array is not copied so it must not be modified.
+     * @return The new instance at the given path.
+     */
+    protected TSelf createInstance(String relativeOrAbsolutePath, String[] parts)
+    {
+        // Create the instance with the existing factory method:
+        TSelf instance = createInstance(relativeOrAbsolutePath);
+
+        // Hand over the parts if the instance doesn't have any yet so that they don't need to be split again:
+        if (instance instanceof PathBase)
+        {
+            PathBase<?> pathBase = (PathBase<?>) instance;
+            if (pathBase.parts == null && relativeOrAbsolutePath.equals(pathBase.path)) pathBase.parts = parts;
+        }
+        return instance;
+    }
+
     /**
      * Resolves the relative path from the current path.
      * It supports relative and absolute paths.
@@ -64,16 +132,33 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
         {
             // The input is a relative path.
 
+            // Work out the parts of the resolved path from the parts that we already have:
+            // NOTE: This is usually a single name from a tree entry, so we don't need to split the whole path again.
+            String[] currentParts = getParts();
+            String[] relativeParts = relativeOrAbsolutePath.indexOf(DELIMITER_CHAR) < 0
+                                     ? (relativeOrAbsolutePath.isEmpty() ? NO_PARTS : new String[] {internSegment(relativeOrAbsolutePath)})
+                                     : split(relativeOrAbsolutePath);
+            String[] resolvedParts;
+            if (relativeParts.length == 0)
+            {
+                resolvedParts = currentParts;
+            }
+            else
+            {
+                resolvedParts = Arrays.copyOf(currentParts, currentParts.length + relativeParts.length);
+                System.arraycopy(relativeParts, 0, resolvedParts, currentParts.length, relativeParts.length);
+            }
+
             // Check whether the current path already has a delimiter:
             if (this.path.endsWith(DELIMITER))
             {
                 // The current path ends with the delimiter.
-                return createInstance(this.path + relativeOrAbsolutePath);
+                return createInstance(this.path + relativeOrAbsolutePath, resolvedParts);
             }
             else
             {
                 // The current path does not have a delimiter.
-                return createInstance(String.join(DELIMITER, this.path, relativeOrAbsolutePath));
+                return createInstance(this.path + DELIMITER_CHAR + relativeOrAbsolutePath, resolvedParts);
             }
         }
     }
@@ -96,7 +181,8 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
         else
         {
             // The current path does not have a delimiter.
-            return createInstance(this.path + DELIMITER);
+            // NOTE: The parts stay the same.
+            return createInstance(this.path + DELIMITER, this.parts);
         }
     }
 
@@ -118,7 +204,8 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
         {
             // The current path is relative.
             // Prepend the delimiter to make it absolute:
-            return createInstance(DELIMITER + this.path);
+            // NOTE: The parts stay the same.
+            return createInstance(DELIMITER + this.path, this.parts);
         }
     }
 
@@ -136,18 +223,137 @@ public abstract class PathBase<TSelf extends Path<TSelf>> implements Path<TSelf>
     /**
      * Splits the path into separate parts, broken up by the path delimiter '/'.
      * If it's an absolute path then the first part is the entry straight under the root (the blank string for the root is stripped off).
-     * @return The separate parts of the path.
+     * @return The separate parts of the path. This is a new array each time so that you can modify it.
      */
     @Override
     public String[] splitIntoParts()
     {
-        // Split the path by the delimiter:
-        String[] parts = this.path.split(DELIMITER);
+        return getParts().clone();
+    }
 
-        // Remove any blank parts:
-        String[] cleanParts = Arrays.stream(parts).filter(part -> part != null && !part.isEmpty()).toArray(String[]::new);
+    /**
+     * Gets the number of parts in the path.
+     * This doesn't allocate once the parts are known.
+     * @return The number of parts in the path.
+     */
+    public int getPartCount()
+    {
+        return getParts().length;
+    }
+
+    /**
+     * Gets the part of the path at the given index.
+     * This doesn't allocate once the parts are known.
+     * @param index The index of the part to get.
+     * @return The interned part of the path at the given index.
+     */
+    public String getPart(int index)
+    {
+        return getParts()[index];
+    }
+
+    /**
+     * Gets the interned parts of the path, splitting the path the first time that they are needed.
+     * @return The cached parts of the path. This must not be modified.
+     */
+    private String[] getParts()
+    {
+        // Check whether we already have the parts:
+        String[] parts = this.parts;
+        if (parts == null)
+        {
+            // Split the path:
+            parts = this.path == null ? NO_PARTS : split(this.path);
+            this.parts = parts;
+        }
+        return parts;
+    }
+
+    /**
+     * Splits the given path into its interned segments, skipping blank segments.
+     * The path is split by hand so that we don't need a regular expression.
+     * @param path The path to split.
+     * @return The interned segments of the path.
+     */
+    private static String[] split(String path)
+    {
+        // Count the segments:
+        int length = path.length();
+        int count = 0;
+        for (int start = 0; start < length; )
+        {
+            int end = path.indexOf(DELIMITER_CHAR, start);
+            if (end < 0) end = length;
+            if (end > start) count++;
+            start = end + 1;
+        }
+
+        // Check whether there are any segments:
+        if (count == 0) return NO_PARTS;
+
+        // Extract the segments:
+        String[] parts = new String[count];
+        int index = 0;
+        for (int start = 0; start < length; )
+        {
+            int end = path.indexOf(DELIMITER_CHAR, start);
+            if (end < 0) end = length;
+            if (end > start) parts[index++] = internSegment(path.substring(start, end));
+            start = end + 1;
+        }
+        return parts;
+    }
+
+    /**
+     * Gets the canonical instance of the given segment of a path.
+     * The dictionary is simply cleared if it gets too big.
+     * @param segment The segment to intern.
+     * @return The canonical instance of the segment.
+     */
+    protected static String internSegment(String segment)
+    {
+        // Check whether we already have a canonical instance:
+        String canonicalSegment = internedSegments.get(segment);
+        if (canonicalSegment != null) return canonicalSegment;
+
+        // Make sure we don't grow forever:
+        if (internedSegments.size() >= MAX_INTERNED_SEGMENTS) internedSegments.clear();
+
+        // Save the segment as the canonical instance:
+        canonicalSegment = internedSegments.putIfAbsent(segment, segment);
+        return canonicalSegment == null ? segment : canonicalSegment;
+    }
+
+    /**
+     * Checks whether the given object is the same type of path at the same location.
+     * @param o The object to compare.
+     * @return True if the object is the same type of path with the same string.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
 
-        return cleanParts;
+        PathBase<?> other = (PathBase<?>) o;
+        return hashCode() == other.hashCode() && toString().equals(other.toString());
+    }
+
+    /**
+     * Gets the hash code of the path.
+     * It is only worked out the first time that it is needed.
+     * @return The hash code of the path.
+     */
+    @Override
+    public int hashCode()
+    {
+        int hashCode = this.hashCode;
+        if (hashCode == 0)
+        {
+            hashCode = toString().hashCode();
+            this.hashCode = hashCode;
+        }
+        return hashCode;
     }
 
     /**
@@ -52,6 +52,15 @@ public interface Pattern<TSelf extends Pattern<TSelf, TPath>, TPath extends Path
      */
     boolean matches(String absolutePath);
 
+    /**
+     * Checks whether any content inside the given folder could match this pattern.
+     * This lets a tree walk skip whole sub trees that can't have any matches.
+     *
+     * @param absoluteFolderPath The absolute path (starting with /) of the folder to check.
+     * @return True if content inside the folder could match the pattern. False if nothing inside the folder can match.
+     */
+    boolean mightMatchInside(String absoluteFolderPath);
+
     /**
      * Gets another pattern that matches this pattern OR the other pattern.
      * @param otherPattern The other pattern that we also want to match optionally.
@@ -104,6 +104,25 @@ public abstract class PatternBase<TSelf extends Pattern<TSelf, TPath>, TPath ext
         return matcher.matches();
     }
 
+    /**
+     * Checks whether any content inside the given folder could match this pattern.
+     * This lets a tree walk skip whole sub trees that can't have any matches.
+     *
+     * @param absoluteFolderPath The absolute path (starting with /) of the folder to check.
+     * @return True if content inside the folder could match the pattern. False if nothing inside the folder can match.
+     */
+    @Override
+    public boolean mightMatchInside(String absoluteFolderPath)
+    {
+        // Get the prefix that all the paths inside the folder start with:
+        String folderPrefix = absoluteFolderPath.endsWith(PathBase.DELIMITER) ? absoluteFolderPath : absoluteFolderPath + PathBase.DELIMITER;
+
+        // Match the prefix against the pattern:
+        // NOTE: If the matcher never needed to look past the end of the prefix then no longer path can match either.
+        Matcher matcher = regex.matcher(folderPrefix);
+        return matcher.matches() || matcher.hitEnd();
+    }
+
     /**
      * Finds all paths that match the pattern.
      *
@@ -0,0 +1,729 @@
+package io.git.nanovc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A persistent map of content indexed by the absolute path of the content in the repo.
+ * This is a hash array mapped trie (HAMT).
+ * <p>
+ * The map is immutable. Putting or removing content returns a new map and leaves this one untouched.
+ * The new map shares every node that didn't change with the old map,
+ * so a change only copies the handful of small nodes along the path to the changed entry.
+ * This means that many versions of the map can be kept at once without copying all the content for each of them,
+ * and two versions can be compared quickly because the nodes that they share are skipped. See {@link #diff}.
+ *
+ * @param <TContent> The type of content that is being stored in this content map.
+ */
+public final class PersistentContentMap<TContent extends Content> implements Iterable<TContent>
+{
+    /**
+     * The number of bits of the hash that are used at each level of the trie.
+     */
+    private static final int BITS_PER_LEVEL = 5;
+
+    /**
+     * The mask for the bits of the hash that are used at each level of the trie.
+     */
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    /**
+     * The empty map.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentContentMap EMPTY = new PersistentContentMap<>(null, 0);
+
+    /**
+     * The root node of the trie. Null if the map is empty.
+     */
+    private final Node root;
+
+    /**
+     * The number of entries in the map.
+     */
+    private final int size;
+
+    /**
+     * Creates a map with the given root.
+     *
+     * @param root The root node of the trie. Null if the map is empty.
+     * @param size The number of entries in the map.
+     */
+    private PersistentContentMap(Node root, int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty map.
+     *
+     * @param <TContent> The type of content that is being stored in this content map.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <TContent extends Content> PersistentContentMap<TContent> empty()
+    {
+        return (PersistentContentMap<TContent>) EMPTY;
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return The number of entries in the map.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Checks whether the map is empty.
+     *
+     * @return True if there are no entries in the map.
+     */
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets the content at the given path.
+     *
+     * @param absolutePath The absolute path in the repo of the content to get.
+     * @return The content at the given path. Null if there is no content at the path.
+     */
+    @SuppressWarnings("unchecked")
+    public TContent getContent(String absolutePath)
+    {
+        // Walk down the trie:
+        int hash = hash(absolutePath);
+        Node node = this.root;
+        for (int shift = 0; node != null; shift += BITS_PER_LEVEL)
+        {
+            // Check whether we have reached a node with colliding hashes:
+            if (node instanceof CollisionNode) return (TContent) ((CollisionNode) node).get(absolutePath);
+
+            // Get the entry for this part of the hash:
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = bit(hash, shift);
+            if ((bitmapNode.bitmap & bit) == 0) return null;
+            Object entry = bitmapNode.entries[bitmapNode.index(bit)];
+
+            // Check whether the entry is content or another node:
+            if (entry instanceof Node)
+            {
+                node = (Node) entry;
+            }
+            else
+            {
+                Content content = (Content) entry;
+                return absolutePath.equals(content.getAbsolutePath()) ? (TContent) content : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the given content into a new map.
+     * It replaces any content at the same path.
+     *
+     * @param content The content to put. It gets indexed by the content absolute path.
+     * @return A new map with the content. This same map if the content was already in the map.
+     */
+    public PersistentContentMap<TContent> putContent(TContent content)
+    {
+        // Put the content in the trie:
+        String absolutePath = content.getAbsolutePath();
+        boolean[] added = new boolean[1];
+        Node newRoot = this.root == null ? BitmapNode.EMPTY.put(0, hash(absolutePath), content, added) : this.root.put(0, hash(absolutePath), content, added);
+
+        // Check whether anything changed:
+        if (newRoot == this.root) return this;
+
+        return new PersistentContentMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Removes the content at the given path from a new map.
+     *
+     * @param absolutePath The absolute path in the repo of the content to remove.
+     * @return A new map without the content. This same map if there was no content at the path.
+     */
+    public PersistentContentMap<TContent> removeContent(String absolutePath)
+    {
+        // Make sure we have content:
+        if (this.root == null) return this;
+
+        // Remove the content from the trie:
+        Node newRoot = this.root.remove(0, hash(absolutePath), absolutePath);
+
+        // Check whether anything changed:
+        if (newRoot == this.root) return this;
+
+        return newRoot == null ? empty() : new PersistentContentMap<>(newRoot, this.size - 1);
+    }
+
+    /**
+     * Iterates over the content in the map.
+     * The order is not defined.
+     *
+     * @return An iterator over the content in the map.
+     */
+    @Override
+    public Iterator<TContent> iterator()
+    {
+        return new Iterator<TContent>()
+        {
+            /**
+             * The nodes that we still need to visit, along with the index of the next entry in each of them.
+             */
+            private final Deque<Object[]> nodeStack = new ArrayDeque<>();
+
+            /**
+             * The positions of the next entry in each of the nodes on the stack.
+             */
+            private final Deque<int[]> positionStack = new ArrayDeque<>();
+
+            /**
+             * The next content to return. Null if there is no more content.
+             */
+            private Content next;
+
+            {
+                // Start at the root:
+                if (root != null) push(root);
+                advance();
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return this.next != null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public TContent next()
+            {
+                if (this.next == null) throw new NoSuchElementException();
+                Content content = this.next;
+                advance();
+                return (TContent) content;
+            }
+
+            /**
+             * Pushes the entries of the given node on the stack.
+             *
+             * @param node The node to push.
+             */
+            private void push(Node node)
+            {
+                this.nodeStack.push(node.getEntries());
+                this.positionStack.push(new int[1]);
+            }
+
+            /**
+             * Moves to the next content in the trie.
+             */
+            private void advance()
+            {
+                this.next = null;
+                while (!this.nodeStack.isEmpty())
+                {
+                    // Get the next entry in the node on top of the stack:
+                    Object[] entries = this.nodeStack.peek();
+                    int[] position = this.positionStack.peek();
+                    if (position[0] >= entries.length)
+                    {
+                        // We are done with this node.
+                        this.nodeStack.pop();
+                        this.positionStack.pop();
+                        continue;
+                    }
+                    Object entry = entries[position[0]++];
+
+                    // Check whether the entry is content or another node:
+                    if (entry instanceof Node)
+                    {
+                        push((Node) entry);
+                    }
+                    else
+                    {
+                        this.next = (Content) entry;
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Performs the given action for each piece of content in the map.
+     * The order is not defined.
+     *
+     * @param action The action to perform on each piece of content.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super TContent> action)
+    {
+        if (this.root != null) this.root.forEach((Consumer<Content>) action);
+    }
+
+    /**
+     * Gets a stream of the content in the map.
+     *
+     * @return A stream of the content in the map.
+     */
+    public Stream<TContent> stream()
+    {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Compares this map with another map and reports each path where the content is different.
+     * Nodes that the two maps share are skipped without being looked at,
+     * so comparing two versions of a map only costs as much as the changes between them.
+     * Content is compared by reference.
+     *
+     * @param other       The other map to compare with.
+     * @param differences Called with the content in this map and the content in the other map for each path that is different. The content is null on the side that doesn't have the path.
+     */
+    @SuppressWarnings("unchecked")
+    public void diff(PersistentContentMap<TContent> other, BiConsumer<TContent, TContent> differences)
+    {
+        diffEntries(this.root, other.root, (BiConsumer<Content, Content>) differences);
+    }
+
+    /**
+     * Compares two entries of the trie (content or nodes) and reports each path where the content is different.
+     *
+     * @param entry1      The entry in the first map. Null if there is no entry.
+     * @param entry2      The entry in the second map. Null if there is no entry.
+     * @param differences Called for each path that is different.
+     */
+    private static void diffEntries(Object entry1, Object entry2, BiConsumer<Content, Content> differences)
+    {
+        // Skip entries that are shared:
+        if (entry1 == entry2) return;
+
+        // Check whether both entries are nodes at the same level:
+        if (entry1 instanceof BitmapNode && entry2 instanceof BitmapNode)
+        {
+            // Compare the entries for each part of the hash:
+            BitmapNode node1 = (BitmapNode) entry1;
+            BitmapNode node2 = (BitmapNode) entry2;
+            for (int bits = node1.bitmap | node2.bitmap; bits != 0; bits &= bits - 1)
+            {
+                int bit = Integer.lowestOneBit(bits);
+                diffEntries(
+                        (node1.bitmap & bit) == 0 ? null : node1.entries[node1.index(bit)],
+                        (node2.bitmap & bit) == 0 ? null : node2.entries[node2.index(bit)],
+                        differences
+                );
+            }
+            return;
+        }
+
+        // Check whether both entries are content:
+        if (!(entry1 instanceof Node) && !(entry2 instanceof Node))
+        {
+            Content content1 = (Content) entry1;
+            Content content2 = (Content) entry2;
+            if (content1 != null && content2 != null && !content1.getAbsolutePath().equals(content2.getAbsolutePath()))
+            {
+                // The entries are for different paths.
+                differences.accept(content1, null);
+                differences.accept(null, content2);
+            }
+            else
+            {
+                differences.accept(content1, content2);
+            }
+            return;
+        }
+
+        // The entries have different shapes, so compare the content in them directly:
+        // NOTE: This only happens for small parts of the trie.
+        Map<String, Content> contents2 = new HashMap<>();
+        forEachContent(entry2, content -> contents2.put(content.getAbsolutePath(), content));
+        forEachContent(entry1, content1 ->
+        {
+            Content content2 = contents2.remove(content1.getAbsolutePath());
+            if (content1 != content2) differences.accept(content1, content2);
+        });
+        contents2.values().forEach(content2 -> differences.accept(null, content2));
+    }
+
+    /**
+     * Performs the given action for each piece of content in the given entry of the trie.
+     *
+     * @param entry  The entry of the trie (content or a node). Null if there is no entry.
+     * @param action The action to perform on each piece of content.
+     */
+    private static void forEachContent(Object entry, Consumer<Content> action)
+    {
+        if (entry instanceof Node)
+        {
+            ((Node) entry).forEach(action);
+        }
+        else if (entry != null)
+        {
+            action.accept((Content) entry);
+        }
+    }
+
+    /**
+     * Gets the hash of the given path.
+     * The bits are spread so that paths that only differ at the end still use different branches of the trie.
+     *
+     * @param absolutePath The path to hash.
+     * @return The hash of the path.
+     */
+    private static int hash(String absolutePath)
+    {
+        int hash = absolutePath.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Gets the bit for the given hash at the given level of the trie.
+     *
+     * @param hash  The hash of the path.
+     * @param shift The number of bits of the hash that were used by the levels above.
+     * @return The bit for the hash at this level.
+     */
+    private static int bit(int hash, int shift)
+    {
+        return 1 << ((hash >>> shift) & LEVEL_MASK);
+    }
+
+    /**
+     * A node in the trie.
+     * Nodes are never modified once they have been created.
+     */
+    private static abstract class Node
+    {
+        /**
+         * Puts the content below this node.
+         *
+         * @param shift   The number of bits of the hash that were used by the levels above this node.
+         * @param hash    The hash of the path of the content.
+         * @param content The content to put.
+         * @param added   Set to true if the content was added rather than replacing existing content.
+         * @return The new node with the content. This same node if the content was already there.
+         */
+        abstract Node put(int shift, int hash, Content content, boolean[] added);
+
+        /**
+         * Removes the content at the given path from below this node.
+         *
+         * @param shift        The number of bits of the hash that were used by the levels above this node.
+         * @param hash         The hash of the path.
+         * @param absolutePath The path of the content to remove.
+         * @return The new node without the content. This same node if there was no content. Null if the node is now empty.
+         */
+        abstract Node remove(int shift, int hash, String absolutePath);
+
+        /**
+         * Gets the entries of this node. These are content or other nodes.
+         *
+         * @return The entries of this node. This must not be modified.
+         */
+        abstract Object[] getEntries();
+
+        /**
+         * Performs the given action for each piece of content below this node.
+         *
+         * @param action The action to perform.
+         */
+        void forEach(Consumer<Content> action)
+        {
+            for (Object entry : getEntries())
+            {
+                forEachContent(entry, action);
+            }
+        }
+    }
+
+    /**
+     * A node that has an entry for each part of the hash that is used.
+     * The bitmap says which parts of the hash have entries and the entries are stored compactly in the same order.
+     */
+    private static final class BitmapNode extends Node
+    {
+        /**
+         * A node without any entries.
+         */
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        /**
+         * The bits for the parts of the hash that have entries.
+         */
+        final int bitmap;
+
+        /**
+         * The entries for each bit that is set, in order. These are content or other nodes.
+         */
+        final Object[] entries;
+
+        /**
+         * Creates a new node.
+         *
+         * @param bitmap  The bits for the parts of the hash that have entries.
+         * @param entries The entries for each bit that is set, in order.
+         */
+        BitmapNode(int bitmap, Object[] entries)
+        {
+            this.bitmap = bitmap;
+            this.entries = entries;
+        }
+
+        /**
+         * Gets the index of the entry for the given bit.
+         *
+         * @param bit The bit for the part of the hash.
+         * @return The index of the entry for the bit.
+         */
+        int index(int bit)
+        {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        @Override
+        Node put(int shift, int hash, Content content, boolean[] added)
+        {
+            // Get the entry for this part of the hash:
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((this.bitmap & bit) == 0)
+            {
+                // There is no entry yet, so insert the content:
+                Object[] newEntries = new Object[this.entries.length + 1];
+                System.arraycopy(this.entries, 0, newEntries, 0, index);
+                newEntries[index] = content;
+                System.arraycopy(this.entries, index, newEntries, index + 1, this.entries.length - index);
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, newEntries);
+            }
+
+            // Work out the new entry:
+            Object entry = this.entries[index];
+            Object newEntry;
+            if (entry instanceof Node)
+            {
+                // Put the content in the child node:
+                newEntry = ((Node) entry).put(shift + BITS_PER_LEVEL, hash, content, added);
+            }
+            else
+            {
+                Content existingContent = (Content) entry;
+                if (existingContent.getAbsolutePath().equals(content.getAbsolutePath()))
+                {
+                    // Replace the existing content:
+                    newEntry = content;
+                }
+                else
+                {
+                    // Split the entry into a child node with both pieces of content:
+                    newEntry = createNode(shift + BITS_PER_LEVEL, hash(existingContent.getAbsolutePath()), existingContent, hash, content);
+                    added[0] = true;
+                }
+            }
+
+            // Check whether anything changed:
+            if (newEntry == entry) return this;
+
+            // Copy the node with the new entry:
+            Object[] newEntries = this.entries.clone();
+            newEntries[index] = newEntry;
+            return new BitmapNode(this.bitmap, newEntries);
+        }
+
+        @Override
+        Node remove(int shift, int hash, String absolutePath)
+        {
+            // Get the entry for this part of the hash:
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) return this;
+            int index = index(bit);
+
+            // Work out the new entry:
+            Object entry = this.entries[index];
+            Object newEntry;
+            if (entry instanceof Node)
+            {
+                // Remove the content from the child node:
+                newEntry = ((Node) entry).remove(shift + BITS_PER_LEVEL, hash, absolutePath);
+            }
+            else
+            {
+                // Check whether this is the content to remove:
+                newEntry = absolutePath.equals(((Content) entry).getAbsolutePath()) ? null : entry;
+            }
+
+            // Check whether anything changed:
+            if (newEntry == entry) return this;
+
+            // Check whether the entry was removed:
+            if (newEntry == null)
+            {
+                // Check whether this node is now empty:
+                if (this.entries.length == 1) return null;
+
+                // Copy the node without the entry:
+                Object[] newEntries = new Object[this.entries.length - 1];
+                System.arraycopy(this.entries, 0, newEntries, 0, index);
+                System.arraycopy(this.entries, index + 1, newEntries, index, newEntries.length - index);
+                return new BitmapNode(this.bitmap & ~bit, newEntries);
+            }
+
+            // Copy the node with the new entry:
+            Object[] newEntries = this.entries.clone();
+            newEntries[index] = newEntry;
+            return new BitmapNode(this.bitmap, newEntries);
+        }
+
+        @Override
+        Object[] getEntries()
+        {
+            return this.entries;
+        }
+
+        /**
+         * Creates a node that holds two pieces of content with different paths.
+         *
+         * @param shift    The number of bits of the hash that were used by the levels above the new node.
+         * @param hash1    The hash of the path of the first content.
+         * @param content1 The first content.
+         * @param hash2    The hash of the path of the second content.
+         * @param content2 The second content.
+         * @return A new node with both pieces of content.
+         */
+        static Node createNode(int shift, int hash1, Content content1, int hash2, Content content2)
+        {
+            // Check whether the hashes are the same, in which case we can't split them any further:
+            if (hash1 == hash2) return new CollisionNode(hash1, new Content[] {content1, content2});
+
+            // Check whether the hashes are the same at this level:
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 == bit2)
+            {
+                // Split them at the next level:
+                return new BitmapNode(bit1, new Object[] {createNode(shift + BITS_PER_LEVEL, hash1, content1, hash2, content2)});
+            }
+
+            // Put them side by side in order:
+            return Integer.compareUnsigned(bit1, bit2) < 0
+                   ? new BitmapNode(bit1 | bit2, new Object[] {content1, content2})
+                   : new BitmapNode(bit1 | bit2, new Object[] {content2, content1});
+        }
+    }
+
+    /**
+     * A node for content whose paths have exactly the same hash.
+     */
+    private static final class CollisionNode extends Node
+    {
+        /**
+         * The hash that all the paths in this node have.
+         */
+        final int hash;
+
+        /**
+         * The content in this node.
+         */
+        final Content[] contents;
+
+        /**
+         * Creates a new node.
+         *
+         * @param hash     The hash that all the paths in this node have.
+         * @param contents The content in this node.
+         */
+        CollisionNode(int hash, Content[] contents)
+        {
+            this.hash = hash;
+            this.contents = contents;
+        }
+
+        /**
+         * Gets the content at the given path.
+         *
+         * @param absolutePath The path of the content.
+         * @return The content at the path. Null if there is no content at the path.
+         */
+        Content get(String absolutePath)
+        {
+            for (Content content : this.contents)
+            {
+                if (absolutePath.equals(content.getAbsolutePath())) return content;
+            }
+            return null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Content content, boolean[] added)
+        {
+            // Check whether the content belongs in this node:
+            if (hash != this.hash)
+            {
+                // Put this node in a bitmap node at this level so that the content can go next to it:
+                return new BitmapNode(bit(this.hash, shift), new Object[] {this}).put(shift, hash, content, added);
+            }
+
+            // Check whether we are replacing existing content:
+            for (int i = 0; i < this.contents.length; i++)
+            {
+                if (this.contents[i].getAbsolutePath().equals(content.getAbsolutePath()))
+                {
+                    if (this.contents[i] == content) return this;
+                    Content[] newContents = this.contents.clone();
+                    newContents[i] = content;
+                    return new CollisionNode(this.hash, newContents);
+                }
+            }
+
+            // Add the content:
+            Content[] newContents = Arrays.copyOf(this.contents, this.contents.length + 1);
+            newContents[this.contents.length] = content;
+            added[0] = true;
+            return new CollisionNode(this.hash, newContents);
+        }
+
+        @Override
+        Node remove(int shift, int hash, String absolutePath)
+        {
+            // Find the content to remove:
+            List<Content> newContents = new ArrayList<>(this.contents.length);
+            for (Content content : this.contents)
+            {
+                if (!absolutePath.equals(content.getAbsolutePath())) newContents.add(content);
+            }
+
+            // Check whether anything changed:
+            if (newContents.size() == this.contents.length) return this;
+            if (newContents.isEmpty()) return null;
+            return new CollisionNode(this.hash, newContents.toArray(new Content[0]));
+        }
+
+        @Override
+        Object[] getEntries()
+        {
+            return this.contents;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package io.git.nanovc;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * The interface for low level plumbing commands on a Nano Version Control repository.
@@ -218,6 +220,19 @@ public interface PlumbingCommands
      */
     Hash hash_object_write_string(String string);
 
+    /**
+     * Compute object IDs for a batch of repo objects and write them all to the database.
+     * The objects are hashed in parallel, duplicates within the batch are only stored once
+     * and the unique objects are written to the object database in a single pass.
+     * This is useful when importing many objects at once.
+     * <p>
+     * https://git-scm.com/docs/git-hash-object
+     *
+     * @param repoObjects The repo objects to update with their hashes and write to the database.
+     * @return The hashes of the repo objects, in the same order as the given repo objects.
+     */
+    List<Hash> hash_objects_write(Collection<? extends RepoObject> repoObjects);
+
     //    void ls_files();
     //    void merge_base();
     //    void read_tree();
@@ -330,6 +345,29 @@ public interface PlumbingCommands
     Tree write_tree();
 
 
+    /**
+     * Saves the index (staging area) to a file so that it can be loaded again later with {@link #read_index(java.nio.file.Path)}.
+     * The trees for the staging area are written first so that every entry in the index references a blob in the object database.
+     * <p>
+     * https://git-scm.com/docs/index-format
+     *
+     * @param file The file to save the index to. Any existing file is replaced.
+     * @return The root tree for the staging area that was saved.
+     */
+    Tree write_index(java.nio.file.Path file);
+
+    /**
+     * Loads the index (staging area) from a file that was saved with {@link #write_index(java.nio.file.Path)}.
+     * The current staging area is replaced.
+     * The blobs that the index references must be in the object database.
+     * <p>
+     * https://git-scm.com/docs/index-format
+     *
+     * @param file The file to load the index from.
+     * @return The content that was put in the staging area.
+     */
+    List<MutableContent> read_index(java.nio.file.Path file);
+
     /**
      * Reads tree information into the index (staging area).
      * Keep the current index contents,
@@ -394,6 +432,31 @@ public interface PlumbingCommands
      */
     List<MutableContent> read_tree(String rootTreeHashValue, String prefixPath);
 
+    /**
+     * Lists the contents of a tree object, including all of its sub trees (like "git ls-tree -r -t").
+     * <p>
+     * https://git-scm.com/docs/git-ls-tree
+     * <p>
+     * The entries are streamed in the order of a depth first walk and each sub tree comes before its entries.
+     * The trees are only read as the stream reaches them, so huge trees can be scanned without materializing them.
+     * A parallel stream splits the work across the sub trees.
+     *
+     * @param treeHashValue The SHA1 hash value of the tree to list.
+     * @return A stream of the entries in the tree and its sub trees.
+     */
+    Stream<TreePathEntry> ls_tree(String treeHashValue);
+
+    /**
+     * Walks the contents of a tree object, including all of its sub trees, and calls the visitor for each entry.
+     * The visitor can skip sub trees, in which case they are not read at all.
+     * <p>
+     * https://git-scm.com/docs/git-ls-tree
+     *
+     * @param treeHashValue The SHA1 hash value of the tree to walk.
+     * @param visitor       The visitor to call for each entry.
+     */
+    void ls_tree(String treeHashValue, TreeVisitor visitor);
+
     /**
      * Create a new commit object.
      * <p>
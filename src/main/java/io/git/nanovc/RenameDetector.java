@@ -0,0 +1,446 @@
+package io.git.nanovc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Finds content that was renamed or copied in a list of differences.
+ * Content that was deleted from one path and added at another becomes {@link ContentState#RENAMED},
+ * and added content that came from content that is still there becomes {@link ContentState#COPIED}.
+ * <p>
+ * Comparing every added path with every deleted path is quadratic, so the pairs are found in two cheap passes instead:
+ * <ol>
+ * <li>Blobs are content addressed, so content that moved without changing is matched by its hash.</li>
+ * <li>Every other piece of content gets a MinHash sketch of its chunks (lines, split further if they are long).
+ * The sketches are indexed with locality sensitive hashing, which puts them in buckets by bands of the sketch,
+ * so each added path is only compared with the sources that share a bucket with it.
+ * The bands are sized from the {@link #minimumScore} so that almost every pair that is similar enough shares a bucket.</li>
+ * </ol>
+ * This keeps the work close to linear in the number of paths, even for large reorganizations.
+ * The similarity of a pair is the fraction of the sketch that matches,
+ * which estimates the Jaccard similarity of the chunks of the two versions of content.
+ * <p>
+ * Content that was deleted can be renamed once. Every other match with it, and every match with the old version of
+ * modified content, is a copy. Like git without --find-copies-harder, content that didn't change is not a copy source.
+ * <p>
+ * https://git-scm.com/docs/git-diff#Documentation/git-diff.txt--Mltngt
+ */
+public class RenameDetector
+{
+    /**
+     * The number of values in a MinHash sketch.
+     */
+    public static final int SKETCH_SIZE = 64;
+
+    /**
+     * The chance that a pair at exactly the {@link #minimumScore} shares a bucket of the index, which the bands are sized for.
+     * Pairs that are more similar are even more likely to share a bucket.
+     */
+    public static final double MINIMUM_RECALL = 0.99;
+
+    /**
+     * The longest chunk of content that is hashed for a sketch.
+     * Longer lines (and binary content without lines) are split into chunks of this many bytes.
+     */
+    public static final int MAX_CHUNK_LENGTH = 64;
+
+    /**
+     * The most sources in one bucket of the index before collecting the candidates from the buckets stops paying off.
+     * Content that is very common (such as boilerplate files) fills buckets, so added content that lands in a bucket
+     * bigger than this is compared with every source instead.
+     */
+    public static final int MAX_BUCKET_SIZE = 100;
+
+    /**
+     * The seeds for the hash functions of the sketch.
+     * They are fixed so that sketches are the same every time.
+     */
+    private static final int[] SEEDS = new Random(0x5eed).ints(SKETCH_SIZE).toArray();
+
+    /**
+     * The smallest similarity, as a percentage, for a pair to be a rename or a copy.
+     * This is 50% like git.
+     */
+    public int minimumScore = 50;
+
+    /**
+     * True to find copies as well as renames.
+     */
+    public boolean detectCopies = true;
+
+    /**
+     * Gets the bytes of the blob with a given hash.
+     */
+    private final Function<String, byte[]> contentLoader;
+
+    /**
+     * Creates a rename detector that gets the content of the blobs from an object store.
+     *
+     * @param objects The object store with the blobs.
+     */
+    public RenameDetector(RepoObjectStore objects)
+    {
+        this(blobHashValue -> ((Blob) objects.get(blobHashValue)).content);
+    }
+
+    /**
+     * Creates a rename detector.
+     *
+     * @param contentLoader Gets the bytes of the blob with a given hash.
+     */
+    public RenameDetector(Function<String, byte[]> contentLoader)
+    {
+        this.contentLoader = contentLoader;
+    }
+
+    /**
+     * Finds the renames and copies in the given differences.
+     * The added and deleted entries that make up a rename are replaced by one {@link ContentState#RENAMED} entry,
+     * and added entries that are copies are replaced by a {@link ContentState#COPIED} entry.
+     *
+     * @param diffEntries The differences, as found by a {@link TreeDiff}.
+     * @return The differences with the renames and copies, in the same order. Renames and copies take the place of the added entry.
+     */
+    public List<DiffEntry> detect(List<DiffEntry> diffEntries)
+    {
+        // Split the entries by how they changed:
+        List<DiffEntry> added = new ArrayList<>();
+        List<DiffEntry> sources = new ArrayList<>();
+        for (DiffEntry diffEntry : diffEntries)
+        {
+            if (diffEntry.changeType == ContentState.ADDED) added.add(diffEntry);
+            else if (diffEntry.changeType == ContentState.DELETED || (this.detectCopies && diffEntry.changeType == ContentState.MODIFIED)) sources.add(diffEntry);
+        }
+
+        // Check whether there is anything to pair up:
+        if (added.isEmpty() || sources.isEmpty()) return diffEntries;
+
+        // Keep track of what every added entry is replaced with and which deleted entries were renamed:
+        Map<DiffEntry, DiffEntry> replacements = new HashMap<>();
+        Set<DiffEntry> renamedSources = new LinkedHashSet<>();
+
+        // Match the content that didn't change by its hash:
+        Map<String, List<DiffEntry>> sourcesByHash = new HashMap<>();
+        for (DiffEntry source : sources)
+        {
+            sourcesByHash.computeIfAbsent(source.oldHashValue, hashValue -> new ArrayList<>()).add(source);
+        }
+        List<DiffEntry> unmatched = new ArrayList<>();
+        for (DiffEntry addedEntry : added)
+        {
+            // Find the best source with the same hash:
+            List<DiffEntry> sameSources = sourcesByHash.get(addedEntry.newHashValue);
+            DiffEntry source = sameSources == null ? null : chooseSource(addedEntry, sameSources, renamedSources);
+            if (source == null || !pair(addedEntry, source, 100, replacements, renamedSources)) unmatched.add(addedEntry);
+        }
+
+        // Find similar content for the rest:
+        if (!unmatched.isEmpty()) detectSimilar(unmatched, sources, replacements, renamedSources);
+
+        // Put the renames and copies in place of the added entries and drop the deleted entries that were renamed:
+        List<DiffEntry> results = new ArrayList<>(diffEntries.size());
+        for (DiffEntry diffEntry : diffEntries)
+        {
+            if (renamedSources.contains(diffEntry)) continue;
+            results.add(replacements.getOrDefault(diffEntry, diffEntry));
+        }
+        return results;
+    }
+
+    /**
+     * Finds the added content that is similar to the sources with MinHash sketches and a locality sensitive hashing index.
+     *
+     * @param added          The added entries that have not been matched yet.
+     * @param sources        The deleted and modified entries that content could have come from.
+     * @param replacements   The rename or copy that each added entry is replaced with.
+     * @param renamedSources The deleted entries that have been renamed already.
+     */
+    private void detectSimilar(List<DiffEntry> added, List<DiffEntry> sources, Map<DiffEntry, DiffEntry> replacements, Set<DiffEntry> renamedSources)
+    {
+        // Size the bands for the minimum score:
+        int rowsPerBand = getRowsPerBand(this.minimumScore);
+        int bandCount = SKETCH_SIZE / rowsPerBand;
+
+        // Sketch the sources and index them by each band:
+        // NOTE: Only deleted entries that are still free can be renamed, but any source can be copied.
+        List<int[]> sourceSketches = new ArrayList<>(sources.size());
+        Map<Long, List<Integer>> index = new HashMap<>();
+        for (int sourceIndex = 0; sourceIndex < sources.size(); sourceIndex++)
+        {
+            DiffEntry source = sources.get(sourceIndex);
+            boolean usable = this.detectCopies || !renamedSources.contains(source);
+            int[] sketch = usable ? sketch(this.contentLoader.apply(source.oldHashValue)) : null;
+            sourceSketches.add(sketch);
+            if (sketch == null) continue;
+            for (int band = 0; band < bandCount; band++)
+            {
+                index.computeIfAbsent(getBandKey(sketch, band, rowsPerBand), key -> new ArrayList<>()).add(sourceIndex);
+            }
+        }
+
+        // Find the candidate pairs that are similar enough:
+        // NOTE: Each pair is {score, added index, source index}.
+        List<int[]> pairs = new ArrayList<>();
+        for (int addedIndex = 0; addedIndex < added.size(); addedIndex++)
+        {
+            // Sketch the added content:
+            int[] sketch = sketch(this.contentLoader.apply(added.get(addedIndex).newHashValue));
+            if (sketch == null) continue;
+
+            // Find the sources that share a bucket:
+            // NOTE: If a bucket is too big then we compare with every source instead, so that no candidates are dropped.
+            Collection<Integer> candidates = new LinkedHashSet<>();
+            for (int band = 0; band < bandCount; band++)
+            {
+                List<Integer> bucket = index.get(getBandKey(sketch, band, rowsPerBand));
+                if (bucket == null) continue;
+                if (bucket.size() > MAX_BUCKET_SIZE)
+                {
+                    // Compare with every source:
+                    candidates = allSourceIndexes(sources.size());
+                    break;
+                }
+                candidates.addAll(bucket);
+            }
+
+            // Compare with the candidates:
+            for (int sourceIndex : candidates)
+            {
+                int[] sourceSketch = sourceSketches.get(sourceIndex);
+                if (sourceSketch == null) continue;
+                int score = estimateSimilarity(sketch, sourceSketch);
+                if (score >= this.minimumScore) pairs.add(new int[] {score, addedIndex, sourceIndex});
+            }
+        }
+
+        // Pair up the most similar content first:
+        // NOTE: Ties go to sources with the same file name and then to the order of the paths, so the results are deterministic.
+        pairs.sort((pair1, pair2) ->
+                   {
+                       if (pair1[0] != pair2[0]) return pair2[0] - pair1[0];
+                       boolean sameName1 = isSameName(added.get(pair1[1]), sources.get(pair1[2]));
+                       boolean sameName2 = isSameName(added.get(pair2[1]), sources.get(pair2[2]));
+                       if (sameName1 != sameName2) return sameName1 ? -1 : 1;
+                       if (pair1[1] != pair2[1]) return pair1[1] - pair2[1];
+                       return pair1[2] - pair2[2];
+                   });
+        for (int[] pair : pairs)
+        {
+            DiffEntry addedEntry = added.get(pair[1]);
+            if (replacements.containsKey(addedEntry)) continue;
+            pair(addedEntry, sources.get(pair[2]), pair[0], replacements, renamedSources);
+        }
+    }
+
+    /**
+     * Gets the number of values of the sketch in each band of the index for the given minimum score.
+     * Sketches that match on every value of any band end up in the same bucket, so a pair whose sketches match
+     * on a fraction s of their values shares a bucket with a chance of 1 - (1 - s^rows)^bands.
+     * Fewer rows per band find more pairs but put more unrelated content in the same buckets,
+     * so this is the most rows per band that still finds pairs at the minimum score with at least {@link #MINIMUM_RECALL}.
+     *
+     * @param minimumScore The smallest similarity, as a percentage, for a pair to be a rename or a copy.
+     * @return The number of values of the sketch in each band.
+     */
+    public static int getRowsPerBand(int minimumScore)
+    {
+        // Start with one row per band, which finds any pair that matches on a single value:
+        double similarity = Math.max(0, Math.min(100, minimumScore)) / 100.0;
+        int rowsPerBand = 1;
+
+        // Add rows while pairs at the minimum score are still found often enough:
+        for (int rows = 2; rows <= SKETCH_SIZE; rows++)
+        {
+            int bandCount = SKETCH_SIZE / rows;
+            double recall = 1 - Math.pow(1 - Math.pow(similarity, rows), bandCount);
+            if (recall < MINIMUM_RECALL) break;
+            rowsPerBand = rows;
+        }
+        return rowsPerBand;
+    }
+
+    /**
+     * Gets the indexes of every source, for comparing added content with all of them.
+     *
+     * @param sourceCount The number of sources.
+     * @return The index of every source, in order.
+     */
+    private static List<Integer> allSourceIndexes(int sourceCount)
+    {
+        List<Integer> sourceIndexes = new ArrayList<>(sourceCount);
+        for (int i = 0; i < sourceCount; i++)
+        {
+            sourceIndexes.add(i);
+        }
+        return sourceIndexes;
+    }
+
+    /**
+     * Chooses the source to pair an added entry with from sources that are equally similar.
+     * A deleted entry that is still free is chosen first, so that it becomes a rename, preferring the same file name.
+     *
+     * @param addedEntry     The added entry.
+     * @param sources        The sources that are equally similar.
+     * @param renamedSources The deleted entries that have been renamed already.
+     * @return The source to pair with. Null if none of them can be paired.
+     */
+    private DiffEntry chooseSource(DiffEntry addedEntry, List<DiffEntry> sources, Set<DiffEntry> renamedSources)
+    {
+        DiffEntry bestSource = null;
+        int bestRank = Integer.MAX_VALUE;
+        for (DiffEntry source : sources)
+        {
+            // Rank the source:
+            boolean free = source.changeType == ContentState.DELETED && !renamedSources.contains(source);
+            if (!free && !this.detectCopies) continue;
+            int rank = (free ? 0 : 2) + (isSameName(addedEntry, source) ? 0 : 1);
+            if (rank < bestRank)
+            {
+                bestSource = source;
+                bestRank = rank;
+            }
+        }
+        return bestSource;
+    }
+
+    /**
+     * Pairs an added entry with a source as a rename or a copy.
+     *
+     * @param addedEntry     The added entry.
+     * @param source         The deleted or modified entry that the content came from.
+     * @param score          The similarity of the content as a percentage.
+     * @param replacements   The rename or copy that each added entry is replaced with.
+     * @param renamedSources The deleted entries that have been renamed already.
+     * @return True if the entries were paired. False if the source was renamed already and copies are not being found.
+     */
+    private boolean pair(DiffEntry addedEntry, DiffEntry source, int score, Map<DiffEntry, DiffEntry> replacements, Set<DiffEntry> renamedSources)
+    {
+        // Work out whether this is a rename or a copy:
+        ContentState changeType;
+        if (source.changeType == ContentState.DELETED && renamedSources.add(source)) changeType = ContentState.RENAMED;
+        else if (this.detectCopies) changeType = ContentState.COPIED;
+        else return false;
+
+        // Replace the added entry:
+        DiffEntry replacement = new DiffEntry(changeType, source.oldPath, source.oldHashValue, addedEntry.newPath, addedEntry.newHashValue);
+        replacement.score = score;
+        replacements.put(addedEntry, replacement);
+        return true;
+    }
+
+    /**
+     * Checks whether an added entry has the same file name as a source, ignoring the folders.
+     *
+     * @param addedEntry The added entry.
+     * @param source     The source.
+     * @return True if the file names are the same.
+     */
+    private static boolean isSameName(DiffEntry addedEntry, DiffEntry source)
+    {
+        String newName = addedEntry.newPath.substring(addedEntry.newPath.lastIndexOf(PathBase.DELIMITER) + 1);
+        String oldName = source.oldPath.substring(source.oldPath.lastIndexOf(PathBase.DELIMITER) + 1);
+        return newName.equals(oldName);
+    }
+
+    /**
+     * Creates a MinHash sketch of the chunks of the given content.
+     * Each chunk is a line, or {@link #MAX_CHUNK_LENGTH} bytes of a longer line.
+     * Each value of the sketch is the smallest hash of any chunk under a different hash function.
+     *
+     * @param content The bytes of the content.
+     * @return The sketch of the content. Null if the content is empty, because empty content is only matched by its hash.
+     */
+    public static int[] sketch(byte[] content)
+    {
+        // Check whether there is anything to sketch:
+        if (content == null || content.length == 0) return null;
+
+        // Start with the largest values:
+        int[] sketch = new int[SKETCH_SIZE];
+        Arrays.fill(sketch, Integer.MAX_VALUE);
+
+        // Hash each chunk:
+        int hash = 1;
+        int chunkLength = 0;
+        for (int i = 0; i < content.length; i++)
+        {
+            byte b = content[i];
+            hash = 31 * hash + b;
+            chunkLength++;
+
+            // Check whether this is the end of the chunk:
+            if (b == '\n' || chunkLength == MAX_CHUNK_LENGTH || i == content.length - 1)
+            {
+                // Keep the smallest value for each hash function:
+                for (int j = 0; j < SKETCH_SIZE; j++)
+                {
+                    int value = mix(hash ^ SEEDS[j]) & Integer.MAX_VALUE;
+                    if (value < sketch[j]) sketch[j] = value;
+                }
+                hash = 1;
+                chunkLength = 0;
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * Estimates how similar two pieces of content are from their sketches.
+     *
+     * @param sketch1 The sketch of the first content.
+     * @param sketch2 The sketch of the second content.
+     * @return The estimated similarity as a percentage.
+     */
+    public static int estimateSimilarity(int[] sketch1, int[] sketch2)
+    {
+        int matches = 0;
+        for (int i = 0; i < SKETCH_SIZE; i++)
+        {
+            if (sketch1[i] == sketch2[i]) matches++;
+        }
+        return matches * 100 / SKETCH_SIZE;
+    }
+
+    /**
+     * Gets the key for a band of a sketch in the index.
+     *
+     * @param sketch      The sketch.
+     * @param band        The band of the sketch.
+     * @param rowsPerBand The number of values of the sketch in each band.
+     * @return The key for the band, which includes the band number so that different bands don't share buckets.
+     */
+    private static long getBandKey(int[] sketch, int band, int rowsPerBand)
+    {
+        int hash = 1;
+        for (int i = band * rowsPerBand; i < (band + 1) * rowsPerBand; i++)
+        {
+            hash = 31 * hash + sketch[i];
+        }
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Mixes the bits of a hash so that every input bit affects every output bit.
+     * This is the finalizer from MurmurHash3.
+     *
+     * @param hash The hash to mix.
+     * @return The mixed hash.
+     */
+    private static int mix(int hash)
+    {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
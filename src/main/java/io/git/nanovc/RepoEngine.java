@@ -3,12 +3,14 @@ package io.git.nanovc;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,6 +44,29 @@ public class RepoEngine
      */
     public MessageDigest messageDigest;
 
+    /**
+     * The minimum number of repo objects in a batch before we bother hashing them in parallel.
+     * Smaller batches are hashed on the calling thread because the fork-join overhead would outweigh the benefit.
+     */
+    public static final int PARALLEL_HASHING_THRESHOLD = 64;
+
+    /**
+     * A message digest for each thread that takes part in hashing a batch of repo objects or content in parallel.
+     * Message digests are not thread safe, so each worker thread needs its own.
+     */
+    private static final ThreadLocal<MessageDigest> threadMessageDigest = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            // Create the message digest for hashing:
+            return MessageDigest.getInstance("SHA1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new NanoRuntimeException("Could not create a SHA1 message digest for hashing.", e);
+        }
+    });
+
     /**
      * Creates new Repo Engine.
      */
@@ -117,51 +142,146 @@ public class RepoEngine
      */
     public Hash hash_object(ObjectType type, byte[] repoObjectBytes)
     {
-        // Get a message digest we are using to compute the SHA1 hash:
-        MessageDigest digest = this.messageDigest;
+        // Compute the hash with the message digest for this engine:
+        return hash_object(this.messageDigest, type, repoObjectBytes);
+    }
+
+    /**
+     * Compute object ID.
+     * Computes the object ID value for the repo object from its object type and its current contents.
+     * This method does not write the resulting object into the object database.
+     * The content of the object is streamed straight into the digest, so blob content is never copied.
+     * <p>
+     * https://git-scm.com/docs/git-hash-object
+     *
+     * @param repoObject The repo object to compute the hash of.
+     * @return The output from the command is a 40-character checksum hash. This is the SHA-1 hash – a checksum of the
+     * content. A new hash instance is created each time this is called.
+     */
+    public Hash hash_object(RepoObject repoObject)
+    {
+        // Compute the hash with the message digest for this engine:
+        return hash_object(this.messageDigest, repoObject);
+    }
+
+    /**
+     * Computes the object ID value for an object with specified type with the contents of the content byte array,
+     * using the given message digest.
+     * This is the core hashing logic that is shared by {@link #hash_object(ObjectType, byte[])}
+     * and the batch hashing in {@link #hash_objects_write(Repo, Collection)} where each thread needs its own digest.
+     *
+     * @param digest          The message digest to use for computing the SHA-1 hash. It gets reset before use.
+     * @param type            Specify the type of object to create (default: "blob").
+     * @param repoObjectBytes The repo object bytes to hash.
+     * @return The output from the command is a 40-character checksum hash. This is the SHA-1 hash – a checksum of the
+     * content
+     */
+    private static Hash hash_object(MessageDigest digest, ObjectType type, byte[] repoObjectBytes)
+    {
+        return hash_object(digest, type, repoObjectBytes, 0, repoObjectBytes == null ? 0 : repoObjectBytes.length);
+    }
 
+    /**
+     * Computes the object ID value for an object with specified type with the contents of a range of the byte array,
+     * using the given message digest.
+     * This lets us hash repo objects that were serialized into a reusable buffer without copying them out first.
+     *
+     * @param digest          The message digest to use for computing the SHA-1 hash. It gets reset before use.
+     * @param type            Specify the type of object to create (default: "blob").
+     * @param repoObjectBytes The array with the repo object bytes to hash.
+     * @param offset          The offset in the array where the repo object bytes start.
+     * @param length          The number of repo object bytes to hash.
+     * @return The output from the command is a 40-character checksum hash. This is the SHA-1 hash – a checksum of the
+     * content
+     */
+    private static Hash hash_object(MessageDigest digest, ObjectType type, byte[] repoObjectBytes, int offset, int length)
+    {
         // Reset the message digest so we can start computing the SHA1 hash:
         digest.reset();
 
-        // Write the type of object to the digest:
-        digest.update(type.hashBytes);
-
-        // Write a space:
-        digest.update((byte) ' ');
+        // Write the header for the object:
+        int contentLength = repoObjectBytes == null ? 0 : length;
+        updateDigestWithHeader(digest, type, contentLength);
 
         // Check whether we have any content:
-        if (repoObjectBytes == null || repoObjectBytes.length == 0)
+        if (contentLength > 0)
         {
-            // We do not have any content.
-            // Hash a zero length array:
-            digest.update((byte) '0');
+            // We have content.
+            // Hash the content:
+            digest.update(repoObjectBytes, offset, length);
+        }
+        // Now we have hashed the header and content if there was some.
 
-            // Write the null byte:
-            digest.update((byte) 0);
+        // Get the hash from the digest:
+        return digestToHash(digest);
+    }
 
-            // There is no content so don't do any more.
-        }
-        else
+    /**
+     * Computes the object ID value for the repo object using the given message digest.
+     * The repo object streams its content straight into the digest so that no intermediate byte array is created.
+     * This gives the same hash as serializing the object with {@link RepoObject#getByteArray()}
+     * and then calling {@link #hash_object(ObjectType, byte[])}.
+     *
+     * @param digest     The message digest to use for computing the SHA-1 hash. It gets reset before use.
+     * @param repoObject The repo object to hash.
+     * @return The output from the command is a 40-character checksum hash. This is the SHA-1 hash – a checksum of the
+     * content
+     */
+    private static Hash hash_object(MessageDigest digest, RepoObject repoObject)
+    {
+        // Reset the message digest so we can start computing the SHA1 hash:
+        digest.reset();
+
+        // Write the header for the object:
+        // NOTE: The object knows its exact size so we don't need to serialize it first.
+        int contentLength = repoObject.getByteSize();
+        updateDigestWithHeader(digest, repoObject.getObjectType(), contentLength);
+
+        // Check whether we have any content:
+        if (contentLength > 0)
         {
             // We have content.
+            // Stream the content of the object into the digest:
+            repoObject.writeContentToDigest(digest);
+        }
+        // Now we have hashed the header and content if there was some.
 
-            // Get the length of the content:
-            String lengthString = Integer.toString(repoObjectBytes.length);
+        // Get the hash from the digest:
+        return digestToHash(digest);
+    }
 
-            // Get the bytes for the length:
-            byte[] lengthBytes = lengthString.getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Writes the header for an object into the digest.
+     * The header is the type of the object, a space, the length of the content in ASCII digits and then a null byte.
+     *
+     * @param digest        The message digest to update.
+     * @param type          The type of object being hashed.
+     * @param contentLength The length of the content that follows the header.
+     */
+    private static void updateDigestWithHeader(MessageDigest digest, ObjectType type, int contentLength)
+    {
+        // Write the type of object to the digest:
+        digest.update(type.hashBytes);
 
-            // Write the length:
-            digest.update(lengthBytes);
+        // Write a space:
+        digest.update((byte) ' ');
 
-            // Write the null byte:
-            digest.update((byte) 0);
+        // Write the length:
+        // NOTE: A zero length array hashes as '0'.
+        updateDigestWithLength(digest, contentLength);
 
-            // Hash the content:
-            digest.update(repoObjectBytes);
-        }
-        // Now we have hashed the header and content if there was some.
+        // Write the null byte:
+        digest.update((byte) 0);
+    }
 
+    /**
+     * Completes the digest and creates the hash for it.
+     *
+     * @param digest The message digest that has had the header and content written to it.
+     * @return The hash for the digest.
+     */
+    private static Hash digestToHash(MessageDigest digest)
+    {
         // Get the SHA-1:
         byte[] sha1Bytes = digest.digest();
         // Now we have the hash bytes.
@@ -178,6 +298,29 @@ public class RepoEngine
         return hash;
     }
 
+    /**
+     * Writes the decimal ASCII digits of the length into the digest.
+     * This is the same as hashing the US-ASCII bytes of {@link Integer#toString(int)} but it doesn't allocate a string.
+     *
+     * @param digest The message digest to update.
+     * @param length The length to write. It must not be negative.
+     */
+    private static void updateDigestWithLength(MessageDigest digest, int length)
+    {
+        // Find the largest power of ten that is not bigger than the length:
+        int divisor = 1;
+        while (length / divisor >= 10)
+        {
+            divisor *= 10;
+        }
+
+        // Write out each digit from the most significant one:
+        for (; divisor > 0; divisor /= 10)
+        {
+            digest.update((byte) ('0' + (length / divisor) % 10));
+        }
+    }
+
     /**
      * Compute object ID and write the object to the database.
      * Computes the object ID value for an object with specified type with the contents of the byte array
@@ -255,11 +398,9 @@ public class RepoEngine
      */
     public Hash hash_object_write(Repo repo, RepoObject repoObject)
     {
-        // Get the bytes for the repo object:
-        byte[] repoObjectBytes = repoObject.getByteArray();
-
         // Get the hash for the object:
-        Hash hash = hash_object(repoObject.getObjectType(), repoObjectBytes);
+        // NOTE: The repo object streams its content straight into the digest.
+        Hash hash = hash_object(this.messageDigest, repoObject);
 
         // Update the repo object with the hash:
         repoObject.hash = hash;
@@ -270,6 +411,71 @@ public class RepoEngine
         return hash;
     }
 
+    /**
+     * Compute object IDs for a batch of repo objects and write them all to the database.
+     * This is the bulk equivalent of calling {@link #hash_object_write(Repo, RepoObject)} for each object,
+     * but it is designed for importing many objects at once:
+     * the objects are hashed in parallel (each thread uses its own message digest),
+     * duplicates within the batch are only stored once
+     * and the unique objects are then written to the object database in a single pass.
+     * <p>
+     * Each repo object in the batch is updated with its hash, even if it was a duplicate of another object in the batch.
+     * <p>
+     * https://git-scm.com/docs/git-hash-object
+     *
+     * @param repo        The repo to write to.
+     * @param repoObjects The repo objects to update with their hashes and write to the database.
+     * @return The hashes of the repo objects, in the same order as the given repo objects.
+     */
+    public List<Hash> hash_objects_write(Repo repo, Collection<? extends RepoObject> repoObjects)
+    {
+        // Check whether it is worth hashing in parallel:
+        Stream<? extends RepoObject> stream = repoObjects.size() >= PARALLEL_HASHING_THRESHOLD ? repoObjects.parallelStream() : repoObjects.stream();
+
+        // Hash all the objects:
+        // NOTE: The hashing is independent for each object so it can happen on any thread.
+        // NOTE: Each repo object streams its content straight into the digest for the thread that hashes it.
+        stream.forEach(repoObject -> repoObject.hash = hash_object(threadMessageDigest.get(), repoObject));
+        // Now every repo object has its hash.
+
+        // Create the list of hashes in the order of the input:
+        List<Hash> hashes = new ArrayList<>(repoObjects.size());
+
+        // Remove duplicates within the batch, keeping the first instance of each object:
+        // NOTE: The key is the SHA-1 hash value of the object.
+        Map<String, RepoObject> uniqueObjects = new LinkedHashMap<>();
+        for (RepoObject repoObject : repoObjects)
+        {
+            // Save the hash:
+            hashes.add(repoObject.hash);
+
+            // Index the object if this is the first time we have seen it in this batch:
+            uniqueObjects.putIfAbsent(repoObject.hash.value, repoObject);
+        }
+        // Now we have the unique objects in the batch.
+
+        // Save all the unique repo objects in the object database in one pass:
+        repo.database.objects.putAll(uniqueObjects.values());
+
+        return hashes;
+    }
+
+    /**
+     * Compute object IDs for a stream of repo objects and write them all to the database.
+     * The stream is collected into a batch and then written with {@link #hash_objects_write(Repo, Collection)}.
+     *
+     * @param repo        The repo to write to.
+     * @param repoObjects The stream of repo objects to update with their hashes and write to the database.
+     * @return The hashes of the repo objects, in the same order as the given stream of repo objects.
+     */
+    public List<Hash> hash_objects_write(Repo repo, Stream<? extends RepoObject> repoObjects)
+    {
+        // Collect the batch:
+        List<RepoObject> batch = repoObjects.collect(Collectors.toList());
+
+        return hash_objects_write(repo, batch);
+    }
+
     /**
      * Provide content or type and size information for repository objects.
      * <p>
@@ -354,11 +560,11 @@ public class RepoEngine
 
             // Map the data across:
             logEntry.commitHashValue = commit.hash.value;
-            logEntry.author = commit.author;
-            logEntry.authorTimeStamp = commit.authorTimeStamp;
-            logEntry.committer = commit.committer;
-            logEntry.committerTimeStamp = commit.committerTimeStamp;
-            logEntry.message = commit.message;
+            logEntry.author = commit.getAuthor();
+            logEntry.authorTimeStamp = commit.getAuthorTimeStamp();
+            logEntry.committer = commit.getCommitter();
+            logEntry.committerTimeStamp = commit.getCommitterTimeStamp();
+            logEntry.message = commit.getMessage();
 
             // Save the log entry:
             log.add(logEntry);
@@ -434,7 +640,9 @@ public class RepoEngine
         // Now we have the content from the repo object.
 
         // Create the content at the desired path in the staging area:
+        // NOTE: The content is shared with the object database and is only copied if it is modified (copy on write).
         MutableContent mutableContent = repo.stagingArea.putContent(absolutePathForContent, content);
+        mutableContent.shareContent();
 
         return mutableContent;
     }
@@ -464,7 +672,10 @@ public class RepoEngine
         MutableContent workingContent = repo.workingArea.getContent(absolutePathOfContentInWorkingArea);
 
         // Put the content in the staging area:
-        MutableContent stagingContent = repo.stagingArea.putContent(absolutePathOfContentInWorkingArea, workingContent.content);
+        MutableContent stagingContent = repo.stagingArea.putContent(absolutePathOfContentInWorkingArea, workingContent.getContent());
+
+        // Keep the content shared if the working content shares it (like with a blob) so that it is copied before it is modified (copy on write):
+        if (workingContent.isContentShared()) stagingContent.shareContent();
 
         return stagingContent;
     }
@@ -481,6 +692,9 @@ public class RepoEngine
      * Conceptually, git write-tree sync()s the current index contents into a set of tree files.
      * In order to have that match what is actually in your directory right now,
      * you need to have done a git update-index phase before you did the git write-tree.
+     * <p>
+     * The trees that were last written are cached in the {@link MutableContentArea#treeCache} of the staging area,
+     * so only the folders along the paths of content that changed since the last time are written again.
      *
      * @param repo The repo to write the current staging area as a tree into the object database.
      * @return The root tree object that was created. A tree object is created for each sub folder that is written, but this method only returns the root tree.
@@ -488,195 +702,146 @@ public class RepoEngine
      */
     public Tree write_tree(Repo repo)
     {
-        // Create the root of the tree:
-        Tree root = new Tree();
+        // Get the format that new trees are written in:
+        int formatVersion = repo.database.config.repositoryFormatVersion;
 
-        // Keep a map of all the tree objects that we create as we walk the paths:
-        // NOTE: The key is the absolute path of the tree.
-        Map<String, Tree> pathToTreeMap = new HashMap<>();
+        // Get the cache of the trees that were last written for the staging area:
+        // NOTE: The cache is cleared if the trees were written to a different store or in a different format.
+        TreeCache treeCache = repo.stagingArea.treeCache;
+        treeCache.validate(repo.database.objects, formatVersion);
 
-        // Keep a map of all the paths of the tree objects that we create as we walk the paths:
-        // NOTE: The value is the absolute path of the tree.
-        Map<Tree, String> treeToPathMap = new HashMap<>();
+        // Find out what has changed in the staging area since the trees were last written:
+        // NOTE: This invalidates the folders along the path of each change.
+        treeCache.update(repo.stagingArea.contents);
 
-        // Keep a map of all the tree entries that we create as we walk the paths:
-        // NOTE: The key is the absolute path of the tree entry.
-        Map<String, TreeEntry> pathToTreeEntryMap = new HashMap<>();
+        // Get the folders that need their trees to be written again:
+        // NOTE: Parents come before their children so we write them in reverse order. Folders that haven't changed are skipped entirely.
+        List<TreeCache.Node> dirtyFolders = treeCache.getDirtyFolders();
 
-        // Keep a list of the trees that we create and the order in which we create them:
-        // NOTE: We need this so that we can create the tree objects in reverse order so that we have all the hashes.
-        List<Tree> treeCreationSequence = new ArrayList<>();
-
-        // Keep a list of all the blobs of content that we create:
+        // Create blobs for the content that has changed in those folders:
         List<Blob> blobCreationSequence = new ArrayList<>();
-
-        // Create a map of blobs to tree entries that need to be updated with their hashes:
-        Map<Blob, TreeEntry> blobToTreeEntryMap = new HashMap<>();
-
-        // Index the root note:
-        RepoPath rootPath = RepoPath.atRoot();
-        pathToTreeMap.put(rootPath.toString(), root);
-        treeToPathMap.put(root, rootPath.toString());
-        treeCreationSequence.add(root);
-
-        // Build up a full tree from all the content in the staging area:
-        for (MutableContent content : repo.stagingArea.contents)
+        List<TreeCache.Node> blobNodes = new ArrayList<>();
+        for (TreeCache.Node folder : dirtyFolders)
         {
-            // Get the path of the content:
-            RepoPath path = RepoPath.at(content.getAbsolutePath());
-
-            // Split the path into its parts:
-            String[] parts = path.splitIntoParts();
+            // Check whether this folder has anything in it (we won't if it's an empty root):
+            if (folder.children == null) continue;
 
-            // Make sure there are parts:
-            if (parts != null && parts.length > 0)
+            for (TreeCache.Node child : folder.children.values())
             {
-                // There are parts of the path to walk.
-
-                // Walk the parts, making sure that the tree structure exists:
-                // NOTE: We assume that the last part is the content itself
-                // so create the trees up until the second to last part.
-                RepoPath currentPath = RepoPath.atRoot();
-                RepoPath parentPath = currentPath;
-                Tree currentTree = root;
-                Tree parentTree = currentTree;
-                for (int i = 0; i < parts.length - 1; i++)
-                {
-                    // Save a reference to our parent:
-                    parentPath = currentPath;
-                    parentTree = currentTree;
-
-                    // Get the part of the path that we are processing:
-                    String part = parts[i];
-
-                    // Get the next path we want to walk to:
-                    currentPath = parentPath.resolve(part);
-                    String currentPathString = currentPath.toString();
-
-                    // Get the tree we are on:
-                    currentTree = pathToTreeMap.get(currentPathString);
-
-                    // Make sure we have a tree:
-                    if (currentTree == null)
-                    {
-                        // We don't have a tree yet.
-                        // Create a new tree:
-                        currentTree = new Tree();
-
-                        // Save the path to this new tree:
-                        pathToTreeMap.put(currentPathString, currentTree);
-                        treeToPathMap.put(currentTree, currentPathString);
-
-                        // Save the creation order of this tree:
-                        treeCreationSequence.add(currentTree);
-                    }
-                    // Now we have the current tree.
-
-                    // Check whether we have an entry for this part:
-                    TreeEntry parentTreeEntry = pathToTreeEntryMap.get(currentPathString);
-                    if (parentTreeEntry == null)
-                    {
-                        // We do not have a tree entry for this part yet (because we have not walked this folder yet).
-
-                        // Create a new tree entry:
-                        parentTreeEntry = new TreeEntry();
-                        parentTreeEntry.name = part;
-                        parentTreeEntry.objectType = ObjectType.TREE;
-                        // NOTE: We will update the hash later once we start saving the trees.
-
-                        // Add the entry to the parent tree:
-                        parentTree.entries.add(parentTreeEntry);
-
-                        // Save the path to this new tree entry:
-                        pathToTreeEntryMap.put(currentPathString, parentTreeEntry);
-                    }
-                    // Now we have a tree entry for this part of the path.
-                }
-                // Now the currentTree points to the parent of the content.
-
-                // Get the name of the content:
-                String contentName = parts[parts.length - 1];
-
-                // Update the current path:
-                RepoPath contentPath = currentPath.resolve(contentName);
-
-                // Check whether we have an entry for this part:
-                TreeEntry contentTreeEntry = pathToTreeEntryMap.get(contentPath.toString());
-                //region Content Tree Entry Creation
-                if (contentTreeEntry == null)
+                // Check whether this content needs a new blob:
+                if (child.content != null && child.blobHashValue == null)
                 {
-                    // We do not have a tree entry for this part yet (because we have not walked here yet).
-                    // Create a new tree entry:
-                    contentTreeEntry = new TreeEntry();
-                    contentTreeEntry.name = contentName;
-                    contentTreeEntry.objectType = ObjectType.BLOB;
-                    // NOTE: We will update the hash later once we start saving the trees.
-
-                    // Add the entry to the current tree:
-                    currentTree.entries.add(contentTreeEntry);
-
-                    // Save the path to this new tree entry:
-                    pathToTreeEntryMap.put(contentPath.toString(), contentTreeEntry);
+                    blobCreationSequence.add(new Blob(child.content.getContent()));
+                    blobNodes.add(child);
                 }
-                //endregion
-                // Now we have a tree entry for this content.
-
-                // Create a blob for the content:
-                Blob blob = new Blob(content.content);
-
-                // Save the blob:
-                blobCreationSequence.add(blob);
-
-                // Save the tree entry that needs to be updated once we have a hash for the blob:
-                blobToTreeEntryMap.put(blob, contentTreeEntry);
             }
         }
-        // Now we have worked through every content item in the staging area.
 
-        // Put all the blobs into the object database:
-        //region Blob Hashing and Tree Entry Update
-        for (Blob blob : blobCreationSequence)
+        // Put all the blobs into the object database in one batch:
+        //region Blob Hashing
+        hash_objects_write(repo, blobCreationSequence);
+        for (int i = 0; i < blobCreationSequence.size(); i++)
         {
-            // Add the blob to the object database:
-            Hash blobHash = hash_object_write(repo, blob);
-
-            // Get the tree entry that needs to be updated with this hash:
-            TreeEntry treeEntry = blobToTreeEntryMap.get(blob);
-
-            // Update the tree entry hash:
-            treeEntry.hashValue = blobHash.value;
+            // Save the hash in the cache:
+            blobNodes.get(i).blobHashValue = blobCreationSequence.get(i).hash.value;
         }
         //endregion
-        // Now all the blobs have been added and their corresponding tree entries have had their hash values updated.
+        // Now all the blobs have been added and the cache has their hash values.
 
-        // Go through the list of trees that we created in reverse order and start saving them:
-        //region Tree Hashing and Tree Entry Update
-        for (int i = treeCreationSequence.size() - 1; i >= 0; i--)
+        // Go through the folders that changed in reverse order and write their trees:
+        //region Tree Hashing
+        for (int i = dirtyFolders.size() - 1; i >= 0; i--)
         {
-            // Get the tree we are on:
-            Tree tree = treeCreationSequence.get(i);
+            // Get the folder we are on:
+            TreeCache.Node folder = dirtyFolders.get(i);
 
-            // Add the tree to the object database:
-            Hash treeHash = hash_object_write(repo, tree);
+            // Create the tree for the folder:
+            Tree tree = new Tree();
+            tree.formatVersion = formatVersion;
+            if (folder.children != null)
+            {
+                for (TreeCache.Node child : folder.children.values())
+                {
+                    // Add an entry for the sub folder:
+                    // NOTE: Sub folders that haven't changed still have the tree that they last wrote.
+                    if (child.hasChildren()) tree.entries.add(new TreeEntry(ObjectType.TREE, child.tree.hash.value, child.name));
 
-            // Get the path of this tree:
-            String treePath = treeToPathMap.get(tree);
+                    // Add an entry for the content:
+                    if (child.content != null) tree.entries.add(new TreeEntry(ObjectType.BLOB, child.blobHashValue, child.name));
+                }
+            }
 
-            // Get the tree entry that needs to be updated with this hash:
-            TreeEntry treeEntry = pathToTreeEntryMap.get(treePath);
+            // Put the entries in the canonical order:
+            // NOTE: This makes the hash of the tree independent of the order that content was staged in.
+            tree.entries.sort(TreeEntryComparator.INSTANCE);
 
-            // Check whether we have an entry (we won't if it's the root tree):
-            if (treeEntry != null)
-            {
-                // Update the tree entry hash:
-                treeEntry.hashValue = treeHash.value;
-            }
+            // Add the tree to the object database:
+            hash_object_write(repo, tree);
+
+            // Save the tree in the cache:
+            folder.tree = tree;
+            folder.dirty = false;
         }
         //endregion
-        // Now all the trees have been saved in reverse order and their corresponding tree entries have had their hash values updated.
+        // Now all the trees that changed have been saved.
 
         // Return the root tree, which will have the hash that it was committed with:
-        return root;
+        return treeCache.getRoot().tree;
+    }
+
+    /**
+     * Saves the index (staging area) to a file so that it can be loaded again later with {@link #read_index(Repo, java.nio.file.Path)}.
+     * The trees for the staging area are written first so that every entry in the index references a blob in the object database.
+     * The index also saves the trees that were written for each folder so that loading it doesn't need to hash anything again.
+     * <p>
+     * https://git-scm.com/docs/index-format
+     *
+     * @param repo The repo whose staging area must be saved.
+     * @param file The file to save the index to. Any existing file is replaced.
+     * @return The root tree for the staging area that was saved.
+     */
+    public Tree write_index(Repo repo, java.nio.file.Path file)
+    {
+        // Make sure every blob and tree has been written:
+        Tree rootTree = write_tree(repo);
+
+        try
+        {
+            // Save the index:
+            StagingIndex.save(file, repo.stagingArea.treeCache, repo.database.objects, repo.database.config.repositoryFormatVersion);
+        }
+        catch (IOException e)
+        {
+            throw new NanoRuntimeException("The staging index could not be saved to " + file, e);
+        }
+        return rootTree;
+    }
+
+    /**
+     * Loads the index (staging area) from a file that was saved with {@link #write_index(Repo, java.nio.file.Path)}.
+     * The current staging area is replaced.
+     * The blobs that the index references must be in the object database of the repo.
+     * The index doesn't save the objects and the object database is only kept in memory,
+     * so an index is only valid for the lifetime of the object database that it was saved from.
+     * If any blob is missing then the staging area is left alone.
+     * <p>
+     * https://git-scm.com/docs/index-format
+     *
+     * @param repo The repo whose staging area must be replaced.
+     * @param file The file to load the index from.
+     * @return The content that was put in the staging area.
+     */
+    public List<MutableContent> read_index(Repo repo, java.nio.file.Path file)
+    {
+        try
+        {
+            // Load the index:
+            return StagingIndex.load(file, repo);
+        }
+        catch (IOException e)
+        {
+            throw new NanoRuntimeException("The staging index could not be loaded from " + file, e);
+        }
     }
 
     /**
@@ -718,13 +883,19 @@ public class RepoEngine
         if (repoObject != null && repoObject instanceof Tree)
         {
             // This is a tree.
-            Tree tree = (Tree) repoObject;
 
             // Get the current path that we must start at:
             RepoPath path = prefixPath == null ? RepoPath.atRoot() : RepoPath.at(prefixPath);
 
-            // Recursively walk the tree and add all the entries:
-            read_tree_recursively(repo.database.objects, tree, path, contentList);
+            // Walk the tree and all its sub trees in parallel:
+            for (TreePathEntry entry : new TreeWalker(repo.database.objects, true).walkBlobs(rootTreeHashValue, path))
+            {
+                // Create content from this blob:
+                // NOTE: The content is shared with the blob and is only copied if it is modified (copy on write).
+                MutableContent content = new MutableContent(entry.absolutePath, entry.blob.content);
+                content.shareContent();
+                contentList.add(content);
+            }
             // Now we have all the content from this entire tree.
 
             // Put the content in the staging area:
@@ -739,99 +910,599 @@ public class RepoEngine
         return contentList;
     }
 
+
     /**
-     * Reads the content from the given tree at the given path recursively and adds it to the content list.
+     * Lists the contents of a tree object, including all of its sub trees (like "git ls-tree -r -t").
+     * <p>
+     * https://git-scm.com/docs/git-ls-tree
+     * <p>
+     * The entries are streamed in the order of a depth first walk and each sub tree comes before its entries.
+     * The trees are only read as the stream reaches them, so huge trees can be scanned without materializing them.
+     * A parallel stream splits the work across the sub trees.
      *
-     * @param objects     The objects to interrogate for content.
-     * @param tree        The current tree we are on.
-     * @param treePath    The path of the current tree.
-     * @param contentList The list to add the content into.
+     * @param repo          The repo with the tree.
+     * @param treeHashValue The SHA1 hash value of the tree to list.
+     * @return A stream of the entries in the tree and its sub trees.
      */
-    private void read_tree_recursively(RepoObjectStore objects, Tree tree, RepoPath treePath, List<MutableContent> contentList)
+    public Stream<TreePathEntry> ls_tree(Repo repo, String treeHashValue)
     {
-        // Go through all the entries:
-        for (TreeEntry entry : tree.entries)
+        return new TreeWalker(repo.database.objects, false).stream(treeHashValue, RepoPath.atRoot());
+    }
+
+    /**
+     * Walks the contents of a tree object, including all of its sub trees, and calls the visitor for each entry.
+     * The visitor can skip sub trees, in which case they are not read at all.
+     * <p>
+     * https://git-scm.com/docs/git-ls-tree
+     *
+     * @param repo          The repo with the tree.
+     * @param treeHashValue The SHA1 hash value of the tree to walk.
+     * @param visitor       The visitor to call for each entry.
+     */
+    public void ls_tree(Repo repo, String treeHashValue, TreeVisitor visitor)
+    {
+        new TreeWalker(repo.database.objects, false).visit(treeHashValue, RepoPath.atRoot(), visitor);
+    }
+
+    /**
+     * Finds the blob or tree at the given path in a commit without checking it out.
+     * Only the trees along the path are read, so this costs a few object lookups no matter how big the tree is.
+     *
+     * @param repo                  The repo with the commit.
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit to look in. Use "HEAD" for the currently checked out commit.
+     * @param path                  The path of the blob or tree to find. The root path finds the root tree of the commit.
+     * @return The entry at the path, along with its blob if it is a blob. Null if there is nothing at the path in the commit.
+     */
+    public TreePathEntry resolve_path(Repo repo, String commitHashOrReference, RepoPath path)
+    {
+        return resolve_paths(repo, commitHashOrReference, Collections.singletonList(path)).get(path);
+    }
+
+    /**
+     * Finds the blobs or trees at the given paths in a commit without checking it out.
+     * All the paths are resolved in one walk, so each tree along the way is only read once,
+     * and only the trees along the paths are read.
+     * If the {@link Database#manifests} has the manifest of the commit cached then blobs are found with a binary search instead.
+     *
+     * @param repo                  The repo with the commit.
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit to look in. Use "HEAD" for the currently checked out commit.
+     * @param paths                 The paths of the blobs or trees to find. The root path finds the root tree of the commit.
+     * @return The entry at each path that was found, along with its blob if it is a blob. Paths that are not in the commit are not in the map.
+     */
+    public Map<RepoPath, TreePathEntry> resolve_paths(Repo repo, String commitHashOrReference, Collection<RepoPath> paths)
+    {
+        // Get the commit that we are interested in:
+        Commit commit = resolveCommit(repo, commitHashOrReference);
+        if (commit == null) throw new NanoRuntimeException("We did not find any commits for " + commitHashOrReference);
+
+        // Create the walker to get the trees and blobs with:
+        TreeWalker walker = new TreeWalker(repo.database.objects, false);
+        Map<RepoPath, TreePathEntry> results = new HashMap<>();
+
+        // Check whether the commit is hot enough to have a manifest cached:
+        Manifest manifest = repo.database.manifests.getCachedManifest(commit.treeHashValue);
+        if (manifest != null)
+        {
+            // Look up the blobs in the manifest and only walk the trees for the paths that are not blobs:
+            List<RepoPath> remainingPaths = new ArrayList<>();
+            for (RepoPath path : paths)
+            {
+                int index = manifest.indexOf(path);
+                if (index >= 0)
+                {
+                    String absolutePath = manifest.getPath(index);
+                    String blobHashValue = manifest.getBlobHashValue(index);
+                    TreeEntry entry = new TreeEntry(ObjectType.BLOB, blobHashValue, absolutePath.substring(absolutePath.lastIndexOf(PathBase.DELIMITER) + 1));
+                    results.put(path, new TreePathEntry(absolutePath, entry, walker.getBlob(blobHashValue)));
+                }
+                else
+                {
+                    remainingPaths.add(path);
+                }
+            }
+            paths = remainingPaths;
+        }
+
+        // Start at the root tree:
+        TreePathEntry rootEntry = new TreePathEntry(PathBase.DELIMITER, new TreeEntry(ObjectType.TREE, commit.treeHashValue, ""), null);
+
+        // Walk down the trees along the paths:
+        resolve_paths_recursively(walker, rootEntry, paths, 0, results);
+        return results;
+    }
+
+    /**
+     * Finds the differences between two commits or trees.
+     * Sub trees with the same hash on both sides are skipped without being read,
+     * so the cost is proportional to the part of the trees that changed.
+     *
+     * @param repo                       The repo with the commits or trees.
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @return The differences for each blob that was added, deleted or modified, in the order of a depth first walk of the trees.
+     */
+    public List<DiffEntry> diff_tree(Repo repo, String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference)
+    {
+        List<DiffEntry> diffEntries = new ArrayList<>();
+        diff_tree(repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference, diffEntries::add);
+        return diffEntries;
+    }
+
+    /**
+     * Finds the differences between two commits or trees, optionally pairing up the content that was renamed or copied.
+     *
+     * @param repo                       The repo with the commits or trees.
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @param detectRenames              True to find the content that was renamed or copied with a {@link RenameDetector}.
+     * @return The differences for each blob, in the order of a depth first walk of the trees. Renames and copies take the place of the added content.
+     */
+    public List<DiffEntry> diff_tree(Repo repo, String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference, boolean detectRenames)
+    {
+        // Find the differences:
+        List<DiffEntry> diffEntries = diff_tree(repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference);
+
+        // Pair up the content that was renamed or copied:
+        return detectRenames ? new RenameDetector(repo.database.objects).detect(diffEntries) : diffEntries;
+    }
+
+    /**
+     * Finds the differences between two commits or trees and streams them to the given consumer as they are found.
+     * Sub trees with the same hash on both sides are skipped without being read,
+     * so the cost is proportional to the part of the trees that changed.
+     *
+     * @param repo                       The repo with the commits or trees.
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @param consumer                   The consumer that is given the difference for each blob that was added, deleted or modified, in the order of a depth first walk of the trees.
+     */
+    public void diff_tree(Repo repo, String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference, Consumer<DiffEntry> consumer)
+    {
+        // Get the trees to compare:
+        String oldTreeHashValue = resolveTreeHashValue(repo, oldCommitOrTreeOrReference);
+        String newTreeHashValue = resolveTreeHashValue(repo, newCommitOrTreeOrReference);
+
+        // Compare the trees:
+        new TreeDiff(repo.database.objects).diff(oldTreeHashValue, newTreeHashValue, consumer);
+    }
+
+    /**
+     * Writes a unified patch with the differences inside each blob that changed between two commits or trees.
+     * Sub trees with the same hash on both sides are skipped without being read,
+     * and each blob is diffed line by line straight from its bytes.
+     *
+     * @param repo                       The repo with the commits or trees.
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @param algorithm                  The algorithm to find the differences inside each blob with.
+     * @param outputStream               The stream to write the patch to.
+     */
+    public void diff(Repo repo, String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference, DiffAlgorithm algorithm, OutputStream outputStream)
+    {
+        // Create the content diff:
+        ContentDiff contentDiff = new ContentDiff();
+        contentDiff.algorithm = algorithm;
+
+        // Write the patch for each blob that changed:
+        diff_tree(repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference, diffEntry ->
         {
-            // Get the new path for this entry:
-            RepoPath entryPath = treePath.resolve(entry.name);
+            // Get the content on each side:
+            byte[] oldContent = diffEntry.oldHashValue == null ? null : ((Blob) cat_file(repo, diffEntry.oldHashValue)).content;
+            byte[] newContent = diffEntry.newHashValue == null ? null : ((Blob) cat_file(repo, diffEntry.newHashValue)).content;
+
+            try
+            {
+                // Write the patch:
+                contentDiff.writePatch(diffEntry, oldContent, newContent, outputStream);
+            }
+            catch (IOException e)
+            {
+                throw new NanoRuntimeException("The patch for " + diffEntry.getPath() + " could not be written.", e);
+            }
+        });
+    }
+
+    /**
+     * Gets the hash of the tree for the given commit or tree.
+     *
+     * @param repo                    The repo with the commit or tree.
+     * @param commitOrTreeOrReference The SHA-1 hash of a commit or tree, or a reference name (branch name) of a commit. Use "HEAD" for the currently checked out commit.
+     * @return The hash of the tree.
+     */
+    public String resolveTreeHashValue(Repo repo, String commitOrTreeOrReference)
+    {
+        // Check whether this is a tree:
+        if (repo.database.objects.get(commitOrTreeOrReference) instanceof Tree) return commitOrTreeOrReference;
+
+        // Get the commit:
+        Commit commit = resolveCommit(repo, commitOrTreeOrReference);
+        if (commit == null) throw new NanoRuntimeException("We did not find any commits or trees for " + commitOrTreeOrReference);
+
+        return commit.treeHashValue;
+    }
+
+    /**
+     * Gets the flat manifest of every blob in a commit.
+     * The manifest is built the first time and cached in {@link Database#manifests} if its memory budget allows,
+     * so looking up paths at hot commits is a binary search instead of a walk down the trees.
+     *
+     * @param repo                  The repo with the commit.
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit. Use "HEAD" for the currently checked out commit.
+     * @return The manifest of every blob in the commit.
+     */
+    public Manifest getManifest(Repo repo, String commitHashOrReference)
+    {
+        // Get the commit that we are interested in:
+        Commit commit = resolveCommit(repo, commitHashOrReference);
+        if (commit == null) throw new NanoRuntimeException("We did not find any commits for " + commitHashOrReference);
+
+        return repo.database.manifests.getManifest(repo.database.objects, commit.treeHashValue);
+    }
+
+    /**
+     * Lists the paths of all the blobs in a folder of a commit, using the flat manifest of the commit.
+     *
+     * @param repo                  The repo with the commit.
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit. Use "HEAD" for the currently checked out commit.
+     * @param folderPath            The path of the folder to list. The root path lists every blob in the commit.
+     * @return The absolute paths of the blobs in the folder and its sub folders, in sorted order.
+     */
+    public List<String> ls_files(Repo repo, String commitHashOrReference, RepoPath folderPath)
+    {
+        return getManifest(repo, commitHashOrReference).listPaths(folderPath);
+    }
+
+    /**
+     * Finds the blobs or trees at the given paths below the given tree.
+     *
+     * @param walker    The walker to get the trees and blobs with.
+     * @param treeEntry The entry for the tree that we are on.
+     * @param paths     The paths that go through this tree.
+     * @param depth     The number of parts of the paths that lead to this tree.
+     * @param results   The entry at each path that was found.
+     */
+    private void resolve_paths_recursively(TreeWalker walker, TreePathEntry treeEntry, Collection<RepoPath> paths, int depth, Map<RepoPath, TreePathEntry> results)
+    {
+        // Group the paths by the name of the next entry along them:
+        Map<String, List<RepoPath>> pathsByName = new LinkedHashMap<>();
+        for (RepoPath path : paths)
+        {
+            // Check whether the path ends at this tree:
+            if (path.getPartCount() == depth)
+            {
+                results.put(path, treeEntry);
+            }
+            else
+            {
+                pathsByName.computeIfAbsent(path.getPart(depth), name -> new ArrayList<>()).add(path);
+            }
+        }
+
+        // Check whether any of the paths go further:
+        if (pathsByName.isEmpty()) return;
+
+        // Get the tree:
+        Tree tree = walker.getTree(treeEntry.entry.hashValue);
+
+        // Index the entries by name if we are looking for many of them:
+        Map<String, TreeEntry> entriesByName = null;
+        if (pathsByName.size() > 1)
+        {
+            entriesByName = new HashMap<>();
+            for (TreeEntry entry : tree.entries)
+            {
+                entriesByName.put(entry.name, entry);
+            }
+        }
+
+        // Follow each name:
+        for (Map.Entry<String, List<RepoPath>> nameAndPaths : pathsByName.entrySet())
+        {
+            // Find the entry with the name:
+            String name = nameAndPaths.getKey();
+            TreeEntry entry = entriesByName == null ? tree.findEntry(name) : entriesByName.get(name);
+            if (entry == null) continue;
+
+            // Create the entry with its path:
+            TreePathEntry childEntry = new TreePathEntry(TreeWalker.resolve(treeEntry.getPath(), name), entry, null);
 
             // Check what type of entry it is:
             switch (entry.objectType)
             {
                 case BLOB:
-                {
-                    // Get the blob from the database:
-                    Blob blob = (Blob) objects.get(entry.hashValue);
-
-                    // Create content from this blob:
-                    MutableContent content = new MutableContent(entryPath.toAbsolutePath().toString(), blob.content);
+                    // Get the blob:
+                    childEntry.blob = walker.getBlob(entry.hashValue);
 
-                    // Save the content:
-                    contentList.add(content);
+                    // Only the paths that end here are found, because a path can't go through a blob:
+                    for (RepoPath path : nameAndPaths.getValue())
+                    {
+                        if (path.getPartCount() == depth + 1) results.put(path, childEntry);
+                    }
                     break;
-                }
+
                 case TREE:
+                    // Walk down the sub tree:
+                    resolve_paths_recursively(walker, childEntry, nameAndPaths.getValue(), depth + 1, results);
+                    break;
+
+                default:
+                    // Ignore this entry.
+            }
+        }
+    }
+
+    /**
+     * Create a new commit object.
+     * <p>
+     * This is usually not what an end user wants to run directly. See git-commit[1] instead.
+     * <p>
+     * Creates a new commit object based on the provided tree object and emits the new commit object id on stdout.
+     * The log message is read from the standard input, unless -m or -F options are given.
+     * <p>
+     * A commit object may have any number of parents.
+     * With exactly one parent, it is an ordinary commit.
+     * Having more than one parent makes the commit a merge between several lines of history.
+     * Initial (root) commits have no parents.
+     * <p>
+     * While a tree represents a particular directory state of a working directory,
+     * a commit represents that state in "time", and explains how to get there.
+     * <p>
+     * Normally a commit would identify a new "HEAD" state,
+     * and while Git doesn’t care where you save the note about that state,
+     * in practice we tend to just write the result to the file that is pointed at by
+     * .git/HEAD,
+     * so that we can always see what the last committed state was.
+     *
+     * @param repo               The repo to add the commit to.
+     * @param rootTreeHashValue  The SHA1 hash value of the tree to use as the root of the commit.
+     * @param commitMessage      The commit message to use.
+     * @param author             The author of the content.
+     * @param authorTimestamp    The date, time and time-zone when the author made the commit.
+     * @param committer          The person making this commit on behalf of the author.
+     * @param committerTimestamp The date, time and time-zone when the committer made the commit.
+     * @param commitParentHashes The hashes of the parent commits for this new commit. A commit object may have any number of parents. With exactly one parent, it is an ordinary commit. Having more than one parent makes the commit a merge between several lines of history. Initial (root) commits have no parents.
+     * @return The commit object that was created.
+     */
+    public Commit commit_tree(Repo repo, String rootTreeHashValue, String commitMessage, String author, ZonedDateTime authorTimestamp, String committer, ZonedDateTime committerTimestamp, String... commitParentHashes)
+    {
+        // Create a new commit:
+        Commit commit = new Commit(
+                author, authorTimestamp,
+                committer, committerTimestamp,
+                rootTreeHashValue,
+                commitMessage,
+                commitParentHashes);
+
+        // Write the commit in the format of the repo:
+        commit.formatVersion = repo.database.config.repositoryFormatVersion;
+
+        // Add the commit into the object database:
+        hash_object_write(repo, commit);
+
+        return commit;
+    }
+
+    /**
+     * Rewrites all the trees and commits in the object database in the given repository format
+     * and changes the repo so that new objects are written in that format too.
+     * Because the hash of an object depends on its encoding, rewriting a tree changes its hash,
+     * which changes the trees and commits that reference it.
+     * Trees are therefore rewritten from the leaves up, commits are rewritten from the roots of the history down
+     * and finally all the branches, tags and a detached HEAD are moved to the rewritten commits.
+     * The objects that were replaced are removed from the object database.
+     * Blobs are never affected by the repository format.
+     *
+     * @param repo                  The repo to rewrite.
+     * @param targetFormatVersion   The repository format version to rewrite the objects in. See {@link Config#repositoryFormatVersion}.
+     * @return A map of the SHA-1 hash values of the objects that were rewritten to their new hash values. Objects whose hashes did not change are not included.
+     */
+    public Map<String, String> upgrade_repository_format(Repo repo, int targetFormatVersion)
+    {
+        // Make sure we know the format:
+        if (targetFormatVersion < Config.FORMAT_VERSION_ORIGINAL || targetFormatVersion > Config.FORMAT_VERSION_LATEST)
+        {
+            throw new NanoRuntimeException("The repository format version " + targetFormatVersion + " is not supported. The latest version is " + Config.FORMAT_VERSION_LATEST + ".");
+        }
+
+        // Write new objects in the new format from now on:
+        repo.database.config.repositoryFormatVersion = targetFormatVersion;
+
+        // Keep track of the hash that each object was rewritten to:
+        // NOTE: The key is the old hash value and the value is the new hash value.
+        Map<String, String> rewrittenHashValues = new HashMap<>();
+
+        // Get a snapshot of the objects because we are going to add to the database:
+        List<RepoObject> existingObjects = new ArrayList<>(repo.database.objects.map.values());
+
+        // Rewrite all the trees:
+        for (RepoObject repoObject : existingObjects)
+        {
+            if (repoObject instanceof Tree)
+            {
+                rewrite_tree_recursively(repo, (Tree) repoObject, targetFormatVersion, rewrittenHashValues);
+            }
+        }
+        // Now all the trees have been rewritten.
+
+        // Rewrite all the commits:
+        for (RepoObject repoObject : existingObjects)
+        {
+            if (repoObject instanceof Commit)
+            {
+                rewrite_commit_history(repo, (Commit) repoObject, targetFormatVersion, rewrittenHashValues);
+            }
+        }
+        // Now all the commits have been rewritten.
+
+        // Only keep the objects whose hashes actually changed:
+        rewrittenHashValues.entrySet().removeIf(entry -> entry.getKey().equals(entry.getValue()));
+
+        // Remove the objects that were replaced:
+        for (String oldHashValue : rewrittenHashValues.keySet())
+        {
+            repo.database.objects.remove(oldHashValue);
+        }
+
+        // Drop the manifests of the trees that were replaced:
+        repo.database.manifests.clear();
+
+        // Move the references to the rewritten commits:
+        for (HashReferenceCollection references : Arrays.asList(repo.database.refs.heads, repo.database.refs.tags))
+        {
+            for (HashReference reference : references)
+            {
+                // Check whether the commit for this reference was rewritten:
+                String newHashValue = reference.hash == null ? null : rewrittenHashValues.get(reference.hash.value);
+                if (newHashValue != null)
                 {
-                    // Get the tree from the database:
-                    Tree childTree = (Tree) objects.get(entry.hashValue);
+                    // Point the reference at the rewritten commit:
+                    reference.hash = new Hash();
+                    reference.hash.value = newHashValue;
+                }
+            }
+        }
 
-                    // Walk the tree recursively:
-                    read_tree_recursively(objects, childTree, entryPath, contentList);
-                    break;
+        // Move a detached HEAD to the rewritten commit:
+        if (repo.database.HEAD != null && rewrittenHashValues.containsKey(repo.database.HEAD.referenceName))
+        {
+            repo.database.HEAD.referenceName = rewrittenHashValues.get(repo.database.HEAD.referenceName);
+        }
+
+        return rewrittenHashValues;
+    }
+
+    /**
+     * Rewrites the given tree and all its sub trees in the given repository format.
+     * Sub trees are rewritten first so that the new tree can reference their new hashes.
+     *
+     * @param repo                The repo to write the rewritten trees into.
+     * @param tree                The tree to rewrite.
+     * @param targetFormatVersion The repository format version to rewrite the tree in.
+     * @param rewrittenHashValues The map of old hash values to new hash values for the objects that have already been rewritten. This gets updated with the trees that are rewritten.
+     * @return The new hash value of the tree.
+     */
+    private String rewrite_tree_recursively(Repo repo, Tree tree, int targetFormatVersion, Map<String, String> rewrittenHashValues)
+    {
+        // Check whether we have already rewritten this tree:
+        String newHashValue = rewrittenHashValues.get(tree.hash.value);
+        if (newHashValue != null) return newHashValue;
+
+        // Create the rewritten tree:
+        Tree newTree = new Tree();
+        newTree.formatVersion = targetFormatVersion;
+
+        // Rewrite each entry:
+        for (TreeEntry entry : tree.entries)
+        {
+            // Create the rewritten entry:
+            TreeEntry newEntry = new TreeEntry();
+            newEntry.objectType = entry.objectType;
+            newEntry.name = entry.name;
+            newEntry.hashValue = entry.hashValue;
+
+            // Check whether the entry is a sub tree:
+            if (entry.objectType == ObjectType.TREE)
+            {
+                // Rewrite the sub tree first:
+                RepoObject subTree = repo.database.objects.get(entry.hashValue);
+                if (subTree instanceof Tree)
+                {
+                    newEntry.hashValue = rewrite_tree_recursively(repo, (Tree) subTree, targetFormatVersion, rewrittenHashValues);
                 }
-                default:
-                    // Ignore this entry.
             }
+
+            // Save the entry:
+            newTree.entries.add(newEntry);
         }
-    }
 
+        // Put the entries in the canonical order:
+        newTree.entries.sort(TreeEntryComparator.INSTANCE);
+
+        // Write the rewritten tree:
+        hash_object_write(repo, newTree);
+
+        // Save the mapping:
+        rewrittenHashValues.put(tree.hash.value, newTree.hash.value);
+
+        return newTree.hash.value;
+    }
 
     /**
-     * Create a new commit object.
-     * <p>
-     * This is usually not what an end user wants to run directly. See git-commit[1] instead.
-     * <p>
-     * Creates a new commit object based on the provided tree object and emits the new commit object id on stdout.
-     * The log message is read from the standard input, unless -m or -F options are given.
-     * <p>
-     * A commit object may have any number of parents.
-     * With exactly one parent, it is an ordinary commit.
-     * Having more than one parent makes the commit a merge between several lines of history.
-     * Initial (root) commits have no parents.
-     * <p>
-     * While a tree represents a particular directory state of a working directory,
-     * a commit represents that state in "time", and explains how to get there.
-     * <p>
-     * Normally a commit would identify a new "HEAD" state,
-     * and while Git doesn’t care where you save the note about that state,
-     * in practice we tend to just write the result to the file that is pointed at by
-     * .git/HEAD,
-     * so that we can always see what the last committed state was.
+     * Rewrites the given commit and all of its ancestors in the given repository format.
+     * Parents are rewritten before their children so that each new commit can reference the new hashes of its parents.
+     * This walks the history with an explicit stack so that long histories don't overflow the call stack.
      *
-     * @param repo               The repo to add the commit to.
-     * @param rootTreeHashValue  The SHA1 hash value of the tree to use as the root of the commit.
-     * @param commitMessage      The commit message to use.
-     * @param author             The author of the content.
-     * @param authorTimestamp    The date, time and time-zone when the author made the commit.
-     * @param committer          The person making this commit on behalf of the author.
-     * @param committerTimestamp The date, time and time-zone when the committer made the commit.
-     * @param commitParentHashes The hashes of the parent commits for this new commit. A commit object may have any number of parents. With exactly one parent, it is an ordinary commit. Having more than one parent makes the commit a merge between several lines of history. Initial (root) commits have no parents.
-     * @return The commit object that was created.
+     * @param repo                The repo to write the rewritten commits into.
+     * @param commit              The commit to rewrite.
+     * @param targetFormatVersion The repository format version to rewrite the commit in.
+     * @param rewrittenHashValues The map of old hash values to new hash values for the objects that have already been rewritten. This gets updated with the commits that are rewritten. All trees must already be rewritten.
      */
-    public Commit commit_tree(Repo repo, String rootTreeHashValue, String commitMessage, String author, ZonedDateTime authorTimestamp, String committer, ZonedDateTime committerTimestamp, String... commitParentHashes)
+    private void rewrite_commit_history(Repo repo, Commit commit, int targetFormatVersion, Map<String, String> rewrittenHashValues)
     {
-        // Create a new commit:
-        Commit commit = new Commit(
-                author, authorTimestamp,
-                committer, committerTimestamp,
-                rootTreeHashValue,
-                commitMessage,
-                commitParentHashes);
+        // Create the stack of commits that still need to be rewritten:
+        Deque<Commit> stack = new ArrayDeque<>();
+        stack.push(commit);
 
-        // Add the commit into the object database:
-        hash_object_write(repo, commit);
+        while (!stack.isEmpty())
+        {
+            // Get the next commit to process:
+            Commit currentCommit = stack.peek();
 
-        return commit;
+            // Check whether we have already rewritten this commit:
+            if (rewrittenHashValues.containsKey(currentCommit.hash.value))
+            {
+                stack.pop();
+                continue;
+            }
+
+            // Make sure that all the parents have been rewritten first:
+            boolean parentsPending = false;
+            if (currentCommit.parentCommitHashValues != null)
+            {
+                for (String parentCommitHashValue : currentCommit.parentCommitHashValues)
+                {
+                    // Check whether the parent still needs to be rewritten:
+                    if (parentCommitHashValue == null || rewrittenHashValues.containsKey(parentCommitHashValue)) continue;
+                    RepoObject parent = repo.database.objects.get(parentCommitHashValue);
+                    if (parent instanceof Commit)
+                    {
+                        // Rewrite the parent first:
+                        stack.push((Commit) parent);
+                        parentsPending = true;
+                    }
+                }
+            }
+            if (parentsPending) continue;
+            // Now all the parents have been rewritten.
+
+            // Get the new hashes of the parents:
+            String[] newParentCommitHashValues = null;
+            if (currentCommit.parentCommitHashValues != null)
+            {
+                newParentCommitHashValues = new String[currentCommit.parentCommitHashValues.length];
+                for (int i = 0; i < newParentCommitHashValues.length; i++)
+                {
+                    String parentCommitHashValue = currentCommit.parentCommitHashValues[i];
+                    newParentCommitHashValues[i] = rewrittenHashValues.getOrDefault(parentCommitHashValue, parentCommitHashValue);
+                }
+            }
+
+            // Create the rewritten commit:
+            Commit newCommit = new Commit(
+                    currentCommit.getAuthor(), currentCommit.getAuthorTimeStamp(),
+                    currentCommit.getCommitter(), currentCommit.getCommitterTimeStamp(),
+                    rewrittenHashValues.getOrDefault(currentCommit.treeHashValue, currentCommit.treeHashValue),
+                    currentCommit.getMessage(),
+                    newParentCommitHashValues);
+            newCommit.formatVersion = targetFormatVersion;
+
+            // Write the rewritten commit:
+            hash_object_write(repo, newCommit);
+
+            // Save the mapping:
+            rewrittenHashValues.put(currentCommit.hash.value, newCommit.hash.value);
+            stack.pop();
+        }
     }
 
     /**
@@ -932,70 +1603,91 @@ public class RepoEngine
     {
         // Create a set of all commits that we have traversed:
         // NOTE: The SHA1 hash value of the commit is the key.
-        Map<String, Commit> commitSet = new IdentityHashMap<>();
+        Set<String> commitSet = new HashSet<>();
 
         // Create a list for the commits:
         List<Commit> commits = new ArrayList<>();
 
-        // Walk the commits recursively and get all the unique commits down to the roots:
-        walk_rev_list_recursively(repo.database.objects, commitHashValue, commitSet, commits, Integer.MAX_VALUE);
+        // Walk the commits and get all the unique commits down to the roots:
+        walk_rev_list(repo.database.objects, commitHashValue, commitSet, commits, Integer.MAX_VALUE);
 
         return commits;
     }
 
     /**
-     * Walks the current commit and all of it's parents recursively until it finds the roots.
+     * Walks the current commit and all of it's parents until it finds the roots.
+     * The commits are visited depth first, following the parents in order, which is the same order as a recursive walk.
+     * The walk uses an explicit stack so that very long histories don't overflow the call stack.
+     * Only the parents of each commit are used, so commits that decode lazily never need to decode their other details.
      *
      * @param objects         The object database to interrogate for commits.
      * @param commitHashValue The SHA-1 hash value of the commit that we want to walk backwards down to the root.
-     * @param commitSet       The set of existing commits that have been traversed. The key is the SHA-1 hash value of the commit.
+     * @param commitSet       The set of SHA-1 hash values of the commits that have been traversed.
      * @param commitSequence  The sequence of commits that we traverse the commits in. As we discover a new commit, we add it to this list.
      * @param depthLeft       The remaining depth that we are willing to walk. This is needed to limit the depth to which we walk.
      */
-    private void walk_rev_list_recursively(RepoObjectStore objects, String commitHashValue, Map<String, Commit> commitSet, List<Commit> commitSequence, int depthLeft)
+    private void walk_rev_list(RepoObjectStore objects, String commitHashValue, Set<String> commitSet, List<Commit> commitSequence, int depthLeft)
     {
-        // Make sure we have some depth left:
-        if (depthLeft < 0) return;
-        // Now we know that we still have some remaining depth.
+        // Create the stack of commits that we still need to walk, along with the depth that we have left at each one:
+        Deque<String> hashStack = new ArrayDeque<>();
+        Deque<Integer> depthStack = new ArrayDeque<>();
 
-        // Make sure we have a hash:
+        // Start with the given commit:
+        // NOTE: ArrayDeque doesn't allow nulls, so we check for the hash here.
         if (commitHashValue == null || commitHashValue.isEmpty()) return;
-        // Now we know that the have a hash value.
-
-        // Check whether we have already seen this commit:
-        if (commitSet.containsKey(commitHashValue)) return;
-        // Now we know that we have not seen this commit yet.
-
-        // Get the commit to start walking from:
-        RepoObject repoObject = objects.get(commitHashValue);
+        hashStack.push(commitHashValue);
+        depthStack.push(depthLeft);
 
-        // Make sure it's a commit:
-        if (repoObject != null && repoObject instanceof Commit)
+        while (!hashStack.isEmpty())
         {
-            // We have a commit.
-            Commit commit = (Commit) repoObject;
+            // Get the next commit to walk:
+            String currentHashValue = hashStack.pop();
+            int currentDepthLeft = depthStack.pop();
+
+            // Make sure we have some depth left:
+            if (currentDepthLeft < 0) continue;
+            // Now we know that we still have some remaining depth.
 
-            // Add this commit to the set:
-            commitSet.put(commit.hash.value, commit);
+            // Check whether we have already seen this commit:
+            if (commitSet.contains(currentHashValue)) continue;
+            // Now we know that we have not seen this commit yet.
 
-            // Add this commit to the sequence:
-            commitSequence.add(commit);
+            // Get the commit:
+            RepoObject repoObject = objects.get(currentHashValue);
 
-            // Walk any of the commits parents:
-            if (commit.parentCommitHashValues != null && commit.parentCommitHashValues.length > 0)
+            // Make sure it's a commit:
+            if (repoObject instanceof Commit)
             {
-                // We have parents.
-                for (String parentCommitHashValue : commit.parentCommitHashValues)
+                // We have a commit.
+                Commit commit = (Commit) repoObject;
+
+                // Add this commit to the set:
+                commitSet.add(currentHashValue);
+
+                // Add this commit to the sequence:
+                commitSequence.add(commit);
+
+                // Walk any of the commits parents:
+                String[] parentCommitHashValues = commit.parentCommitHashValues;
+                if (parentCommitHashValues != null)
                 {
-                    // Walk the parent recursively:
-                    walk_rev_list_recursively(objects, parentCommitHashValue, commitSet, commitSequence, depthLeft - 1);
+                    // Push the parents in reverse so that the first parent is walked first:
+                    for (int i = parentCommitHashValues.length - 1; i >= 0; i--)
+                    {
+                        // Make sure we have a hash:
+                        String parentCommitHashValue = parentCommitHashValues[i];
+                        if (parentCommitHashValue == null || parentCommitHashValue.isEmpty()) continue;
+
+                        hashStack.push(parentCommitHashValue);
+                        depthStack.push(currentDepthLeft - 1);
+                    }
                 }
             }
-        }
-        else
-        {
-            // This is not a commit.
-            throw new NanoRuntimeException("The given hash is not a valid commit. A valid commit hash is needed. " + commitHashValue);
+            else
+            {
+                // This is not a commit.
+                throw new NanoRuntimeException("The given hash is not a valid commit. A valid commit hash is needed. " + currentHashValue);
+            }
         }
     }
 
@@ -1102,32 +1794,105 @@ public class RepoEngine
      * command line, git add will fail with a list of ignored files. Ignored files reached by directory recursion or
      * filename globbing performed by Git (quote your globs before the shell) will be silently ignored. The git add
      * command can be used to add ignored files with the -f (force) option.
+     * <p>
+     * Content that hasn't been modified since it was last added (see {@link MutableContent#getModificationCount()})
+     * is skipped.
+     * Snapshots copy the content of the working area, because the working area arrays belong to the caller.
+     * The copy in the staging area is then shared with the committed area by {@link #commitAll(Repo, String, String, ZonedDateTime, String, ZonedDateTime, boolean)},
+     * and it is only copied again if it is modified in place through {@link MutableContent#getWritableContent()} (copy on write).
      *
      * @param repo            The repository to update.
      * @param createSnapshots True to create a snapshot of the content when adding it to the staging area. False to pass the content by reference, thus minimizing an expensive copy operation.
      */
     public void addAll(Repo repo, boolean createSnapshots)
     {
+        // Get the staging area indexed by path so that we don't have to search through it for every piece of content:
+        // NOTE: The index is kept by the staging area, so it is only rebuilt if the staging area was changed since we last used it.
+        Map<String, MutableContent> stagedContentByPath = repo.stagingArea.getContentIndex();
+
         // Go through all the content in the working area:
         for (MutableContent workingAreaContent : repo.workingArea.contents)
         {
-            byte[] content;
+            // Get the path of the content:
+            String absolutePath = workingAreaContent.getAbsolutePath();
+
+            // Get the content that we last staged from this content:
+            MutableContent stagedContent = workingAreaContent.stagedContent;
+
+            // Check whether neither side has been modified since we last staged this content:
+            // NOTE: If we want a snapshot now then it must have been staged as a snapshot before too.
+            if (stagedContent != null
+                && (workingAreaContent.stagedAsSnapshot || !createSnapshots)
+                && workingAreaContent.getModificationCount() == workingAreaContent.stagedModificationCount
+                && stagedContent.getModificationCount() == workingAreaContent.stagedContentModificationCount
+                && stagedContentByPath.get(absolutePath) == stagedContent)
+            {
+                // The staged content is already up to date.
+                continue;
+            }
 
-            // Check whether we need to make a snapshot:
-            if (createSnapshots)
+            // Get the content that is staged at this path:
+            stagedContent = stagedContentByPath.get(absolutePath);
+
+            // Check whether the working content was checked out lazily and hasn't been loaded yet:
+            String lazyBlobHashValue = workingAreaContent.isContentLoaded() ? null : workingAreaContent.getCachedBlobHashValue();
+            if (lazyBlobHashValue != null)
             {
-                // We want to create a snapshot of the content.
-                // Clone the contents byte[] so that it is a snapshot at the point where we added it:
-                content = workingAreaContent.getCloneOfContentAsByteArray();
+                // Stage the content by the hash of its blob so that it doesn't need to be loaded:
+                // NOTE: The blob can't change, so this is as good as a snapshot.
+                if (stagedContent == null)
+                {
+                    // We do not have content at this path yet.
+                    stagedContent = new MutableContent(absolutePath, repo.database.objects, lazyBlobHashValue);
+                    repo.stagingArea.addIndexedContent(stagedContent);
+                }
+                else if (!lazyBlobHashValue.equals(stagedContent.getCachedBlobHashValue()))
+                {
+                    // We already have different content at this path.
+                    stagedContent.setLazyContent(repo.database.objects, lazyBlobHashValue);
+                }
             }
             else
             {
-                // We do not want to create a snapshot.
-                content = workingAreaContent.content;
+                byte[] content;
+
+                // Check whether we need to make a snapshot:
+                if (createSnapshots)
+                {
+                    // We want to create a snapshot of the content.
+                    // Clone the contents byte[] so that it is a snapshot at the point where we added it:
+                    // NOTE: The working area array belongs to the caller, who may write to it directly, so it can't be shared.
+                    content = workingAreaContent.getCloneOfContentAsByteArray();
+                }
+                else
+                {
+                    // We do not want to create a snapshot.
+                    content = workingAreaContent.getContent();
+                }
+
+                // Save the content in the staging area:
+                if (stagedContent == null)
+                {
+                    // We do not have content at this path yet.
+                    stagedContent = new MutableContent(absolutePath, content);
+                    repo.stagingArea.addIndexedContent(stagedContent);
+                }
+                else
+                {
+                    // We already have content at this path.
+                    stagedContent.setContent(content);
+                }
+
+                // Mark the staged snapshot as shared so that it can be committed without another copy (copy on write):
+                // NOTE: Without a snapshot, the array is still shared if the working content shares it (like with a blob).
+                if (createSnapshots || workingAreaContent.isContentShared()) stagedContent.shareContent();
             }
 
-            // Save the content in the staging area:
-            repo.stagingArea.putContent(workingAreaContent.getAbsolutePath(), content);
+            // Remember what we staged so that we can skip this content next time if it hasn't changed:
+            workingAreaContent.stagedContent = stagedContent;
+            workingAreaContent.stagedModificationCount = workingAreaContent.getModificationCount();
+            workingAreaContent.stagedContentModificationCount = stagedContent.getModificationCount();
+            workingAreaContent.stagedAsSnapshot = createSnapshots || lazyBlobHashValue != null;
         }
     }
 
@@ -1240,30 +2005,77 @@ public class RepoEngine
         // Write all the staging content as a tree:
         Tree rootTree = write_tree(repo);
 
-        // Clear the committed area because we are about to update it:
-        repo.committedArea.clear();
+        // Unfreeze the committed area while keeping its content, because we are about to update it:
+        // NOTE: Content that didn't change keeps its place so that the new snapshot shares it with the previous one.
+        repo.committedArea.thaw();
 
-        // Create new immutable content from staging area content and add it to the committed area.
+        // Create new immutable content from staging area content that changed and add it to the committed area.
+        Set<String> stagedPaths = new HashSet<>();
         repo.stagingArea.contents.forEach(mutableContent ->
         {
+            // Keep track of the paths that are staged:
+            String absolutePath = mutableContent.getAbsolutePath();
+            stagedPaths.add(absolutePath);
+
+            // Check whether the staged content was checked out lazily and hasn't been loaded yet:
+            String lazyBlobHashValue = mutableContent.isContentLoaded() ? null : mutableContent.getCachedBlobHashValue();
+            if (lazyBlobHashValue != null)
+            {
+                // Commit the content by the hash of its blob so that it doesn't need to be loaded:
+                ImmutableContent committedContent = repo.committedArea.getContent(absolutePath);
+                if (committedContent == null || !lazyBlobHashValue.equals(committedContent.getCachedBlobHashValue()))
+                {
+                    repo.committedArea.putContent(new ImmutableContent(absolutePath, repo.database.objects, lazyBlobHashValue));
+                }
+                return;
+            }
+
             // Check whether we need to create snapshots of the content:
-            if (createSnapshots)
+            byte[] content;
+            if (createSnapshots && mutableContent.isContentShared())
+            {
+                // We must create snapshots and the staged content is already a snapshot that the engine made.
+                // Share the content so that it is copied before anyone modifies it through the staging area (copy on write):
+                content = mutableContent.getContent();
+            }
+            else if (createSnapshots)
             {
-                // We must create snapshots.
+                // We must create snapshots and the staged content might belong to the caller.
                 // Clone the content so that anyone with a reference to the original can't modify the immutable content:
-                repo.committedArea.putContent(mutableContent.getAbsolutePath(), mutableContent.getCloneOfContentAsByteArray());
+                content = mutableContent.getCloneOfContentAsByteArray();
             }
             else
             {
                 // Just put the content in by reference to avoid a copy.
                 // (NOTE: It's possible for someone with the content reference to change it then!)
-                repo.committedArea.putContent(mutableContent.getAbsolutePath(), mutableContent.getContent());
+                content = mutableContent.getContent();
+            }
+
+            // Check whether the committed area already has this content:
+            ImmutableContent committedContent = repo.committedArea.getContent(absolutePath);
+            if (committedContent == null || committedContent.getContent() != content)
+            {
+                // The content changed.
+                repo.committedArea.putContent(absolutePath, content);
             }
         });
 
+        // Remove any committed content that is no longer staged:
+        if (repo.committedArea.getContentCount() != stagedPaths.size())
+        {
+            List<String> removedPaths = repo.committedArea.contentStream()
+                    .map(ImmutableContent::getAbsolutePath)
+                    .filter(absolutePath -> !stagedPaths.contains(absolutePath))
+                    .collect(Collectors.toList());
+            removedPaths.forEach(repo.committedArea::removeContent);
+        }
+
         // Freeze the committedArea so that no more data can be written to it unless it is cleared
         repo.committedArea.freeze();
 
+        // Remember the tree for the committed content so that a checkout can apply only the differences from it:
+        repo.committedArea.setTreeHashValue(rootTree.hash.value);
+
         // Create the commit:
         Commit commit = commit_tree(repo, rootTree.hash.value, commitMessage, author, authorTimestamp, committer, committerTimestamp, commitParentHashes);
 
@@ -1450,15 +2262,190 @@ public class RepoEngine
      * what you would commit by running git commit; the second and third are what you could commit by running git add
      * before running git commit.
      *
+     * <p>
+     * The areas are compared by path and then by the hash of their blobs.
+     * The hash of each piece of content is cached until it is modified, so only content that changed needs to be hashed.
+     * Large areas are compared in parallel.
+     * The entries are sorted by path and content that is unmodified is not listed.
+     *
      * @param repo The repository to get the status of.
+     * @return The status of the working and staging areas compared to the committed area.
      */
     public Status status(Repo repo)
+    {
+        return status(repo, false);
+    }
+
+    /**
+     * Show the working tree status, optionally pairing up the content that was renamed or copied.
+     * https://git-scm.com/docs/git-status
+     * <p>
+     * This is the same as {@link #status(Repo)}, except that content that was deleted from one path and added at another
+     * can be listed as {@link ContentState#RENAMED} and added content that came from deleted or modified content
+     * can be listed as {@link ContentState#COPIED}. These entries are listed at their new path with their old path in {@link StatusEntry#oldAbsolutePath}.
+     *
+     * @param repo          The repository to get the status of.
+     * @param detectRenames True to find the content that was renamed or copied with a {@link RenameDetector}.
+     * @return The status of the working and staging areas compared to the committed area.
+     */
+    public Status status(Repo repo, boolean detectRenames)
     {
         // Create the status output:
         Status status = new Status();
+
+        // Index the committed content by path:
+        Map<String, ImmutableContent> committedContent = repo.committedArea.getContentMapSnapshot();
+
+        // Compare the working and staging areas to the committed area:
+        compare_content_areas(repo.workingArea.getContentMapSnapshot(), committedContent, status.workingAreaEntries);
+        compare_content_areas(repo.stagingArea.getContentMapSnapshot(), committedContent, status.stagingAreaEntries);
+
+        // Pair up the content that was renamed or copied:
+        if (detectRenames)
+        {
+            detect_renames(repo.workingArea.getContentMapSnapshot(), committedContent, status.workingAreaEntries);
+            detect_renames(repo.stagingArea.getContentMapSnapshot(), committedContent, status.stagingAreaEntries);
+        }
+
         return status;
     }
 
+    /**
+     * Finds the content that was renamed or copied in the status entries of an area.
+     *
+     * @param areaContent   The content in the area, indexed by path.
+     * @param baseContent   The content in the base area that the area was compared with, indexed by path.
+     * @param statusEntries The status entries of the area. The renamed and copied content replaces the added and deleted entries.
+     */
+    private void detect_renames(Map<String, ? extends ContentBase> areaContent, Map<String, ? extends ContentBase> baseContent, StatusEntryCollection statusEntries)
+    {
+        // Describe each status entry as a difference, keeping the bytes of the content for each hash:
+        Map<String, byte[]> contentByHash = new HashMap<>();
+        List<DiffEntry> diffEntries = new ArrayList<>(statusEntries.size());
+        for (StatusEntry statusEntry : statusEntries)
+        {
+            // Get the content on each side:
+            ContentBase oldContent = statusEntry.state == ContentState.ADDED ? null : baseContent.get(statusEntry.absolutePath);
+            ContentBase newContent = statusEntry.state == ContentState.DELETED ? null : areaContent.get(statusEntry.absolutePath);
+            String oldHashValue = oldContent == null ? null : hash_content(oldContent);
+            String newHashValue = newContent == null ? null : hash_content(newContent);
+            if (oldContent != null) contentByHash.putIfAbsent(oldHashValue, oldContent.getContent());
+            if (newContent != null) contentByHash.putIfAbsent(newHashValue, newContent.getContent());
+
+            // Create the difference:
+            diffEntries.add(new DiffEntry(
+                    statusEntry.state,
+                    oldContent == null ? null : statusEntry.absolutePath, oldHashValue,
+                    newContent == null ? null : statusEntry.absolutePath, newHashValue));
+        }
+
+        // Find the renames and copies:
+        List<DiffEntry> detectedEntries = new RenameDetector(contentByHash::get).detect(diffEntries);
+        if (detectedEntries == diffEntries) return;
+
+        // Replace the status entries:
+        statusEntries.clear();
+        for (DiffEntry diffEntry : detectedEntries)
+        {
+            StatusEntry statusEntry = new StatusEntry(diffEntry.getPath(), diffEntry.changeType);
+            if (diffEntry.changeType == ContentState.RENAMED || diffEntry.changeType == ContentState.COPIED) statusEntry.oldAbsolutePath = diffEntry.oldPath;
+            statusEntries.add(statusEntry);
+        }
+    }
+
+    /**
+     * Compares the content in an area to the content in a base area and adds a status entry for each difference.
+     * The comparison runs in parallel across partitions of the paths if there is enough content.
+     *
+     * @param areaContent    The content in the area to check, indexed by path.
+     * @param baseContent    The content in the base area to compare with, indexed by path.
+     * @param statusEntries  The status entries to add to. They are added in path order.
+     */
+    private void compare_content_areas(Map<String, ? extends ContentBase> areaContent, Map<String, ? extends ContentBase> baseContent, StatusEntryCollection statusEntries)
+    {
+        // Check whether we should compare in parallel:
+        boolean parallel = areaContent.size() + baseContent.size() >= PARALLEL_HASHING_THRESHOLD;
+
+        // Find the content that was added or modified:
+        Stream<? extends ContentBase> areaStream = parallel ? areaContent.values().parallelStream() : areaContent.values().stream();
+        Stream<StatusEntry> addedOrModified = areaStream
+                .map(content ->
+                     {
+                         // Get the content at the same path in the base area:
+                         ContentBase base = baseContent.get(content.getAbsolutePath());
+                         if (base == null) return new StatusEntry(content.getAbsolutePath(), ContentState.ADDED);
+                         if (!isSameContent(content, base)) return new StatusEntry(content.getAbsolutePath(), ContentState.MODIFIED);
+                         return null;
+                     })
+                .filter(Objects::nonNull);
+
+        // Find the content that was deleted:
+        Stream<? extends ContentBase> baseStream = parallel ? baseContent.values().parallelStream() : baseContent.values().stream();
+        Stream<StatusEntry> deleted = baseStream
+                .filter(content -> !areaContent.containsKey(content.getAbsolutePath()))
+                .map(content -> new StatusEntry(content.getAbsolutePath(), ContentState.DELETED));
+
+        // Put the entries in path order:
+        List<StatusEntry> entries = Stream.concat(addedOrModified, deleted).collect(Collectors.toList());
+        entries.sort((entry1, entry2) -> TreeEntryComparator.compareNames(entry1.absolutePath, entry2.absolutePath));
+        statusEntries.addAll(entries);
+    }
+
+    /**
+     * Checks whether two pieces of content are the same.
+     * Content where both blob hashes are already known is compared by hash, so lazy content doesn't need to be loaded.
+     * Content that references the same bytes is the same.
+     * Content with a different number of bytes is different.
+     * Otherwise the (cached) hashes of their blobs are compared.
+     *
+     * @param content1 The first content to compare.
+     * @param content2 The second content to compare.
+     * @return True if the content is the same.
+     */
+    private boolean isSameContent(ContentBase content1, ContentBase content2)
+    {
+        // Check whether we already know both hashes:
+        String blobHashValue1 = content1.getCachedBlobHashValue();
+        String blobHashValue2 = content2.getCachedBlobHashValue();
+        if (blobHashValue1 != null && blobHashValue2 != null) return blobHashValue1.equals(blobHashValue2);
+
+        // Check whether they reference the same bytes:
+        byte[] bytes1 = content1.getContent();
+        byte[] bytes2 = content2.getContent();
+        if (bytes1 == bytes2) return true;
+
+        // Check whether they have the same number of bytes:
+        if ((bytes1 == null ? 0 : bytes1.length) != (bytes2 == null ? 0 : bytes2.length)) return false;
+
+        // Compare the hashes:
+        return hash_content(content1).equals(hash_content(content2));
+    }
+
+    /**
+     * Gets the hash value of the blob for the given content.
+     * The hash value is cached on the content until the content is modified,
+     * so asking again for content that hasn't changed doesn't hash it again.
+     * This is safe to call from many threads at once, like when areas are compared in parallel for the status.
+     *
+     * @param content The content to hash.
+     * @return The hash value of the blob for the content.
+     */
+    public String hash_content(ContentBase content)
+    {
+        // Check whether we already have the hash:
+        String blobHashValue = content.getCachedBlobHashValue();
+        if (blobHashValue == null)
+        {
+            // We need to hash the content.
+            // NOTE: We get the version before we hash so that a concurrent change makes the cached value stale rather than wrong.
+            // NOTE: Each thread uses its own message digest because the content might be hashed in parallel.
+            long version = content.getContentVersion();
+            blobHashValue = hash_object(threadMessageDigest.get(), new Blob(content.getContent())).value;
+            content.cacheBlobHashValue(blobHashValue, version);
+        }
+        return blobHashValue;
+    }
+
     /**
      * Clears the three areas for the passed repo
      *
@@ -1493,25 +2480,47 @@ public class RepoEngine
      * "check out the current branch",
      * which is a glorified no-op with a rather expensive side-effects to show only the tracking information,
      * if exists, for the current branch.
+     * <p>
+     * In this implementation, the staging and working areas are reset to match the commit, so local modifications are discarded.
+     * If we know which tree is checked out already then only the differences between the trees and the local modifications are applied,
+     * otherwise the areas are cleared and the whole tree is checked out. Both ways give the same result.
      *
      * @param repo                        The repo to checkout.
      * @param commitHashOrReferenceOrHEAD The SHA-1 hash or reference name (branch name) of the commit that we want to get. Use "HEAD" to get the currently checked out commit.
      * @param revisionOffset              The offset from the commit pointed to by the branch name. 0 means the last commit for the branch. -1 means the commit before. +1 means the commit after but this is not supported (it will return nothing when looking for commits).
      */
     public void checkout(Repo repo, String commitHashOrReferenceOrHEAD, int revisionOffset)
+    {
+        checkout(repo, commitHashOrReferenceOrHEAD, revisionOffset, false);
+    }
+
+    /**
+     * Updates files in the working tree to match the version in the specified tree.
+     * This is the same as {@link #checkout(Repo, String, int)} except that the content can be checked out lazily.
+     * <p>
+     * Lazy content only holds the hash of its blob. The content is loaded from the object store when it is first accessed,
+     * so checking out a large tree only costs as much as the number of paths in it, no matter how much content there is.
+     * The hash of the blob is known without loading the content, so working out the status or writing the tree doesn't load it either.
+     *
+     * @param repo                        The repo to checkout.
+     * @param commitHashOrReferenceOrHEAD The SHA-1 hash or reference name (branch name) of the commit that we want to get. Use "HEAD" to get the currently checked out commit.
+     * @param revisionOffset              The offset from the commit pointed to by the branch name. 0 means the last commit for the branch. -1 means the commit before. +1 means the commit after but this is not supported (it will return nothing when looking for commits).
+     * @param lazy                        True to only load the content from the object store when it is first accessed. False to load all the content now.
+     */
+    public void checkout(Repo repo, String commitHashOrReferenceOrHEAD, int revisionOffset, boolean lazy)
     {
         // Get the commit that we are interested in:
         Commit startingCommit = resolveCommit(repo, commitHashOrReferenceOrHEAD);
 
         // Create a set of all commits that we have traversed:
         // NOTE: The SHA1 hash value of the commit is the key.
-        Map<String, Commit> commitSet = new IdentityHashMap<>();
+        Set<String> commitSet = new HashSet<>();
 
         // Create a list for the commits:
         List<Commit> commits = new ArrayList<>();
 
-        // Walk the commits recursively and get all the unique commits down to the roots:
-        walk_rev_list_recursively(repo.database.objects, startingCommit.hash.value, commitSet, commits, -revisionOffset);
+        // Walk the commits and get all the unique commits down to the roots:
+        walk_rev_list(repo.database.objects, startingCommit.hash.value, commitSet, commits, -revisionOffset);
 
         // Make sure we found the commits:
         if (commits.size() > 0)
@@ -1519,15 +2528,36 @@ public class RepoEngine
             // Get the last commit in the chain (that is the one we want to checkout):
             Commit commit = commits.get(commits.size() - 1);
 
-            // Clear the content areas:
-            clearAreas(repo);
+            // Check whether we know which tree is checked out already:
+            String checkedOutTreeHashValue = repo.committedArea.getTreeHashValue();
+            if (checkedOutTreeHashValue != null && cat_file(repo, checkedOutTreeHashValue) instanceof Tree)
+            {
+                // We know which tree is checked out.
+                // Only apply the differences between the trees to the content areas:
+                checkout_tree_differences(repo, checkedOutTreeHashValue, commit.treeHashValue, lazy);
+            }
+            else
+            {
+                // We don't know what is checked out.
+
+                // Clear the content areas:
+                clearAreas(repo);
 
-            // Recursively walk the tree and restore the contents:
-            walk_and_checkout_tree_recursively(repo, commit.treeHashValue, RepoPath.atRoot());
+                // Recursively walk the tree and restore the contents:
+                walk_and_checkout_tree(repo, commit.treeHashValue, RepoPath.atRoot(), lazy);
+            }
 
             // Freeze the committed are:
             repo.committedArea.freeze();
 
+            // Remember the tree that is checked out:
+            repo.committedArea.setTreeHashValue(commit.treeHashValue);
+
+            // Remember that the staging and working areas match the tree that is checked out:
+            // NOTE: This lets the next checkout skip looking for local modifications if the areas haven't been modified since.
+            repo.stagingArea.markUnmodified();
+            repo.workingArea.markUnmodified();
+
             // Check whether an explicit checkout other than HEAD was requested:
             if (!commitHashOrReferenceOrHEAD.equals(HEAD))
             {
@@ -1553,65 +2583,161 @@ public class RepoEngine
     }
 
     /**
-     * Walks the current tree and checks out the tree recursively.
+     * Walks the tree and checks out all of its content.
      * It is assumed that the repo content areas have been cleared already.
+     * The sub trees are walked in parallel by a {@link TreeWalker} and the content is put into the areas in the order of the tree.
      *
      * @param repo          The repo to walk.
      * @param treeHashValue The hash of the tree that we must process, including its children recursively.
      * @param currenPath    The current path that we are on.
+     * @param lazy          True to only load the content from the object store when it is first accessed.
      */
-    private void walk_and_checkout_tree_recursively(Repo repo, String treeHashValue, RepoPath currenPath)
+    private void walk_and_checkout_tree(Repo repo, String treeHashValue, RepoPath currenPath, boolean lazy)
     {
-        // Get the commit to start walking from:
-        RepoObject repoObject = cat_file(repo, treeHashValue);
+        // Walk the tree and find all the content:
+        // NOTE: The blobs are loaded during the walk unless the content is lazy.
+        List<TreePathEntry> entries = new TreeWalker(repo.database.objects, !lazy).walkBlobs(treeHashValue, currenPath);
 
-        // Make sure it's a commit:
-        if (repoObject != null && repoObject instanceof Tree)
+        // Put the content in the areas:
+        // NOTE: The areas are empty and each path is only in the tree once, so we can add the content to the mutable areas directly.
+        for (TreePathEntry entry : entries)
         {
-            // We have a tree.
-            Tree tree = (Tree) repoObject;
-
-            // Process all of the tree entries:
-            for (TreeEntry entry : tree.entries)
+            // Check whether we must load the content now:
+            if (lazy)
             {
-                // Get the path for this entry:
-                RepoPath entryPath = currenPath.resolve(entry.name);
-
-                // Process the entry:
-                String contentPath = entryPath.toAbsolutePath().toString();
-
-                // Process the entry:
-                switch (entry.objectType)
-                {
-                    case BLOB:
-                        // This is a blob of content.
-                        // Get the blob of content:
-                        Blob blob = (Blob) cat_file(repo, entry.hashValue);
-
-                        // Create the content:
-                        repo.committedArea.putContent(contentPath, blob.content);
-                        repo.stagingArea.putContent(contentPath, blob.content);
-                        repo.workingArea.putContent(contentPath, blob.content);
-
-                        break;
-
-                    case TREE:
-                        // This is child tree.
+                // Only keep the hash of the blob so that the content is loaded when it is first accessed:
+                repo.committedArea.putContent(new ImmutableContent(entry.absolutePath, repo.database.objects, entry.entry.hashValue));
+                repo.stagingArea.contents.add(new MutableContent(entry.absolutePath, repo.database.objects, entry.entry.hashValue));
+                repo.workingArea.contents.add(new MutableContent(entry.absolutePath, repo.database.objects, entry.entry.hashValue));
+            }
+            else
+            {
+                // Create the content:
+                // NOTE: We already know the hash of the committed content, so we save it for working out the status later.
+                byte[] content = entry.blob.content;
+                repo.committedArea.putContent(entry.absolutePath, content).cacheBlobHashValue(entry.entry.hashValue, 0);
+
+                // NOTE: The content is shared with the blob and is only copied if it is modified (copy on write).
+                MutableContent stagedContent = new MutableContent(entry.absolutePath, content);
+                stagedContent.shareContent();
+                repo.stagingArea.contents.add(stagedContent);
+                MutableContent workingContent = new MutableContent(entry.absolutePath, content);
+                workingContent.shareContent();
+                repo.workingArea.contents.add(workingContent);
+            }
+        }
+    }
 
-                        // Walk the child recursively:
-                        walk_and_checkout_tree_recursively(repo, entry.hashValue, entryPath);
-                        break;
+    /**
+     * Checks out a tree by only applying the differences from the tree that is currently checked out.
+     * Sub trees that have the same hash in both trees are skipped, so the work scales with the size of the difference.
+     * Content at paths that don't change between the trees is left alone in the content areas,
+     * and the changed paths are found through the content index of each area (see {@link MutableContentArea#getContentIndex()}).
+     * Local modifications (found with {@link #status(Repo)}) are discarded, so the staging and working areas end up
+     * matching the tree exactly, just like when the areas are cleared and the whole tree is checked out again.
+     * The status is only worked out if the staging or working area has been modified since the last checkout
+     * (see {@link MutableContentArea#isModified()}), because otherwise the areas still match the tree that is checked out.
+     *
+     * @param repo             The repo to checkout.
+     * @param oldTreeHashValue The hash of the tree that is currently checked out.
+     * @param newTreeHashValue The hash of the tree to check out.
+     * @param lazy             True to only load the content from the object store when it is first accessed.
+     */
+    private void checkout_tree_differences(Repo repo, String oldTreeHashValue, String newTreeHashValue, boolean lazy)
+    {
+        // Find the blob for each path that changed:
+        // NOTE: A null hash means that the content at that path was removed.
+        Map<String, String> changes = new LinkedHashMap<>();
+        new TreeDiff(repo.database.objects).diff(oldTreeHashValue, newTreeHashValue, diffEntry ->
+        {
+            if (diffEntry.changeType == ContentState.DELETED) changes.put(diffEntry.oldPath, null);
+            else changes.put(diffEntry.newPath, diffEntry.newHashValue);
+        });
 
-                    default:
-                        throw new NanoRuntimeException("Unexpected content was found with the tree entry " + entry.objectType.name());
-                }
+        // Find the local modifications so that they can be discarded too:
+        // NOTE: This must happen before the committed area is updated because that is what they are compared with.
+        // NOTE: If neither area has been modified since the last checkout then they still match the committed area, so there are no local modifications.
+        Status localModifications = repo.stagingArea.isModified() || repo.workingArea.isModified() ? status(repo) : new Status();
+
+        // Update the committed area:
+        // NOTE: The content that didn't change is shared with the previous snapshot of the committed area.
+        repo.committedArea.thaw();
+        Map<String, byte[]> contentChanges = new HashMap<>();
+        Map<String, String> blobHashValueChanges = new HashMap<>();
+        changes.forEach((contentPath, blobHashValue) ->
+        {
+            if (blobHashValue == null)
+            {
+                // The content was removed.
+                repo.committedArea.removeContent(contentPath);
+                contentChanges.put(contentPath, null);
+                blobHashValueChanges.put(contentPath, null);
+            }
+            else if (lazy)
+            {
+                // The content was added or modified.
+                // Only keep the hash of the blob so that the content is loaded when it is first accessed:
+                repo.committedArea.putContent(new ImmutableContent(contentPath, repo.database.objects, blobHashValue));
+                blobHashValueChanges.put(contentPath, blobHashValue);
+            }
+            else
+            {
+                // The content was added or modified.
+                // Get the blob of content:
+                Blob blob = (Blob) cat_file(repo, blobHashValue);
+
+                // Create the content:
+                // NOTE: We already know the hash of the committed content, so we save it for working out the status later.
+                repo.committedArea.putContent(contentPath, blob.content).cacheBlobHashValue(blobHashValue, 0);
+                contentChanges.put(contentPath, blob.content);
             }
+        });
+
+        // Update the staging and working areas at the paths that changed:
+        // NOTE: Paths with local modifications are restored to the committed content or removed if they are not committed.
+        if (lazy)
+        {
+            Function<String, String> committedBlobHashValue = contentPath ->
+            {
+                ImmutableContent committedContent = repo.committedArea.getContent(contentPath);
+                return committedContent == null ? null : hash_content(committedContent);
+            };
+            repo.stagingArea.putAndRemoveLazyContent(withLocalModifications(blobHashValueChanges, localModifications.stagingAreaEntries, committedBlobHashValue), repo.database.objects);
+            repo.workingArea.putAndRemoveLazyContent(withLocalModifications(blobHashValueChanges, localModifications.workingAreaEntries, committedBlobHashValue), repo.database.objects);
         }
         else
         {
-            // This is not a commit.
-            throw new NanoRuntimeException("The given hash is not a valid tree. A valid tree hash is needed. " + treeHashValue);
+            Function<String, byte[]> committedBytes = contentPath ->
+            {
+                ImmutableContent committedContent = repo.committedArea.getContent(contentPath);
+                return committedContent == null ? null : committedContent.getContent();
+            };
+            repo.stagingArea.putAndRemoveContent(withLocalModifications(contentChanges, localModifications.stagingAreaEntries, committedBytes));
+            repo.workingArea.putAndRemoveContent(withLocalModifications(contentChanges, localModifications.workingAreaEntries, committedBytes));
+        }
+    }
+
+    /**
+     * Adds a change for each path with a local modification that is not changed by the checkout already.
+     *
+     * @param changes            The changes from the checkout for each absolute path. Null to remove the content at that path.
+     * @param localModifications The status entries for the local modifications in a content area.
+     * @param committedChange    Gets the change that restores the committed content at an absolute path. Null if nothing is committed there.
+     * @param <TChange>          The type of change.
+     * @return The changes to make to the content area.
+     */
+    private static <TChange> Map<String, TChange> withLocalModifications(Map<String, TChange> changes, StatusEntryCollection localModifications, Function<String, TChange> committedChange)
+    {
+        // Check whether there are any local modifications:
+        if (localModifications.isEmpty()) return changes;
+
+        // Restore each path that has a local modification:
+        Map<String, TChange> areaChanges = new HashMap<>(changes);
+        for (StatusEntry statusEntry : localModifications)
+        {
+            if (!areaChanges.containsKey(statusEntry.absolutePath)) areaChanges.put(statusEntry.absolutePath, committedChange.apply(statusEntry.absolutePath));
         }
+        return areaChanges;
     }
 
     /**
@@ -1656,6 +2782,7 @@ public class RepoEngine
             // We have content.
 
             // Put this content in the working area:
+            // NOTE: The working area array is handed to the caller, who may write to it directly, so it is a copy.
             putWorkingAreaContent(repo, content.getAbsolutePath(), content.getCloneOfContentAsByteArray());
         }
     }
@@ -1694,8 +2821,60 @@ public class RepoEngine
     public void checkout_pattern(Repo repo, RepoPattern pattern)
     {
         // Find all the matches from the committed area:
+        Map<String, byte[]> matches = new HashMap<>();
+        // NOTE: The working area array is handed to the caller, who may write to it directly, so it is a copy.
         pattern.matchStream(repo.committedArea.contentStream())
-                .forEach(t -> checkout_path(repo, RepoPath.at(t.getAbsolutePath())));
+                .forEach(content -> matches.put(content.getAbsolutePath(), content.getCloneOfContentAsByteArray()));
+
+        // Put the content in the working area in one pass:
+        repo.workingArea.putAndRemoveContent(matches);
+    }
+
+    /**
+     * Checks out only the content that matches the given patterns from a commit into the staging and working areas.
+     * This is like "git checkout <tree-ish> -- <pathspec>": HEAD and the committed area are not changed
+     * and content that doesn't match the patterns is left alone.
+     * <p>
+     * The patterns are pushed into the tree walk, so sub trees that can't have any matches are skipped without being read.
+     * Checking out /configs/** from a huge tree only reads the trees along the way to /configs and the content inside it.
+     *
+     * @param repo                        The repo to checkout.
+     * @param commitHashOrReferenceOrHEAD The SHA-1 hash or reference name (branch name) of the commit to get the content from. Use "HEAD" to get the currently checked out commit.
+     * @param patterns                    The patterns of paths to check out. Content that matches any of the patterns is checked out.
+     */
+    public void checkout_sparse(Repo repo, String commitHashOrReferenceOrHEAD, RepoPattern... patterns)
+    {
+        // Get the commit that we are interested in:
+        Commit commit = resolveCommit(repo, commitHashOrReferenceOrHEAD);
+        if (commit == null) throw new NanoRuntimeException("We did not find any commits for " + commitHashOrReferenceOrHEAD);
+
+        // Walk the tree and find the content that matches:
+        // NOTE: Sub trees that can't have any matches are skipped without being read.
+        Map<String, byte[]> matches = new HashMap<>();
+        TreeWalker walker = new TreeWalker(repo.database.objects, false);
+        walker.visit(commit.treeHashValue, RepoPath.atRoot(), new TreeVisitor()
+        {
+            @Override
+            public boolean enterTree(TreePathEntry treeEntry)
+            {
+                // Check whether anything inside the sub tree could match any of the patterns:
+                return Arrays.stream(patterns).anyMatch(pattern -> pattern.mightMatchInside(treeEntry.absolutePath));
+            }
+
+            @Override
+            public void visitBlob(TreePathEntry blobEntry)
+            {
+                // Check whether the content matches any of the patterns:
+                if (Arrays.stream(patterns).anyMatch(pattern -> pattern.matches(blobEntry.absolutePath)))
+                {
+                    matches.put(blobEntry.absolutePath, walker.getBlob(blobEntry.entry.hashValue).content);
+                }
+            }
+        });
+
+        // Put the content in the staging and working areas in one pass each:
+        repo.stagingArea.putAndRemoveContent(matches);
+        repo.workingArea.putAndRemoveContent(matches);
     }
 
     /**
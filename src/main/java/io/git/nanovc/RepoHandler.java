@@ -1,9 +1,13 @@
 package io.git.nanovc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -272,6 +276,31 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         return engine.status(repo);
     }
 
+    /**
+     * Show the working tree status
+     * https://git-scm.com/docs/git-status
+     * <p>
+     * Displays paths that have differences between the working and staging areas and the committed area.
+     *
+     * @return The status of the working and staging areas compared to the committed area.
+     */
+    public Status status()
+    {
+        return engine.status(this.repo);
+    }
+
+    /**
+     * Show the working tree status, optionally pairing up the content that was renamed or copied.
+     * https://git-scm.com/docs/git-status
+     *
+     * @param detectRenames True to list content that was renamed or copied as {@link ContentState#RENAMED} or {@link ContentState#COPIED}.
+     * @return The status of the working and staging areas compared to the committed area.
+     */
+    public Status status(boolean detectRenames)
+    {
+        return engine.status(this.repo, detectRenames);
+    }
+
     /**
      * Compute object ID.
      * Computes the object ID value for an object with specified type with the contents of the content byte array,
@@ -296,6 +325,24 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         return this.engine.hash_object(type, repoObjectBytes);
     }
 
+    /**
+     * Compute object ID.
+     * Computes the object ID value for the repo object from its object type and its current contents.
+     * This method does not modify the index (staging area) and does not write the resulting object into the object database.
+     * The content of the repo object is streamed straight into the digest without being copied first.
+     * <p>
+     * https://git-scm.com/docs/git-hash-object
+     *
+     * @param repoObject The repo object to compute the hash of.
+     * @return The output from the command is a 40-character checksum hash. This is the SHA-1 hash – a checksum of the
+     * content. A new hash instance is created each time this is called.
+     */
+    @Override
+    public Hash hash_object(RepoObject repoObject)
+    {
+        return this.engine.hash_object(repoObject);
+    }
+
     /**
      * Compute object ID and write the object to the database.
      * Computes the object ID value for an object with specified type with the contents of the byte array
@@ -372,6 +419,24 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         return hash_object_write_blob(bytes);
     }
 
+    /**
+     * Compute object IDs for a batch of repo objects and write them all to the database.
+     * The objects are hashed in parallel, duplicates within the batch are only stored once
+     * and the unique objects are written to the object database in a single pass.
+     * This is useful when importing many objects at once.
+     * <p>
+     * https://git-scm.com/docs/git-hash-object
+     *
+     * @param repoObjects The repo objects to update with their hashes and write to the database.
+     * @return The hashes of the repo objects, in the same order as the given repo objects.
+     */
+    @Override
+    public List<Hash> hash_objects_write(Collection<? extends RepoObject> repoObjects)
+    {
+        // Delegate plumbing to the repo engine:
+        return this.engine.hash_objects_write(this.repo, repoObjects);
+    }
+
     /**
      * Puts the given content in the working area of the repo.
      *
@@ -543,6 +608,35 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         return this.engine.write_tree(this.repo);
     }
 
+    /**
+     * Saves the index (staging area) to a file so that it can be loaded again later with {@link #read_index(java.nio.file.Path)}.
+     * The trees for the staging area are written first so that every entry in the index references a blob in the object database.
+     *
+     * @param file The file to save the index to. Any existing file is replaced.
+     * @return The root tree for the staging area that was saved.
+     */
+    @Override
+    public Tree write_index(java.nio.file.Path file)
+    {
+        // Delegate plumbing to the repo engine:
+        return this.engine.write_index(this.repo, file);
+    }
+
+    /**
+     * Loads the index (staging area) from a file that was saved with {@link #write_index(java.nio.file.Path)}.
+     * The current staging area is replaced.
+     * The blobs that the index references must be in the object database.
+     *
+     * @param file The file to load the index from.
+     * @return The content that was put in the staging area.
+     */
+    @Override
+    public List<MutableContent> read_index(java.nio.file.Path file)
+    {
+        // Delegate plumbing to the repo engine:
+        return this.engine.read_index(this.repo, file);
+    }
+
     /**
      * Reads tree information into the index (staging area).
      * Keep the current index contents,
@@ -579,6 +673,159 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         return this.engine.read_tree(this.repo, rootTreeHashValue, prefixPath);
     }
 
+    /**
+     * Finds the blob or tree at the given path in a commit without checking it out.
+     * Only the trees along the path are read, so this costs a few object lookups no matter how big the tree is.
+     *
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit to look in. Use "HEAD" for the currently checked out commit.
+     * @param path                  The path of the blob or tree to find. The root path finds the root tree of the commit.
+     * @return The entry at the path, along with its blob if it is a blob. Null if there is nothing at the path in the commit.
+     */
+    public TreePathEntry resolve_path(String commitHashOrReference, RepoPath path)
+    {
+        return this.engine.resolve_path(this.repo, commitHashOrReference, path);
+    }
+
+    /**
+     * Finds the blobs or trees at the given paths in a commit without checking it out.
+     * All the paths are resolved in one walk, so each tree along the way is only read once.
+     *
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit to look in. Use "HEAD" for the currently checked out commit.
+     * @param paths                 The paths of the blobs or trees to find. The root path finds the root tree of the commit.
+     * @return The entry at each path that was found, along with its blob if it is a blob. Paths that are not in the commit are not in the map.
+     */
+    public Map<RepoPath, TreePathEntry> resolve_paths(String commitHashOrReference, Collection<RepoPath> paths)
+    {
+        return this.engine.resolve_paths(this.repo, commitHashOrReference, paths);
+    }
+
+    /**
+     * Finds the differences between two commits or trees.
+     * Sub trees with the same hash on both sides are skipped without being read,
+     * so the cost is proportional to the part of the trees that changed.
+     *
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @return The differences for each blob that was added, deleted or modified, in the order of a depth first walk of the trees.
+     */
+    public List<DiffEntry> diff_tree(String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference)
+    {
+        return this.engine.diff_tree(this.repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference);
+    }
+
+    /**
+     * Finds the differences between two commits or trees, optionally pairing up the content that was renamed or copied.
+     *
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @param detectRenames              True to find the content that was renamed or copied.
+     * @return The differences for each blob, in the order of a depth first walk of the trees. Renames and copies take the place of the added content.
+     */
+    public List<DiffEntry> diff_tree(String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference, boolean detectRenames)
+    {
+        return this.engine.diff_tree(this.repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference, detectRenames);
+    }
+
+    /**
+     * Finds the differences between two commits or trees and streams them to the given consumer as they are found.
+     *
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @param consumer                   The consumer that is given the difference for each blob that was added, deleted or modified, in the order of a depth first walk of the trees.
+     */
+    public void diff_tree(String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference, Consumer<DiffEntry> consumer)
+    {
+        this.engine.diff_tree(this.repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference, consumer);
+    }
+
+    /**
+     * Gets a unified patch with the differences inside each blob that changed between two commits or trees.
+     * The differences are found with the histogram algorithm.
+     *
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @return The bytes of the patch.
+     */
+    public byte[] diff(String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        this.engine.diff(this.repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference, DiffAlgorithm.HISTOGRAM, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes a unified patch with the differences inside each blob that changed between two commits or trees.
+     *
+     * @param oldCommitOrTreeOrReference The SHA-1 hash of the old commit or tree, or a reference name (branch name) of the old commit. Use "HEAD" for the currently checked out commit.
+     * @param newCommitOrTreeOrReference The SHA-1 hash of the new commit or tree, or a reference name (branch name) of the new commit. Use "HEAD" for the currently checked out commit.
+     * @param algorithm                  The algorithm to find the differences inside each blob with.
+     * @param outputStream               The stream to write the patch to.
+     */
+    public void diff(String oldCommitOrTreeOrReference, String newCommitOrTreeOrReference, DiffAlgorithm algorithm, OutputStream outputStream)
+    {
+        this.engine.diff(this.repo, oldCommitOrTreeOrReference, newCommitOrTreeOrReference, algorithm, outputStream);
+    }
+
+    /**
+     * Gets the flat manifest of every blob in a commit.
+     * The manifest is built the first time and cached in {@link Database#manifests} if its memory budget allows,
+     * so looking up paths at hot commits is a binary search instead of a walk down the trees.
+     *
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit. Use "HEAD" for the currently checked out commit.
+     * @return The manifest of every blob in the commit.
+     */
+    public Manifest getManifest(String commitHashOrReference)
+    {
+        return this.engine.getManifest(this.repo, commitHashOrReference);
+    }
+
+    /**
+     * Lists the paths of all the blobs in a folder of a commit, using the flat manifest of the commit.
+     *
+     * @param commitHashOrReference The SHA-1 hash or reference name (branch name) of the commit. Use "HEAD" for the currently checked out commit.
+     * @param folderPath            The path of the folder to list. The root path lists every blob in the commit.
+     * @return The absolute paths of the blobs in the folder and its sub folders, in sorted order.
+     */
+    public List<String> ls_files(String commitHashOrReference, RepoPath folderPath)
+    {
+        return this.engine.ls_files(this.repo, commitHashOrReference, folderPath);
+    }
+
+    /**
+     * Lists the contents of a tree object, including all of its sub trees (like "git ls-tree -r -t").
+     * <p>
+     * https://git-scm.com/docs/git-ls-tree
+     * <p>
+     * The entries are streamed in the order of a depth first walk and each sub tree comes before its entries.
+     * The trees are only read as the stream reaches them, so huge trees can be scanned without materializing them.
+     * A parallel stream splits the work across the sub trees.
+     *
+     * @param treeHashValue The SHA1 hash value of the tree to list.
+     * @return A stream of the entries in the tree and its sub trees.
+     */
+    @Override
+    public Stream<TreePathEntry> ls_tree(String treeHashValue)
+    {
+        // Delegate plumbing to the repo engine:
+        return this.engine.ls_tree(this.repo, treeHashValue);
+    }
+
+    /**
+     * Walks the contents of a tree object, including all of its sub trees, and calls the visitor for each entry.
+     * The visitor can skip sub trees, in which case they are not read at all.
+     * <p>
+     * https://git-scm.com/docs/git-ls-tree
+     *
+     * @param treeHashValue The SHA1 hash value of the tree to walk.
+     * @param visitor       The visitor to call for each entry.
+     */
+    @Override
+    public void ls_tree(String treeHashValue, TreeVisitor visitor)
+    {
+        // Delegate plumbing to the repo engine:
+        this.engine.ls_tree(this.repo, treeHashValue, visitor);
+    }
+
     /**
      * Gets a log of all the commits leading up to the given commit.
      * The list is in reverse chronological order.
@@ -849,6 +1096,19 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         this.engine.clearAreas(this.repo);
     }
 
+    /**
+     * Rewrites all the trees and commits in the repo in the given repository format
+     * and changes the repo so that new objects are written in that format too.
+     * Branches, tags and a detached HEAD are moved to the rewritten commits.
+     *
+     * @param targetFormatVersion The repository format version to rewrite the objects in. See {@link Config#repositoryFormatVersion}.
+     * @return A map of the SHA-1 hash values of the objects that were rewritten to their new hash values.
+     */
+    public Map<String, String> upgrade_repository_format(int targetFormatVersion)
+    {
+        return this.engine.upgrade_repository_format(this.repo, targetFormatVersion);
+    }
+
     /**
      * Convenience method for returning list of all of the commits in the database
      *
@@ -923,6 +1183,20 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         engine.checkout(repo, commitHashOrReferenceOrHEAD, revisionOffset);
     }
 
+    /**
+     * Updates files in the working tree to match the version in the specified tree.
+     * This is the same as {@link #checkout(String, int)} except that the content can be checked out lazily.
+     * Lazy content is only loaded from the object store when it is first accessed.
+     *
+     * @param commitHashOrReferenceOrHEAD The SHA-1 hash or reference name (branch name) of the commit that we want to get. Use "HEAD" to get the currently checked out commit.
+     * @param revisionOffset              The offset from the commit pointed to by the branch name. 0 means the last commit for the branch. -1 means the commit before. +1 means the commit after.
+     * @param lazy                        True to only load the content from the object store when it is first accessed. False to load all the content now.
+     */
+    public void checkout(String commitHashOrReferenceOrHEAD, int revisionOffset, boolean lazy)
+    {
+        engine.checkout(repo, commitHashOrReferenceOrHEAD, revisionOffset, lazy);
+    }
+
     /**
      * Restores the modified or deleted path to its original contents from the index.
      * <p>
@@ -995,6 +1269,20 @@ public class RepoHandler implements NanoCommands, PorcelainCommands, PlumbingCom
         engine.checkout_pattern(repo, pattern);
     }
 
+    /**
+     * Checks out only the content that matches the given patterns from a commit into the staging and working areas.
+     * This is like "git checkout <tree-ish> -- <pathspec>": HEAD and the committed area are not changed
+     * and content that doesn't match the patterns is left alone.
+     * Sub trees that can't have any matches are skipped without being read.
+     *
+     * @param commitHashOrReferenceOrHEAD The SHA-1 hash or reference name (branch name) of the commit to get the content from. Use "HEAD" to get the currently checked out commit.
+     * @param patterns                    The patterns of paths to check out. Content that matches any of the patterns is checked out.
+     */
+    public void checkout_sparse(String commitHashOrReferenceOrHEAD, RepoPattern... patterns)
+    {
+        engine.checkout_sparse(repo, commitHashOrReferenceOrHEAD, patterns);
+    }
+
     /**
      * Creates a new branch with the given name.
      * <p>
@@ -1,9 +1,10 @@
 package io.git.nanovc;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 
 /**
  * An object in the repository.
@@ -16,6 +17,13 @@ public abstract class RepoObject
      */
     public Hash hash;
 
+    /**
+     * The repository format version that this object is serialized with.
+     * Each type of object decides which versions change its encoding. See {@link Config#repositoryFormatVersion}.
+     * Objects that are read from a serialized form get the version of the format that they were read from.
+     */
+    public int formatVersion = Config.FORMAT_VERSION_ORIGINAL;
+
     /**
      * Creates a new repo object.
      * You still need to set the hash.
@@ -41,12 +49,64 @@ public abstract class RepoObject
      */
     public abstract ObjectType getObjectType();
 
+    /**
+     * The largest thread local buffer that we keep around for reuse.
+     * Objects that are bigger than this get a once off buffer so that we don't hold onto large amounts of memory.
+     */
+    public static final int MAX_RETAINED_THREAD_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * A reusable buffer for each thread that serializes repo objects.
+     * This lets us serialize objects for hashing without allocating a new array each time.
+     */
+    private static final ThreadLocal<ByteBuffer> threadBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+    /**
+     * Gets the exact number of bytes that this repo object serializes to.
+     * This is the number of bytes that {@link #writeContentToBuffer(ByteBuffer)} writes.
+     *
+     * @return The number of bytes in the serialized content of this repo object.
+     */
+    public abstract int getByteSize();
+
+    /**
+     * Writes the content of this repo object into the buffer.
+     * The buffer must have at least {@link #getByteSize()} bytes remaining.
+     *
+     * @param buffer The buffer to write to.
+     */
+    public abstract void writeContentToBuffer(ByteBuffer buffer);
+
     /**
      * Writes the content of this repo object into the stream.
      *
      * @param outputStream The output stream to write to.
      */
-    public abstract void writeContentToStream(DataOutputStream outputStream) throws IOException;
+    public void writeContentToStream(DataOutputStream outputStream) throws IOException
+    {
+        // Serialize the content into the reusable buffer for this thread:
+        ByteBuffer buffer = writeContentToThreadBuffer();
+
+        // Write out the content:
+        outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    }
+
+    /**
+     * Writes the content of this repo object into the message digest.
+     * This writes exactly the same bytes as {@link #writeContentToBuffer(ByteBuffer)}
+     * but lets each type of repo object feed its content to the digest without an intermediate copy where it can.
+     * By default the content is serialized into the reusable buffer for this thread and then given to the digest.
+     *
+     * @param digest The message digest to write to.
+     */
+    public void writeContentToDigest(MessageDigest digest)
+    {
+        // Serialize the content into the reusable buffer for this thread:
+        ByteBuffer buffer = writeContentToThreadBuffer();
+
+        // Hash the content:
+        digest.update(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    }
 
     /**
      * Reads the content of this repo object out of the stream.
@@ -58,27 +118,77 @@ public abstract class RepoObject
     /**
      * Gets a byte array of the content for this repo object.
      * It is assumed that the returned byte array should not be modified externally.
+     * The array is allocated with the exact size of the content so it is never grown or copied.
      *
      * @return The byte array for the content of this repo object.
      */
     public byte[] getByteArray()
     {
-        // Create a stream in memory:
-        // http://stackoverflow.com/questions/664389/byte-array-of-unknown-length-in-java
-        // http://stackoverflow.com/a/664394/231860
-        try (
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream)
-        )
-        {
-            // Write out the content:
-            writeContentToStream(dataOutputStream);
-            return byteArrayOutputStream.toByteArray();
-        }
-        catch (IOException e)
+        // Allocate the exact amount of space that we need:
+        byte[] bytes = new byte[getByteSize()];
+
+        // Write out the content:
+        writeContentToBuffer(ByteBuffer.wrap(bytes));
+
+        return bytes;
+    }
+
+    /**
+     * Writes the content of this repo object into a reusable buffer for the current thread.
+     * The returned buffer has a position of 0 and a limit of {@link #getByteSize()}.
+     * The buffer is reused by the next call on the same thread, so don't hold onto it.
+     *
+     * @return The buffer with the content of this repo object in it. It is only valid until the next call on this thread.
+     */
+    public ByteBuffer writeContentToThreadBuffer()
+    {
+        // Get the size of the content:
+        int byteSize = getByteSize();
+
+        // Get a buffer that is big enough:
+        ByteBuffer buffer = getThreadBuffer(byteSize);
+
+        // Write out the content:
+        writeContentToBuffer(buffer);
+
+        // Get the buffer ready to be read:
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Gets the reusable buffer for the current thread, making sure that it has at least the given capacity.
+     * If the capacity is bigger than {@link #MAX_RETAINED_THREAD_BUFFER_SIZE} then a once off buffer is returned instead.
+     *
+     * @param capacity The number of bytes that we need.
+     * @return A cleared buffer with at least the given capacity.
+     */
+    protected static ByteBuffer getThreadBuffer(int capacity)
+    {
+        // Get the buffer for this thread:
+        ByteBuffer buffer = threadBuffer.get();
+
+        // Check whether the buffer is big enough:
+        if (buffer.capacity() < capacity)
         {
-            e.printStackTrace();
-            return new byte[0];
+            // The buffer is too small.
+
+            // Check whether we should keep a buffer of this size:
+            if (capacity > MAX_RETAINED_THREAD_BUFFER_SIZE)
+            {
+                // This is too big to keep around.
+                return ByteBuffer.allocate(capacity);
+            }
+
+            // Grow the buffer for this thread:
+            buffer = ByteBuffer.allocate(Math.min(MAX_RETAINED_THREAD_BUFFER_SIZE, Math.max(capacity, buffer.capacity() * 2)));
+            threadBuffer.set(buffer);
         }
+
+        // Reset the buffer:
+        buffer.clear();
+
+        return buffer;
     }
 }
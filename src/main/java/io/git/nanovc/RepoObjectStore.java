@@ -1,5 +1,6 @@
 package io.git.nanovc;
 
+import java.util.Collection;
 import java.util.HashMap;
 
 /**
@@ -64,6 +65,40 @@ public class RepoObjectStore
         return this;
     }
 
+    /**
+     * Puts all the given repo objects in the collection in a single pass.
+     * The repo objects are indexed by their SHA-1 hashes, which must already be set.
+     * This is useful for bulk imports where calling {@link #put(RepoObject)} for each object would do redundant lookups.
+     *
+     * If the object database already has content with a given hash then it is not updated and that repoObject instance is ignored.
+     *
+     * @param repoObjects The repo objects to put into the collection. Any existing object is NOT replaced if it has the same hash.
+     * @return The repo object store so that it can have chained calls.
+     */
+    public RepoObjectStore putAll(Collection<? extends RepoObject> repoObjects)
+    {
+        for (RepoObject repoObject : repoObjects)
+        {
+            // Get the string value of the hash:
+            final String hashValue = repoObject.hash.value;
+
+            // Index the repo object in the map if we don't have this content yet:
+            // NOTE: This does the existence check and the insert with a single lookup.
+            if (map.putIfAbsent(hashValue, repoObject) == null)
+            {
+                // We didn't have this content yet.
+
+                // Get the first layer using the first 2 characters of the hash:
+                HashMap<String, RepoObject> firstLayer = index.computeIfAbsent(hashValue.substring(0, 2), s -> new HashMap<>());
+
+                // Index the repo object in the first layer using the last 38 characters of the hash:
+                firstLayer.put(hashValue.substring(2), repoObject);
+            }
+        }
+
+        return this;
+    }
+
     /**
      * Gets the repo object with the given hash.
      * @param hash The hash of the object to get.
@@ -18,6 +18,16 @@ public class RepoPath extends PathBase<RepoPath>
         super(relativeOrAbsolutePath);
     }
 
+    /**
+     * Creates the given repo path when we already know its parts.
+     * @param relativeOrAbsolutePath The relative or absolute path to resolve. Absolute paths start with a / {@link #DELIMITER}. Relative paths don't.
+     * @param parts                  The interned segments of the path. The array is not copied so it must not be modified.
+     */
+    protected RepoPath(String relativeOrAbsolutePath, String[] parts)
+    {
+        super(relativeOrAbsolutePath, parts);
+    }
+
     /**
      * A factory method to create a new instance of the specific path.
      *
@@ -30,6 +40,19 @@ public class RepoPath extends PathBase<RepoPath>
         return new RepoPath(relativeOrAbsolutePath);
     }
 
+    /**
+     * A factory method to create a new instance of the specific path when we already know its parts.
+     *
+     * @param relativeOrAbsolutePath The relative or absolute path to resolve. Absolute paths start with a / {@link #DELIMITER}. Relative paths don't.
+     * @param parts                  The interned segments of the path. The array is not copied so it must not be modified.
+     * @return The new instance at the given path.
+     */
+    @Override
+    protected RepoPath createInstance(String relativeOrAbsolutePath, String[] parts)
+    {
+        return new RepoPath(relativeOrAbsolutePath, parts);
+    }
+
     /**
      * Creates a repo path at the given location.
      * This is a convenience factory method to construct repo paths.
@@ -0,0 +1,349 @@
+package io.git.nanovc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary encoding of the staging area (index) so that it can be saved and loaded again later.
+ * This corresponds to the index file in git.
+ * <p>
+ * The index records each piece of staged content by reference to its blob, so the blobs and trees must be
+ * in the object database when the index is loaded again.
+ * The index does not save any objects itself and the {@link RepoObjectStore} only keeps them in memory,
+ * so an index is only valid for the lifetime of the object store that it was saved from.
+ * It can't be used to restore a staging area after a restart.
+ * Loading checks that every blob is in the object database with the expected size before the staging area is touched,
+ * so an index from another object store fails without changing the staging area.
+ * The staged content is loaded lazily from the blobs when it is first accessed.
+ * It also records the trees that were last written for each folder (the cached tree extension in git)
+ * so that the next {@link RepoEngine#write_tree(Repo)} after loading the index doesn't need to hash anything.
+ * <p>
+ * The layout (big endian) is:
+ * <pre>
+ * int    signature ('NVCI')
+ * int    version of the index layout
+ * int    format version of the cached trees
+ * int    generation of the tree cache
+ * int    number of entries
+ * entry* sorted by path:        u16 path length, UTF-8 path, 20 byte blob id, int size, int modification token
+ * int    number of folders
+ * folder* children before parents: u16 path length, UTF-8 path, 20 byte tree id
+ * </pre>
+ * The modification token is the generation of the tree cache when the content last changed.
+ * <p>
+ * Saving and loading go through a memory mapped file so that the bytes are written and read in place.
+ */
+public class StagingIndex
+{
+    /**
+     * The signature at the start of every staging index: 'NVCI'.
+     */
+    public static final int SIGNATURE = 0x4E564349;
+
+    /**
+     * The version of the index layout that we write.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Gets the number of bytes needed to encode the staging index for the given tree cache.
+     * The cache must have been written with {@link RepoEngine#write_tree(Repo)} so that every blob and tree has a hash.
+     *
+     * @param treeCache The tree cache of the staging area.
+     * @return The number of bytes needed to encode the staging index.
+     */
+    public static int getByteSize(TreeCache treeCache)
+    {
+        // Start with the header and the folder count:
+        int byteSize = 5 * 4 + 4;
+
+        // Add the entries:
+        for (TreeCache.Node node : getContentNodes(treeCache))
+        {
+            byteSize += 2 + UTF8.getEncodedLength(node.contentPath) + Tree.HASH_BYTE_LENGTH + 4 + 4;
+        }
+
+        // Add the folders:
+        List<TreeCache.Node> folders = new ArrayList<>();
+        List<String> folderPaths = new ArrayList<>();
+        getFolders(treeCache.getRoot(), "/", folders, folderPaths);
+        for (String folderPath : folderPaths)
+        {
+            byteSize += 2 + UTF8.getEncodedLength(folderPath) + Tree.HASH_BYTE_LENGTH;
+        }
+        return byteSize;
+    }
+
+    /**
+     * Writes the staging index for the given tree cache into the buffer.
+     * The cache must have been written with {@link RepoEngine#write_tree(Repo)} so that every blob and tree has a hash.
+     *
+     * @param buffer        The buffer to write to. It must have enough remaining space. See {@link #getByteSize(TreeCache)}.
+     * @param treeCache     The tree cache of the staging area.
+     * @param objects       The object store that the blobs were written to. The size of each entry comes from its blob so that lazy content doesn't need to be loaded.
+     * @param formatVersion The format version that the cached trees were written in.
+     */
+    public static void write(ByteBuffer buffer, TreeCache treeCache, RepoObjectStore objects, int formatVersion)
+    {
+        // Get the content in path order:
+        List<TreeCache.Node> contentNodes = getContentNodes(treeCache);
+
+        // Write the header:
+        buffer.putInt(SIGNATURE);
+        buffer.putInt(VERSION);
+        buffer.putInt(formatVersion);
+        buffer.putInt(treeCache.getGeneration());
+        buffer.putInt(contentNodes.size());
+
+        // Write the entries:
+        for (TreeCache.Node node : contentNodes)
+        {
+            // Make sure the blob has been written:
+            if (node.blobHashValue == null) throw new NanoRuntimeException("The content at " + node.contentPath + " has not been written to a blob yet. Write the tree before saving the staging index.");
+
+            // Get the blob so that we know its size without loading the content:
+            RepoObject repoObject = objects.get(node.blobHashValue);
+            if (!(repoObject instanceof Blob)) throw new NanoRuntimeException("The blob " + node.blobHashValue + " for " + node.contentPath + " is not in the object database. Write the tree before saving the staging index.");
+            byte[] blobContent = ((Blob) repoObject).content;
+
+            writeShortString(buffer, node.contentPath);
+            Hex.writeHexAsBytes(buffer, node.blobHashValue);
+            buffer.putInt(blobContent == null ? 0 : blobContent.length);
+            buffer.putInt(node.modifiedGeneration);
+        }
+
+        // Write the folders that have trees:
+        // NOTE: Children come before their parents so that they can be seeded in order.
+        List<TreeCache.Node> folders = new ArrayList<>();
+        List<String> folderPaths = new ArrayList<>();
+        getFolders(treeCache.getRoot(), "/", folders, folderPaths);
+        buffer.putInt(folders.size());
+        for (int i = 0; i < folders.size(); i++)
+        {
+            writeShortString(buffer, folderPaths.get(i));
+            Hex.writeHexAsBytes(buffer, folders.get(i).tree.hash.value);
+        }
+    }
+
+    /**
+     * Reads the staging index from the buffer into the staging area of the repo.
+     * The staging area is replaced with the content in the index and its tree cache is seeded so that nothing needs to be hashed again.
+     * Every entry is checked against the object database first, so the staging area is left alone if the index can't be loaded.
+     * The content is only loaded from its blob when it is first accessed.
+     *
+     * @param buffer The buffer to read from.
+     * @param repo   The repo whose staging area must be replaced. The blobs for the entries must be in its object database.
+     * @return The content that was put in the staging area.
+     */
+    public static List<MutableContent> read(ByteBuffer buffer, Repo repo)
+    {
+        // Read the header:
+        if (buffer.getInt() != SIGNATURE) throw new NanoRuntimeException("The staging index does not have the expected signature.");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new NanoRuntimeException("The staging index has version " + version + " but only version " + VERSION + " is supported.");
+        int formatVersion = buffer.getInt();
+        int generation = buffer.getInt();
+        int entryCount = buffer.getInt();
+
+        // Read the entries:
+        RepoObjectStore objects = repo.database.objects;
+        String[] paths = new String[entryCount];
+        String[] blobHashValues = new String[entryCount];
+        int[] modifiedGenerations = new int[entryCount];
+        for (int i = 0; i < entryCount; i++)
+        {
+            // Read the entry:
+            String path = readShortString(buffer);
+            String blobHashValue = readHashValue(buffer);
+            int size = buffer.getInt();
+            int modifiedGeneration = buffer.getInt();
+
+            // Make sure the blob for the entry is in the object database with the size that we expect:
+            RepoObject repoObject = objects.get(blobHashValue);
+            if (!(repoObject instanceof Blob)) throw new NanoRuntimeException("The blob " + blobHashValue + " for " + path + " in the staging index is not in the object database.");
+            byte[] blobContent = ((Blob) repoObject).content;
+            int blobSize = blobContent == null ? 0 : blobContent.length;
+            if (blobSize != size) throw new NanoRuntimeException("The blob " + blobHashValue + " for " + path + " has " + blobSize + " bytes but the staging index expects " + size + " bytes.");
+
+            paths[i] = path;
+            blobHashValues[i] = blobHashValue;
+            modifiedGenerations[i] = modifiedGeneration;
+        }
+        // Now we know that every entry can be loaded.
+
+        // Replace the staging area:
+        MutableContentArea stagingArea = repo.stagingArea;
+        stagingArea.clear();
+        TreeCache treeCache = stagingArea.treeCache;
+        treeCache.seed(objects, formatVersion, generation);
+        List<MutableContent> contents = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++)
+        {
+            // Create the content so that it is only loaded from the blob when it is first accessed:
+            // NOTE: The loaded array is shared with the blob and is only copied if it is modified (copy on write).
+            MutableContent content = new MutableContent(paths[i], objects, blobHashValues[i]);
+            contents.add(content);
+
+            // Seed the tree cache so that the blob doesn't need to be hashed again:
+            treeCache.seedContent(content, blobHashValues[i], modifiedGenerations[i]);
+        }
+        stagingArea.contents.addAll(contents);
+
+        // Read the folders:
+        int folderCount = buffer.getInt();
+        for (int i = 0; i < folderCount; i++)
+        {
+            // Read the folder:
+            String path = readShortString(buffer);
+            String treeHashValue = readHashValue(buffer);
+
+            // Seed the tree cache if we still have the tree:
+            // NOTE: If we don't then the folder will simply be written again.
+            RepoObject repoObject = objects.get(treeHashValue);
+            if (repoObject instanceof Tree) treeCache.seedFolder(path, (Tree) repoObject);
+        }
+        return contents;
+    }
+
+    /**
+     * Saves the staging index for the given tree cache to a memory mapped file.
+     * Any existing file is replaced.
+     *
+     * @param file          The file to save to.
+     * @param treeCache     The tree cache of the staging area. It must have been written with {@link RepoEngine#write_tree(Repo)}.
+     * @param objects       The object store that the blobs were written to.
+     * @param formatVersion The format version that the cached trees were written in.
+     * @throws IOException If the file could not be written.
+     */
+    public static void save(java.nio.file.Path file, TreeCache treeCache, RepoObjectStore objects, int formatVersion) throws IOException
+    {
+        // Work out how big the file needs to be:
+        int byteSize = getByteSize(treeCache);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            // Write straight into the mapped file:
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, byteSize);
+            write(buffer, treeCache, objects, formatVersion);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Loads the staging index from a memory mapped file into the staging area of the repo.
+     *
+     * @param file The file to load from.
+     * @param repo The repo whose staging area must be replaced. The blobs for the entries must be in its object database.
+     * @return The content that was put in the staging area.
+     * @throws IOException If the file could not be read.
+     */
+    public static List<MutableContent> load(java.nio.file.Path file, Repo repo) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            // Read straight out of the mapped file:
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), repo);
+        }
+    }
+
+    /**
+     * Gets the nodes in the tree cache that have content, sorted by path.
+     *
+     * @param treeCache The tree cache to search.
+     * @return The nodes with content, sorted by path in the canonical order.
+     */
+    private static List<TreeCache.Node> getContentNodes(TreeCache treeCache)
+    {
+        // Walk the trie:
+        List<TreeCache.Node> contentNodes = new ArrayList<>();
+        List<TreeCache.Node> stack = new ArrayList<>();
+        stack.add(treeCache.getRoot());
+        while (!stack.isEmpty())
+        {
+            TreeCache.Node node = stack.remove(stack.size() - 1);
+            if (node.content != null) contentNodes.add(node);
+            if (node.children != null) stack.addAll(node.children.values());
+        }
+
+        // Sort the content by path:
+        contentNodes.sort((node1, node2) -> TreeEntryComparator.compareNames(node1.contentPath, node2.contentPath));
+        return contentNodes;
+    }
+
+    /**
+     * Gets the folders below the given folder that have trees, with children before their parents.
+     *
+     * @param folder      The folder to start from.
+     * @param folderPath  The absolute path of the folder.
+     * @param folders     The list to add the folders to.
+     * @param folderPaths The list to add the absolute paths of the folders to.
+     */
+    private static void getFolders(TreeCache.Node folder, String folderPath, List<TreeCache.Node> folders, List<String> folderPaths)
+    {
+        // Check whether this is a folder:
+        if (!folder.hasChildren()) return;
+
+        // Add the sub folders first:
+        for (TreeCache.Node child : folder.children.values())
+        {
+            getFolders(child, folderPath.endsWith("/") ? folderPath + child.name : folderPath + "/" + child.name, folders, folderPaths);
+        }
+
+        // Add this folder if its tree is up to date:
+        if (!folder.dirty && folder.tree != null && folder.tree.hash != null)
+        {
+            folders.add(folder);
+            folderPaths.add(folderPath);
+        }
+    }
+
+    /**
+     * Writes a string as a 2 byte length followed by its UTF-8 bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param string The string to write.
+     */
+    private static void writeShortString(ByteBuffer buffer, String string)
+    {
+        // Make sure the string is not too long:
+        int length = UTF8.getEncodedLength(string);
+        if (length > Tree.MAX_NAME_BYTE_LENGTH) throw new NanoRuntimeException("The path is too long to save in the staging index. It needs " + length + " bytes but the limit is " + Tree.MAX_NAME_BYTE_LENGTH + " bytes.");
+
+        buffer.putShort((short) length);
+        UTF8.write(buffer, string);
+    }
+
+    /**
+     * Reads a string that was written as a 2 byte length followed by its UTF-8 bytes.
+     *
+     * @param buffer The buffer to read from.
+     * @return The string that was read.
+     */
+    private static String readShortString(ByteBuffer buffer)
+    {
+        // Read the bytes:
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a SHA-1 hash value that was written as its raw 20 bytes.
+     *
+     * @param buffer The buffer to read from.
+     * @return The hash value as 40 hex characters.
+     */
+    private static String readHashValue(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[Tree.HASH_BYTE_LENGTH];
+        buffer.get(bytes);
+        return Hex.bytesToHex(bytes);
+    }
+}
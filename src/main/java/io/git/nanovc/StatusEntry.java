@@ -14,4 +14,41 @@ public class StatusEntry
      * The state of the content.
      */
     public ContentState state = ContentState.UNMODIFIED;
+
+    /**
+     * The absolute path that the content was renamed or copied from.
+     * Null unless the state is {@link ContentState#RENAMED} or {@link ContentState#COPIED}.
+     */
+    public String oldAbsolutePath;
+
+    /**
+     * Creates a new status entry.
+     * You must set the path and state yourself.
+     */
+    public StatusEntry()
+    {
+    }
+
+    /**
+     * Creates a new status entry for the content at the given path.
+     *
+     * @param absolutePath The absolute path of the content.
+     * @param state        The state of the content.
+     */
+    public StatusEntry(String absolutePath, ContentState state)
+    {
+        this.absolutePath = absolutePath;
+        this.state = state;
+    }
+
+    /**
+     * The string value of this status entry.
+     *
+     * @return The string for debugging this status entry.
+     */
+    @Override
+    public String toString()
+    {
+        return this.oldAbsolutePath == null ? this.state + " " + this.absolutePath : this.state + " " + this.oldAbsolutePath + " -> " + this.absolutePath;
+    }
 }
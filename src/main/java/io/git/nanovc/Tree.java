@@ -1,8 +1,9 @@
 package io.git.nanovc;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 
 /**
@@ -36,88 +37,186 @@ public class Tree extends RepoObject
     }
 
     /**
-     * Writes the content of this repo object into the stream.
+     * The marker that is written in place of the entry count to show that the tree uses the compact encoding.
+     * The original encoding starts with the entry count, which can never be negative.
+     */
+    public static final int COMPACT_FORMAT_MARKER = -1;
+
+    /**
+     * The number of bytes in the raw SHA-1 object id of an entry in the compact encoding.
+     */
+    public static final int HASH_BYTE_LENGTH = 20;
+
+    /**
+     * The largest number of bytes that an entry name can have in the compact encoding.
+     */
+    public static final int MAX_NAME_BYTE_LENGTH = 65535;
+
+    /**
+     * Checks whether this tree is serialized with the compact encoding.
+     * The compact encoding writes raw 20 byte object ids and length prefixed UTF-8 names
+     * instead of hexadecimal strings with the modified UTF-8 encoding.
      *
-     * @param outputStream The output stream to write to.
+     * @return True if this tree uses the compact encoding. False if it uses the original encoding.
+     */
+    public boolean isCompactFormat()
+    {
+        return this.formatVersion >= Config.FORMAT_VERSION_COMPACT_TREES;
+    }
+
+    /**
+     * Gets the exact number of bytes that this repo object serializes to.
+     *
+     * @return The number of bytes in the serialized content of this repo object.
      */
     @Override
-    public void writeContentToStream(DataOutputStream outputStream) throws IOException
+    public int getByteSize()
     {
+        // Check which encoding we are using:
+        if (isCompactFormat())
+        {
+            // Start with the marker and the number of entries:
+            int byteSize = 8;
+
+            // Add the size of each entry:
+            for (TreeEntry entry : this.entries)
+            {
+                // The entry type, the name length, the name and the raw hash:
+                byteSize += 1 + 2 + UTF8.getEncodedLength(entry.name) + HASH_BYTE_LENGTH;
+            }
+            return byteSize;
+        }
+        else
+        {
+            // Start with the number of entries:
+            int byteSize = 4;
+
+            // Add the size of each entry:
+            for (TreeEntry entry : this.entries)
+            {
+                // The entry type, the name and the hash:
+                byteSize += 1 + ModifiedUTF8.getWrittenLength(entry.name) + ModifiedUTF8.getWrittenLength(entry.hashValue);
+            }
+            return byteSize;
+        }
+    }
+
+    /**
+     * Writes the content of this repo object into the buffer.
+     *
+     * @param buffer The buffer to write to.
+     */
+    @Override
+    public void writeContentToBuffer(ByteBuffer buffer)
+    {
+        // Check which encoding we are using:
+        boolean isCompactFormat = isCompactFormat();
+        if (isCompactFormat)
+        {
+            // Write the marker for the compact encoding:
+            buffer.putInt(COMPACT_FORMAT_MARKER);
+        }
+
         // Write the number of entries:
-        outputStream.writeInt(this.entries.size());
+        buffer.putInt(this.entries.size());
 
         // Write each entry:
         for (TreeEntry entry : this.entries)
         {
             // Write the entry type:
-            switch (entry.objectType)
+            buffer.put(getEntryTypeByte(entry.objectType));
+
+            if (isCompactFormat)
             {
-                case BLOB:
-                    outputStream.writeByte('b');
-                    break;
-                case COMMIT:
-                    outputStream.writeByte((byte) 'c');
-                    break;
-                case TREE:
-                    outputStream.writeByte((byte) 't');
-                    break;
-                default:
-                    outputStream.writeByte((byte) '?');
-            }
+                // Get the length of the name:
+                int nameLength = UTF8.getEncodedLength(entry.name);
+
+                // Make sure the name is not too long:
+                if (nameLength > MAX_NAME_BYTE_LENGTH) throw new NanoRuntimeException("The tree entry name '" + entry.name + "' is too long. It needs " + nameLength + " bytes but the limit is " + MAX_NAME_BYTE_LENGTH + " bytes.");
+
+                // Write the name:
+                buffer.putShort((short) nameLength);
+                UTF8.write(buffer, entry.name);
 
-            // Write the name:
-            outputStream.writeUTF(entry.name);
+                // Make sure the hash is a full SHA-1 hash:
+                if (entry.hashValue.length() != HASH_BYTE_LENGTH * 2) throw new NanoRuntimeException("The tree entry '" + entry.name + "' has the hash '" + entry.hashValue + "' which is not a " + HASH_BYTE_LENGTH * 2 + " digit SHA-1 hash.");
 
-            // Write the hash:
-            outputStream.writeUTF(entry.hashValue);
+                // Write the raw hash:
+                Hex.writeHexAsBytes(buffer, entry.hashValue);
+            }
+            else
+            {
+                // Write the name:
+                ModifiedUTF8.write(buffer, entry.name);
+
+                // Write the hash:
+                ModifiedUTF8.write(buffer, entry.hashValue);
+            }
         }
     }
 
     /**
      * Reads the content of this repo object out of the stream.
+     * Both the original and the compact encodings can be read.
+     * The format version of the tree is updated to match the encoding that was read.
      *
      * @param inputStream The input stream to read from.
      */
     @Override
     public void readContentFromStream(DataInputStream inputStream) throws IOException
     {
-        // Read the number of entries:
+        // Read the number of entries or the marker for the compact encoding:
         int entryCount = inputStream.readInt();
 
+        // Check which encoding was used:
+        boolean isCompactFormat = entryCount == COMPACT_FORMAT_MARKER;
+        if (isCompactFormat)
+        {
+            // This tree uses the compact encoding.
+            this.formatVersion = Config.FORMAT_VERSION_COMPACT_TREES;
+
+            // Read the number of entries:
+            entryCount = inputStream.readInt();
+        }
+        else
+        {
+            // This tree uses the original encoding.
+            this.formatVersion = Config.FORMAT_VERSION_ORIGINAL;
+        }
+
         // Clear the current entries:
         this.entries.clear();
 
+        // Create a reusable array for the raw hashes:
+        byte[] hashBytes = isCompactFormat ? new byte[HASH_BYTE_LENGTH] : null;
+
         // Read out the entries:
         for (int i = 0; i < entryCount; i++)
         {
             // Read the object type:
-            byte objectTypeByte = inputStream.readByte();
+            ObjectType objectType = getEntryObjectType(inputStream.readByte());
 
-            // Determine the object type:
-            ObjectType objectType;
-            switch (objectTypeByte)
+            String name;
+            String hashValue;
+            if (isCompactFormat)
             {
-                case (byte) 'b':
-                    objectType = ObjectType.BLOB;
-                    break;
-
-                case (byte) 'c':
-                    objectType = ObjectType.COMMIT;
-                    break;
-
-                case (byte) 't':
-                    objectType = ObjectType.TREE;
-                    break;
+                // Read the name:
+                byte[] nameBytes = new byte[inputStream.readUnsignedShort()];
+                inputStream.readFully(nameBytes);
+                name = new String(nameBytes, StandardCharsets.UTF_8);
 
-                default:
-                    objectType = null;
+                // Read out the raw hash:
+                inputStream.readFully(hashBytes);
+                hashValue = Hex.bytesToHex(hashBytes);
             }
+            else
+            {
+                // Read the name:
+                name = inputStream.readUTF();
 
-            // Read the name:
-            String name = inputStream.readUTF();
-
-            // Read out the hash value:
-            String hashValue = inputStream.readUTF();
+                // Read out the hash value:
+                hashValue = inputStream.readUTF();
+            }
 
             // Create the tree entry:
             TreeEntry entry = new TreeEntry();
@@ -130,6 +229,86 @@ public class Tree extends RepoObject
         }
     }
 
+    /**
+     * Finds the entry with the given name.
+     * The entries are binary searched by name because trees are written with their entries in canonical order (see {@link TreeEntryComparator}).
+     * Trees that were built by hand (or written before the entries were sorted) might be in any order, so they are searched one entry at a time.
+     *
+     * @param name The name of the entry to find.
+     * @return The entry with the given name. Null if there is no entry with that name.
+     */
+    public TreeEntry findEntry(String name)
+    {
+        // Binary search the entries by name:
+        int low = 0;
+        int high = this.entries.size() - 1;
+        while (low <= high)
+        {
+            // Compare the name of the middle entry:
+            int middle = (low + high) >>> 1;
+            TreeEntry entry = this.entries.get(middle);
+            int comparison = TreeEntryComparator.compareNames(entry.name, name);
+            if (comparison < 0) low = middle + 1;
+            else if (comparison > 0) high = middle - 1;
+            else return entry;
+        }
+
+        // Check whether the entries are in canonical order, in which case there is no entry with that name:
+        if (this.entries.isInCanonicalOrder()) return null;
+
+        // Search the entries one at a time because they are not in order:
+        for (TreeEntry entry : this.entries)
+        {
+            if (name.equals(entry.name)) return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the byte that is written for the given type of entry.
+     *
+     * @param objectType The type of object that the entry references.
+     * @return The byte that is written for the type of entry.
+     */
+    private static byte getEntryTypeByte(ObjectType objectType)
+    {
+        switch (objectType)
+        {
+            case BLOB:
+                return (byte) 'b';
+            case COMMIT:
+                return (byte) 'c';
+            case TREE:
+                return (byte) 't';
+            default:
+                return (byte) '?';
+        }
+    }
+
+    /**
+     * Gets the type of entry for the given byte that was written.
+     *
+     * @param objectTypeByte The byte that was written for the type of entry.
+     * @return The type of object that the entry references. Null if the byte is not recognised.
+     */
+    private static ObjectType getEntryObjectType(byte objectTypeByte)
+    {
+        switch (objectTypeByte)
+        {
+            case (byte) 'b':
+                return ObjectType.BLOB;
+
+            case (byte) 'c':
+                return ObjectType.COMMIT;
+
+            case (byte) 't':
+                return ObjectType.TREE;
+
+            default:
+                return null;
+        }
+    }
+
     @Override
     public String toString()
     {
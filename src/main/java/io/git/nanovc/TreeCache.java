@@ -0,0 +1,507 @@
+package io.git.nanovc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of the trees that were last written for a content area (usually the staging area).
+ * This corresponds to the cached tree extension of the index in git.
+ * <p>
+ * The cache is a trie of the folders in the content area.
+ * Each folder remembers the tree that was last written for it and each piece of content remembers the hash of its blob.
+ * When content is added, changed, moved or removed, only the folders along its path are invalidated.
+ * Writing the trees then only needs to visit the folders that were invalidated, because every other folder
+ * can reuse the hash of the tree that it last wrote.
+ * <p>
+ * Because the content area is mutable without going through the API, the cache doesn't rely on being told about changes.
+ * Instead, {@link #update(Iterable)} checks each piece of content against what the cache last saw.
+ * Content is considered to be changed when its path changes or when its {@link MutableContent#getModificationCount()} changes.
+ * The modification count notices when the content or path fields are replaced,
+ * and it counts changes to the bytes inside the content array that go through {@link MutableContent#getWritableContent()}
+ * or {@link MutableContent#markModified()}.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TreeCache
+{
+    /**
+     * The folder at the root of the content area.
+     */
+    private Node root = new Node(null, null);
+
+    /**
+     * The node that each piece of content was last seen at.
+     * This lets us skip splitting the path of content that hasn't moved.
+     */
+    private final IdentityHashMap<MutableContent, Node> contentNodes = new IdentityHashMap<>();
+
+    /**
+     * The number of nodes in the trie that hold content.
+     */
+    private int contentNodeCount;
+
+    /**
+     * The number of times that the cache has been updated.
+     * Nodes remember the generation that they were last seen in so that we can find content that was removed.
+     */
+    private int generation;
+
+    /**
+     * The object store that the cached trees and blobs were written to.
+     * The cache is only valid for this store.
+     */
+    private RepoObjectStore objects;
+
+    /**
+     * The format version that the cached trees were written in.
+     * The cache is only valid for this format.
+     */
+    private int formatVersion;
+
+    /**
+     * A node in the trie.
+     * A node is a folder if it has children and it is content if it has a content reference.
+     * Usually it is only one of those.
+     */
+    public static class Node
+    {
+        /**
+         * The name of this node in its parent folder. Null for the root.
+         */
+        public final String name;
+
+        /**
+         * The parent folder of this node. Null for the root.
+         */
+        public final Node parent;
+
+        /**
+         * The nodes in this folder, indexed by name.
+         * Null if this node has never been a folder.
+         */
+        public Map<String, Node> children;
+
+        /**
+         * True if the tree for this folder needs to be written again because something below it has changed.
+         */
+        public boolean dirty = true;
+
+        /**
+         * The tree that was last written for this folder.
+         * Null if it hasn't been written yet.
+         */
+        public Tree tree;
+
+        /**
+         * The content at this node. Null if this node only is a folder.
+         */
+        public MutableContent content;
+
+        /**
+         * The absolute path of the content when we last saw it.
+         */
+        public String contentPath;
+
+        /**
+         * The modification count of the content when we last saw it.
+         * See {@link MutableContent#getModificationCount()}.
+         */
+        public long modificationCount;
+
+        /**
+         * The hash value of the blob for the content.
+         * Null if the blob needs to be written again.
+         */
+        public String blobHashValue;
+
+        /**
+         * The generation of the cache when the content at this node was last seen.
+         */
+        public int generation;
+
+        /**
+         * The generation of the cache when the content at this node last changed.
+         * This is the modification token that is saved in the {@link StagingIndex}.
+         */
+        public int modifiedGeneration;
+
+        /**
+         * Creates a new node.
+         *
+         * @param name   The name of this node in its parent folder. Null for the root.
+         * @param parent The parent folder of this node. Null for the root.
+         */
+        public Node(String name, Node parent)
+        {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        /**
+         * Gets the child with the given name, creating it if it doesn't exist yet.
+         *
+         * @param name The name of the child.
+         * @return The child with the given name.
+         */
+        public Node getOrCreateChild(String name)
+        {
+            // Make sure we have children:
+            if (this.children == null) this.children = new HashMap<>();
+
+            // Get the child:
+            Node child = this.children.get(name);
+            if (child == null)
+            {
+                // Create the child:
+                child = new Node(name, this);
+                this.children.put(name, child);
+
+                // This folder has changed:
+                invalidate();
+            }
+            return child;
+        }
+
+        /**
+         * Marks this node and all the folders above it as needing to be written again.
+         */
+        public void invalidate()
+        {
+            // Walk all the way up the parents:
+            // NOTE: We can't stop at a node that is already dirty because content nodes are never written themselves,
+            //       so they can stay dirty after their parent has been written.
+            for (Node node = this; node != null; node = node.parent)
+            {
+                node.dirty = true;
+            }
+        }
+
+        /**
+         * Checks whether this node is a folder with children.
+         *
+         * @return True if this node has children.
+         */
+        public boolean hasChildren()
+        {
+            return this.children != null && !this.children.isEmpty();
+        }
+    }
+
+    /**
+     * Gets the folder at the root of the content area.
+     *
+     * @return The folder at the root of the content area.
+     */
+    public Node getRoot()
+    {
+        return this.root;
+    }
+
+    /**
+     * Makes sure that the cache is valid for the given object store and format version.
+     * If it isn't then the whole cache is cleared.
+     * The cached hashes are only useful if the objects that they reference are in the store that we write to.
+     *
+     * @param objects       The object store that the trees will be written to.
+     * @param formatVersion The format version that the trees will be written in.
+     */
+    public void validate(RepoObjectStore objects, int formatVersion)
+    {
+        // Check whether the cache is for this store and format:
+        // NOTE: If the root tree is no longer in the store then we can't trust any of the cached hashes either.
+        if (this.objects != objects || this.formatVersion != formatVersion
+            || (!this.root.dirty && (this.root.tree == null || objects.get(this.root.tree.hash) == null)))
+        {
+            // The cache is for something else.
+            clear();
+            this.objects = objects;
+            this.formatVersion = formatVersion;
+        }
+    }
+
+    /**
+     * Updates the cache with the given content.
+     * Content that has been added, changed or moved since the last update invalidates the folders along its path.
+     * Content that is no longer there is removed from the cache and invalidates the folders along its path.
+     *
+     * @param contents The content to update the cache with.
+     */
+    public void update(Iterable<MutableContent> contents)
+    {
+        // Start a new generation so that we can tell which content we have seen:
+        int generation = ++this.generation;
+        int seenCount = 0;
+
+        // Go through each piece of content:
+        for (MutableContent content : contents)
+        {
+            // Get the path of the content:
+            String path = content.getAbsolutePath();
+            if (path == null) continue;
+
+            // Check whether we know where this content was last time:
+            Node node = this.contentNodes.get(content);
+            if (node == null || !path.equals(node.contentPath))
+            {
+                // This content is new or it has moved.
+
+                // Find the node for the path:
+                node = findOrCreateNode(path);
+
+                // Check whether there is a node for this path:
+                // NOTE: A path with no parts (like the root) doesn't have content.
+                if (node == null) continue;
+
+                // Remember where this content is:
+                this.contentNodes.put(content, node);
+            }
+
+            // Check whether this is the first time we have seen the node in this generation:
+            if (node.generation != generation)
+            {
+                node.generation = generation;
+                seenCount++;
+            }
+
+            // Check whether the content at the node has changed:
+            long modificationCount = content.getModificationCount();
+            if (node.content != content || node.modificationCount != modificationCount || !path.equals(node.contentPath))
+            {
+                // Check whether the blob is still the same (like when the content was modified back to the same bytes):
+                String knownBlobHashValue = content.getCachedBlobHashValue();
+                if (node.content == content && path.equals(node.contentPath) && knownBlobHashValue != null && knownBlobHashValue.equals(node.blobHashValue))
+                {
+                    // The content is the same.
+                    node.modificationCount = modificationCount;
+                    continue;
+                }
+
+                // Check whether this is new content at the node:
+                if (node.content == null) this.contentNodeCount++;
+
+                // Update the node:
+                node.content = content;
+                node.contentPath = path;
+                node.modificationCount = modificationCount;
+                // NOTE: We only reuse the known hash if the blob is already in the object store, otherwise it still needs to be written.
+                node.blobHashValue = knownBlobHashValue != null && this.objects != null && this.objects.map.containsKey(knownBlobHashValue) ? knownBlobHashValue : null;
+                node.modifiedGeneration = generation;
+                node.invalidate();
+            }
+        }
+
+        // Check whether any content was removed:
+        if (seenCount < this.contentNodeCount)
+        {
+            // Some content was not seen, so it was removed.
+            removeUnseenContent(this.root, generation);
+        }
+
+        // Forget about content that we are no longer tracking:
+        if (this.contentNodes.size() > this.contentNodeCount)
+        {
+            this.contentNodes.entrySet().removeIf(entry -> entry.getValue().content != entry.getKey() || entry.getValue().generation != generation);
+        }
+    }
+
+    /**
+     * Gets the folders that need to be written again.
+     * Parents always come before their children, so the trees should be written in reverse order.
+     *
+     * @return The folders that need to be written again. The root is always first if it needs to be written.
+     */
+    public List<Node> getDirtyFolders()
+    {
+        List<Node> dirtyFolders = new ArrayList<>();
+
+        // Check whether anything needs to be written:
+        if (!this.root.dirty) return dirtyFolders;
+
+        // Walk the dirty folders:
+        // NOTE: Clean folders are skipped along with everything below them.
+        dirtyFolders.add(this.root);
+        for (int i = 0; i < dirtyFolders.size(); i++)
+        {
+            Node folder = dirtyFolders.get(i);
+            if (folder.children == null) continue;
+            for (Node child : folder.children.values())
+            {
+                if (child.dirty && child.hasChildren()) dirtyFolders.add(child);
+            }
+        }
+        return dirtyFolders;
+    }
+
+    /**
+     * Gets the number of times that the cache has been updated.
+     *
+     * @return The current generation of the cache.
+     */
+    public int getGeneration()
+    {
+        return this.generation;
+    }
+
+    /**
+     * Clears the cache and starts seeding it with state that was saved before, for example in a {@link StagingIndex}.
+     * Use {@link #seedContent} and then {@link #seedFolder} to fill it in.
+     *
+     * @param objects       The object store that the cached trees and blobs are in.
+     * @param formatVersion The format version that the cached trees were written in.
+     * @param generation    The generation of the cache when it was saved.
+     */
+    public void seed(RepoObjectStore objects, int formatVersion, int generation)
+    {
+        clear();
+        this.objects = objects;
+        this.formatVersion = formatVersion;
+        this.generation = generation;
+    }
+
+    /**
+     * Seeds the cache with content whose blob has already been written.
+     * The folders along the path of the content are invalidated until they are seeded with {@link #seedFolder}.
+     *
+     * @param content            The content to seed.
+     * @param blobHashValue      The hash value of the blob for the content.
+     * @param modifiedGeneration The generation of the cache when the content last changed.
+     */
+    public void seedContent(MutableContent content, String blobHashValue, int modifiedGeneration)
+    {
+        // Get the node for the content:
+        Node node = findOrCreateNode(content.getAbsolutePath());
+        if (node == null) return;
+
+        // Fill in the node:
+        if (node.content == null) this.contentNodeCount++;
+        node.content = content;
+        node.contentPath = content.getAbsolutePath();
+        node.modificationCount = content.getModificationCount();
+        node.blobHashValue = blobHashValue;
+        node.generation = this.generation;
+        node.modifiedGeneration = modifiedGeneration;
+        this.contentNodes.put(content, node);
+    }
+
+    /**
+     * Seeds the cache with the tree that was last written for a folder.
+     * The folder must already exist because content was seeded below it, otherwise this does nothing.
+     * Sub folders must be seeded before their parents because a folder stays invalidated while any of its sub folders are.
+     *
+     * @param absolutePath The absolute path of the folder.
+     * @param tree         The tree that was last written for the folder.
+     */
+    public void seedFolder(String absolutePath, Tree tree)
+    {
+        // Find the folder without creating it:
+        Node folder = this.root;
+        int length = absolutePath.length();
+        for (int start = 0; start < length && folder != null; )
+        {
+            // Find the end of this part:
+            int end = absolutePath.indexOf('/', start);
+            if (end < 0) end = length;
+
+            // Walk into the folder for this part:
+            if (end > start) folder = folder.children == null ? null : folder.children.get(absolutePath.substring(start, end));
+            start = end + 1;
+        }
+
+        // Make sure we found the folder:
+        if (folder == null || folder.children == null) return;
+
+        // Make sure none of the sub folders still need to be written:
+        for (Node child : folder.children.values())
+        {
+            if (child.dirty && child.hasChildren()) return;
+        }
+
+        // Save the tree:
+        folder.tree = tree;
+        folder.dirty = false;
+    }
+
+    /**
+     * Clears the cache so that every tree is written again.
+     */
+    public void clear()
+    {
+        this.root = new Node(null, null);
+        this.contentNodes.clear();
+        this.contentNodeCount = 0;
+    }
+
+    /**
+     * Finds the node for the given path, creating the folders along the way if necessary.
+     * The path is split by hand so that we don't need a regular expression.
+     *
+     * @param absolutePath The absolute path of the content.
+     * @return The node for the content at the path. Null if the path has no parts.
+     */
+    private Node findOrCreateNode(String absolutePath)
+    {
+        Node node = null;
+        Node folder = this.root;
+        int length = absolutePath.length();
+        int start = 0;
+        while (start < length)
+        {
+            // Find the end of this part:
+            int end = absolutePath.indexOf('/', start);
+            if (end < 0) end = length;
+
+            // Skip blank parts:
+            if (end > start)
+            {
+                // Walk into the previous node because it is a folder:
+                if (node != null) folder = node;
+
+                // Get the node for this part:
+                node = folder.getOrCreateChild(absolutePath.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Removes the content that wasn't seen in the given generation from the folder and everything below it.
+     * Folders that end up empty are removed too.
+     *
+     * @param folder     The folder to remove content from.
+     * @param generation The generation that content must have been seen in to be kept.
+     */
+    private void removeUnseenContent(Node folder, int generation)
+    {
+        if (folder.children == null) return;
+        Iterator<Node> iterator = folder.children.values().iterator();
+        while (iterator.hasNext())
+        {
+            Node child = iterator.next();
+
+            // Remove any content below this child:
+            removeUnseenContent(child, generation);
+
+            // Check whether the content at this child was removed:
+            if (child.content != null && child.generation != generation)
+            {
+                child.content = null;
+                child.contentPath = null;
+                child.blobHashValue = null;
+                this.contentNodeCount--;
+                folder.invalidate();
+            }
+
+            // Check whether this child is now empty:
+            if (child.content == null && !child.hasChildren())
+            {
+                iterator.remove();
+                folder.invalidate();
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.git.nanovc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Finds the differences between two trees.
+ * Trees are content addressed, so entries with the same hash are the same all the way down and are skipped without being read.
+ * Only the sub trees whose hashes differ are walked, so the cost is proportional to the part of the trees that changed.
+ * <p>
+ * The entries of each pair of trees are merge-joined in a single linear scan
+ * because trees keep their entries in the canonical order of {@link TreeEntryComparator}.
+ * Trees that are not in canonical order (because they were not written by us) are sorted first.
+ * <p>
+ * The differences are found for each blob, in the order of a depth first walk of the trees.
+ * They can be streamed to a consumer with {@link #diff(String, String, Consumer)} or collected with {@link #diff(String, String)}.
+ * This is used by diff_tree and checkout.
+ */
+public class TreeDiff
+{
+    /**
+     * The walker to get the trees from.
+     */
+    public final TreeWalker walker;
+
+    /**
+     * Creates a tree diff.
+     *
+     * @param objects The object store to get the trees from. The store must not be modified while the trees are being compared.
+     */
+    public TreeDiff(RepoObjectStore objects)
+    {
+        this.walker = new TreeWalker(objects, false);
+    }
+
+    /**
+     * Finds the differences between two trees and collects them.
+     *
+     * @param oldTreeHashValue The hash of the old tree. Null for an empty tree.
+     * @param newTreeHashValue The hash of the new tree. Null for an empty tree.
+     * @return The differences for each blob, in the order of a depth first walk.
+     */
+    public List<DiffEntry> diff(String oldTreeHashValue, String newTreeHashValue)
+    {
+        List<DiffEntry> diffEntries = new ArrayList<>();
+        diff(oldTreeHashValue, newTreeHashValue, diffEntries::add);
+        return diffEntries;
+    }
+
+    /**
+     * Finds the differences between two trees and streams them to the given consumer as they are found.
+     * Only the trees along the current path are kept in memory.
+     *
+     * @param oldTreeHashValue The hash of the old tree. Null for an empty tree.
+     * @param newTreeHashValue The hash of the new tree. Null for an empty tree.
+     * @param consumer         The consumer that is given the difference for each blob, in the order of a depth first walk.
+     */
+    public void diff(String oldTreeHashValue, String newTreeHashValue, Consumer<DiffEntry> consumer)
+    {
+        diffTreesRecursively(oldTreeHashValue, newTreeHashValue, RepoPath.atRoot(), consumer);
+    }
+
+    /**
+     * Finds the differences between two trees by merge-joining their entries.
+     *
+     * @param oldTreeHashValue The hash of the old tree. Null for an empty tree.
+     * @param newTreeHashValue The hash of the new tree. Null for an empty tree.
+     * @param folderPath       The absolute path of the trees.
+     * @param consumer         The consumer that is given the difference for each blob.
+     */
+    private void diffTreesRecursively(String oldTreeHashValue, String newTreeHashValue, RepoPath folderPath, Consumer<DiffEntry> consumer)
+    {
+        // Skip trees that are the same:
+        if (oldTreeHashValue == null ? newTreeHashValue == null : oldTreeHashValue.equals(newTreeHashValue)) return;
+
+        // Get the entries of the trees in canonical order:
+        List<TreeEntry> oldEntries = getSortedEntries(oldTreeHashValue);
+        List<TreeEntry> newEntries = getSortedEntries(newTreeHashValue);
+
+        // Merge-join the entries:
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldEntries.size() || newIndex < newEntries.size())
+        {
+            // Get the next entries:
+            TreeEntry oldEntry = oldIndex < oldEntries.size() ? oldEntries.get(oldIndex) : null;
+            TreeEntry newEntry = newIndex < newEntries.size() ? newEntries.get(newIndex) : null;
+
+            // Work out which entry comes first:
+            int comparison = oldEntry == null ? 1 : newEntry == null ? -1 : TreeEntryComparator.compareNames(oldEntry.name, newEntry.name);
+
+            if (comparison < 0)
+            {
+                // The old entry is not in the new tree:
+                diffEntryRecursively(oldEntry, null, folderPath, oldEntry.name, consumer);
+                oldIndex++;
+            }
+            else if (comparison > 0)
+            {
+                // The new entry is not in the old tree:
+                diffEntryRecursively(null, newEntry, folderPath, newEntry.name, consumer);
+                newIndex++;
+            }
+            else
+            {
+                // Both trees have an entry with this name:
+                diffEntryRecursively(oldEntry, newEntry, folderPath, newEntry.name, consumer);
+                oldIndex++;
+                newIndex++;
+            }
+        }
+    }
+
+    /**
+     * Finds the differences between the entries with the same name in two trees.
+     *
+     * @param oldEntry   The entry in the old tree. Null if there is no entry with the name in the old tree.
+     * @param newEntry   The entry in the new tree. Null if there is no entry with the name in the new tree.
+     * @param folderPath The absolute path of the trees that the entries are in.
+     * @param name       The name of the entries.
+     * @param consumer   The consumer that is given the difference for each blob.
+     */
+    private void diffEntryRecursively(TreeEntry oldEntry, TreeEntry newEntry, RepoPath folderPath, String name, Consumer<DiffEntry> consumer)
+    {
+        // Skip entries that are the same:
+        if (oldEntry != null && newEntry != null && oldEntry.objectType == newEntry.objectType && oldEntry.hashValue.equals(newEntry.hashValue)) return;
+
+        // Get the path of the entries:
+        // NOTE: This is only worked out for entries that changed, and the name is interned as a segment of the path.
+        RepoPath path = TreeWalker.resolve(folderPath, name);
+        String entryPath = path.toString();
+
+        // Get the hashes of the blobs and trees on each side:
+        String oldBlobHashValue = getHashValue(oldEntry, ObjectType.BLOB);
+        String newBlobHashValue = getHashValue(newEntry, ObjectType.BLOB);
+        String oldTreeHashValue = getHashValue(oldEntry, ObjectType.TREE);
+        String newTreeHashValue = getHashValue(newEntry, ObjectType.TREE);
+
+        // Check whether the blob was modified:
+        if (oldBlobHashValue != null && newBlobHashValue != null)
+        {
+            consumer.accept(new DiffEntry(ContentState.MODIFIED, entryPath, oldBlobHashValue, entryPath, newBlobHashValue));
+            return;
+        }
+
+        // Record the blob that was deleted:
+        // NOTE: This comes before the new sub tree to keep the differences in the order of the walk.
+        if (oldBlobHashValue != null) consumer.accept(new DiffEntry(ContentState.DELETED, entryPath, oldBlobHashValue, null, null));
+
+        // Walk the sub trees side by side:
+        // NOTE: A sub tree that is only on one side is compared with an empty tree, which adds or deletes everything in it.
+        if (oldTreeHashValue != null || newTreeHashValue != null) diffTreesRecursively(oldTreeHashValue, newTreeHashValue, path, consumer);
+
+        // Record the blob that was added:
+        // NOTE: A blob only replaces a sub tree after everything in the sub tree was deleted.
+        if (newBlobHashValue != null) consumer.accept(new DiffEntry(ContentState.ADDED, null, null, entryPath, newBlobHashValue));
+    }
+
+    /**
+     * Gets the hash of the given entry if it is of the given type.
+     *
+     * @param entry      The entry to get the hash of. Null if there is no entry.
+     * @param objectType The type of entry that we want.
+     * @return The hash of the entry. Null if there is no entry or it is not of the given type.
+     */
+    private static String getHashValue(TreeEntry entry, ObjectType objectType)
+    {
+        // Check whether there is an entry:
+        if (entry == null) return null;
+
+        // Make sure we know what the entry is:
+        if (entry.objectType != ObjectType.BLOB && entry.objectType != ObjectType.TREE)
+        {
+            throw new NanoRuntimeException("Unexpected content was found with the tree entry " + entry.objectType.name());
+        }
+        return entry.objectType == objectType ? entry.hashValue : null;
+    }
+
+    /**
+     * Gets the entries of a tree in canonical order.
+     * The entries are only sorted if the tree is not in canonical order already.
+     *
+     * @param treeHashValue The hash of the tree. Null for an empty tree.
+     * @return The entries of the tree in canonical order.
+     */
+    private List<TreeEntry> getSortedEntries(String treeHashValue)
+    {
+        // Check whether this is an empty tree:
+        if (treeHashValue == null) return new ArrayList<>();
+
+        // Get the tree:
+        List<TreeEntry> entries = this.walker.getTree(treeHashValue).entries;
+
+        // Check whether the entries are in canonical order already:
+        for (int i = 1; i < entries.size(); i++)
+        {
+            if (TreeEntryComparator.compareNames(entries.get(i - 1).name, entries.get(i).name) > 0)
+            {
+                // Sort a copy of the entries so that we don't change the tree:
+                List<TreeEntry> sortedEntries = new ArrayList<>(entries);
+                sortedEntries.sort(TreeEntryComparator.INSTANCE);
+                return sortedEntries;
+            }
+        }
+        return entries;
+    }
+}
@@ -8,5 +8,49 @@ import java.util.ArrayList;
  */
 public class TreeEntryCollection extends ArrayList<TreeEntry>
 {
+    /**
+     * The modification count of this list when we last checked that the entries are in canonical order.
+     * -1 if we have not checked yet or the entries were not in canonical order.
+     * See {@link #isInCanonicalOrder()}.
+     */
+    private int canonicalOrderModificationCount = -1;
 
+    /**
+     * Checks whether the entries are in the canonical order of {@link TreeEntryComparator}.
+     * This is true for trees that are written by the repo engine, so their entries can be binary searched by name.
+     * The answer is remembered until entries are added to, removed from or replaced in the list.
+     * Changing the name of an entry that is already in the list is not noticed.
+     *
+     * @return True if the entries are in canonical order.
+     */
+    public boolean isInCanonicalOrder()
+    {
+        // Check whether we already know that the entries are in order:
+        if (this.canonicalOrderModificationCount == this.modCount) return true;
+
+        // Check each pair of entries:
+        for (int i = 1; i < size(); i++)
+        {
+            if (TreeEntryComparator.compareNames(get(i - 1).name, get(i).name) > 0) return false;
+        }
+
+        // Remember that the entries are in order:
+        this.canonicalOrderModificationCount = this.modCount;
+        return true;
+    }
+
+    /**
+     * Replaces the entry at the given position.
+     * {@link ArrayList} doesn't count this as a modification, so we forget that the entries were in canonical order.
+     *
+     * @param index The position of the entry to replace.
+     * @param entry The entry to put at that position.
+     * @return The entry that was replaced.
+     */
+    @Override
+    public TreeEntry set(int index, TreeEntry entry)
+    {
+        this.canonicalOrderModificationCount = -1;
+        return super.set(index, entry);
+    }
 }
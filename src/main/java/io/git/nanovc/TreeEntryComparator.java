@@ -2,15 +2,94 @@ package io.git.nanovc;
 
 import java.util.Comparator;
 
-public class TreeEntryComparator implements Comparator<TreeEntry> {
+/**
+ * Compares tree entries in the canonical order that they are written in a {@link Tree}.
+ * Entries are ordered by name, comparing the names byte-wise as UTF-8 (which is the same as comparing their code points).
+ * This is a total order, so identical directory contents always produce identical trees (and tree hashes)
+ * no matter what order the content was staged in.
+ * It also means that the entries of two trees can be merge-joined in a single linear scan.
+ * <p>
+ * Names are unique within a tree, but for completeness entries with the same name are ordered by object type and then by hash.
+ */
+public class TreeEntryComparator implements Comparator<TreeEntry>
+{
+    /**
+     * A shared instance of the comparator.
+     * The comparator has no state so it is safe to share.
+     */
+    public static final TreeEntryComparator INSTANCE = new TreeEntryComparator();
 
     /**
      * Compares its two tree entries for order.
-     * Will order blobs over tree
+     * Entries are ordered byte-wise by the UTF-8 encoding of their names.
      */
     @Override
-    public int compare(TreeEntry treeEntry1, TreeEntry treeEntry2) {
-        if (treeEntry1.objectType.equals(ObjectType.BLOB) && !treeEntry2.objectType.equals(ObjectType.BLOB)) return 1;
-        return 0;
+    public int compare(TreeEntry treeEntry1, TreeEntry treeEntry2)
+    {
+        // Compare the names:
+        int comparison = compareNames(treeEntry1.name, treeEntry2.name);
+        if (comparison != 0) return comparison;
+
+        // Compare the object types:
+        comparison = Integer.compare(
+                treeEntry1.objectType == null ? -1 : treeEntry1.objectType.ordinal(),
+                treeEntry2.objectType == null ? -1 : treeEntry2.objectType.ordinal());
+        if (comparison != 0) return comparison;
+
+        // Compare the hashes:
+        if (treeEntry1.hashValue == null) return treeEntry2.hashValue == null ? 0 : -1;
+        if (treeEntry2.hashValue == null) return 1;
+        return treeEntry1.hashValue.compareTo(treeEntry2.hashValue);
+    }
+
+    /**
+     * Compares two names in the canonical order for tree entries.
+     * This gives the same result as comparing the UTF-8 bytes of the names as unsigned values,
+     * but without encoding them.
+     * {@link String#compareTo(String)} is not enough because it compares UTF-16 code units,
+     * which puts supplementary characters before the characters from U+E000 to U+FFFF.
+     *
+     * @param name1 The first name to compare.
+     * @param name2 The second name to compare.
+     * @return A negative number if the first name comes first, zero if they are equal and a positive number if the first name comes after.
+     */
+    public static int compareNames(String name1, String name2)
+    {
+        // Compare the common characters:
+        int commonLength = Math.min(name1.length(), name2.length());
+        for (int i = 0; i < commonLength; i++)
+        {
+            // Get the characters:
+            char c1 = name1.charAt(i);
+            char c2 = name2.charAt(i);
+
+            // Check whether they differ:
+            if (c1 != c2)
+            {
+                // Check whether we need to fix up the order for surrogates:
+                // NOTE: Surrogates (which encode supplementary characters) must come after all other characters.
+                if (c1 >= Character.MIN_SURROGATE && c2 >= Character.MIN_SURROGATE)
+                {
+                    c1 = fixUpCodeUnitForCodePointOrder(c1);
+                    c2 = fixUpCodeUnitForCodePointOrder(c2);
+                }
+                return c1 - c2;
+            }
+        }
+
+        // The shorter name comes first:
+        return name1.length() - name2.length();
+    }
+
+    /**
+     * Moves a UTF-16 code unit (which is at least {@link Character#MIN_SURROGATE}) so that code units compare in code point order.
+     * Surrogates are moved above everything else and the characters above the surrogates are moved down.
+     *
+     * @param c The code unit to fix up.
+     * @return The code unit that compares in code point order.
+     */
+    private static char fixUpCodeUnitForCodePointOrder(char c)
+    {
+        return (char) (c >= 0xE000 ? c - 0x800 : c + 0x2000);
     }
 }
@@ -0,0 +1,84 @@
+package io.git.nanovc;
+
+/**
+ * A {@link TreeEntry} along with the absolute path of the entry in the repo.
+ * This is what a {@link TreeWalker} finds for each entry in a tree and its sub trees.
+ */
+public class TreePathEntry
+{
+    /**
+     * The absolute path of the entry in the repo.
+     */
+    public String absolutePath;
+
+    /**
+     * The path of the entry in the repo, made of interned segments.
+     * This is kept so that the paths of the entries inside a sub tree can be resolved from it without splitting the path again.
+     * Null if the entry was created from just the absolute path. See {@link #getPath()}.
+     */
+    public RepoPath path;
+
+    /**
+     * The entry in the tree.
+     */
+    public TreeEntry entry;
+
+    /**
+     * The blob for the entry if it was loaded during the walk.
+     * Null if the entry is not a blob or if blobs were not loaded.
+     */
+    public Blob blob;
+
+    /**
+     * Creates a new entry.
+     * You must set the path and entry yourself.
+     */
+    public TreePathEntry()
+    {
+    }
+
+    /**
+     * Creates a new entry.
+     *
+     * @param absolutePath The absolute path of the entry in the repo.
+     * @param entry        The entry in the tree.
+     * @param blob         The blob for the entry if it was loaded. Null otherwise.
+     */
+    public TreePathEntry(String absolutePath, TreeEntry entry, Blob blob)
+    {
+        this.absolutePath = absolutePath;
+        this.entry = entry;
+        this.blob = blob;
+    }
+
+    /**
+     * Creates a new entry.
+     *
+     * @param path  The absolute path of the entry in the repo.
+     * @param entry The entry in the tree.
+     * @param blob  The blob for the entry if it was loaded. Null otherwise.
+     */
+    public TreePathEntry(RepoPath path, TreeEntry entry, Blob blob)
+    {
+        this(path.toString(), entry, blob);
+        this.path = path;
+    }
+
+    /**
+     * Gets the path of the entry in the repo, made of interned segments.
+     * It is created from the {@link #absolutePath} the first time if the entry was created without it.
+     *
+     * @return The path of the entry in the repo.
+     */
+    public RepoPath getPath()
+    {
+        if (this.path == null) this.path = RepoPath.at(this.absolutePath);
+        return this.path;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s : %s -> %s", absolutePath, entry.objectType, entry.hashValue);
+    }
+}
@@ -0,0 +1,37 @@
+package io.git.nanovc;
+
+/**
+ * A visitor that is called for each entry while a {@link TreeWalker} walks a tree depth first.
+ * Sub trees can be skipped by returning false from {@link #enterTree(TreePathEntry)},
+ * so only the parts of a tree that are needed get read.
+ */
+public interface TreeVisitor
+{
+    /**
+     * Called when a sub tree is reached, before any of its entries are visited.
+     *
+     * @param treeEntry The entry for the sub tree.
+     * @return True to walk into the sub tree. False to skip the sub tree without reading it.
+     */
+    default boolean enterTree(TreePathEntry treeEntry)
+    {
+        return true;
+    }
+
+    /**
+     * Called after all the entries of a sub tree have been visited.
+     * This is not called for sub trees that were skipped.
+     *
+     * @param treeEntry The entry for the sub tree.
+     */
+    default void exitTree(TreePathEntry treeEntry)
+    {
+    }
+
+    /**
+     * Called for each blob in the tree.
+     *
+     * @param blobEntry The entry for the blob.
+     */
+    void visitBlob(TreePathEntry blobEntry);
+}
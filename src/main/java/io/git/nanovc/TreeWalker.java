@@ -0,0 +1,428 @@
+package io.git.nanovc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a tree and all of its sub trees to find the blobs in them.
+ * The sub trees are walked in parallel with a fork join pool, which bounds the number of threads that are used.
+ * The results are always in the same order as a depth first walk on a single thread would give,
+ * so they can be put into content areas deterministically.
+ * <p>
+ * This is used by checkout and read_tree.
+ * <p>
+ * Trees can also be streamed with {@link #stream(String, RepoPath)} or visited with {@link #visit(String, RepoPath, TreeVisitor)}.
+ * These only keep the trees along the current path in memory, so huge trees can be scanned, filtered or exported without materializing all their entries.
+ */
+public class TreeWalker
+{
+    /**
+     * The object store to get the trees and blobs from.
+     * The store must not be modified while it is being walked.
+     */
+    public final RepoObjectStore objects;
+
+    /**
+     * The pool that the sub trees are walked in.
+     * Its parallelism bounds the number of threads that walk at once.
+     */
+    public final ForkJoinPool pool;
+
+    /**
+     * True to load the blob for each entry during the walk (in parallel). False to only find the entries.
+     */
+    public boolean loadBlobs;
+
+    /**
+     * Creates a tree walker that uses the common fork join pool.
+     *
+     * @param objects   The object store to get the trees and blobs from.
+     * @param loadBlobs True to load the blob for each entry during the walk. False to only find the entries.
+     */
+    public TreeWalker(RepoObjectStore objects, boolean loadBlobs)
+    {
+        this(objects, loadBlobs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a tree walker.
+     *
+     * @param objects   The object store to get the trees and blobs from.
+     * @param loadBlobs True to load the blob for each entry during the walk. False to only find the entries.
+     * @param pool      The pool that the sub trees are walked in. Its parallelism bounds the number of threads that walk at once.
+     */
+    public TreeWalker(RepoObjectStore objects, boolean loadBlobs, ForkJoinPool pool)
+    {
+        this.objects = objects;
+        this.loadBlobs = loadBlobs;
+        this.pool = pool;
+    }
+
+    /**
+     * Walks the tree and all of its sub trees and finds the blobs in them.
+     *
+     * @param treeHashValue The hash of the tree to walk.
+     * @param treePath      The path of the tree in the repo.
+     * @return The blob entries in the tree and its sub trees, in the order of a depth first walk.
+     */
+    public List<TreePathEntry> walkBlobs(String treeHashValue, RepoPath treePath)
+    {
+        return this.pool.invoke(new WalkTask(treeHashValue, treePath.toAbsolutePath()));
+    }
+
+    /**
+     * Streams all the entries (blobs and sub trees) in the tree and its sub trees, in the order of a depth first walk.
+     * Each sub tree comes before its entries. The trees are only read as the stream reaches them.
+     * A parallel stream splits the work across the sub trees.
+     *
+     * @param treeHashValue The hash of the tree to stream.
+     * @param treePath      The path of the tree in the repo.
+     * @return A stream of the entries in the tree and its sub trees.
+     */
+    public Stream<TreePathEntry> stream(String treeHashValue, RepoPath treePath)
+    {
+        return StreamSupport.stream(new TreeSpliterator(getTree(treeHashValue), treePath.toAbsolutePath()), false);
+    }
+
+    /**
+     * Walks the tree depth first on this thread and calls the visitor for each entry.
+     * Sub trees that the visitor skips are not read at all.
+     *
+     * @param treeHashValue The hash of the tree to walk.
+     * @param treePath      The path of the tree in the repo.
+     * @param visitor       The visitor to call for each entry.
+     */
+    public void visit(String treeHashValue, RepoPath treePath, TreeVisitor visitor)
+    {
+        // Keep the trees along the current path on a stack:
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(getTree(treeHashValue), treePath.toAbsolutePath(), null));
+        while (!frames.isEmpty())
+        {
+            // Check whether we are done with the tree on top of the stack:
+            Frame frame = frames.peek();
+            if (frame.index >= frame.end)
+            {
+                // Leave the tree:
+                frames.pop();
+                if (frame.treeEntry != null) visitor.exitTree(frame.treeEntry);
+                continue;
+            }
+
+            // Get the next entry:
+            TreeEntry entry = frame.entries.get(frame.index++);
+            TreePathEntry pathEntry = new TreePathEntry(resolve(frame.treePath, entry.name), entry, null);
+
+            // Process the entry:
+            switch (entry.objectType)
+            {
+                case BLOB:
+                    visitor.visitBlob(pathEntry);
+                    break;
+
+                case TREE:
+                    // Check whether the visitor wants to walk into the sub tree:
+                    if (visitor.enterTree(pathEntry)) frames.push(new Frame(getTree(entry.hashValue), pathEntry.path, pathEntry));
+                    break;
+
+                default:
+                    throw new NanoRuntimeException("Unexpected content was found with the tree entry " + entry.objectType.name());
+            }
+        }
+    }
+
+    /**
+     * Gets the tree with the given hash.
+     *
+     * @param treeHashValue The hash of the tree to get.
+     * @return The tree with the given hash.
+     */
+    public Tree getTree(String treeHashValue)
+    {
+        // Get the object:
+        RepoObject repoObject = this.objects.get(treeHashValue);
+
+        // Make sure it's a tree:
+        if (!(repoObject instanceof Tree)) throw new NanoRuntimeException("The given hash is not a valid tree. A valid tree hash is needed. " + treeHashValue);
+
+        return (Tree) repoObject;
+    }
+
+    /**
+     * Gets the blob with the given hash.
+     *
+     * @param blobHashValue The hash of the blob to get.
+     * @return The blob with the given hash.
+     */
+    public Blob getBlob(String blobHashValue)
+    {
+        // Get the object:
+        RepoObject repoObject = this.objects.get(blobHashValue);
+
+        // Make sure it's a blob:
+        if (!(repoObject instanceof Blob)) throw new NanoRuntimeException("The given hash is not a valid blob. A valid blob hash is needed. " + blobHashValue);
+
+        return (Blob) repoObject;
+    }
+
+    /**
+     * Gets the absolute path of an entry in a folder.
+     * The name is interned as a segment of the path, so walks over trees with the same names share the segments.
+     *
+     * @param folderPath The absolute path of the folder.
+     * @param name       The name of the entry.
+     * @return The absolute path of the entry.
+     */
+    public static RepoPath resolve(RepoPath folderPath, String name)
+    {
+        return folderPath.resolve(name);
+    }
+
+    /**
+     * A task that walks one tree and forks a task for each of its sub trees.
+     */
+    private final class WalkTask extends RecursiveTask<List<TreePathEntry>>
+    {
+        /**
+         * The version of this serializable task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The hash of the tree to walk.
+         */
+        private final String treeHashValue;
+
+        /**
+         * The absolute path of the tree.
+         */
+        private final RepoPath treePath;
+
+        /**
+         * Creates a task to walk the given tree.
+         *
+         * @param treeHashValue The hash of the tree to walk.
+         * @param treePath      The absolute path of the tree.
+         */
+        WalkTask(String treeHashValue, RepoPath treePath)
+        {
+            this.treeHashValue = treeHashValue;
+            this.treePath = treePath;
+        }
+
+        @Override
+        protected List<TreePathEntry> compute()
+        {
+            // Get the tree:
+            Tree tree = getTree(this.treeHashValue);
+
+            // Go through the entries, keeping a place for the results of each sub tree:
+            List<Object> parts = new ArrayList<>(tree.entries.size());
+            List<WalkTask> subTasks = new ArrayList<>();
+            for (TreeEntry entry : tree.entries)
+            {
+                // Get the path of the entry:
+                RepoPath entryPath = resolve(this.treePath, entry.name);
+
+                // Process the entry:
+                switch (entry.objectType)
+                {
+                    case BLOB:
+                        parts.add(new TreePathEntry(entryPath, entry, loadBlobs ? getBlob(entry.hashValue) : null));
+                        break;
+
+                    case TREE:
+                        WalkTask subTask = new WalkTask(entry.hashValue, entryPath);
+                        parts.add(subTask);
+                        subTasks.add(subTask);
+                        break;
+
+                    default:
+                        throw new NanoRuntimeException("Unexpected content was found with the tree entry " + entry.objectType.name());
+                }
+            }
+
+            // Walk the sub trees in parallel:
+            ForkJoinTask.invokeAll(subTasks);
+
+            // Put the results together in order:
+            List<TreePathEntry> results = new ArrayList<>();
+            for (Object part : parts)
+            {
+                if (part instanceof WalkTask)
+                {
+                    results.addAll(((WalkTask) part).join());
+                }
+                else
+                {
+                    results.add((TreePathEntry) part);
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * The position in one tree while it is being walked.
+     */
+    private static final class Frame
+    {
+        /**
+         * The entries of the tree.
+         */
+        final List<TreeEntry> entries;
+
+        /**
+         * The absolute path of the tree.
+         */
+        final RepoPath treePath;
+
+        /**
+         * The entry for the tree. Null for the tree that the walk started at.
+         */
+        final TreePathEntry treeEntry;
+
+        /**
+         * The index of the next entry to walk.
+         */
+        int index;
+
+        /**
+         * The index after the last entry to walk.
+         */
+        int end;
+
+        /**
+         * Creates a frame for all the entries of the given tree.
+         *
+         * @param tree      The tree to walk.
+         * @param treePath  The absolute path of the tree.
+         * @param treeEntry The entry for the tree. Null for the tree that the walk started at.
+         */
+        Frame(Tree tree, RepoPath treePath, TreePathEntry treeEntry)
+        {
+            this(tree.entries, treePath, treeEntry, 0, tree.entries.size());
+        }
+
+        /**
+         * Creates a frame for a range of entries.
+         *
+         * @param entries   The entries of the tree.
+         * @param treePath  The absolute path of the tree.
+         * @param treeEntry The entry for the tree. Null for the tree that the walk started at.
+         * @param index     The index of the next entry to walk.
+         * @param end       The index after the last entry to walk.
+         */
+        Frame(List<TreeEntry> entries, RepoPath treePath, TreePathEntry treeEntry, int index, int end)
+        {
+            this.entries = entries;
+            this.treePath = treePath;
+            this.treeEntry = treeEntry;
+            this.index = index;
+            this.end = end;
+        }
+    }
+
+    /**
+     * A spliterator over the entries of a tree and its sub trees, in the order of a depth first walk.
+     * It splits by handing the first half of the remaining entries of the outermost tree (along with everything before them) to a new spliterator.
+     */
+    private final class TreeSpliterator implements Spliterator<TreePathEntry>
+    {
+        /**
+         * The trees along the current path. The outermost tree is at the bottom of the stack.
+         */
+        private final Deque<Frame> frames = new ArrayDeque<>();
+
+        /**
+         * Creates a spliterator over the given tree.
+         *
+         * @param tree     The tree to walk.
+         * @param treePath The absolute path of the tree.
+         */
+        TreeSpliterator(Tree tree, RepoPath treePath)
+        {
+            this.frames.push(new Frame(tree, treePath, null));
+        }
+
+        /**
+         * Creates a spliterator that is split off from another one.
+         */
+        private TreeSpliterator()
+        {
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super TreePathEntry> action)
+        {
+            while (!this.frames.isEmpty())
+            {
+                // Check whether we are done with the tree on top of the stack:
+                Frame frame = this.frames.peek();
+                if (frame.index >= frame.end)
+                {
+                    this.frames.pop();
+                    continue;
+                }
+
+                // Get the next entry:
+                TreeEntry entry = frame.entries.get(frame.index++);
+                TreePathEntry pathEntry = new TreePathEntry(resolve(frame.treePath, entry.name), entry, null);
+
+                // Walk into sub trees after the sub tree itself:
+                if (entry.objectType == ObjectType.TREE) this.frames.push(new Frame(getTree(entry.hashValue), pathEntry.path, pathEntry));
+
+                action.accept(pathEntry);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<TreePathEntry> trySplit()
+        {
+            // Drop the outermost trees that we are done with:
+            while (!this.frames.isEmpty() && this.frames.peekLast().index >= this.frames.peekLast().end)
+            {
+                this.frames.removeLast();
+            }
+
+            // Make sure there are enough entries left in the outermost tree to split:
+            Frame outermost = this.frames.peekLast();
+            if (outermost == null || outermost.end - outermost.index < 2) return null;
+
+            // Hand everything up to the middle of the outermost tree to a new spliterator:
+            int middle = (outermost.index + outermost.end) >>> 1;
+            TreeSpliterator prefix = new TreeSpliterator();
+            prefix.frames.addAll(this.frames);
+            prefix.frames.removeLast();
+            prefix.frames.addLast(new Frame(outermost.entries, outermost.treePath, outermost.treeEntry, outermost.index, middle));
+
+            // Keep the rest of the outermost tree:
+            this.frames.clear();
+            this.frames.push(new Frame(outermost.entries, outermost.treePath, outermost.treeEntry, middle, outermost.end));
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | NONNULL;
+        }
+    }
+}
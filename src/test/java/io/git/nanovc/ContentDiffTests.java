@@ -0,0 +1,230 @@
+package io.git.nanovc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests finding the differences inside content.
+ */
+public class ContentDiffTests extends NanoVersionControlTestsBase
+{
+    /**
+     * Tests that both algorithms give edits that turn the old lines into the new lines
+     * and that Myers gives the shortest edits.
+     */
+    @Test
+    public void testDiffAlgorithmsGiveValidEdits()
+    {
+        Random random = new Random(42);
+        for (int attempt = 0; attempt < 500; attempt++)
+        {
+            // Create random lines from a small alphabet so that there are plenty of repeats:
+            byte[] oldContent = randomLines(random, random.nextInt(30));
+            byte[] newContent = randomLines(random, random.nextInt(30));
+            LineSequence a = new LineSequence(oldContent);
+            LineSequence b = new LineSequence(newContent);
+
+            for (DiffAlgorithm algorithm : DiffAlgorithm.values())
+            {
+                // Make sure applying the edits gives the new content:
+                List<DiffEdit> edits = algorithm.diff(a, b);
+                Assert.assertArrayEquals(algorithm + " " + edits, newContent, applyEdits(a, b, edits));
+
+                // Make sure the edits are in order and are not next to each other:
+                for (int i = 1; i < edits.size(); i++)
+                {
+                    Assert.assertTrue(edits.get(i - 1).endA < edits.get(i).beginA || edits.get(i - 1).endB < edits.get(i).beginB);
+                }
+
+                // Make sure Myers finds the shortest edits:
+                if (algorithm == DiffAlgorithm.MYERS)
+                {
+                    int editedLines = edits.stream().mapToInt(edit -> (edit.endA - edit.beginA) + (edit.endB - edit.beginB)).sum();
+                    Assert.assertEquals(a.size() + b.size() - 2 * longestCommonSubsequence(a, b), editedLines);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests writing a unified patch.
+     */
+    @Test
+    public void testUnifiedPatch() throws IOException
+    {
+        String oldText = "1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n11\n12\n13\n14\n15\nend";
+        String newText = "1\n2\n3\nfour\n5\n6\n7\n8\n9\n10\n11\n12\n13\n14\n15\n16\nend\n";
+        ContentDiff contentDiff = new ContentDiff();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        contentDiff.writePatch("/numbers.txt", oldText.getBytes(StandardCharsets.UTF_8), "/numbers.txt", newText.getBytes(StandardCharsets.UTF_8), outputStream);
+        Assert.assertEquals(
+                "--- a/numbers.txt\n" +
+                "+++ b/numbers.txt\n" +
+                "@@ -1,7 +1,7 @@\n" +
+                " 1\n" +
+                " 2\n" +
+                " 3\n" +
+                "-4\n" +
+                "+four\n" +
+                " 5\n" +
+                " 6\n" +
+                " 7\n" +
+                "@@ -13,4 +13,5 @@\n" +
+                " 13\n" +
+                " 14\n" +
+                " 15\n" +
+                "-end\n" +
+                "\\ No newline at end of file\n" +
+                "+16\n" +
+                "+end\n",
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+
+        // Make sure the changes are joined into one hunk when the context overlaps:
+        contentDiff.contextLines = 6;
+        outputStream.reset();
+        contentDiff.writePatch("/numbers.txt", oldText.getBytes(StandardCharsets.UTF_8), "/numbers.txt", newText.getBytes(StandardCharsets.UTF_8), outputStream);
+        Assert.assertTrue(new String(outputStream.toByteArray(), StandardCharsets.UTF_8).contains("@@ -1,16 +1,17 @@\n"));
+
+        // Make sure that added content is compared with nothing:
+        outputStream.reset();
+        contentDiff.writePatch(null, null, "/new.txt", "a\n".getBytes(StandardCharsets.UTF_8), outputStream);
+        Assert.assertEquals("--- /dev/null\n+++ b/new.txt\n@@ -0,0 +1 @@\n+a\n", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+
+        // Make sure that binary content is not diffed line by line:
+        outputStream.reset();
+        contentDiff.writePatch("/image.png", new byte[] {1, 0, 2}, "/image.png", new byte[] {1, 0, 3}, outputStream);
+        Assert.assertEquals("Binary files a/image.png and b/image.png differ\n", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertEquals("[MODIFIED(2-3,2-4)]", contentDiff.diffBytes(new byte[] {1, 0, 2}, new byte[] {1, 0, 3, 4}).toString());
+    }
+
+    /**
+     * Tests that the histogram algorithm lines up on unique lines.
+     */
+    @Test
+    public void testHistogramLinesUpUniqueLines()
+    {
+        // Swap two functions, where the braces are common:
+        String oldText = "int x;\nvoid f()\n{\n  one();\n}\n\nvoid g()\n{\n  two();\n}\n";
+        String newText = "int x;\nvoid g()\n{\n  two();\n}\n\nvoid f()\n{\n  one();\n}\n";
+        LineSequence a = new LineSequence(oldText.getBytes(StandardCharsets.UTF_8));
+        LineSequence b = new LineSequence(newText.getBytes(StandardCharsets.UTF_8));
+
+        // Make sure Myers lines up the braces:
+        Assert.assertEquals("[MODIFIED(1-2,1-2), MODIFIED(3-4,3-4), MODIFIED(6-7,6-7), MODIFIED(8-9,8-9)]", DiffAlgorithm.MYERS.diff(a, b).toString());
+
+        // Make sure histogram lines up the unique lines and moves a whole function instead:
+        Assert.assertEquals("[DELETED(1-6,1-1), ADDED(9-9,4-9)]", DiffAlgorithm.HISTOGRAM.diff(a, b).toString());
+    }
+
+    /**
+     * Tests the patch between two commits.
+     */
+    @Test
+    public void testDiffBetweenCommits()
+    {
+        RepoHandler repoHandler = NanoVersionControl.newHandler();
+        repoHandler.init();
+        repoHandler.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        repoHandler.putWorkingAreaContent("/a.txt", "one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+        repoHandler.putWorkingAreaContent("/b.txt", "gone\n".getBytes(StandardCharsets.UTF_8));
+        repoHandler.addAll(false);
+        Commit firstCommit = repoHandler.commitAll("First", false);
+
+        // Change the content:
+        repoHandler.putWorkingAreaContent("/a.txt", "one\n2\n".getBytes(StandardCharsets.UTF_8));
+        repoHandler.addAll(false);
+        repoHandler.repo.stagingArea.removeContent("/b.txt");
+        Commit secondCommit = repoHandler.commitAll("Second", false);
+
+        Assert.assertEquals(
+                "diff --git a/a.txt b/a.txt\n" +
+                "--- a/a.txt\n" +
+                "+++ b/a.txt\n" +
+                "@@ -1,2 +1,2 @@\n" +
+                " one\n" +
+                "-two\n" +
+                "+2\n" +
+                "diff --git a/b.txt b/b.txt\n" +
+                "--- a/b.txt\n" +
+                "+++ /dev/null\n" +
+                "@@ -1 +0,0 @@\n" +
+                "-gone\n",
+                new String(repoHandler.diff(firstCommit.hash.value, secondCommit.hash.value), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates random lines from a small alphabet.
+     *
+     * @param random    The random number generator.
+     * @param lineCount The number of lines to create.
+     * @return The bytes of the lines.
+     */
+    private byte[] randomLines(Random random, int lineCount)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lineCount; i++)
+        {
+            builder.append((char) ('a' + random.nextInt(4))).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applies the edits to the old lines.
+     *
+     * @param a     The old lines.
+     * @param b     The new lines.
+     * @param edits The edits to apply.
+     * @return The bytes of the old lines with the edits applied.
+     * @throws RuntimeException If the lines could not be written.
+     */
+    private byte[] applyEdits(LineSequence a, LineSequence b, List<DiffEdit> edits)
+    {
+        try
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            int indexA = 0;
+            for (DiffEdit edit : edits)
+            {
+                for (; indexA < edit.beginA; indexA++) a.writeLine(indexA, outputStream);
+                for (int indexB = edit.beginB; indexB < edit.endB; indexB++) b.writeLine(indexB, outputStream);
+                indexA = edit.endA;
+            }
+            for (; indexA < a.size(); indexA++) a.writeLine(indexA, outputStream);
+            return outputStream.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Finds the length of the longest common subsequence of the lines with dynamic programming.
+     *
+     * @param a The old lines.
+     * @param b The new lines.
+     * @return The length of the longest common subsequence.
+     */
+    private int longestCommonSubsequence(LineSequence a, LineSequence b)
+    {
+        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i++)
+        {
+            for (int j = 1; j <= b.size(); j++)
+            {
+                lengths[i][j] = a.equals(i - 1, b, j - 1) ? lengths[i - 1][j - 1] + 1 : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[a.size()][b.size()];
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Random;
 
@@ -36,6 +38,38 @@ public class HashTests extends NanoVersionControlTestsBase
         assertStringToBlobHash("aaa", "7c4a013e52c76442ab80ee5572399a30373600a2");
     }
 
+    /**
+     * Tests that hashing repo objects directly gives the same hashes as hashing their serialized bytes.
+     */
+    @Test
+    public void testHashingRepoObjects()
+    {
+        // Create the repo engine that will be reused:
+        RepoEngine repoEngine = new RepoEngine();
+
+        // Create some blobs:
+        Blob nullBlob = new Blob((byte[]) null);
+        Blob emptyBlob = new Blob(new byte[0]);
+        Blob blob = new Blob("Hello World".getBytes(StandardCharsets.UTF_8));
+
+        // Create a tree:
+        Tree tree = new Tree();
+        TreeEntry entry = new TreeEntry();
+        entry.hashValue = "1111111111222222222233333333334444444444";
+        entry.name = "hello.txt";
+        entry.objectType = ObjectType.BLOB;
+        tree.entries.add(entry);
+
+        // Create a commit:
+        Commit commit = new Commit("Luke", ZonedDateTime.of(2017,4,29, 8,0,0, 0, ZoneId.of("GMT+2")), "admin", ZonedDateTime.of(2017,4,29, 9,0,0, 0, ZoneId.of("GMT+2")), entry.hashValue, "First Commit");
+
+        for (RepoObject repoObject : new RepoObject[] {nullBlob, emptyBlob, blob, tree, commit})
+        {
+            // Make sure the direct hash matches the hash of the serialized bytes:
+            Assert.assertEquals(repoEngine.hash_object(repoObject.getObjectType(), repoObject.getByteArray()).value, repoEngine.hash_object(repoObject).value);
+        }
+    }
+
     @Test
     public void test_Hashing_Performance()
     {
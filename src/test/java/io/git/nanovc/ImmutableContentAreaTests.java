@@ -3,6 +3,12 @@ package io.git.nanovc;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 /**
  * Tests that the immutable content area behaves as expected.
  * An immutable content area would usually be the committed area in a git repository.
@@ -117,6 +123,101 @@ public class ImmutableContentAreaTests extends NanoVersionControlTestsBase
 
     }
 
+    /**
+     * Tests that snapshots of an immutable content area keep their content while the area changes
+     * and that comparing them only reports the content that changed.
+     */
+    @Test
+    public void ImmutableContentArea_Snapshots()
+    {
+        // Create the immutable content area with lots of content:
+        ImmutableContentArea area = new ImmutableContentArea();
+        for (int i = 0; i < 2000; i++)
+        {
+            area.putContent("/folder" + (i % 10) + "/file" + i, (byte) i);
+        }
+
+        // Put content whose paths have the same hash code:
+        area.putContent("/Aa", (byte) 1);
+        area.putContent("/BB", (byte) 2);
+        area.freeze();
+
+        // Take a snapshot:
+        ImmutableContentArea snapshot = area.snapshot();
+        Assert.assertTrue(snapshot.isFrozen());
+        Assert.assertEquals(2002, snapshot.getContentCount());
+
+        // Derive the next version of the content:
+        area.thaw();
+        ImmutableContent changedContent = area.putContent("/folder1/file1", (byte) 99);
+        ImmutableContent addedContent = area.putContent("/folder1/new", (byte) 100);
+        ImmutableContent collidingContent = area.putContent("/BB", (byte) 3);
+        area.removeContent("/folder2/file2");
+        area.removeContent("/Aa");
+        area.freeze();
+
+        // Make sure the snapshot still has the previous content:
+        Assert.assertEquals(2002, snapshot.getContentCount());
+        Assert.assertArrayEquals(new byte[] {1}, snapshot.getContent("/folder1/file1").getCloneOfContentAsByteArray());
+        Assert.assertNotNull(snapshot.getContent("/folder2/file2"));
+        Assert.assertNotNull(snapshot.getContent("/Aa"));
+        Assert.assertNull(snapshot.getContent("/folder1/new"));
+
+        // Make sure the area has the new content and shares the content that didn't change:
+        Assert.assertEquals(2001, area.getContentCount());
+        Assert.assertSame(changedContent, area.getContent("/folder1/file1"));
+        Assert.assertSame(collidingContent, area.getContent("/BB"));
+        Assert.assertNull(area.getContent("/Aa"));
+        Assert.assertSame(snapshot.getContent("/folder3/file3"), area.getContent("/folder3/file3"));
+
+        // Compare the snapshot with the area:
+        Map<String, ImmutableContent[]> differences = new HashMap<>();
+        snapshot.diff(area, (before, after) -> differences.put(before != null ? before.getAbsolutePath() : after.getAbsolutePath(), new ImmutableContent[] {before, after}));
+        Assert.assertEquals(5, differences.size());
+        Assert.assertSame(changedContent, differences.get("/folder1/file1")[1]);
+        Assert.assertNull(differences.get("/folder1/new")[0]);
+        Assert.assertSame(addedContent, differences.get("/folder1/new")[1]);
+        Assert.assertSame(collidingContent, differences.get("/BB")[1]);
+        Assert.assertNull(differences.get("/folder2/file2")[1]);
+        Assert.assertNull(differences.get("/Aa")[1]);
+
+        // Make sure that a snapshot has no differences with itself:
+        area.diff(area.snapshot(), (before, after) -> Assert.fail("There should be no differences."));
+    }
 
+    /**
+     * Tests random changes to an immutable content area against a hash map.
+     */
+    @Test
+    public void ImmutableContentArea_RandomChanges()
+    {
+        ImmutableContentArea area = new ImmutableContentArea();
+        Map<String, ImmutableContent> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++)
+        {
+            // Put or remove content at a random path:
+            String path = "/" + random.nextInt(3000);
+            if (random.nextInt(3) == 0)
+            {
+                area.removeContent(path);
+                expected.remove(path);
+            }
+            else
+            {
+                expected.put(path, area.putContent(path, (byte) i));
+            }
+        }
 
+        // Make sure the area has the same content as the map:
+        Assert.assertEquals(expected.size(), area.getContentCount());
+        Assert.assertEquals(expected, area.getContentMapSnapshot());
+        List<ImmutableContent> streamedContent = new ArrayList<>();
+        area.contentStream().forEach(streamedContent::add);
+        Assert.assertEquals(expected.size(), streamedContent.size());
+        for (ImmutableContent content : streamedContent)
+        {
+            Assert.assertSame(expected.get(content.getAbsolutePath()), content);
+        }
+    }
 }
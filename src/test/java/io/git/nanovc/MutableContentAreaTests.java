@@ -61,6 +61,79 @@ public class MutableContentAreaTests extends NanoVersionControlTestsBase
         Assert.assertNull(nullContent);
     }
 
+    /**
+     * Tests that the index of content by path is kept between calls and notices changes made directly to the content.
+     */
+    @Test
+    public void Content_Index()
+    {
+        // Create the staging area:
+        MutableContentArea stagingArea = new MutableContentArea();
+        MutableContent a = stagingArea.putContent("/a.txt", (byte) 1);
+        stagingArea.addIndexedContent(new MutableContent("/b.txt", (byte) 2));
+
+        // Make sure the index finds the content:
+        java.util.Map<String, MutableContent> index = stagingArea.getContentIndex();
+        Assert.assertEquals(2, index.size());
+        Assert.assertSame(a, index.get("/a.txt"));
 
+        // Make sure indexed content is added to the same index:
+        MutableContent c = new MutableContent("/c.txt", (byte) 3);
+        stagingArea.addIndexedContent(c);
+        Assert.assertSame(c, index.get("/c.txt"));
+        Assert.assertEquals(3, stagingArea.contents.size());
 
+        // Make sure changes made directly to the content are noticed:
+        a.absolutePath = "/moved/a.txt";
+        stagingArea.contents.remove(c);
+        index = stagingArea.getContentIndex();
+        Assert.assertNull(index.get("/a.txt"));
+        Assert.assertSame(a, index.get("/moved/a.txt"));
+        Assert.assertNull(index.get("/c.txt"));
+        Assert.assertEquals(2, index.size());
+    }
+
+    /**
+     * Tests that modifications to the content are noticed after the area is marked as unmodified.
+     */
+    @Test
+    public void Content_Modified_Since_Marked()
+    {
+        // Create the working area:
+        MutableContentArea workingArea = new MutableContentArea();
+        MutableContent a = workingArea.putContent("/a.txt", (byte) 1);
+        MutableContent b = workingArea.putContent("/b.txt", (byte) 2);
+
+        // Make sure an area that was never marked counts as modified:
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.markUnmodified();
+        Assert.assertFalse(workingArea.isModified());
+
+        // Make sure changes through the API are noticed:
+        a.setContent(new byte[] {11});
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.markUnmodified();
+
+        // Make sure changes to the fields are noticed:
+        b.content = new byte[] {12};
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.markUnmodified();
+        b.absolutePath = "/moved/b.txt";
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.markUnmodified();
+
+        // Make sure changes to the bytes are noticed when they are written through the API:
+        workingArea.getContent("/a.txt").getWritableContent()[0] = 21;
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.markUnmodified();
+
+        // Make sure content that is added or removed directly is noticed:
+        workingArea.contents.remove(a);
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.contents.add(0, new MutableContent("/a.txt", (byte) 1));
+        Assert.assertTrue(workingArea.isModified());
+        workingArea.markUnmodified();
+        workingArea.contents = workingArea.getContentListSnapshot();
+        Assert.assertTrue(workingArea.isModified());
+    }
 }
@@ -33,4 +33,38 @@ public class PathBaseTests extends NanoVersionControlTestsBase
         Assert.assertFalse(PathBase.isAbsolute(""));
         Assert.assertFalse(PathBase.isAbsolute(" /"));
     }
+
+    /**
+     * Tests that a specific path which only has the original factory method can still be resolved.
+     */
+    @Test
+    public void testResolveWithOnlyTheOriginalFactoryMethod()
+    {
+        SimplePath path = new SimplePath("/a").resolve("b").resolve("c");
+        Assert.assertEquals("/a/b/c", path.toString());
+        Assert.assertEquals(3, path.getPartCount());
+        Assert.assertEquals("c", path.getPart(2));
+        Assert.assertEquals("/a/b/c/", path.ensureEndsWithDelimiter().toString());
+    }
+
+    /**
+     * A specific path that only implements the original factory method, like subclasses outside of this library.
+     */
+    private static class SimplePath extends PathBase<SimplePath>
+    {
+        /**
+         * Creates the given path.
+         * @param relativeOrAbsolutePath The relative or absolute path.
+         */
+        SimplePath(String relativeOrAbsolutePath)
+        {
+            super(relativeOrAbsolutePath);
+        }
+
+        @Override
+        protected SimplePath createInstance(String relativeOrAbsolutePath)
+        {
+            return new SimplePath(relativeOrAbsolutePath);
+        }
+    }
 }
@@ -3,6 +3,9 @@ package io.git.nanovc;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Tests for the plumbing commands for the Nano Version Control framework.
  */
@@ -45,6 +48,48 @@ public class PlumbingCommandsTests extends NanoVersionControlTestsBase
         Assert.assertSame(helloHashV1, helloBlobV1.hash); // We don't expect the hash to have been updated.
     }
 
+    /**
+     * Tests writing a batch of objects to the database in one go.
+     */
+    @Test
+    public void HashObjectsWriteBatch()
+    {
+        // Create a new repo:
+        RepoHandler repoManager = NanoVersionControl.newHandler();
+
+        // Initialise the repository:
+        Repo repo = repoManager.init();
+
+        // Get access to its plumbing commands:
+        PlumbingCommands plumbingCommands = repoManager.asPlumbingCommands();
+
+        // Create a batch that is big enough to be hashed in parallel, with every object appearing twice:
+        List<Blob> blobs = new ArrayList<>();
+        for (int i = 0; i < RepoEngine.PARALLEL_HASHING_THRESHOLD; i++)
+        {
+            blobs.add(new Blob(bytes("Content " + i)));
+            blobs.add(new Blob(bytes("Content " + i)));
+        }
+
+        // Write the batch:
+        List<Hash> hashes = plumbingCommands.hash_objects_write(blobs);
+
+        // Make sure that we got a hash for each object in the order of the batch:
+        Assert.assertEquals(blobs.size(), hashes.size());
+        for (int i = 0; i < blobs.size(); i++)
+        {
+            Blob blob = blobs.get(i);
+            Assert.assertSame(blob.hash, hashes.get(i));
+
+            // Make sure the hash matches what we get when hashing a single object:
+            Assert.assertEquals(plumbingCommands.hash_object(blob), blob.hash);
+        }
+
+        // Make sure that the duplicates were only stored once, keeping the first instance:
+        Assert.assertEquals(RepoEngine.PARALLEL_HASHING_THRESHOLD, repo.database.objects.map.size());
+        Assert.assertSame(blobs.get(0), plumbingCommands.cat_file(blobs.get(1).hash));
+    }
+
 
 
 }
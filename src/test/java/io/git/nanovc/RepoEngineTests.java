@@ -1,13 +1,29 @@
 package io.git.nanovc;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for the Nano Version Control repository engine.
  */
 public class RepoEngineTests extends NanoVersionControlTestsBase
 {
+    /**
+     * A temporary folder for files that the tests create.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     /**
      * Tests the ability to stage content directly without using the working area.
@@ -30,6 +46,1041 @@ public class RepoEngineTests extends NanoVersionControlTestsBase
         Assert.assertArrayEquals(new byte[] {123}, repo.stagingArea.getContent("/ahdd").content);
     }
 
+    /**
+     * Tests that an existing repo can be rewritten in the compact tree format
+     * and that the references follow the rewritten commits.
+     */
+    @Test
+    public void UpgradeRepositoryFormat()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content in the original format:
+        manager.stage("/folder/a.txt", (byte) 1);
+        manager.stage("/b.txt", (byte) 2);
+        Commit commit1 = manager.commitAll("First", false);
+        manager.stage("/folder/a.txt", (byte) 3);
+        Commit commit2 = manager.commitAll("Second", false);
+        manager.update_ref_in_tags("v1", commit1.hash.value);
+
+        // Rewrite the repo in the compact format:
+        Map<String, String> rewrittenHashValues = manager.upgrade_repository_format(Config.FORMAT_VERSION_COMPACT_TREES);
+        Assert.assertEquals(Config.FORMAT_VERSION_COMPACT_TREES, repo.database.config.repositoryFormatVersion);
+
+        // Make sure the old commits were replaced:
+        Assert.assertTrue(rewrittenHashValues.containsKey(commit1.hash.value));
+        Assert.assertTrue(rewrittenHashValues.containsKey(commit2.hash.value));
+        Assert.assertNull(manager.cat_file(commit2.hash.value));
+
+        // Make sure the branch and tag follow the rewritten commits:
+        Commit newCommit2 = manager.resolveCommit("master");
+        Assert.assertEquals(rewrittenHashValues.get(commit2.hash.value), newCommit2.hash.value);
+        Assert.assertEquals(rewrittenHashValues.get(commit1.hash.value), repo.database.refs.tags.getReference("v1").hash.value);
+
+        // Make sure the history is intact:
+        Assert.assertArrayEquals(new String[] {rewrittenHashValues.get(commit1.hash.value)}, newCommit2.parentCommitHashValues);
+
+        // Make sure every tree is now in the compact format:
+        repo.database.objects.map.values().stream()
+                .filter(repoObject -> repoObject instanceof Tree)
+                .forEach(repoObject -> Assert.assertTrue(((Tree) repoObject).isCompactFormat()));
+
+        // Make sure the content can still be checked out:
+        manager.checkout(rewrittenHashValues.get(commit1.hash.value));
+        Assert.assertArrayEquals(new byte[] {1}, repo.committedArea.getContent("/folder/a.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {2}, repo.committedArea.getContent("/b.txt").getCloneOfContentAsByteArray());
+
+        // Rewrite the repo with compact commits too:
+        manager.upgrade_repository_format(Config.FORMAT_VERSION_COMPACT_COMMITS);
+        Commit compactCommit2 = manager.resolveCommit("master");
+        Assert.assertTrue(compactCommit2.isCompactFormat());
+        Assert.assertEquals(commit2.getMessage(), compactCommit2.getMessage());
+        Assert.assertEquals(commit2.getCommitterTimeStamp(), compactCommit2.getCommitterTimeStamp());
+
+        // Make sure the log still walks the whole history:
+        Log log = manager.log("master");
+        Assert.assertEquals(2, log.size());
+        Assert.assertEquals("Second", log.get(0).message);
+        Assert.assertEquals("First", log.get(1).message);
+
+        // Rewrite the repo with lazy commits:
+        Map<String, String> lazyHashValues = manager.upgrade_repository_format(Config.FORMAT_VERSION_LAZY_COMMITS);
+        Assert.assertTrue(lazyHashValues.containsKey(compactCommit2.hash.value));
+        Commit lazyCommit2 = manager.resolveCommit("master");
+        Assert.assertEquals(Config.FORMAT_VERSION_LAZY_COMMITS, lazyCommit2.formatVersion);
+        Assert.assertEquals(compactCommit2.getByteSize() + 4, lazyCommit2.getByteSize());
+        Assert.assertEquals(commit2.getMessage(), lazyCommit2.getMessage());
+        Assert.assertEquals(2, manager.log("master").size());
+    }
+
+    /**
+     * Tests that a long history can be walked without running out of stack.
+     */
+    @Test
+    public void LongHistoryRevList()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        manager.init();
+
+        // Create a long chain of compact commits:
+        int commitCount = 50_000;
+        ZonedDateTime timeStamp = ZonedDateTime.of(2017,4,29, 8,0,0, 0, ZoneId.of("Africa/Johannesburg"));
+        String parentHashValue = null;
+        for (int i = 0; i < commitCount; i++)
+        {
+            // Create the commit:
+            Commit commit = new Commit("Luke", timeStamp, "Luke", timeStamp, "1111111111222222222233333333334444444444", "Commit " + i);
+            if (parentHashValue != null) commit.parentCommitHashValues = new String[] {parentHashValue};
+            commit.formatVersion = Config.FORMAT_VERSION_LAZY_COMMITS;
+
+            // Write the serialized commit so that it is read back in the same way as a loaded commit:
+            parentHashValue = manager.hash_object_write(ObjectType.COMMIT, commit.getByteArray()).value;
+        }
+
+        // Walk the history:
+        List<Commit> commits = manager.rev_list(parentHashValue);
+        Assert.assertEquals(commitCount, commits.size());
+
+        // Make sure the walk only decoded what it needed:
+        Assert.assertNull(commits.get(0).message);
+        Assert.assertEquals("Commit " + (commitCount - 1), commits.get(0).getMessage());
+        Assert.assertEquals("Commit 0", commits.get(commitCount - 1).getMessage());
+    }
+
+    /**
+     * Tests that the staging area can be saved to an index file and loaded again
+     * without needing to write any of the trees again.
+     */
+    @Test
+    public void SaveAndLoadStagingIndex() throws IOException
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+
+        // Stage some content:
+        manager.stage("/folder/a.txt", (byte) 1);
+        manager.stage("/folder/sub/b.txt", (byte) 2, (byte) 3);
+        manager.stage("/c.txt", (byte) 4);
+
+        // Save the staging area:
+        java.nio.file.Path indexFile = this.temporaryFolder.newFile("index").toPath();
+        Tree rootTree = manager.write_index(indexFile);
+
+        // Load the index into a new handler that shares the object database:
+        RepoHandler newManager = NanoVersionControl.newHandler();
+        Repo newRepo = newManager.init();
+        newRepo.database = repo.database;
+        List<MutableContent> contents = newManager.read_index(indexFile);
+
+        // Make sure the content was restored in path order:
+        Assert.assertEquals(3, contents.size());
+        Assert.assertEquals("/c.txt", contents.get(0).getAbsolutePath());
+        Assert.assertEquals("/folder/a.txt", contents.get(1).getAbsolutePath());
+        Assert.assertTrue(newRepo.stagingArea.contents.stream().noneMatch(ContentBase::isContentLoaded));
+        Assert.assertArrayEquals(new byte[] {2, 3}, newRepo.stagingArea.getContent("/folder/sub/b.txt").getContent());
+
+        // Make sure the cached trees were restored so that nothing needs to be written again:
+        newRepo.stagingArea.treeCache.update(newRepo.stagingArea.contents);
+        Assert.assertTrue(newRepo.stagingArea.treeCache.getDirtyFolders().isEmpty());
+        Assert.assertEquals(rootTree.hash, newManager.write_tree().hash);
+
+        // Make sure changes after loading are still picked up:
+        newManager.stage("/folder/sub/b.txt", (byte) 5);
+        Assert.assertNotEquals(rootTree.hash, newManager.write_tree().hash);
+    }
+
+    /**
+     * Tests that saving the staging index doesn't load lazy content just to get its size.
+     */
+    @Test
+    public void SaveStagingIndexKeepsContentLazy() throws IOException
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        manager.putWorkingAreaContent("/folder/a.txt", (byte) 1, (byte) 2, (byte) 3);
+        manager.putWorkingAreaContent("/b.txt", (byte) 4);
+        manager.addAll(true);
+        Commit commit = manager.commitAll("First", true);
+
+        // Check out the commit lazily from scratch:
+        manager.clearAreas();
+        manager.checkout(commit.hash.value, 0, true);
+        Assert.assertTrue(repo.stagingArea.contents.stream().noneMatch(ContentBase::isContentLoaded));
+
+        // Save the staging area:
+        java.nio.file.Path indexFile = this.temporaryFolder.newFile("index").toPath();
+        manager.write_index(indexFile);
+
+        // Make sure the content is still lazy:
+        Assert.assertTrue(repo.stagingArea.contents.stream().noneMatch(ContentBase::isContentLoaded));
+
+        // Make sure the index has the size of the blob:
+        RepoHandler newManager = NanoVersionControl.newHandler();
+        Repo newRepo = newManager.init();
+        newRepo.database = repo.database;
+        newManager.read_index(indexFile);
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, newRepo.stagingArea.getContent("/folder/a.txt").getContent());
+        Assert.assertArrayEquals(new byte[] {4}, newRepo.stagingArea.getContent("/b.txt").getContent());
+
+        // Make sure modifying the loaded content doesn't affect the blob (copy on write):
+        newRepo.stagingArea.getContent("/b.txt").getWritableContent()[0] = 9;
+        newManager.clearAreas();
+        newManager.read_index(indexFile);
+        Assert.assertArrayEquals(new byte[] {4}, newRepo.stagingArea.getContent("/b.txt").getContent());
+    }
+
+    /**
+     * Tests that loading a staging index whose blobs are not in the object database
+     * fails without changing the staging area.
+     */
+    @Test
+    public void LoadStagingIndexWithMissingBlobs() throws IOException
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+        manager.init();
+
+        // Save some staged content:
+        manager.stage("/a.txt", (byte) 1);
+        manager.stage("/b.txt", (byte) 2);
+        java.nio.file.Path indexFile = this.temporaryFolder.newFile("index").toPath();
+        manager.write_index(indexFile);
+
+        // Load the index into a new repo that doesn't have the objects (like after a restart):
+        RepoHandler newManager = NanoVersionControl.newHandler();
+        Repo newRepo = newManager.init();
+        newManager.stage("/existing.txt", (byte) 3);
+        try
+        {
+            newManager.read_index(indexFile);
+            Assert.fail("Loading the index should fail when the blobs are missing.");
+        }
+        catch (NanoRuntimeException ex)
+        {
+            // This is expected.
+        }
+
+        // Make sure the staging area was left alone:
+        Assert.assertEquals(1, newRepo.stagingArea.contents.size());
+        Assert.assertArrayEquals(new byte[] {3}, newRepo.stagingArea.getContent("/existing.txt").content);
+    }
+
+    /**
+     * Tests that changes to the bytes inside a content array are picked up by the cached trees.
+     */
+    @Test
+    public void WriteTreeDetectsInPlaceEdits()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Stage some content and write the tree:
+        manager.stage("/a.txt", (byte) 1, (byte) 2, (byte) 3);
+        Tree firstTree = manager.write_tree();
+
+        // Edit the staged bytes in place:
+        repo.stagingArea.getContent("/a.txt").getWritableContent()[0] = 9;
+        Tree secondTree = manager.write_tree();
+
+        // Make sure the tree matches a fresh write of the same content:
+        RepoHandler freshManager = NanoVersionControl.newHandler();
+        freshManager.init();
+        freshManager.stage("/a.txt", (byte) 9, (byte) 2, (byte) 3);
+        Assert.assertNotEquals(firstTree.hash, secondTree.hash);
+        Assert.assertEquals(freshManager.write_tree().hash, secondTree.hash);
+
+        // Edit the bytes of the working area in place and mark them as modified:
+        MutableContent content = manager.putWorkingAreaContent("/b.txt", (byte) 4);
+        manager.addAll(false);
+        Commit firstCommit = manager.commitAll("First", false);
+        content.content[0] = 5;
+        content.markModified();
+        manager.addAll(false);
+        Commit secondCommit = manager.commitAll("Second", false);
+
+        // Make sure the commit picked up the edit:
+        Assert.assertNotEquals(firstCommit.treeHashValue, secondCommit.treeHashValue);
+        Assert.assertArrayEquals(new byte[] {5}, repo.stagingArea.getContent("/b.txt").content);
+    }
+
+    /**
+     * Tests that adding all the content only copies the content that was modified since it was last added.
+     */
+    @Test
+    public void AddAllOnlyStagesModifiedContent()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+
+        // Add some content:
+        MutableContent workingContentA = manager.putWorkingAreaContent("/a.txt", (byte) 1);
+        MutableContent workingContentB = manager.putWorkingAreaContent("/b.txt", (byte) 2);
+        manager.addAll(true);
+        byte[] stagedBytesA = repo.stagingArea.getContent("/a.txt").content;
+        byte[] stagedBytesB = repo.stagingArea.getContent("/b.txt").content;
+
+        // Adding again without any changes must not copy anything:
+        manager.addAll(true);
+        Assert.assertSame(stagedBytesA, repo.stagingArea.getContent("/a.txt").content);
+        Assert.assertSame(stagedBytesB, repo.stagingArea.getContent("/b.txt").content);
+
+        // Modify content through the API and directly:
+        long modificationCount = workingContentA.getModificationCount();
+        manager.putWorkingAreaContent("/a.txt", (byte) 3);
+        Assert.assertTrue(workingContentA.getModificationCount() > modificationCount);
+        workingContentB.content = new byte[] {4};
+        manager.addAll(true);
+        Assert.assertArrayEquals(new byte[] {3}, repo.stagingArea.getContent("/a.txt").content);
+        Assert.assertArrayEquals(new byte[] {4}, repo.stagingArea.getContent("/b.txt").content);
+
+        // Modifying the bytes in place is only picked up once it is marked:
+        workingContentB.content[0] = 5;
+        manager.addAll(true);
+        Assert.assertArrayEquals(new byte[] {4}, repo.stagingArea.getContent("/b.txt").content);
+        workingContentB.markModified();
+        manager.addAll(true);
+        Assert.assertArrayEquals(new byte[] {5}, repo.stagingArea.getContent("/b.txt").content);
+
+        // Modifying the staged snapshot in place doesn't affect the working area:
+        repo.stagingArea.getContent("/b.txt").getWritableContent()[0] = 6;
+        Assert.assertArrayEquals(new byte[] {5}, workingContentB.content);
+        manager.addAll(true);
+        Assert.assertArrayEquals(new byte[] {5}, repo.stagingArea.getContent("/b.txt").content);
+
+        // Make sure content that was removed from the staging area is added again:
+        repo.stagingArea.removeContent("/a.txt");
+        manager.addAll(true);
+        Assert.assertArrayEquals(new byte[] {3}, repo.stagingArea.getContent("/a.txt").content);
+        Assert.assertEquals(2, repo.stagingArea.contents.size());
+    }
+
+    /**
+     * Tests that writing directly to an array that we put into the working area doesn't affect the snapshots.
+     */
+    @Test
+    public void SnapshotsAreNotAffectedByDirectWrites()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit content from an array that we are in control of:
+        byte[] bytes = new byte[] {1, 2, 3};
+        MutableContent workingContent = manager.putWorkingAreaContent("/a.txt", bytes);
+        manager.addAll(true);
+        manager.commitAll("First", true);
+
+        // Write to our array directly:
+        bytes[0] = 9;
+
+        // Make sure the snapshots kept their own bytes:
+        Assert.assertSame(bytes, workingContent.content);
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, repo.stagingArea.getContent("/a.txt").content);
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, repo.committedArea.getContent("/a.txt").getContent());
+
+        // Make sure the committed snapshot shares the staged snapshot until the staged one is modified (copy on write):
+        Assert.assertSame(repo.stagingArea.getContent("/a.txt").content, repo.committedArea.getContent("/a.txt").getContent());
+        repo.stagingArea.getContent("/a.txt").getWritableContent()[0] = 7;
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, repo.committedArea.getContent("/a.txt").getContent());
+    }
+
+    /**
+     * Tests that modifying content that was read out of the object database doesn't affect the blobs.
+     */
+    @Test
+    public void ContentFromBlobsIsCopiedOnWrite()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+
+        // Write a blob:
+        Hash blobHash = manager.hash_object_write_string("abc");
+        Blob blob = (Blob) manager.cat_file(blobHash.value);
+
+        // Stage the blob directly and modify it in place:
+        MutableContent stagedContent = manager.update_index_add_cacheInfo(blobHash.value, "/a.txt");
+        stagedContent.getWritableContent()[0] = 'Z';
+        Assert.assertEquals("abc", new String(blob.content));
+
+        // Read a tree with the blob and modify it in place:
+        manager.update_index_add_cacheInfo(blobHash.value, "/a.txt");
+        Tree tree = manager.write_tree();
+        List<MutableContent> contents = manager.read_tree(tree.hash.value, "/prefix/");
+        contents.get(0).getWritableContent()[0] = 'Z';
+        Assert.assertEquals("abc", new String(blob.content));
+        Assert.assertEquals("Zbc", new String(repo.stagingArea.getContent("/prefix/a.txt").content));
+
+        // Check out content that shares the blob, stage it without a snapshot and modify it in place:
+        manager.setAuthorAndCommitter("Luke");
+        Commit commit = manager.commitAll("First", true);
+        manager.clearAreas();
+        manager.checkout(commit.hash.value);
+        repo.stagingArea.clear();
+        manager.addAll(false);
+        repo.stagingArea.getContent("/a.txt").getWritableContent()[0] = 'Z';
+        Assert.assertEquals("abc", new String(blob.content));
+        repo.stagingArea.clear();
+        manager.update_index_add("/a.txt");
+        repo.stagingArea.getContent("/a.txt").getWritableContent()[0] = 'Z';
+        Assert.assertEquals("abc", new String(blob.content));
+    }
+
+    /**
+     * Tests that writing directly to the working area array after checking out a pattern doesn't affect the committed content.
+     */
+    @Test
+    public void CheckoutPatternCopiesContent()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        manager.putWorkingAreaContent("/a.txt", "hello".getBytes());
+        manager.addAll(true);
+        Commit commit = manager.commitAll("First", true);
+
+        // Check out the content again with a pattern:
+        manager.checkout(commit.hash.value);
+        manager.checkout_pattern(RepoPattern.matching("*.txt"));
+
+        // Write to the working area array directly:
+        repo.workingArea.getContent("/a.txt").content[0] = 'J';
+
+        // Make sure the committed content and the blob were not affected:
+        Assert.assertEquals("hello", new String(repo.committedArea.getContent("/a.txt").getContent()));
+        manager.clearAreas();
+        manager.checkout(commit.hash.value);
+        Assert.assertEquals("hello", new String(repo.workingArea.getContent("/a.txt").content));
+    }
+
+    /**
+     * Tests that the status lists the differences between the working and staging areas and the committed area.
+     */
+    @Test
+    public void StatusOfAreas()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content and check it out again so that the committed area is populated:
+        for (int i = 0; i < 100; i++)
+        {
+            manager.putWorkingAreaContent("/folder/" + i + ".txt", (byte) i);
+        }
+        manager.addAll(false);
+        Commit commit = manager.commitAll("First", false);
+        manager.checkout(commit.hash.value);
+
+        // Make sure nothing is listed when nothing has changed:
+        Status status = manager.status();
+        Assert.assertEquals(0, status.workingAreaEntries.size());
+        Assert.assertEquals(0, status.stagingAreaEntries.size());
+
+        // Change some content:
+        manager.putWorkingAreaContent("/folder/1.txt", (byte) 101);
+        manager.putWorkingAreaContent("/folder/2.txt", (byte) 2);
+        manager.putWorkingAreaContent("/new.txt", (byte) 3);
+        repo.workingArea.removeContent("/folder/3.txt");
+        manager.stage("/folder/4.txt", (byte) 104);
+
+        // Make sure the changes are listed in path order:
+        status = manager.status();
+        Assert.assertEquals(3, status.workingAreaEntries.size());
+        Assert.assertEquals("/folder/1.txt", status.workingAreaEntries.get(0).absolutePath);
+        Assert.assertEquals(ContentState.MODIFIED, status.workingAreaEntries.get(0).state);
+        Assert.assertEquals("/folder/3.txt", status.workingAreaEntries.get(1).absolutePath);
+        Assert.assertEquals(ContentState.DELETED, status.workingAreaEntries.get(1).state);
+        Assert.assertEquals("/new.txt", status.workingAreaEntries.get(2).absolutePath);
+        Assert.assertEquals(ContentState.ADDED, status.workingAreaEntries.get(2).state);
+        Assert.assertEquals(1, status.stagingAreaEntries.size());
+        Assert.assertEquals("/folder/4.txt", status.stagingAreaEntries.get(0).absolutePath);
+        Assert.assertEquals(ContentState.MODIFIED, status.stagingAreaEntries.get(0).state);
+    }
+
+    /**
+     * Tests that the status of many unchanged files is empty when the content is hashed in parallel.
+     */
+    @Test
+    public void StatusHashesInParallel()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit enough content to be compared in parallel:
+        for (int i = 0; i < 5_000; i++)
+        {
+            repo.workingArea.contents.add(new MutableContent("/folder/" + i + ".txt", ("Content " + i).getBytes()));
+        }
+        manager.addAll(true);
+        manager.commitAll("First", false);
+
+        // Replace the content with copies of the same bytes so that each one needs to be hashed again:
+        for (MutableContent content : repo.workingArea.contents)
+        {
+            content.setContent(content.getCloneOfContentAsByteArray());
+        }
+        for (MutableContent content : repo.stagingArea.contents)
+        {
+            content.setContent(content.getCloneOfContentAsByteArray());
+        }
+
+        // Make sure nothing is listed because nothing has changed:
+        Status status = manager.status();
+        Assert.assertEquals(0, status.workingAreaEntries.size());
+        Assert.assertEquals(0, status.stagingAreaEntries.size());
+    }
+
+    /**
+     * Tests that a new commit derives the committed area from the previous one so that the snapshots share the content that didn't change.
+     */
+    @Test
+    public void CommittedSnapshotsShareUnchangedContent()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        for (int i = 0; i < 100; i++)
+        {
+            manager.putWorkingAreaContent("/folder/" + i + ".txt", (byte) i);
+        }
+        manager.addAll(true);
+        manager.commitAll("First", true);
+        ImmutableContentArea firstSnapshot = repo.committedArea.snapshot();
+
+        // Change some content and commit again:
+        repo.workingArea.getContent("/folder/1.txt").getWritableContent()[0] = 101;
+        repo.workingArea.removeContent("/folder/2.txt");
+        repo.stagingArea.removeContent("/folder/2.txt");
+        manager.addAll(true);
+        manager.commitAll("Second", true);
+
+        // Make sure the first snapshot is untouched:
+        Assert.assertEquals(100, firstSnapshot.getContentCount());
+        Assert.assertArrayEquals(new byte[] {1}, firstSnapshot.getContent("/folder/1.txt").getCloneOfContentAsByteArray());
+
+        // Make sure the new snapshot shares the content that didn't change:
+        Assert.assertEquals(99, repo.committedArea.getContentCount());
+        Assert.assertSame(firstSnapshot.getContent("/folder/50.txt"), repo.committedArea.getContent("/folder/50.txt"));
+        Assert.assertArrayEquals(new byte[] {101}, repo.committedArea.getContent("/folder/1.txt").getCloneOfContentAsByteArray());
+
+        // Make sure only the changes are reported between the snapshots:
+        List<String> changedPaths = new ArrayList<>();
+        firstSnapshot.diff(repo.committedArea, (before, after) -> changedPaths.add(before.getAbsolutePath()));
+        Collections.sort(changedPaths);
+        Assert.assertEquals(Arrays.asList("/folder/1.txt", "/folder/2.txt"), changedPaths);
+    }
+
+    /**
+     * Tests that checking out another commit only applies the differences to the content areas.
+     */
+    @Test
+    public void CheckoutOnlyAppliesDifferences()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        for (int i = 0; i < 1000; i++)
+        {
+            manager.putWorkingAreaContent("/folder" + (i % 10) + "/" + i + ".txt", (byte) i);
+        }
+        manager.putWorkingAreaContent("/becomesFile/a.txt", (byte) 1);
+        manager.addAll(true);
+        Commit commit1 = manager.commitAll("First", true);
+
+        // Change some content and commit again:
+        manager.putWorkingAreaContent("/folder1/1.txt", (byte) 101);
+        manager.putWorkingAreaContent("/folder1/new.txt", (byte) 102);
+        repo.workingArea.removeContent("/folder2/2.txt");
+        repo.workingArea.removeContent("/becomesFile/a.txt");
+        manager.putWorkingAreaContent("/becomesFile", (byte) 103);
+        repo.stagingArea.clear();
+        manager.addAll(true);
+        Commit commit2 = manager.commitAll("Second", true);
+
+        // Keep track of content that doesn't change between the commits:
+        MutableContent unchangedContent = repo.workingArea.getContent("/folder5/5.txt");
+        ImmutableContent unchangedCommittedContent = repo.committedArea.getContent("/folder5/5.txt");
+
+        // Check out the first commit:
+        manager.checkout(commit1.hash.value);
+        Assert.assertEquals(commit1.treeHashValue, repo.committedArea.getTreeHashValue());
+        Assert.assertEquals(1001, repo.committedArea.getContentCount());
+        Assert.assertEquals(1001, repo.stagingArea.contents.size());
+        Assert.assertEquals(1001, repo.workingArea.contents.size());
+        Assert.assertArrayEquals(new byte[] {1}, repo.workingArea.getContent("/folder1/1.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {2}, repo.stagingArea.getContent("/folder2/2.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {1}, repo.committedArea.getContent("/becomesFile/a.txt").getCloneOfContentAsByteArray());
+        Assert.assertNull(repo.workingArea.getContent("/folder1/new.txt"));
+        Assert.assertNull(repo.workingArea.getContent("/becomesFile"));
+
+        // Make sure the content that didn't change was left alone:
+        Assert.assertSame(unchangedContent, repo.workingArea.getContent("/folder5/5.txt"));
+        Assert.assertSame(unchangedCommittedContent, repo.committedArea.getContent("/folder5/5.txt"));
+
+        // Make sure nothing is listed in the status:
+        Status status = manager.status();
+        Assert.assertEquals(0, status.workingAreaEntries.size());
+        Assert.assertEquals(0, status.stagingAreaEntries.size());
+
+        // Modify content that doesn't change between the commits and switch back to the second commit:
+        manager.putWorkingAreaContent("/folder5/5.txt", (byte) 105);
+        manager.checkout(commit2.hash.value);
+        Assert.assertEquals(1001, repo.committedArea.getContentCount());
+        Assert.assertArrayEquals(new byte[] {101}, repo.workingArea.getContent("/folder1/1.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {103}, repo.committedArea.getContent("/becomesFile").getCloneOfContentAsByteArray());
+        Assert.assertNull(repo.stagingArea.getContent("/folder2/2.txt"));
+        Assert.assertNull(repo.workingArea.getContent("/becomesFile/a.txt"));
+
+        // Make sure the local modification was discarded, just like when the whole tree is checked out:
+        Assert.assertArrayEquals(new byte[] {5}, repo.workingArea.getContent("/folder5/5.txt").getCloneOfContentAsByteArray());
+        status = manager.status();
+        Assert.assertEquals(0, status.workingAreaEntries.size());
+        Assert.assertEquals(0, status.stagingAreaEntries.size());
+    }
+
+    /**
+     * Tests that checking out another commit only looks for local modifications if the areas were modified since the last checkout.
+     */
+    @Test
+    public void CheckoutOnlyFindsLocalModificationsWhenModified()
+    {
+        // Create an engine that counts how many times the status is worked out:
+        int[] statusCount = new int[1];
+        RepoEngine engine = new RepoEngine()
+        {
+            @Override
+            public Status status(Repo repo)
+            {
+                statusCount[0]++;
+                return super.status(repo);
+            }
+        };
+        RepoHandler manager = new RepoHandler(new Repo(), engine);
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content twice:
+        manager.putWorkingAreaContent("/a.txt", (byte) 1);
+        manager.putWorkingAreaContent("/b.txt", (byte) 2);
+        manager.addAll(true);
+        Commit commit1 = manager.commitAll("First", true);
+        manager.putWorkingAreaContent("/b.txt", (byte) 3);
+        manager.addAll(true);
+        Commit commit2 = manager.commitAll("Second", true);
+
+        // Switch between the commits without modifying anything:
+        manager.checkout(commit1.hash.value);
+        statusCount[0] = 0;
+        manager.checkout(commit2.hash.value);
+        manager.checkout(commit1.hash.value);
+        Assert.assertEquals(0, statusCount[0]);
+
+        // Modify the working area and make sure the modification is still discarded:
+        repo.workingArea.getContent("/a.txt").getWritableContent()[0] = 11;
+        manager.checkout(commit2.hash.value);
+        Assert.assertEquals(1, statusCount[0]);
+        Assert.assertArrayEquals(new byte[] {1}, repo.workingArea.getContent("/a.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {3}, repo.workingArea.getContent("/b.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {3}, repo.stagingArea.getContent("/b.txt").getCloneOfContentAsByteArray());
+    }
+
+    /**
+     * Tests that checking out a commit discards local modifications in the same way
+     * whether or not we know which tree is checked out already.
+     */
+    @Test
+    public void CheckoutDiscardsLocalModifications()
+    {
+        for (boolean isTreeKnown : new boolean[] {true, false})
+        {
+            // Create the engine:
+            RepoHandler manager = NanoVersionControl.newHandler();
+
+            // Create a new repository:
+            Repo repo = manager.init();
+            manager.setAuthorAndCommitter("Luke");
+
+            // Commit some content twice:
+            manager.putWorkingAreaContent("/unchanged.txt", (byte) 1);
+            manager.putWorkingAreaContent("/changed.txt", (byte) 2);
+            manager.addAll(true);
+            Commit commit1 = manager.commitAll("First", true);
+            manager.putWorkingAreaContent("/changed.txt", (byte) 3);
+            manager.addAll(true);
+            manager.commitAll("Second", true);
+            manager.checkout(commit1.hash.value);
+            manager.checkout("master");
+
+            // Make local modifications to paths that change between the commits and paths that don't:
+            manager.putWorkingAreaContent("/unchanged.txt", (byte) 11);
+            manager.putWorkingAreaContent("/changed.txt", (byte) 13);
+            manager.stage("/unchanged.txt", (byte) 21);
+            manager.putWorkingAreaContent("/untracked.txt", (byte) 4);
+            manager.stage("/staged.txt", (byte) 5);
+
+            // Forget which tree is checked out if needed:
+            if (!isTreeKnown) repo.committedArea.setTreeHashValue(null);
+            else Assert.assertNotNull(repo.committedArea.getTreeHashValue());
+
+            // Check out the first commit:
+            manager.checkout(commit1.hash.value);
+
+            // Make sure the areas match the first commit exactly:
+            String message = "Tree known: " + isTreeKnown;
+            Assert.assertArrayEquals(message, new byte[] {1}, repo.workingArea.getContent("/unchanged.txt").getCloneOfContentAsByteArray());
+            Assert.assertArrayEquals(message, new byte[] {2}, repo.workingArea.getContent("/changed.txt").getCloneOfContentAsByteArray());
+            Assert.assertArrayEquals(message, new byte[] {1}, repo.stagingArea.getContent("/unchanged.txt").getCloneOfContentAsByteArray());
+            Assert.assertArrayEquals(message, new byte[] {2}, repo.stagingArea.getContent("/changed.txt").getCloneOfContentAsByteArray());
+            Assert.assertNull(message, repo.workingArea.getContent("/untracked.txt"));
+            Assert.assertNull(message, repo.stagingArea.getContent("/staged.txt"));
+            Assert.assertEquals(message, 2, repo.workingArea.contents.size());
+            Assert.assertEquals(message, 2, repo.stagingArea.contents.size());
+            Status status = manager.status();
+            Assert.assertEquals(message, 0, status.workingAreaEntries.size());
+            Assert.assertEquals(message, 0, status.stagingAreaEntries.size());
+        }
+    }
+
+    /**
+     * Tests that lazily checked out content is only loaded from the object store when it is accessed.
+     */
+    @Test
+    public void LazyCheckout()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
 
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
 
+        // Commit some content:
+        for (int i = 0; i < 500; i++)
+        {
+            manager.putWorkingAreaContent("/folder" + (i % 10) + "/" + i + ".txt", (byte) i);
+        }
+        manager.addAll(true);
+        Commit commit1 = manager.commitAll("First", true);
+
+        // Check out the commit lazily from scratch:
+        manager.clearAreas();
+        manager.checkout(commit1.hash.value, 0, true);
+        Assert.assertEquals(500, repo.committedArea.getContentCount());
+        Assert.assertEquals(500, repo.stagingArea.contents.size());
+        Assert.assertEquals(500, repo.workingArea.contents.size());
+        Assert.assertTrue(repo.workingArea.contents.stream().noneMatch(ContentBase::isContentLoaded));
+
+        // Make sure the status doesn't need to load the content:
+        Status status = manager.status();
+        Assert.assertEquals(0, status.workingAreaEntries.size());
+        Assert.assertEquals(0, status.stagingAreaEntries.size());
+        Assert.assertTrue(repo.workingArea.contents.stream().noneMatch(ContentBase::isContentLoaded));
+        Assert.assertTrue(repo.committedArea.contentStream().noneMatch(ContentBase::isContentLoaded));
+
+        // Read some content:
+        MutableContent content = repo.workingArea.getContent("/folder7/7.txt");
+        Assert.assertArrayEquals(new byte[] {7}, content.getCloneOfContentAsByteArray());
+        Assert.assertTrue(content.isContentLoaded());
+        Assert.assertEquals(1, repo.workingArea.contents.stream().filter(ContentBase::isContentLoaded).count());
+
+        // Modify the content in place and commit it:
+        content.getWritableContent()[0] = 107;
+        manager.addAll(true);
+        Commit commit2 = manager.commitAll("Second", true);
+        Assert.assertNotEquals(commit1.treeHashValue, commit2.treeHashValue);
+        Assert.assertEquals(1, repo.workingArea.contents.stream().filter(ContentBase::isContentLoaded).count());
+        Assert.assertEquals(1, repo.stagingArea.contents.stream().filter(ContentBase::isContentLoaded).count());
+
+        // Make sure the blob in the object store was not modified:
+        manager.checkout(commit1.hash.value, 0, true);
+        Assert.assertArrayEquals(new byte[] {7}, repo.committedArea.getContent("/folder7/7.txt").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {7}, repo.workingArea.getContent("/folder7/7.txt").getCloneOfContentAsByteArray());
+
+        // Make sure the lazy content can be committed without loading it:
+        manager.putWorkingAreaContent("/new.txt", (byte) 1);
+        manager.addAll(true);
+        Commit commit3 = manager.commitAll("Third", true);
+        Assert.assertEquals(501, repo.committedArea.getContentCount());
+        // NOTE: Only the content that we read and the new content are loaded.
+        Assert.assertEquals(2, repo.committedArea.contentStream().filter(ContentBase::isContentLoaded).count());
+
+        // Make sure the commit has all the content:
+        manager.clearAreas();
+        manager.checkout(commit3.hash.value);
+        Assert.assertEquals(501, repo.workingArea.contents.size());
+        Assert.assertArrayEquals(new byte[] {8}, repo.workingArea.getContent("/folder8/8.txt").getCloneOfContentAsByteArray());
+    }
+
+    /**
+     * Tests that a sparse checkout only reads the sub trees that can match the patterns.
+     */
+    @Test
+    public void SparseCheckout()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        for (int i = 0; i < 100; i++)
+        {
+            manager.putWorkingAreaContent("/src/" + i + ".java", (byte) i);
+        }
+        manager.putWorkingAreaContent("/configs/a.json", (byte) 1);
+        manager.putWorkingAreaContent("/configs/deep/b.json", (byte) 2);
+        manager.putWorkingAreaContent("/configs/readme.txt", (byte) 3);
+        manager.putWorkingAreaContent("/root.json", (byte) 4);
+        manager.addAll(false);
+        Commit commit = manager.commitAll("First", false);
+
+        // Remove the tree for the /src folder from the object store so that reading it would fail:
+        Tree rootTree = (Tree) manager.cat_file(commit.treeHashValue);
+        String srcTreeHashValue = rootTree.entries.stream().filter(entry -> entry.name.equals("src")).findFirst().get().hashValue;
+        repo.database.objects.map.remove(srcTreeHashValue);
+        repo.database.objects.index.get(srcTreeHashValue.substring(0, 2)).remove(srcTreeHashValue.substring(2));
+
+        // Check out only the configs:
+        manager.clearAreas();
+        manager.checkout_sparse(commit.hash.value, RepoPattern.matching("/configs/**.json"));
+
+        // Make sure only the matching content was checked out:
+        Assert.assertEquals(2, repo.workingArea.contents.size());
+        Assert.assertEquals(2, repo.stagingArea.contents.size());
+        Assert.assertArrayEquals(new byte[] {1}, repo.workingArea.getContent("/configs/a.json").getCloneOfContentAsByteArray());
+        Assert.assertArrayEquals(new byte[] {2}, repo.stagingArea.getContent("/configs/deep/b.json").getCloneOfContentAsByteArray());
+        Assert.assertFalse(repo.committedArea.hasContent());
+
+        // Check out more content with several patterns:
+        manager.checkout_sparse(commit.hash.value, RepoPattern.matching("/*.json"), RepoPattern.matching("/configs/*.txt"));
+        Assert.assertEquals(4, repo.workingArea.contents.size());
+        Assert.assertArrayEquals(new byte[] {4}, repo.workingArea.getContent("/root.json").getCloneOfContentAsByteArray());
+
+        // Make sure a full checkout does need the missing tree:
+        try
+        {
+            manager.checkout_sparse(commit.hash.value, RepoPattern.matching("**"));
+            Assert.fail("Checking out the /src folder should have failed because its tree is missing.");
+        }
+        catch (NanoRuntimeException ex)
+        {
+            // We expect an exception telling us that the tree is missing.
+        }
+    }
+
+    @Test
+    public void ResolvePathsAtCommit()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        for (int i = 0; i < 100; i++)
+        {
+            manager.putWorkingAreaContent("/src/" + i + ".java", (byte) i);
+        }
+        manager.putWorkingAreaContent("/configs/a.json", (byte) 1);
+        manager.putWorkingAreaContent("/configs/deep/b.json", (byte) 2);
+        manager.putWorkingAreaContent("/root.json", (byte) 4);
+        manager.addAll(false);
+        Commit commit = manager.commitAll("First", false);
+
+        // Remove the tree for the /src folder from the object store so that reading it would fail:
+        Tree rootTree = (Tree) manager.cat_file(commit.treeHashValue);
+        String srcTreeHashValue = rootTree.findEntry("src").hashValue;
+        repo.database.objects.map.remove(srcTreeHashValue);
+        repo.database.objects.index.get(srcTreeHashValue.substring(0, 2)).remove(srcTreeHashValue.substring(2));
+
+        // Resolve a single blob:
+        TreePathEntry entry = manager.resolve_path("HEAD", RepoPath.at("/configs/deep/b.json"));
+        Assert.assertEquals("/configs/deep/b.json", entry.absolutePath);
+        Assert.assertEquals(ObjectType.BLOB, entry.entry.objectType);
+        Assert.assertArrayEquals(new byte[] {2}, entry.blob.content);
+
+        // Resolve the root tree:
+        entry = manager.resolve_path(commit.hash.value, RepoPath.atRoot());
+        Assert.assertEquals(ObjectType.TREE, entry.entry.objectType);
+        Assert.assertEquals(commit.treeHashValue, entry.entry.hashValue);
+
+        // Resolve many paths in one go:
+        RepoPath aPath = RepoPath.at("/configs/a.json");
+        RepoPath deepPath = RepoPath.at("configs/deep");
+        RepoPath rootPath = RepoPath.at("/root.json");
+        RepoPath missingPath = RepoPath.at("/configs/missing.json");
+        RepoPath throughBlobPath = RepoPath.at("/root.json/child");
+        RepoPath srcPath = RepoPath.at("/src");
+        Map<RepoPath, TreePathEntry> entries = manager.resolve_paths("HEAD", Arrays.asList(aPath, deepPath, rootPath, missingPath, throughBlobPath, srcPath));
+        Assert.assertEquals(4, entries.size());
+        Assert.assertArrayEquals(new byte[] {1}, entries.get(aPath).blob.content);
+        Assert.assertEquals(ObjectType.TREE, entries.get(deepPath).entry.objectType);
+        Assert.assertEquals("/configs/deep", entries.get(deepPath).absolutePath);
+        Assert.assertArrayEquals(new byte[] {4}, entries.get(rootPath).blob.content);
+        Assert.assertFalse(entries.containsKey(missingPath));
+        Assert.assertFalse(entries.containsKey(throughBlobPath));
+
+        // Make sure the /src folder resolves to its tree without reading it:
+        Assert.assertEquals(srcTreeHashValue, entries.get(srcPath).entry.hashValue);
+        Assert.assertNull(manager.resolve_path("HEAD", RepoPath.at("/missing")));
+
+        // Make sure that going into the /src folder does need the missing tree:
+        try
+        {
+            manager.resolve_path("HEAD", RepoPath.at("/src/1.java"));
+            Assert.fail("Resolving a path in the /src folder should have failed because its tree is missing.");
+        }
+        catch (NanoRuntimeException ex)
+        {
+            // We expect an exception telling us that the tree is missing.
+        }
+    }
+
+    @Test
+    public void ManifestCacheForHotCommits()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content where the git order of the trees is not the sorted order of the paths:
+        manager.putWorkingAreaContent("/configs/a.json", (byte) 1);
+        manager.putWorkingAreaContent("/configs/deep/b.json", (byte) 2);
+        manager.putWorkingAreaContent("/configs.json", (byte) 3);
+        manager.putWorkingAreaContent("/root.json", (byte) 4);
+        manager.addAll(false);
+        Commit firstCommit = manager.commitAll("First", false);
+
+        // Commit a change:
+        manager.putWorkingAreaContent("/configs/c.json", (byte) 5);
+        manager.addAll(false);
+        Commit secondCommit = manager.commitAll("Second", false);
+
+        // Make sure that the cache is off by default:
+        Manifest manifest = manager.getManifest(firstCommit.hash.value);
+        Assert.assertEquals(4, manifest.size());
+        Assert.assertEquals(0, repo.database.manifests.size());
+
+        // Make sure that the manifest is sorted and can be searched:
+        Assert.assertEquals(Arrays.asList("/configs.json", "/configs/a.json", "/configs/deep/b.json", "/root.json"), manifest.listPaths(RepoPath.atRoot()));
+        Assert.assertEquals(Arrays.asList("/configs/a.json", "/configs/deep/b.json"), manifest.listPaths(RepoPath.at("configs")));
+        Assert.assertEquals(Collections.emptyList(), manifest.listPaths(RepoPath.at("/missing")));
+        Assert.assertEquals(manager.resolve_path(firstCommit.hash.value, RepoPath.at("/configs/deep/b.json")).entry.hashValue, manifest.getBlobHashValue(RepoPath.at("/configs/deep/b.json")));
+        Assert.assertNull(manifest.getBlobHashValue(RepoPath.at("/configs")));
+
+        // Turn the cache on with enough room for one manifest:
+        repo.database.manifests.memoryBudgetInBytes = manifest.getEstimatedSizeInBytes() + 10;
+        Manifest cachedManifest = manager.getManifest(firstCommit.hash.value);
+        Assert.assertSame(cachedManifest, manager.getManifest(firstCommit.hash.value));
+        Assert.assertEquals(1, repo.database.manifests.size());
+
+        // Make sure that paths are resolved from the cached manifest, along with paths that are not blobs:
+        Map<RepoPath, TreePathEntry> entries = manager.resolve_paths(firstCommit.hash.value, Arrays.asList(RepoPath.at("/configs/a.json"), RepoPath.at("/configs"), RepoPath.at("/missing.json")));
+        Assert.assertEquals(2, entries.size());
+        Assert.assertArrayEquals(new byte[] {1}, entries.get(RepoPath.at("/configs/a.json")).blob.content);
+        Assert.assertEquals("a.json", entries.get(RepoPath.at("/configs/a.json")).entry.name);
+        Assert.assertEquals(ObjectType.TREE, entries.get(RepoPath.at("/configs")).entry.objectType);
+
+        // Make sure a manifest that is bigger than the budget is not cached:
+        Assert.assertEquals(Arrays.asList("/configs/a.json", "/configs/c.json", "/configs/deep/b.json"), manager.ls_files("HEAD", RepoPath.at("/configs")));
+        Assert.assertEquals(1, repo.database.manifests.size());
+
+        // Make sure the least recently used manifest is evicted first:
+        repo.database.manifests.memoryBudgetInBytes = 1_000_000;
+        manager.getManifest(firstCommit.hash.value);
+        manager.getManifest(secondCommit.hash.value);
+        Assert.assertEquals(2, repo.database.manifests.size());
+        manager.getManifest(firstCommit.hash.value);
+        repo.database.manifests.evict(cachedManifest.getEstimatedSizeInBytes());
+        Assert.assertEquals(1, repo.database.manifests.size());
+        Assert.assertNotNull(repo.database.manifests.getCachedManifest(firstCommit.treeHashValue));
+        Assert.assertEquals(cachedManifest.getEstimatedSizeInBytes(), repo.database.manifests.getSizeInBytes());
+    }
+
+    @Test
+    public void StatusDetectsRenames()
+    {
+        // Create the engine:
+        RepoHandler manager = NanoVersionControl.newHandler();
+
+        // Create a new repository:
+        Repo repo = manager.init();
+        manager.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        manager.putWorkingAreaContent("/a.txt", "one\ntwo\nthree\nfour\nfive\n".getBytes());
+        manager.putWorkingAreaContent("/b.txt", "1\n2\n3\n".getBytes());
+        manager.addAll(false);
+        manager.commitAll("First", false);
+
+        // Move the content in the working area and edit one of the files:
+        repo.workingArea.removeContent("/a.txt");
+        repo.workingArea.removeContent("/b.txt");
+        manager.putWorkingAreaContent("/folder/a.txt", "one\ntwo\nthree\nfour\nfive\nsix\n".getBytes());
+        manager.putWorkingAreaContent("/folder/b.txt", "1\n2\n3\n".getBytes());
+
+        // Make sure the renames are only found when we ask for them:
+        Assert.assertEquals("[DELETED /a.txt, DELETED /b.txt, ADDED /folder/a.txt, ADDED /folder/b.txt]", manager.status().workingAreaEntries.toString());
+        Status status = manager.status(true);
+        Assert.assertEquals("[RENAMED /a.txt -> /folder/a.txt, RENAMED /b.txt -> /folder/b.txt]", status.workingAreaEntries.toString());
+        Assert.assertEquals("/a.txt", status.workingAreaEntries.get(0).oldAbsolutePath);
+        Assert.assertTrue(status.stagingAreaEntries.isEmpty());
+    }
 }
@@ -4,10 +4,15 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Tests that repo objects return the expected content and object types.
@@ -226,4 +231,264 @@ public class RepoObjectTests extends NanoVersionControlTestsBase
         }
     }
 
+
+    /**
+     * Tests that repo objects report their exact serialized size
+     * and that writing into a buffer gives the same bytes as writing into a data output stream.
+     */
+    @Test
+    public void ByteSizeTests() throws IOException
+    {
+        // Create a blob:
+        Blob blob = new Blob(new byte[]{(byte) 1, (byte) 2, (byte) 3});
+
+        // Create a tree with names that need more than one byte per character:
+        Tree tree = new Tree();
+        TreeEntry entry = new TreeEntry();
+        entry.hashValue = "1111111111222222222233333333334444444444";
+        entry.name = "caf\u00e9 \u20ac \u0000";
+        entry.objectType = ObjectType.BLOB;
+        tree.entries.add(entry);
+
+        // Create a commit:
+        Commit commit = new Commit();
+        commit.parentCommitHashValues = new String[] {"0000000000111111111122222222223333333333", null};
+        commit.treeHashValue = "1111111111222222222233333333334444444444";
+        commit.author = "Luk\u00e9";
+        commit.authorTimeStamp = ZonedDateTime.of(2017,4,29, 8,0,0, 0, ZoneId.of("GMT+2"));
+        commit.committer = "admin";
+        commit.committerTimeStamp = ZonedDateTime.of(2017,4,29, 9,0,0, 0, ZoneId.of("GMT+2"));
+        commit.message = "First Commit";
+
+        // Make sure the tree bytes match the data output stream encoding:
+        try (
+                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream)
+        )
+        {
+            dataOutputStream.writeInt(1);
+            dataOutputStream.writeByte('b');
+            dataOutputStream.writeUTF(entry.name);
+            dataOutputStream.writeUTF(entry.hashValue);
+            dataOutputStream.flush();
+            Assert.assertArrayEquals(byteArrayOutputStream.toByteArray(), tree.getByteArray());
+        }
+
+        for (RepoObject repoObject : new RepoObject[] {blob, tree, commit})
+        {
+            // Get the bytes for the repo object:
+            byte[] bytes = repoObject.getByteArray();
+            Assert.assertEquals(repoObject.getByteSize(), bytes.length);
+
+            // Make sure the thread buffer has the same bytes:
+            ByteBuffer buffer = repoObject.writeContentToThreadBuffer();
+            Assert.assertEquals(bytes.length, buffer.remaining());
+            Assert.assertArrayEquals(bytes, Arrays.copyOfRange(buffer.array(), buffer.arrayOffset(), buffer.limit()));
+        }
+    }
+
+    /**
+     * Tests that trees can be written and read in the compact encoding.
+     */
+    @Test
+    public void CompactTreeTests() throws IOException
+    {
+        // Create a tree in the compact format:
+        Tree tree = new Tree();
+        tree.formatVersion = Config.FORMAT_VERSION_COMPACT_TREES;
+
+        // Create a blob tree entry with a name that needs more than one byte per character:
+        TreeEntry entryBlob = new TreeEntry();
+        entryBlob.hashValue = "1111111111222222222233333333334444444444";
+        entryBlob.name = "caf\u00e9 \ud83d\ude00";
+        entryBlob.objectType = ObjectType.BLOB;
+        tree.entries.add(entryBlob);
+
+        // Create a tree tree entry:
+        TreeEntry entryTree = new TreeEntry();
+        entryTree.hashValue = "abcdef0123456789abcdef0123456789abcdef01";
+        entryTree.name = "entryTree";
+        entryTree.objectType = ObjectType.TREE;
+        tree.entries.add(entryTree);
+
+        // Get the bytes for the tree:
+        byte[] treeBytes = tree.getByteArray();
+        Assert.assertEquals(tree.getByteSize(), treeBytes.length);
+
+        // Make sure the compact format is smaller than the original format:
+        Tree originalTree = new Tree();
+        originalTree.entries.addAll(tree.entries);
+        Assert.assertTrue(treeBytes.length < originalTree.getByteArray().length);
+
+        // Read both formats back:
+        for (byte[] bytes : new byte[][] {treeBytes, originalTree.getByteArray()})
+        {
+            try (
+                    ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
+                    DataInputStream dataInputStream = new DataInputStream(byteArrayInputStream)
+            )
+            {
+                // Create a new tree to read into:
+                Tree streamTree = new Tree();
+                streamTree.readContentFromStream(dataInputStream);
+
+                // Make sure the format was detected:
+                Assert.assertEquals(bytes == treeBytes, streamTree.isCompactFormat());
+
+                // Make sure the structure is as expected:
+                Assert.assertEquals(tree.entries.size(), streamTree.entries.size());
+                for (int i = 0; i < streamTree.entries.size(); i++)
+                {
+                    Assert.assertEquals(tree.entries.get(i).objectType, streamTree.entries.get(i).objectType);
+                    Assert.assertEquals(tree.entries.get(i).name, streamTree.entries.get(i).name);
+                    Assert.assertEquals(tree.entries.get(i).hashValue, streamTree.entries.get(i).hashValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that commits can be written and read in the compact encoding.
+     */
+    @Test
+    public void CompactCommitTests() throws IOException
+    {
+        // Create a commit in the compact format:
+        Commit commit = new Commit(
+                "Luke", ZonedDateTime.of(2017,4,29, 8,0,0, 123_456_789, ZoneId.of("Africa/Johannesburg")),
+                "Luke", ZonedDateTime.of(2017,4,29, 9,0,0, 0, ZoneId.of("GMT+2")),
+                "1111111111222222222233333333334444444444",
+                "First Commit \u20ac",
+                "0000000000111111111122222222223333333333");
+        commit.formatVersion = Config.FORMAT_VERSION_COMPACT_COMMITS;
+
+        // Get the bytes for the commit:
+        byte[] commitBytes = commit.getByteArray();
+        Assert.assertEquals(commit.getByteSize(), commitBytes.length);
+
+        // Make sure the compact format is smaller than the original format:
+        Commit originalCommit = new Commit(commit.author, commit.authorTimeStamp, commit.committer, commit.committerTimeStamp, commit.treeHashValue, commit.message, commit.parentCommitHashValues);
+        Assert.assertTrue(commitBytes.length < originalCommit.getByteArray().length);
+
+        // Read the commit back:
+        Commit streamCommit = new Commit();
+        try (
+                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(commitBytes);
+                DataInputStream dataInputStream = new DataInputStream(byteArrayInputStream)
+        )
+        {
+            streamCommit.readContentFromStream(dataInputStream);
+        }
+        Assert.assertTrue(streamCommit.isCompactFormat());
+
+        // Make sure the fields can be read straight away:
+        Assert.assertEquals(commit.author, streamCommit.author);
+        Assert.assertSame(streamCommit.author, streamCommit.committer);
+        Assert.assertEquals(commit.authorTimeStamp, streamCommit.authorTimeStamp);
+        Assert.assertEquals(commit.committerTimeStamp, streamCommit.committerTimeStamp);
+        Assert.assertEquals(commit.treeHashValue, streamCommit.treeHashValue);
+        Assert.assertEquals(commit.message, streamCommit.message);
+        Assert.assertArrayEquals(commit.parentCommitHashValues, streamCommit.parentCommitHashValues);
+        Assert.assertTrue(streamCommit.isDetailsDecoded());
+
+        // Make sure the commit that was read serializes to the same bytes:
+        Assert.assertArrayEquals(commitBytes, streamCommit.getByteArray());
+
+        // Make sure the lazy format only adds the length of the details:
+        streamCommit.formatVersion = Config.FORMAT_VERSION_LAZY_COMMITS;
+        byte[] lazyCommitBytes = streamCommit.getByteArray();
+        Assert.assertEquals(commitBytes.length + 4, lazyCommitBytes.length);
+        Commit lazyCommit = new Commit();
+        lazyCommit.readContentFromStream(new DataInputStream(new ByteArrayInputStream(lazyCommitBytes)));
+        Assert.assertEquals(Config.FORMAT_VERSION_LAZY_COMMITS, lazyCommit.formatVersion);
+
+        // Make sure we can compare lazy commits without creating the timestamps:
+        Assert.assertEquals(0, new CommitTimestampComparator().compare(commit, lazyCommit));
+        Assert.assertNull(lazyCommit.committerTimeStamp);
+        Assert.assertEquals(commit.message, lazyCommit.getMessage());
+        Assert.assertEquals(commit.authorTimeStamp, lazyCommit.getAuthorTimeStamp());
+    }
+
+    /**
+     * Tests that the details of a compact commit are only decoded when they are asked for.
+     */
+    @Test
+    public void LazyCompactCommitTests() throws IOException
+    {
+        // Create a commit in the compact format:
+        Commit commit = new Commit(
+                "Luke", ZonedDateTime.of(2017,4,29, 8,0,0, 0, ZoneId.of("Africa/Johannesburg")),
+                "Leia", ZonedDateTime.of(2017,4,29, 9,0,0, 0, ZoneId.of("Africa/Johannesburg")),
+                "1111111111222222222233333333334444444444",
+                "First Commit",
+                "0000000000111111111122222222223333333333");
+        commit.formatVersion = Config.FORMAT_VERSION_LAZY_COMMITS;
+        byte[] commitBytes = commit.getByteArray();
+
+        // Read the commit back:
+        Commit streamCommit = new Commit();
+        try (
+                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(commitBytes);
+                DataInputStream dataInputStream = new DataInputStream(byteArrayInputStream)
+        )
+        {
+            streamCommit.readContentFromStream(dataInputStream);
+        }
+
+        // Make sure only the parents and the tree were decoded:
+        Assert.assertArrayEquals(commit.parentCommitHashValues, streamCommit.parentCommitHashValues);
+        Assert.assertEquals(commit.treeHashValue, streamCommit.treeHashValue);
+        Assert.assertNull(streamCommit.author);
+        Assert.assertNull(streamCommit.committer);
+        Assert.assertNull(streamCommit.message);
+
+        // Make sure the commit serializes to the same bytes without decoding anything:
+        Assert.assertArrayEquals(commitBytes, streamCommit.getByteArray());
+        Assert.assertNull(streamCommit.message);
+
+        // Make sure the timestamps can be compared without decoding the identities:
+        Assert.assertEquals(commit.getCommitterEpochSecond(), streamCommit.getCommitterEpochSecond());
+        Assert.assertNull(streamCommit.author);
+
+        // Make sure the details are decoded when they are asked for:
+        Assert.assertEquals("Leia", streamCommit.getCommitter());
+        Assert.assertEquals("Luke", streamCommit.author);
+        Assert.assertEquals("First Commit", streamCommit.message);
+
+        // Make sure values that are set explicitly are used when it is written again:
+        Commit changedCommit = new Commit();
+        changedCommit.readContentFromStream(new DataInputStream(new ByteArrayInputStream(commitBytes)));
+        changedCommit.message = "Changed";
+        Assert.assertEquals("Changed", changedCommit.getMessage());
+        Assert.assertEquals("Luke", changedCommit.getAuthor());
+        Assert.assertFalse(Arrays.equals(commitBytes, changedCommit.getByteArray()));
+    }
+
+    /**
+     * Tests that the details of a lazy commit can be decoded by many threads at the same time.
+     */
+    @Test
+    public void LazyCommitDecodingIsThreadSafe() throws IOException
+    {
+        // Create a commit in the lazy format:
+        ZonedDateTime timeStamp = ZonedDateTime.of(2017,4,29, 8,0,0, 0, ZoneId.of("Africa/Johannesburg"));
+        Commit commit = new Commit("Luke", timeStamp, "Leia", timeStamp, "1111111111222222222233333333334444444444", "First Commit");
+        commit.formatVersion = Config.FORMAT_VERSION_LAZY_COMMITS;
+        byte[] commitBytes = commit.getByteArray();
+
+        // Read the commit back many times and decode each one from many threads at once:
+        for (int i = 0; i < 2_000; i++)
+        {
+            Commit streamCommit = new Commit();
+            streamCommit.readContentFromStream(new DataInputStream(new ByteArrayInputStream(commitBytes)));
+            IntStream.range(0, 8).parallel().forEach(thread ->
+            {
+                Assert.assertEquals(timeStamp.toEpochSecond(), streamCommit.getCommitterEpochSecond());
+                Assert.assertEquals("Luke", streamCommit.getAuthor());
+                Assert.assertEquals("Leia", streamCommit.getCommitter());
+                Assert.assertEquals("First Commit", streamCommit.getMessage());
+                Assert.assertEquals(timeStamp, streamCommit.getAuthorTimeStamp());
+            });
+        }
+    }
 }
@@ -61,4 +61,28 @@ public class RepoPathTests extends NanoVersionControlTestsBase
         Assert.assertEquals("/R2", pathR2.toString());
         Assert.assertEquals("/R2", pathR2.toAbsolutePath().toString());
     }
+
+    /**
+     * Tests that paths are split into interned parts and compared by value.
+     */
+    @Test
+    public void PathParts()
+    {
+        RepoPath rootPath = RepoPath.atRoot();
+        Assert.assertEquals(0, rootPath.getPartCount());
+
+        RepoPath pathR1S1 = rootPath.resolve("R1").resolve("S1/T1");
+        Assert.assertArrayEquals(new String[] {"R1", "S1", "T1"}, pathR1S1.splitIntoParts());
+        Assert.assertArrayEquals(new String[] {"R1", "S1", "T1"}, RepoPath.at("//R1/S1//T1/").splitIntoParts());
+
+        // Make sure the parts are shared between paths:
+        RepoPath otherPath = RepoPath.at("/R1/S1/T1");
+        Assert.assertSame(pathR1S1.getPart(1), otherPath.getPart(1));
+
+        // Make sure paths are compared by value:
+        Assert.assertEquals(otherPath, pathR1S1);
+        Assert.assertEquals(otherPath.hashCode(), pathR1S1.hashCode());
+        Assert.assertNotEquals(RepoPath.at("R1/S1/T1"), pathR1S1);
+        Assert.assertEquals(pathR1S1, RepoPath.at("R1/S1/T1").toAbsolutePath());
+    }
 }
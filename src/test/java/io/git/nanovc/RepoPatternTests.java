@@ -60,6 +60,25 @@ public class RepoPatternTests extends NanoVersionControlTestsBase
         assertContentMatches(content, "**b**", "/a/b/3.json");
     }
 
+    /**
+     * Tests whether repo patterns could match content inside folders.
+     */
+    @Test
+    public void PatternMightMatchInside()
+    {
+        Assert.assertTrue(RepoPattern.matching("/configs/**").mightMatchInside("/"));
+        Assert.assertTrue(RepoPattern.matching("/configs/**").mightMatchInside("/configs"));
+        Assert.assertTrue(RepoPattern.matching("/configs/**").mightMatchInside("/configs/deep/"));
+        Assert.assertFalse(RepoPattern.matching("/configs/**").mightMatchInside("/src"));
+        Assert.assertFalse(RepoPattern.matching("/configs/**").mightMatchInside("/configs2"));
+        Assert.assertTrue(RepoPattern.matching("**/*.json").mightMatchInside("/a/b"));
+        Assert.assertFalse(RepoPattern.matching("*.json").mightMatchInside("/a"));
+        Assert.assertTrue(RepoPattern.matching("/*/b/*.json").mightMatchInside("/a"));
+        Assert.assertTrue(RepoPattern.matching("/*/b/*.json").mightMatchInside("/a/b"));
+        Assert.assertFalse(RepoPattern.matching("/*/b/*.json").mightMatchInside("/a/c"));
+        Assert.assertTrue(RepoPattern.matching("/a/*.json").or("/c/**").mightMatchInside("/c"));
+    }
+
     /**
      * Tests that the given repo pattern matches the content.
      * @param content The content to match.
@@ -3,6 +3,16 @@ package io.git.nanovc;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
 /**
  * Tests for the creation of trees from repo paths.
  */
@@ -44,12 +54,13 @@ public class TreeTests extends NanoVersionControlTestsBase
 
         // 2017-ICIS:
         Assert.assertEquals(2, rfiTree.entries.size());
-        TreeEntry icisBlobEntry = rfiTree.entries.get(0);
-        Assert.assertEquals("2017-ICIS.content", icisBlobEntry.name);
-        Assert.assertEquals(ObjectType.BLOB, icisBlobEntry.objectType);
-        TreeEntry icisTreeEntry = rfiTree.entries.get(1);
+        // NOTE: Entries are sorted byte-wise by name, so the shorter name comes first.
+        TreeEntry icisTreeEntry = rfiTree.entries.get(0);
         Assert.assertEquals("2017-ICIS", icisTreeEntry.name);
         Assert.assertEquals(ObjectType.TREE, icisTreeEntry.objectType);
+        TreeEntry icisBlobEntry = rfiTree.entries.get(1);
+        Assert.assertEquals("2017-ICIS.content", icisBlobEntry.name);
+        Assert.assertEquals(ObjectType.BLOB, icisBlobEntry.objectType);
         Tree icisTree = (Tree) repo.database.objects.map.get(icisTreeEntry.hashValue);
 
 
@@ -64,6 +75,512 @@ public class TreeTests extends NanoVersionControlTestsBase
 
     }
 
+    /**
+     * Tests that the same directory contents produce the same tree no matter what order they are staged in.
+     */
+    @Test
+    public void testTreesAreIndependentOfStagingOrder()
+    {
+        // Stage the same content in two different orders:
+        RepoHandler repoHandler1 = NanoVersionControl.newHandler();
+        repoHandler1.init();
+        repoHandler1.stage("/b/2.txt", "2".getBytes());
+        repoHandler1.stage("/a.txt", "1".getBytes());
+        repoHandler1.stage("/b/1.txt", "1".getBytes());
+        repoHandler1.stage("/c", "3".getBytes());
+        Tree rootTree1 = repoHandler1.write_tree();
+
+        RepoHandler repoHandler2 = NanoVersionControl.newHandler();
+        repoHandler2.init();
+        repoHandler2.stage("/c", "3".getBytes());
+        repoHandler2.stage("/b/1.txt", "1".getBytes());
+        repoHandler2.stage("/a.txt", "1".getBytes());
+        repoHandler2.stage("/b/2.txt", "2".getBytes());
+        Tree rootTree2 = repoHandler2.write_tree();
+
+        // Make sure the trees are identical:
+        Assert.assertEquals(rootTree1.hash.value, rootTree2.hash.value);
+        Assert.assertEquals("a.txt", rootTree1.entries.get(0).name);
+        Assert.assertEquals("b", rootTree1.entries.get(1).name);
+        Assert.assertEquals("c", rootTree1.entries.get(2).name);
+    }
+
+    /**
+     * Tests that tree entry names are compared in the order of their UTF-8 bytes.
+     */
+    @Test
+    public void testTreeEntryNameOrder()
+    {
+        Assert.assertTrue(TreeEntryComparator.compareNames("a", "b") < 0);
+        Assert.assertTrue(TreeEntryComparator.compareNames("a", "a.txt") < 0);
+        Assert.assertTrue(TreeEntryComparator.compareNames("B", "a") < 0);
+        Assert.assertEquals(0, TreeEntryComparator.compareNames("same", "same"));
+
+        // Supplementary characters come after all other characters in UTF-8 (unlike UTF-16):
+        Assert.assertTrue(TreeEntryComparator.compareNames("\uffff", "\ud83d\ude00") < 0);
+        Assert.assertTrue(TreeEntryComparator.compareNames("\ud83d\ude00", "\uffff") > 0);
+        Assert.assertTrue(TreeEntryComparator.compareNames("\u00e9", "\ud83d\ude00") < 0);
+    }
+
+    /**
+     * Tests that entries are found by name in trees that are in canonical order and in trees that were built in any order.
+     */
+    @Test
+    public void testFindEntry()
+    {
+        // Create a tree in canonical order:
+        Tree tree = new Tree();
+        for (int i = 0; i < 100; i++)
+        {
+            tree.entries.add(new TreeEntry(ObjectType.BLOB, "hash" + i, String.format("%03d.txt", i)));
+        }
+        Assert.assertTrue(tree.entries.isInCanonicalOrder());
+
+        // Make sure every entry is found:
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals("hash" + i, tree.findEntry(String.format("%03d.txt", i)).hashValue);
+        }
+        Assert.assertNull(tree.findEntry("missing.txt"));
+
+        // Add an entry out of order and make sure it is still found:
+        tree.entries.add(new TreeEntry(ObjectType.TREE, "hashA", "000"));
+        Assert.assertFalse(tree.entries.isInCanonicalOrder());
+        Assert.assertEquals("hashA", tree.findEntry("000").hashValue);
+        Assert.assertEquals("hash0", tree.findEntry("000.txt").hashValue);
+        Assert.assertNull(tree.findEntry("missing.txt"));
+
+        // Put the entries back in order:
+        tree.entries.sort(TreeEntryComparator.INSTANCE);
+        Assert.assertTrue(tree.entries.isInCanonicalOrder());
+        Assert.assertEquals("hashA", tree.entries.get(0).hashValue);
+        Assert.assertEquals("hashA", tree.findEntry("000").hashValue);
+
+        // Replace an entry so that the entries are out of order and make sure it is still found:
+        Assert.assertNull(tree.findEntry("missing.txt"));
+        tree.entries.set(0, new TreeEntry(ObjectType.BLOB, "hashZ", "zzz.txt"));
+        Assert.assertFalse(tree.entries.isInCanonicalOrder());
+        Assert.assertEquals("hashZ", tree.findEntry("zzz.txt").hashValue);
+    }
+
+    /**
+     * Tests that only the trees for folders that changed are written again
+     * and that the result is the same as writing every tree from scratch.
+     */
+    @Test
+    public void testTreeCacheOnlyWritesChangedFolders()
+    {
+        RepoHandler repoHandler = NanoVersionControl.newHandler();
+        Repo repo = repoHandler.init();
+        repoHandler.stage("/a/1.txt", "1".getBytes());
+        repoHandler.stage("/b/2.txt", "2".getBytes());
+        repoHandler.stage("/b/c/3.txt", "3".getBytes());
+        Tree rootTree1 = repoHandler.write_tree();
+
+        // Get the cached trees for the folders:
+        TreeCache.Node aFolder = repo.stagingArea.treeCache.getRoot().children.get("a");
+        TreeCache.Node bFolder = repo.stagingArea.treeCache.getRoot().children.get("b");
+        Tree aTree1 = aFolder.tree;
+        Tree bTree1 = bFolder.tree;
+
+        // Writing again without changes must reuse everything:
+        Assert.assertSame(rootTree1, repoHandler.write_tree());
+
+        // Change content in one folder:
+        repoHandler.stage("/a/1.txt", "changed".getBytes());
+        Tree rootTree2 = repoHandler.write_tree();
+        Assert.assertNotEquals(rootTree1.hash, rootTree2.hash);
+        Assert.assertNotSame(aTree1, aFolder.tree);
+        Assert.assertSame(bTree1, bFolder.tree);
+
+        // Change content without going through the API and remove content:
+        repo.stagingArea.getContent("/b/c/3.txt").content = "changed".getBytes();
+        repo.stagingArea.removeContent("/b/2.txt");
+        Tree rootTree3 = repoHandler.write_tree();
+        Assert.assertNotSame(bTree1, bFolder.tree);
+        Assert.assertEquals(1, bFolder.tree.entries.size());
+
+        // Make sure the trees match the trees written from scratch:
+        RepoHandler freshHandler = NanoVersionControl.newHandler();
+        freshHandler.init();
+        freshHandler.stage("/a/1.txt", "changed".getBytes());
+        freshHandler.stage("/b/c/3.txt", "changed".getBytes());
+        Assert.assertEquals(freshHandler.write_tree().hash, rootTree3.hash);
+
+        // Make sure empty folders are removed:
+        repo.stagingArea.removeContent("/b/c/3.txt");
+        Tree rootTree4 = repoHandler.write_tree();
+        Assert.assertEquals(1, rootTree4.entries.size());
+        Assert.assertEquals("a", rootTree4.entries.get(0).name);
+    }
+
+    /**
+     * Tests that walking a tree in parallel finds the same blobs in the same order as walking it on a single thread.
+     */
+    @Test
+    public void testTreeWalkerIsDeterministic()
+    {
+        RepoHandler repoHandler = NanoVersionControl.newHandler();
+        repoHandler.init();
 
+        // Create content in nested folders:
+        for (int i = 0; i < 300; i++)
+        {
+            repoHandler.putWorkingAreaContent("/a" + (i % 3) + "/b" + (i % 7) + "/" + i + ".txt", (byte) i);
+        }
+        repoHandler.putWorkingAreaContent("/top.txt", (byte) 1);
+        repoHandler.addAll(false);
+        Tree rootTree = repoHandler.write_tree();
+
+        // Walk the tree on a single thread as the reference:
+        List<String> expectedPaths = new ArrayList<>();
+        walkSerially(repoHandler.repo.database.objects, rootTree, "", expectedPaths);
+        Assert.assertEquals(301, expectedPaths.size());
+
+        // Walk the tree in parallel:
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            TreeWalker walker = new TreeWalker(repoHandler.repo.database.objects, true, pool);
+            for (int attempt = 0; attempt < 10; attempt++)
+            {
+                List<TreePathEntry> entries = walker.walkBlobs(rootTree.hash.value, RepoPath.atRoot());
+                Assert.assertEquals(expectedPaths, entries.stream().map(entry -> entry.absolutePath).collect(Collectors.toList()));
+                Assert.assertTrue(entries.stream().allMatch(entry -> entry.blob != null && entry.blob.hash.value.equals(entry.entry.hashValue)));
+
+                // Make sure that the paths of the entries share the interned segments of their folders:
+                String folderSegment = entries.get(0).path.getPart(0);
+                Assert.assertEquals("a0", folderSegment);
+                Assert.assertTrue(entries.stream().filter(entry -> entry.absolutePath.startsWith("/a0/")).allMatch(entry -> entry.path.getPart(0) == folderSegment));
+            }
+
+            // Walk a sub tree with a prefix:
+            List<TreePathEntry> entries = walker.walkBlobs(rootTree.findEntry("a1").hashValue, RepoPath.at("/prefix/"));
+            Assert.assertEquals(100, entries.size());
+            Assert.assertTrue(entries.stream().allMatch(entry -> entry.absolutePath.startsWith("/prefix/b")));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests streaming and visiting the entries of a tree.
+     */
+    @Test
+    public void testTreeStreamAndVisitor()
+    {
+        RepoHandler repoHandler = NanoVersionControl.newHandler();
+        repoHandler.init();
+
+        // Create content in nested folders:
+        for (int i = 0; i < 300; i++)
+        {
+            repoHandler.putWorkingAreaContent("/a" + (i % 3) + "/b" + (i % 7) + "/" + i + ".txt", (byte) i);
+        }
+        repoHandler.putWorkingAreaContent("/top.txt", (byte) 1);
+        repoHandler.addAll(false);
+        Tree rootTree = repoHandler.write_tree();
 
+        // Walk the tree on a single thread as the reference:
+        List<String> expectedBlobPaths = new ArrayList<>();
+        walkSerially(repoHandler.repo.database.objects, rootTree, "", expectedBlobPaths);
+
+        // Stream the entries:
+        List<TreePathEntry> entries = repoHandler.ls_tree(rootTree.hash.value).collect(Collectors.toList());
+        Assert.assertEquals(301 + 3 + 3 * 7, entries.size());
+        Assert.assertEquals("/a0", entries.get(0).absolutePath);
+        Assert.assertEquals(ObjectType.TREE, entries.get(0).entry.objectType);
+        Assert.assertEquals("/a0/b0", entries.get(1).absolutePath);
+        Assert.assertEquals(expectedBlobPaths, entries.stream().filter(entry -> entry.entry.objectType == ObjectType.BLOB).map(entry -> entry.absolutePath).collect(Collectors.toList()));
+
+        // Stream the entries in parallel and make sure the order is kept:
+        List<String> parallelPaths = repoHandler.ls_tree(rootTree.hash.value).parallel().map(entry -> entry.absolutePath).collect(Collectors.toList());
+        Assert.assertEquals(entries.stream().map(entry -> entry.absolutePath).collect(Collectors.toList()), parallelPaths);
+        Assert.assertEquals(301, repoHandler.ls_tree(rootTree.hash.value).parallel().filter(entry -> entry.entry.objectType == ObjectType.BLOB).count());
+
+        // Visit the entries but skip the /a1 folder:
+        List<String> visitedPaths = new ArrayList<>();
+        List<String> exitedPaths = new ArrayList<>();
+        repoHandler.ls_tree(rootTree.hash.value, new TreeVisitor()
+        {
+            @Override
+            public boolean enterTree(TreePathEntry treeEntry)
+            {
+                return !treeEntry.absolutePath.equals("/a1");
+            }
+
+            @Override
+            public void exitTree(TreePathEntry treeEntry)
+            {
+                exitedPaths.add(treeEntry.absolutePath);
+            }
+
+            @Override
+            public void visitBlob(TreePathEntry blobEntry)
+            {
+                visitedPaths.add(blobEntry.absolutePath);
+            }
+        });
+        Assert.assertEquals(expectedBlobPaths.stream().filter(path -> !path.startsWith("/a1/")).collect(Collectors.toList()), visitedPaths);
+        Assert.assertEquals(2 + 2 * 7, exitedPaths.size());
+        Assert.assertEquals("/a0/b0", exitedPaths.get(0));
+        Assert.assertFalse(exitedPaths.contains("/a1"));
+    }
+
+    /**
+     * Tests finding the differences between two trees.
+     */
+    @Test
+    public void testTreeDiff()
+    {
+        RepoHandler repoHandler = NanoVersionControl.newHandler();
+        repoHandler.init();
+        repoHandler.setAuthorAndCommitter("Luke");
+
+        // Commit some content:
+        for (int i = 0; i < 100; i++)
+        {
+            repoHandler.putWorkingAreaContent("/src/" + i + ".java", (byte) i);
+        }
+        repoHandler.putWorkingAreaContent("/configs/a.json", (byte) 1);
+        repoHandler.putWorkingAreaContent("/configs/b.json", (byte) 2);
+        repoHandler.putWorkingAreaContent("/configs/old/c.json", (byte) 3);
+        repoHandler.putWorkingAreaContent("/docs", (byte) 4);
+        repoHandler.addAll(false);
+        Commit firstCommit = repoHandler.commitAll("First", false);
+
+        // Change the content everywhere except the /src folder:
+        repoHandler.putWorkingAreaContent("/configs/a.json", (byte) 10);
+        repoHandler.putWorkingAreaContent("/docs/readme.md", (byte) 5);
+        repoHandler.putWorkingAreaContent("/new.txt", (byte) 6);
+        repoHandler.addAll(false);
+        repoHandler.repo.stagingArea.removeContent("/configs/old/c.json");
+        repoHandler.repo.stagingArea.removeContent("/docs");
+        Commit secondCommit = repoHandler.commitAll("Second", false);
+
+        // Remove the tree for the /src folder from the object store so that reading it would fail:
+        Tree rootTree = (Tree) repoHandler.cat_file(firstCommit.treeHashValue);
+        String srcTreeHashValue = rootTree.findEntry("src").hashValue;
+        repoHandler.repo.database.objects.remove(srcTreeHashValue);
+
+        // Make sure the differences are found without reading the /src folder:
+        List<DiffEntry> diffEntries = repoHandler.diff_tree(firstCommit.hash.value, "HEAD");
+        Assert.assertEquals(
+                "[MODIFIED /configs/a.json, DELETED /configs/old/c.json, DELETED /docs, ADDED /docs/readme.md, ADDED /new.txt]",
+                diffEntries.toString());
+        DiffEntry modifiedEntry = diffEntries.get(0);
+        Assert.assertEquals(repoHandler.resolve_path(firstCommit.hash.value, RepoPath.at("/configs/a.json")).entry.hashValue, modifiedEntry.oldHashValue);
+        Assert.assertEquals(repoHandler.resolve_path("HEAD", RepoPath.at("/configs/a.json")).entry.hashValue, modifiedEntry.newHashValue);
+
+        // Make sure the reverse differences are streamed between the trees:
+        List<DiffEntry> reverseEntries = new ArrayList<>();
+        repoHandler.diff_tree(secondCommit.treeHashValue, firstCommit.treeHashValue, reverseEntries::add);
+        Assert.assertEquals(
+                "[MODIFIED /configs/a.json, ADDED /configs/old/c.json, DELETED /docs/readme.md, ADDED /docs, DELETED /new.txt]",
+                reverseEntries.toString());
+
+        // Make sure that trees which are not in canonical order are compared correctly:
+        Tree unsortedTree = new Tree();
+        for (int i = rootTree.entries.size() - 1; i >= 0; i--)
+        {
+            unsortedTree.entries.add(rootTree.entries.get(i));
+        }
+        repoHandler.engine.hash_object_write(repoHandler.repo, unsortedTree);
+        Assert.assertEquals(0, repoHandler.diff_tree(unsortedTree.hash.value, firstCommit.hash.value).size());
+        Assert.assertEquals(diffEntries.toString(), repoHandler.diff_tree(unsortedTree.hash.value, secondCommit.hash.value).toString());
+    }
+
+    /**
+     * Tests finding the content that was renamed or copied between two trees.
+     */
+    @Test
+    public void testTreeDiffDetectsRenamesAndCopies()
+    {
+        RepoHandler repoHandler = NanoVersionControl.newHandler();
+        repoHandler.init();
+        repoHandler.setAuthorAndCommitter("Luke");
+
+        // Commit lots of files with different lines:
+        int fileCount = 2000;
+        for (int i = 0; i < fileCount; i++)
+        {
+            repoHandler.putWorkingAreaContent("/old/" + i + ".txt", createLines(i, 20, -1));
+        }
+        repoHandler.putWorkingAreaContent("/same.txt", createLines(-1, 20, -1));
+        repoHandler.putWorkingAreaContent("/edited.txt", createLines(-2, 20, -1));
+        repoHandler.addAll(false);
+        Commit firstCommit = repoHandler.commitAll("First", false);
+
+        // Move every file to a new folder, editing one line in the odd ones:
+        for (int i = 0; i < fileCount; i++)
+        {
+            repoHandler.repo.stagingArea.removeContent("/old/" + i + ".txt");
+            repoHandler.repo.workingArea.removeContent("/old/" + i + ".txt");
+            repoHandler.putWorkingAreaContent("/new/" + i + ".txt", createLines(i, 20, i % 2 == 0 ? -1 : 7));
+        }
+
+        // Copy the file that stays the same, and copy the file that is edited before editing it:
+        repoHandler.putWorkingAreaContent("/copy-of-same.txt", createLines(-1, 20, -1));
+        repoHandler.putWorkingAreaContent("/copy-of-edited.txt", createLines(-2, 20, -1));
+        repoHandler.putWorkingAreaContent("/edited.txt", createLines(-2, 20, 3));
+        repoHandler.addAll(false);
+        Commit secondCommit = repoHandler.commitAll("Second", false);
+
+        // Make sure the renames are found without pairing up files that are not related:
+        List<DiffEntry> diffEntries = repoHandler.diff_tree(firstCommit.hash.value, secondCommit.hash.value, true);
+        Assert.assertEquals(fileCount + 3, diffEntries.size());
+        for (DiffEntry diffEntry : diffEntries)
+        {
+            if (diffEntry.getPath().startsWith("/new/"))
+            {
+                Assert.assertEquals(diffEntry.toString(), ContentState.RENAMED, diffEntry.changeType);
+                Assert.assertEquals(diffEntry.newPath.replace("/new/", "/old/"), diffEntry.oldPath);
+                Assert.assertEquals(diffEntry.oldHashValue.equals(diffEntry.newHashValue), diffEntry.score == 100);
+            }
+        }
+
+        // Make sure the copies are found:
+        // NOTE: Content that didn't change is not a copy source, like git without --find-copies-harder.
+        Assert.assertEquals(
+                "[COPIED /edited.txt -> /copy-of-edited.txt, ADDED /copy-of-same.txt, MODIFIED /edited.txt]",
+                diffEntries.stream().filter(diffEntry -> !diffEntry.getPath().startsWith("/new/")).collect(Collectors.toList()).toString());
+
+        // Make sure the patch says where renamed content came from:
+        ContentDiff contentDiff = new ContentDiff();
+        DiffEntry editedRename = diffEntries.stream().filter(diffEntry -> diffEntry.getPath().equals("/new/1.txt")).findFirst().get();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try
+        {
+            contentDiff.writePatch(editedRename, ((Blob) repoHandler.cat_file(editedRename.oldHashValue)).content, ((Blob) repoHandler.cat_file(editedRename.newHashValue)).content, outputStream);
+        }
+        catch (IOException e)
+        {
+            throw new NanoRuntimeException(e);
+        }
+        String patch = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(patch, patch.startsWith("diff --git a/old/1.txt b/new/1.txt\nsimilarity index " + editedRename.score + "%\nrename from old/1.txt\nrename to new/1.txt\n--- a/old/1.txt\n+++ b/new/1.txt\n"));
+
+        // Make sure renames are not found unless we ask for them:
+        Assert.assertEquals(2 * fileCount + 3, repoHandler.diff_tree(firstCommit.hash.value, secondCommit.hash.value).size());
+    }
+
+    /**
+     * Tests that the index of the rename detector finds the pairs that are only just similar enough.
+     */
+    @Test
+    public void testRenameDetectorFindsPairsAtTheMinimumScore()
+    {
+        // Create files that have between 4 and 7 of their 20 lines edited (about 48% to 67% similar):
+        Map<String, byte[]> contents = new HashMap<>();
+        List<DiffEntry> diffEntries = new ArrayList<>();
+        int fileCount = 500;
+        for (int i = 0; i < fileCount; i++)
+        {
+            contents.put("old" + i, createLines(i, 20, -1));
+            StringBuilder builder = new StringBuilder();
+            for (int line = 0; line < 20; line++)
+            {
+                builder.append("File ").append(i).append(line < 4 + i % 4 ? " edited line " : " line ").append(line).append('\n');
+            }
+            contents.put("new" + i, builder.toString().getBytes(StandardCharsets.UTF_8));
+            diffEntries.add(new DiffEntry(ContentState.DELETED, "/old/" + i + ".txt", "old" + i, null, null));
+            diffEntries.add(new DiffEntry(ContentState.ADDED, null, null, "/new/" + i + ".txt", "new" + i));
+        }
+
+        // Find the renames:
+        RenameDetector renameDetector = new RenameDetector(contents::get);
+        List<DiffEntry> results = renameDetector.detect(diffEntries);
+
+        // Make sure every pair that scores high enough was found:
+        int renameCount = 0;
+        for (DiffEntry result : results)
+        {
+            if (result.changeType == ContentState.DELETED) continue;
+            String number = result.newPath.substring("/new/".length(), result.newPath.length() - ".txt".length());
+            int score = RenameDetector.estimateSimilarity(RenameDetector.sketch(contents.get("old" + number)), RenameDetector.sketch(contents.get("new" + number)));
+            if (score >= renameDetector.minimumScore)
+            {
+                Assert.assertEquals(result.toString(), ContentState.RENAMED, result.changeType);
+                Assert.assertEquals("/old/" + number + ".txt", result.oldPath);
+                renameCount++;
+            }
+        }
+        Assert.assertTrue(String.valueOf(renameCount), renameCount > fileCount / 2);
+    }
+
+    /**
+     * Tests that content that lands in a bucket with lots of similar sources is still compared with all of them.
+     */
+    @Test
+    public void testRenameDetectorComparesEverySourceForBigBuckets()
+    {
+        // Create lots of files that are the same except for one line:
+        Map<String, byte[]> contents = new HashMap<>();
+        List<DiffEntry> diffEntries = new ArrayList<>();
+        StringBuilder boilerplate = new StringBuilder();
+        for (int line = 0; line < 2000; line++)
+        {
+            boilerplate.append("Boilerplate line ").append(line).append('\n');
+        }
+        int fileCount = 3 * RenameDetector.MAX_BUCKET_SIZE;
+        for (int i = 0; i < fileCount; i++)
+        {
+            contents.put("old" + i, (boilerplate + "File " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            diffEntries.add(new DiffEntry(ContentState.DELETED, "/old/" + i + ".txt", "old" + i, null, null));
+        }
+
+        // Add one line to one of the last files and move it:
+        int movedFile = fileCount - 10;
+        contents.put("new", (boilerplate + "File " + movedFile + "\nNew line\n").getBytes(StandardCharsets.UTF_8));
+        diffEntries.add(new DiffEntry(ContentState.ADDED, null, null, "/new/" + movedFile + ".txt", "new"));
+
+        // Make sure it is paired with the file that it came from:
+        List<DiffEntry> results = new RenameDetector(contents::get).detect(diffEntries);
+        DiffEntry rename = results.get(results.size() - 1);
+        Assert.assertEquals(rename.toString(), ContentState.RENAMED, rename.changeType);
+        Assert.assertEquals("/old/" + movedFile + ".txt", rename.oldPath);
+    }
+
+    /**
+     * Creates lines of text that are unique to a file.
+     *
+     * @param file       The number of the file.
+     * @param lineCount  The number of lines to create.
+     * @param editedLine The line to edit. -1 to not edit any lines.
+     * @return The bytes of the lines.
+     */
+    private byte[] createLines(int file, int lineCount, int editedLine)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lineCount; i++)
+        {
+            builder.append("File ").append(file).append(i == editedLine ? " edited line " : " line ").append(i).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Walks the tree depth first on a single thread and collects the paths of the blobs.
+     * @param objects  The objects to get the trees from.
+     * @param tree     The tree to walk.
+     * @param treePath The path of the tree.
+     * @param paths    The paths of the blobs that were found.
+     */
+    private void walkSerially(RepoObjectStore objects, Tree tree, String treePath, List<String> paths)
+    {
+        for (TreeEntry entry : tree.entries)
+        {
+            String entryPath = treePath + "/" + entry.name;
+            if (entry.objectType == ObjectType.TREE)
+            {
+                walkSerially(objects, (Tree) objects.get(entry.hashValue), entryPath, paths);
+            }
+            else
+            {
+                paths.add(entryPath);
+            }
+        }
+    }
 }
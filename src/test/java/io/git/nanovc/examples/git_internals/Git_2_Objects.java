@@ -273,7 +273,7 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         Assert.assertNotNull(version2Tree);
         Assert.assertNotNull(version2Tree.hash);
         Assert.assertNotNull(version2Tree.hash.value);
-        Assert.assertEquals("654725b11e4186d9807c3396c2c651b927acb68f", version2Tree.hash.value);
+        Assert.assertEquals("9a5a2e37b08045e9a8ca49f1dc7b8aad658d73f4", version2Tree.hash.value);
 
         //> $ git cat-file -p 0155eb4229851634a0f03eb265b69f5a2d56f341
         //>     100644 blob fa49b077972391ad58037050f2a75f74e3671e92      new.txt
@@ -281,13 +281,13 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         Assert.assertSame(version2Tree, git.cat_file(version2Tree.hash));
         Assert.assertNotNull(version2Tree.entries);
         Assert.assertEquals(2, version2Tree.entries.size());
-        Assert.assertEquals("test.txt", version2Tree.entries.get(0).name);
+        Assert.assertEquals("new.txt", version2Tree.entries.get(0).name);
         Assert.assertEquals(ObjectType.BLOB, version2Tree.entries.get(0).objectType);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(0).hashValue);
-        Assert.assertEquals(test_txt_version_2_hash.value, version2Tree.entries.get(0).hashValue);
-        Assert.assertEquals("new.txt", version2Tree.entries.get(1).name);
+        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(0).hashValue);
+        Assert.assertEquals("test.txt", version2Tree.entries.get(1).name);
         Assert.assertEquals(ObjectType.BLOB, version2Tree.entries.get(1).objectType);
-        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(1).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(1).hashValue);
+        Assert.assertEquals(test_txt_version_2_hash.value, version2Tree.entries.get(1).hashValue);
 
 
         //> Notice that this tree has both file entries and also that the test.txt SHA-1 is the “version 2” SHA-1 from earlier (1f7a7a)
@@ -312,7 +312,7 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         Assert.assertNotNull(version3Tree);
         Assert.assertNotNull(version3Tree.hash);
         Assert.assertNotNull(version3Tree.hash.value);
-        Assert.assertEquals("17aa869614d4876f6646bcea558496d5a720f728", version3Tree.hash.value);
+        Assert.assertEquals("706dc46784f8fe1862bf9a156c4089391bcf3bc9", version3Tree.hash.value);
 
 
         //> $ git cat-file -p 3c4e9cd789d88d8d89c1073707c3585e41b0e614
@@ -322,16 +322,16 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         Assert.assertSame(version3Tree, git.cat_file(version3Tree.hash));
         Assert.assertNotNull(version3Tree.entries);
         Assert.assertEquals(3, version3Tree.entries.size());
-        Assert.assertEquals("test.txt", version3Tree.entries.get(0).name);
-        Assert.assertEquals(ObjectType.BLOB, version3Tree.entries.get(0).objectType);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(0).hashValue);
-        Assert.assertEquals(test_txt_version_2_hash.value, version3Tree.entries.get(0).hashValue);
+        Assert.assertEquals("bak", version3Tree.entries.get(0).name);
+        Assert.assertEquals(ObjectType.TREE, version3Tree.entries.get(0).objectType);
+        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(0).hashValue);
         Assert.assertEquals("new.txt", version3Tree.entries.get(1).name);
         Assert.assertEquals(ObjectType.BLOB, version3Tree.entries.get(1).objectType);
         Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version3Tree.entries.get(1).hashValue);
-        Assert.assertEquals("bak", version3Tree.entries.get(2).name);
-        Assert.assertEquals(ObjectType.TREE, version3Tree.entries.get(2).objectType);
-        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(2).hashValue);
+        Assert.assertEquals("test.txt", version3Tree.entries.get(2).name);
+        Assert.assertEquals(ObjectType.BLOB, version3Tree.entries.get(2).objectType);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(2).hashValue);
+        Assert.assertEquals(test_txt_version_2_hash.value, version3Tree.entries.get(2).hashValue);
 
 
         //> If you created a working directory from the new tree you just wrote,
@@ -408,19 +408,19 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
 
         // Write the current staging area into a set of tree objects into the object database:
         Tree version2Tree = git.write_tree();
-        Assert.assertEquals("654725b11e4186d9807c3396c2c651b927acb68f", version2Tree.hash.value);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(0).hashValue);
-        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(1).hashValue);
+        Assert.assertEquals("9a5a2e37b08045e9a8ca49f1dc7b8aad658d73f4", version2Tree.hash.value);
+        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(0).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(1).hashValue);
 
         // Add the first version as a backup under the 'bak' directory:
         git.read_tree(version1Tree.hash, RepoPath.at("bak"));
 
         // Write the current staging area into a set of tree objects into the object database:
         Tree version3Tree = git.write_tree();
-        Assert.assertEquals("17aa869614d4876f6646bcea558496d5a720f728", version3Tree.hash.value);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(0).hashValue);
+        Assert.assertEquals("706dc46784f8fe1862bf9a156c4089391bcf3bc9", version3Tree.hash.value);
+        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(0).hashValue);
         Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version3Tree.entries.get(1).hashValue);
-        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(2).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(2).hashValue);
 
 
         //endregion
@@ -517,7 +517,7 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         // Commit the second tree:
         Commit secondCommit = git.commit_tree(version2Tree.hash, "second commit", firstCommit.hash);
         Assert.assertNotNull(secondCommit);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", secondCommit.hash.value);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", secondCommit.hash.value);
 
         // Make sure the parent commit was referenced:
         Assert.assertEquals(1, secondCommit.parentCommitHashValues.length);
@@ -529,11 +529,11 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         // Commit the third tree:
         Commit thirdCommit = git.commit_tree(version3Tree.hash, "third commit", secondCommit.hash);
         Assert.assertNotNull(thirdCommit);
-        Assert.assertEquals("a93eb7a3da86e4e938505bb95b0f9a716d4657f2", thirdCommit.hash.value);
+        Assert.assertEquals("e448fc731b886fe48545249112ab2f34b86e2f23", thirdCommit.hash.value);
 
         // Make sure the parent commit was referenced:
         Assert.assertEquals(1, thirdCommit.parentCommitHashValues.length);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", thirdCommit.parentCommitHashValues[0]);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", thirdCommit.parentCommitHashValues[0]);
 
 
         //> Each of the three commit objects points to one of the three snapshot trees you created.
@@ -618,11 +618,11 @@ public class Git_2_Objects extends NanoVersionControlTestsBase
         //>     .git/objects/fa/49b077972391ad58037050f2a75f74e3671e92 # new.txt
         //>     .git/objects/fd/f4fc3344e67ab068f836878b6c4951e3b15f3d # commit 1
 
-        Assert.assertSame(thirdCommit, repo.database.objects.get("a93eb7a3da86e4e938505bb95b0f9a716d4657f2"));
-        Assert.assertSame(secondCommit, repo.database.objects.get("c1e4cf563ad74162a7fc050fbd7e866750b918c3"));
+        Assert.assertSame(thirdCommit, repo.database.objects.get("e448fc731b886fe48545249112ab2f34b86e2f23"));
+        Assert.assertSame(secondCommit, repo.database.objects.get("eb1131c9f90fb4b50042ffe4e9ad44dad395288b"));
         Assert.assertSame(firstCommit, repo.database.objects.get("bc8284884aba8ec5dffab515898cd3cd957e5695"));
-        Assert.assertSame(version3Tree, repo.database.objects.get("17aa869614d4876f6646bcea558496d5a720f728"));
-        Assert.assertSame(version2Tree, repo.database.objects.get("654725b11e4186d9807c3396c2c651b927acb68f"));
+        Assert.assertSame(version3Tree, repo.database.objects.get("706dc46784f8fe1862bf9a156c4089391bcf3bc9"));
+        Assert.assertSame(version2Tree, repo.database.objects.get("9a5a2e37b08045e9a8ca49f1dc7b8aad658d73f4"));
         Assert.assertSame(version1Tree, repo.database.objects.get("91f91dfa30a202f88d959213deb8dfa1e81e3fdd"));
         Assert.assertSame(git.cat_file(test_txt_version_2_hash), repo.database.objects.get("cde016cb1660f6922680085eb1047d6823e7ab06"));
         Assert.assertSame(git.cat_file(test_txt_version_1_hash), repo.database.objects.get("d5353cdaa0518db00beb7dd5c334860f1e58f1f5"));
@@ -64,19 +64,19 @@ public class Git_3_References extends NanoVersionControlTestsBase
 
         // Write the current staging area into a set of tree objects into the object database:
         Tree version2Tree = git.write_tree();
-        Assert.assertEquals("654725b11e4186d9807c3396c2c651b927acb68f", version2Tree.hash.value);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(0).hashValue);
-        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(1).hashValue);
+        Assert.assertEquals("9a5a2e37b08045e9a8ca49f1dc7b8aad658d73f4", version2Tree.hash.value);
+        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(0).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(1).hashValue);
 
         // Add the first version as a backup under the 'bak' directory:
         git.read_tree(version1Tree.hash, RepoPath.at("bak"));
 
         // Write the current staging area into a set of tree objects into the object database:
         Tree version3Tree = git.write_tree();
-        Assert.assertEquals("17aa869614d4876f6646bcea558496d5a720f728", version3Tree.hash.value);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(0).hashValue);
+        Assert.assertEquals("706dc46784f8fe1862bf9a156c4089391bcf3bc9", version3Tree.hash.value);
+        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(0).hashValue);
         Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version3Tree.entries.get(1).hashValue);
-        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(2).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(2).hashValue);
 
         // Commit the first tree:
         Commit firstCommit = git.commit_tree(version1Tree.hash, "first commit");
@@ -84,11 +84,11 @@ public class Git_3_References extends NanoVersionControlTestsBase
 
         // Commit the second tree:
         Commit secondCommit = git.commit_tree(version2Tree.hash, "second commit", firstCommit.hash);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", secondCommit.hash.value);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", secondCommit.hash.value);
 
         // Commit the third tree:
         Commit thirdCommit = git.commit_tree(version3Tree.hash, "third commit", secondCommit.hash);
-        Assert.assertEquals("a93eb7a3da86e4e938505bb95b0f9a716d4657f2", thirdCommit.hash.value);
+        Assert.assertEquals("e448fc731b886fe48545249112ab2f34b86e2f23", thirdCommit.hash.value);
 
         //endregion
         // Now the initial stat of the repo matches where the story below begins.
@@ -155,7 +155,7 @@ public class Git_3_References extends NanoVersionControlTestsBase
         //> you can technically do something as simple as this:
 
         //> $ echo "1a410efbd13591db07496601ebc7a059dd55cfe9" > .git/refs/heads/master
-        repo.database.refs.heads.add(new HashReference("master", "a93eb7a3da86e4e938505bb95b0f9a716d4657f2"));
+        repo.database.refs.heads.add(new HashReference("master", "e448fc731b886fe48545249112ab2f34b86e2f23"));
 
         //> Now, you can use the head reference you just created instead of the SHA-1 value in your Git commands:
 
@@ -188,7 +188,7 @@ public class Git_3_References extends NanoVersionControlTestsBase
         HashReference testReference = git.update_ref_in_heads("test", secondCommit.hash);
         Assert.assertNotNull(testReference);
         Assert.assertEquals("test", testReference.name);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", testReference.hash.value);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", testReference.hash.value);
 
         //> Your branch will contain only work from that commit down:
 
@@ -348,19 +348,19 @@ public class Git_3_References extends NanoVersionControlTestsBase
 
         // Write the current staging area into a set of tree objects into the object database:
         Tree version2Tree = git.write_tree();
-        Assert.assertEquals("654725b11e4186d9807c3396c2c651b927acb68f", version2Tree.hash.value);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(0).hashValue);
-        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(1).hashValue);
+        Assert.assertEquals("9a5a2e37b08045e9a8ca49f1dc7b8aad658d73f4", version2Tree.hash.value);
+        Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version2Tree.entries.get(0).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version2Tree.entries.get(1).hashValue);
 
         // Add the first version as a backup under the 'bak' directory:
         git.read_tree(version1Tree.hash, RepoPath.at("bak"));
 
         // Write the current staging area into a set of tree objects into the object database:
         Tree version3Tree = git.write_tree();
-        Assert.assertEquals("17aa869614d4876f6646bcea558496d5a720f728", version3Tree.hash.value);
-        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(0).hashValue);
+        Assert.assertEquals("706dc46784f8fe1862bf9a156c4089391bcf3bc9", version3Tree.hash.value);
+        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(0).hashValue);
         Assert.assertEquals("634a399f5c7cb5b2c22aeedb32e7b49cd2fb9623", version3Tree.entries.get(1).hashValue);
-        Assert.assertEquals("91f91dfa30a202f88d959213deb8dfa1e81e3fdd", version3Tree.entries.get(2).hashValue);
+        Assert.assertEquals("cde016cb1660f6922680085eb1047d6823e7ab06", version3Tree.entries.get(2).hashValue);
 
         // Commit the first tree:
         Commit firstCommit = git.commit_tree(version1Tree.hash, "first commit");
@@ -368,21 +368,21 @@ public class Git_3_References extends NanoVersionControlTestsBase
 
         // Commit the second tree:
         Commit secondCommit = git.commit_tree(version2Tree.hash, "second commit", firstCommit.hash);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", secondCommit.hash.value);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", secondCommit.hash.value);
 
         // Commit the third tree:
         Commit thirdCommit = git.commit_tree(version3Tree.hash, "third commit", secondCommit.hash);
-        Assert.assertEquals("a93eb7a3da86e4e938505bb95b0f9a716d4657f2", thirdCommit.hash.value);
+        Assert.assertEquals("e448fc731b886fe48545249112ab2f34b86e2f23", thirdCommit.hash.value);
 
         // Create the master reference to the third commit:
         HashReference masterReference = git.update_ref_in_heads("master", thirdCommit.hash);
         Assert.assertEquals("master", masterReference.name);
-        Assert.assertEquals("a93eb7a3da86e4e938505bb95b0f9a716d4657f2", masterReference.hash.value);
+        Assert.assertEquals("e448fc731b886fe48545249112ab2f34b86e2f23", masterReference.hash.value);
 
         // Create the test reference to the second commit:
         HashReference testReference = git.update_ref_in_heads("test", secondCommit.hash);
         Assert.assertEquals("test", testReference.name);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", testReference.hash.value);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", testReference.hash.value);
 
         //endregion
         // Now the initial stat of the repo matches where the story below begins.
@@ -438,7 +438,7 @@ public class Git_3_References extends NanoVersionControlTestsBase
         HashReference tagV1Reference = git.update_ref_in_tags("v1.0", secondCommit.hash);
         Assert.assertNotNull(tagV1Reference);
         Assert.assertEquals("v1.0", tagV1Reference.name);
-        Assert.assertEquals("c1e4cf563ad74162a7fc050fbd7e866750b918c3", tagV1Reference.hash.value);
+        Assert.assertEquals("eb1131c9f90fb4b50042ffe4e9ad44dad395288b", tagV1Reference.hash.value);
         Assert.assertEquals(1, repo.database.refs.tags.size());
         Assert.assertSame(tagV1Reference, repo.database.refs.tags.getReference("v1.0"));
 